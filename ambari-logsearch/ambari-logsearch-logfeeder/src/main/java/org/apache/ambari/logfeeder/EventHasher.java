@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ambari.logfeeder;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Computes the event hash used for event_md5 and the event id. The fields
+ * are written in key order as UTF-8 into a per thread buffer which is then
+ * hashed with MurmurHash, so no JSON or intermediate strings are created.
+ * Null values are skipped.
+ */
+public final class EventHasher {
+  private static final byte KEY_END = 0x1f;
+  private static final byte FIELD_END = 0x1e;
+
+  private static final ThreadLocal<EventHasher> hashers = new ThreadLocal<EventHasher>() {
+    @Override
+    protected EventHasher initialValue() {
+      return new EventHasher();
+    }
+  };
+
+  private byte[] buffer = new byte[1024];
+  private int length = 0;
+  private String[] keys = new String[32];
+
+  private EventHasher() {
+  }
+
+  public static long hash(Map<String, Object> jsonObj) {
+    return hashers.get().hashEvent(jsonObj);
+  }
+
+  private long hashEvent(Map<String, Object> jsonObj) {
+    length = 0;
+    int keyCount = 0;
+    synchronized (jsonObj) {
+      if (keys.length < jsonObj.size()) {
+        keys = new String[jsonObj.size() * 2];
+      }
+      for (String key : jsonObj.keySet()) {
+        keys[keyCount++] = key;
+      }
+      Arrays.sort(keys, 0, keyCount);
+      for (int i = 0; i < keyCount; i++) {
+        Object value = jsonObj.get(keys[i]);
+        if (value != null) {
+          writeString(keys[i]);
+          writeByte(KEY_END);
+          writeValue(value);
+          writeByte(FIELD_END);
+        }
+      }
+    }
+    // Don't hold on to the keys of the last event
+    Arrays.fill(keys, 0, keyCount, null);
+    return MurmurHash.hash64A(buffer, 0, length, LogFeederUtil.HASH_SEED);
+  }
+
+  private void writeValue(Object value) {
+    if (value instanceof String) {
+      writeString((String) value);
+    } else if (value instanceof Date) {
+      writeLong(((Date) value).getTime());
+    } else if (value instanceof Long || value instanceof Integer) {
+      writeLong(((Number) value).longValue());
+    } else {
+      writeString(value.toString());
+    }
+  }
+
+  private void writeLong(long value) {
+    ensureCapacity(8);
+    for (int i = 0; i < 8; i++) {
+      buffer[length++] = (byte) (value >>> (i * 8));
+    }
+  }
+
+  private void writeByte(byte value) {
+    ensureCapacity(1);
+    buffer[length++] = value;
+  }
+
+  private void writeString(String value) {
+    int strLength = value.length();
+    ensureCapacity(strLength * 3);
+    for (int i = 0; i < strLength; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        buffer[length++] = (byte) c;
+      } else if (c < 0x800) {
+        buffer[length++] = (byte) (0xc0 | (c >> 6));
+        buffer[length++] = (byte) (0x80 | (c & 0x3f));
+      } else {
+        // Surrogates are hashed as is, there is no need for valid UTF-8 here
+        buffer[length++] = (byte) (0xe0 | (c >> 12));
+        buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buffer[length++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+  }
+
+  private void ensureCapacity(int extra) {
+    if (length + extra > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length
+        + extra));
+    }
+  }
+}
@@ -124,8 +124,7 @@ public class OutputMgr {
           prefix = logtimeObj.toString();
         }
       }
-      Long eventMD5 = LogFeederUtil.genHash(LogFeederUtil.getGson()
-        .toJson(jsonObj));
+      Long eventMD5 = EventHasher.hash(jsonObj);
       if (input.isGenEventMD5()) {
         jsonObj.put("event_md5", prefix + eventMD5.toString());
       }
@@ -182,9 +181,18 @@ public class OutputMgr {
     }
     //check log is allowed to send output
     if (FilterLogData.INSTANCE.isAllowed(jsonObj)) {
+      // Serialized at most once, and shared by all the JSON outputs
+      String jsonStr = null;
       for (Output output : input.getOutputList()) {
         try {
-          output.write(jsonObj, inputMarker);
+          if (output.isJsonOutput()) {
+            if (jsonStr == null) {
+              jsonStr = LogFeederUtil.getGson().toJson(jsonObj);
+            }
+            output.write(jsonStr, inputMarker);
+          } else {
+            output.write(jsonObj, inputMarker);
+          }
         } catch (Exception e) {
           logger.error("Error writing. to " + output.getShortDescription(), e);
         }
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ambari.logfeeder.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import oi.thekraken.grok.api.Grok;
+
+/**
+ * A grok expression translated once into a plain java.util.regex Pattern.
+ * Only the groups of the requested fields stay capturing, every other grok
+ * group becomes non capturing. Matching then fills the event map directly,
+ * without the Map to JSON to Map round trip of Grok.capture().
+ */
+public class CompiledGrok {
+  private static final Pattern GROK_GROUP = Pattern.compile("\\(\\?<(name\\d+)>");
+
+  private final Pattern pattern;
+  private final String[] groupNames;
+  private final String[] fieldNames;
+
+  /**
+   * @param grok   a compiled Grok, used only for its expanded regex
+   * @param fields the field names to extract
+   */
+  public CompiledGrok(Grok grok, Set<String> fields) {
+    String namedRegex = grok.getNamedRegex();
+    Map<String, String> namedRegexCollection = grok.getNamedRegexCollection();
+
+    List<String> fieldList = new ArrayList<String>();
+    StringBuffer regex = new StringBuffer();
+    Matcher matcher = GROK_GROUP.matcher(namedRegex);
+    while (matcher.find()) {
+      String replacement;
+      if (isEscaped(namedRegex, matcher.start())) {
+        replacement = matcher.group();
+      } else {
+        String field = namedRegexCollection.get(matcher.group(1));
+        if (field != null && fields.contains(field)) {
+          replacement = "(?<f" + fieldList.size() + ">";
+          fieldList.add(field);
+        } else {
+          replacement = "(?:";
+        }
+      }
+      matcher.appendReplacement(regex, Matcher.quoteReplacement(replacement));
+    }
+    matcher.appendTail(regex);
+
+    pattern = Pattern.compile(regex.toString());
+    fieldNames = fieldList.toArray(new String[fieldList.size()]);
+    groupNames = new String[fieldNames.length];
+    for (int i = 0; i < groupNames.length; i++) {
+      groupNames[i] = "f" + i;
+    }
+  }
+
+  /**
+   * @return a matcher to be reused with {@link #extract}, not thread safe
+   */
+  public Matcher matcher() {
+    return pattern.matcher("");
+  }
+
+  public boolean matches(Matcher matcher, String input) {
+    return matcher.reset(input).find();
+  }
+
+  /**
+   * Puts the requested fields found in the input into the event.
+   *
+   * @return false if the input doesn't match the pattern
+   */
+  public boolean extract(Matcher matcher, String input,
+                         Map<String, ? super String> event) {
+    if (!matcher.reset(input).find()) {
+      return false;
+    }
+    for (int i = 0; i < groupNames.length; i++) {
+      String value = matcher.group(groupNames[i]);
+      if (value != null) {
+        event.put(fieldNames[i], cleanString(value));
+      }
+    }
+    return true;
+  }
+
+  public String getRegex() {
+    return pattern.pattern();
+  }
+
+  private static boolean isEscaped(String regex, int index) {
+    int backslashes = 0;
+    for (int i = index - 1; i >= 0 && regex.charAt(i) == '\\'; i--) {
+      backslashes++;
+    }
+    return backslashes % 2 == 1;
+  }
+
+  /**
+   * Same as Grok's Match, removes the quotes around quoted values
+   */
+  private static String cleanString(String value) {
+    int length = value.length();
+    if (length == 1 && (value.charAt(0) == '"' || value.charAt(0) == '\'')) {
+      return "";
+    }
+    if (length > 1) {
+      char first = value.charAt(0);
+      if ((first == '"' || first == '\'') && value.charAt(length - 1) == first) {
+        return value.substring(1, length - 1);
+      }
+    }
+    return value;
+  }
+}
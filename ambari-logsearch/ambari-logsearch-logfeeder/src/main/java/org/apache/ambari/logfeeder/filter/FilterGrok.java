@@ -21,7 +21,6 @@ package org.apache.ambari.logfeeder.filter;
 
 import java.io.BufferedInputStream;
 import java.io.InputStreamReader;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -29,6 +28,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import oi.thekraken.grok.api.Grok;
@@ -41,8 +41,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
-import com.google.gson.reflect.TypeToken;
-
 public class FilterGrok extends Filter {
   static private Logger logger = Logger.getLogger(FilterGrok.class);
 
@@ -54,8 +52,15 @@ public class FilterGrok extends Filter {
   Grok grokMultiline = null;
   Grok grokMessage = null;
 
-  StringBuilder strBuff = null;
-  String currMultilineJsonStr = null;
+  // Compiled once in init(), the matchers are reused for every line
+  CompiledGrok compiledMessage = null;
+  CompiledGrok compiledMultiline = null;
+  Matcher messageMatcher = null;
+  Matcher multilineMatcher = null;
+
+  StringBuilder strBuff = new StringBuilder();
+  boolean hasBufferedLines = false;
+  Map<String, String> currMultilineFields = null;
 
   InputMarker firstInputMarker = null;
   InputMarker savedInputMarker = null;
@@ -66,9 +71,6 @@ public class FilterGrok extends Filter {
   Set<String> namedParamList = new HashSet<String>();
   Set<String> multiLineamedParamList = new HashSet<String>();
 
-  Type jsonType = new TypeToken<Map<String, String>>() {
-  }.getType();
-
   public MetricCount grokErrorMetric = new MetricCount();
 
   @Override
@@ -97,12 +99,18 @@ public class FilterGrok extends Filter {
       // grokMessage.addPatternFromReader(r);
       loadPatterns(grokMessage);
       grokMessage.compile(messagePattern);
+      compiledMessage = new CompiledGrok(grokMessage, namedParamList);
+      messageMatcher = compiledMessage.matcher();
       if (!StringUtils.isEmpty(multilinePattern)) {
         extractNamedParams(multilinePattern, multiLineamedParamList);
 
         grokMultiline = new Grok();
         loadPatterns(grokMultiline);
         grokMultiline.compile(multilinePattern);
+        // When the message doesn't parse, the fields of the message pattern
+        // are taken from the multiline match of the first line
+        compiledMultiline = new CompiledGrok(grokMultiline, namedParamList);
+        multilineMatcher = compiledMultiline.matcher();
       }
     } catch (Throwable t) {
       logger.fatal(
@@ -111,6 +119,8 @@ public class FilterGrok extends Filter {
           + messagePattern, t);
       grokMessage = null;
       grokMultiline = null;
+      compiledMessage = null;
+      compiledMultiline = null;
     }
 
   }
@@ -185,39 +195,32 @@ public class FilterGrok extends Filter {
    */
   @Override
   public void apply(String inputStr, InputMarker inputMarker) {
-    if (grokMessage == null) {
+    if (compiledMessage == null) {
       return;
     }
 
-    if (grokMultiline != null) {
+    if (compiledMultiline != null) {
       // Check if new line
-      String jsonStr = grokMultiline.capture(inputStr);
-      if (!"{}".equals(jsonStr)) {
+      Map<String, String> multilineFields = new HashMap<String, String>();
+      if (compiledMultiline.extract(multilineMatcher, inputStr,
+        multilineFields)) {
         // New line
-        if (strBuff != null) {
+        if (hasBufferedLines) {
           savedInputMarker.beginLineNumber = firstInputMarker.lineNumber;
-          // Construct JSON object and add only the interested named
-          // parameters
-          Map<String, Object> jsonObj = Collections
-            .synchronizedMap(new HashMap<String, Object>());
           try {
             // Handle message parsing
-            applyMessage(strBuff.toString(), jsonObj,
-              currMultilineJsonStr);
+            applyMessage(strBuff.toString(), newEvent(), currMultilineFields);
           } finally {
-            strBuff = null;
-            savedInputMarker = null;
-            firstInputMarker = null;
+            resetBuffer();
           }
         }
-        currMultilineJsonStr = jsonStr;
+        currMultilineFields = multilineFields;
       }
 
-      if (strBuff == null) {
-        strBuff = new StringBuilder();
+      if (!hasBufferedLines) {
+        hasBufferedLines = true;
         firstInputMarker = inputMarker;
       } else {
-        // strBuff.append(System.lineSeparator());
         strBuff.append('\r');
         strBuff.append('\n');
       }
@@ -225,9 +228,7 @@ public class FilterGrok extends Filter {
       savedInputMarker = inputMarker;
     } else {
       savedInputMarker = inputMarker;
-      Map<String, Object> jsonObj = Collections
-        .synchronizedMap(new HashMap<String, Object>());
-      applyMessage(inputStr, jsonObj, null);
+      applyMessage(inputStr, newEvent(), null);
     }
   }
 
@@ -242,36 +243,41 @@ public class FilterGrok extends Filter {
     }
   }
 
+  /**
+   * The event is queued by the outputs, so a new map is needed per event
+   */
+  private Map<String, Object> newEvent() {
+    return Collections.synchronizedMap(new HashMap<String, Object>(
+      namedParamList.size() * 2 + 8));
+  }
+
+  private void resetBuffer() {
+    strBuff.setLength(0);
+    hasBufferedLines = false;
+    savedInputMarker = null;
+    firstInputMarker = null;
+  }
+
   /**
    * @param inputStr
    * @param jsonObj
    */
   private void applyMessage(String inputStr, Map<String, Object> jsonObj,
-                            String multilineJsonStr) {
-    String jsonStr = grokParse(inputStr);
-
+                            Map<String, String> multilineFields) {
     boolean parseError = false;
-    if ("{}".equals(jsonStr)) {
+    if (inputStr == null
+      || !compiledMessage.extract(messageMatcher, inputStr, jsonObj)) {
       parseError = true;
       // Error parsing string.
       logParseError(inputStr);
 
-      if (multilineJsonStr == null) {
+      if (multilineFields == null) {
         // TODO: Should we just add this as raw message in solr?
         return;
       }
+      jsonObj.putAll(multilineFields);
     }
 
-    if (parseError) {
-      jsonStr = multilineJsonStr;
-    }
-    Map<String, String> jsonSrc = LogFeederUtil.getGson().fromJson(jsonStr,
-      jsonType);
-    for (String namedParam : namedParamList) {
-      if (jsonSrc.get(namedParam) != null) {
-        jsonObj.put(namedParam, jsonSrc.get(namedParam));
-      }
-    }
     if (parseError) {
       // Add error tags
       @SuppressWarnings("unchecked")
@@ -292,6 +298,10 @@ public class FilterGrok extends Filter {
     statMetric.count++;
   }
 
+  /**
+   * Parses with the java-grok API and returns the captures as JSON. Not
+   * used on the filtering path anymore.
+   */
   public String grokParse(String inputStr) {
     String jsonStr = grokMessage.capture(inputStr);
     return jsonStr;
@@ -313,13 +323,13 @@ public class FilterGrok extends Filter {
 
   @Override
   public void flush() {
-    if (strBuff != null) {
+    if (hasBufferedLines) {
       // Handle message parsing
-      Map<String, Object> jsonObj = Collections
-        .synchronizedMap(new HashMap<String, Object>());
-      applyMessage(strBuff.toString(), jsonObj, currMultilineJsonStr);
-      strBuff = null;
-      savedInputMarker = null;
+      try {
+        applyMessage(strBuff.toString(), newEvent(), currMultilineFields);
+      } finally {
+        resetBuffer();
+      }
     }
     super.flush();
   }
@@ -74,7 +74,11 @@ public class FilterKeyValue extends Filter {
       return;
     }
     Object valueObj = jsonObj.get(sourceField);
-    if (valueObj != null) {
+    if (valueObj != null && fieldSplit.length() == 1
+      && valueSplit.length() == 1) {
+      splitPairs(valueObj.toString(), fieldSplit.charAt(0),
+        valueSplit.charAt(0), jsonObj);
+    } else if (valueObj != null) {
       StringTokenizer fieldTokenizer = new StringTokenizer(
         valueObj.toString(), fieldSplit);
       while (fieldTokenizer.hasMoreTokens()) {
@@ -99,6 +103,54 @@ public class FilterKeyValue extends Filter {
     statMetric.count++;
   }
 
+  /**
+   * Same result as the StringTokenizer loop for single character separators,
+   * but scans the string once without creating a tokenizer per pair. Empty
+   * tokens are skipped like StringTokenizer does.
+   */
+  private void splitPairs(String str, char fieldChar, char valueChar,
+                          Map<String, Object> jsonObj) {
+    int length = str.length();
+    int pairStart = 0;
+    while (pairStart < length) {
+      int pairEnd = str.indexOf(fieldChar, pairStart);
+      if (pairEnd < 0) {
+        pairEnd = length;
+      }
+      if (pairEnd > pairStart) {
+        splitPair(str, pairStart, pairEnd, valueChar, jsonObj);
+      }
+      pairStart = pairEnd + 1;
+    }
+  }
+
+  private void splitPair(String str, int start, int end, char valueChar,
+                         Map<String, Object> jsonObj) {
+    String name = null;
+    int tokenStart = start;
+    while (tokenStart < end) {
+      int tokenEnd = str.indexOf(valueChar, tokenStart);
+      if (tokenEnd < 0 || tokenEnd > end) {
+        tokenEnd = end;
+      }
+      if (tokenEnd > tokenStart) {
+        String token = str.substring(tokenStart, tokenEnd);
+        if (name == null) {
+          name = token;
+        } else {
+          jsonObj.put(name, token);
+          name = null;
+        }
+      }
+      tokenStart = tokenEnd + 1;
+    }
+    if (name != null) {
+      // Unbalanced name value pairs
+      logParseError("name=" + name + ", pair=" + str.substring(start, end)
+        + ", field=" + sourceField + ", field_value=" + str);
+    }
+  }
+
   private void logParseError(String inputStr) {
     errorMetric.count++;
     final String LOG_MESSAGE_KEY = this.getClass().getSimpleName()
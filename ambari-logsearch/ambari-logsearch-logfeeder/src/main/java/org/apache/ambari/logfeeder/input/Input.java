@@ -37,6 +37,8 @@ import org.apache.log4j.Logger;
 public abstract class Input extends ConfigBlock implements Runnable {
   static private Logger logger = Logger.getLogger(Input.class);
 
+  private static final long BACK_PRESSURE_SLEEP_MS = 100;
+
   OutputMgr outputMgr;
   InputMgr inputMgr;
 
@@ -117,6 +119,39 @@ public abstract class Input extends ConfigBlock implements Runnable {
     }
   }
 
+  /**
+   * @return true if any output of this input asked the inputs to pause
+   */
+  public boolean isOutputBackPressured() {
+    for (Output output : outputList) {
+      if (output.isBackPressured()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Called by the reading thread between lines. Blocks while the outputs are
+   * back pressured, so reading pauses here and not inside the filters.
+   */
+  public void waitForOutputs() {
+    if (!isOutputBackPressured()) {
+      return;
+    }
+    logger.info("Outputs are back pressured. Pausing reading. "
+      + getShortDescription());
+    while (!isDrain() && isOutputBackPressured()) {
+      try {
+        Thread.sleep(BACK_PRESSURE_SLEEP_MS);
+      } catch (InterruptedException e) {
+        // setDrain() interrupts the thread
+        break;
+      }
+    }
+    logger.info("Resuming reading. " + getShortDescription());
+  }
+
   /**
    *
    */
@@ -192,17 +192,7 @@ public class InputFile extends Input {
         }
         lastCheckPointTimeMS = currMS;
 
-        jsonCheckPoint.put("line_number", ""
-          + new Integer(inputMarker.lineNumber));
-        jsonCheckPoint.put("last_write_time_ms", "" + new Long(currMS));
-        jsonCheckPoint.put("last_write_time_date", new Date());
-
-        String jsonStr = LogFeederUtil.getGson().toJson(jsonCheckPoint);
-
-        // Let's rewind
-        checkPointWriter.seek(0);
-        checkPointWriter.writeInt(jsonStr.length());
-        checkPointWriter.write(jsonStr.getBytes());
+        String jsonStr = writeCheckPoint(inputMarker, currMS);
 
         if (isClosed()) {
           final String LOG_MESSAGE_KEY = this.getClass()
@@ -315,72 +305,10 @@ public class InputFile extends Input {
         + ". " + getShortDescription());
 
       if (isTail()) {
-        try {
-          // Let's see if there is a checkpoint for this file
-          logger.info("Checking existing checkpoint file. "
-            + getShortDescription());
-
-          String fileBase64 = Base64.byteArrayToBase64(fileKey
-            .toString().getBytes());
-          String checkPointFileName = fileBase64
-            + checkPointExtension;
-          File checkPointFolder = inputMgr.getCheckPointFolderFile();
-          checkPointFile = new File(checkPointFolder,
-            checkPointFileName);
-          checkPointWriter = new RandomAccessFile(checkPointFile,
-            "rw");
-
-          try {
-            int contentSize = checkPointWriter.readInt();
-            byte b[] = new byte[contentSize];
-            int readSize = checkPointWriter.read(b, 0, contentSize);
-            if (readSize != contentSize) {
-              logger.error("Couldn't read expected number of bytes from checkpoint file. expected="
-                + contentSize
-                + ", read="
-                + readSize
-                + ", checkPointFile="
-                + checkPointFile
-                + ", input=" + getShortDescription());
-            } else {
-              // Create JSON string
-              String jsonCheckPointStr = new String(b, 0,
-                readSize);
-              jsonCheckPoint = LogFeederUtil
-                .toJSONObject(jsonCheckPointStr);
-
-              resumeFromLineNumber = LogFeederUtil.objectToInt(
-                jsonCheckPoint.get("line_number"), 0,
-                "line_number");
-
-              if (resumeFromLineNumber > 0) {
-                // Let's read from last line read
-                resume = false;
-              }
-              logger.info("CheckPoint. checkPointFile="
-                + checkPointFile + ", json="
-                + jsonCheckPointStr
-                + ", resumeFromLineNumber="
-                + resumeFromLineNumber + ", resume="
-                + resume);
-            }
-          } catch (EOFException eofEx) {
-            logger.info("EOFException. Will reset checkpoint file "
-              + checkPointFile.getAbsolutePath() + " for "
-              + getShortDescription());
-          }
-          if (jsonCheckPoint == null) {
-            // This seems to be first time, so creating the initial
-            // checkPoint object
-            jsonCheckPoint = new HashMap<String, Object>();
-            jsonCheckPoint.put("file_path", filePath);
-            jsonCheckPoint.put("file_key", fileBase64);
-          }
-
-        } catch (Throwable t) {
-          logger.error(
-            "Error while configuring checkpoint file. Will reset file. checkPointFile="
-              + checkPointFile, t);
+        resumeFromLineNumber = openCheckPoint();
+        if (resumeFromLineNumber > 0) {
+          // Let's read from last line read
+          resume = false;
         }
       }
 
@@ -392,6 +320,7 @@ public class InputFile extends Input {
           if (isDrain()) {
             break;
           }
+          waitForOutputs();
 
           String line = br.readLine();
           if (line == null) {
@@ -528,6 +457,99 @@ public class InputFile extends Input {
     }
   }
 
+  /**
+   * Opens the checkpoint file for the current fileKey and loads its content.
+   *
+   * @return the line number to resume from, 0 if there is no checkpoint
+   */
+  int openCheckPoint() {
+    int resumeFromLineNumber = 0;
+    try {
+      // Let's see if there is a checkpoint for this file
+      logger.info("Checking existing checkpoint file. "
+        + getShortDescription());
+
+      String fileBase64 = Base64.byteArrayToBase64(fileKey
+        .toString().getBytes());
+      String checkPointFileName = fileBase64
+        + checkPointExtension;
+      File checkPointFolder = inputMgr.getCheckPointFolderFile();
+      checkPointFile = new File(checkPointFolder,
+        checkPointFileName);
+      checkPointWriter = new RandomAccessFile(checkPointFile,
+        "rw");
+
+      try {
+        int contentSize = checkPointWriter.readInt();
+        byte b[] = new byte[contentSize];
+        int readSize = checkPointWriter.read(b, 0, contentSize);
+        if (readSize != contentSize) {
+          logger.error("Couldn't read expected number of bytes from checkpoint file. expected="
+            + contentSize
+            + ", read="
+            + readSize
+            + ", checkPointFile="
+            + checkPointFile
+            + ", input=" + getShortDescription());
+        } else {
+          // Create JSON string
+          String jsonCheckPointStr = new String(b, 0,
+            readSize);
+          jsonCheckPoint = LogFeederUtil
+            .toJSONObject(jsonCheckPointStr);
+
+          resumeFromLineNumber = LogFeederUtil.objectToInt(
+            jsonCheckPoint.get("line_number"), 0,
+            "line_number");
+
+          logger.info("CheckPoint. checkPointFile="
+            + checkPointFile + ", json="
+            + jsonCheckPointStr
+            + ", resumeFromLineNumber="
+            + resumeFromLineNumber);
+        }
+      } catch (EOFException eofEx) {
+        logger.info("EOFException. Will reset checkpoint file "
+          + checkPointFile.getAbsolutePath() + " for "
+          + getShortDescription());
+      }
+      if (jsonCheckPoint == null) {
+        // This seems to be first time, so creating the initial
+        // checkPoint object
+        jsonCheckPoint = new HashMap<String, Object>();
+        jsonCheckPoint.put("file_path", filePath);
+        jsonCheckPoint.put("file_key", fileBase64);
+      }
+
+    } catch (Throwable t) {
+      logger.error(
+        "Error while configuring checkpoint file. Will reset file. checkPointFile="
+          + checkPointFile, t);
+    }
+    return resumeFromLineNumber;
+  }
+
+  /**
+   * Rewrites the checkpoint file with the line number of the given marker.
+   *
+   * @return the JSON written to the checkpoint file
+   */
+  String writeCheckPoint(InputMarker inputMarker, long currMS)
+    throws IOException {
+    jsonCheckPoint.put("line_number", ""
+      + new Integer(inputMarker.lineNumber));
+    jsonCheckPoint.put("last_write_time_ms", "" + new Long(currMS));
+    jsonCheckPoint.put("last_write_time_date", new Date());
+
+    String jsonStr = LogFeederUtil.getGson().toJson(jsonCheckPoint);
+
+    // Let's rewind
+    checkPointWriter.seek(0);
+    checkPointWriter.writeInt(jsonStr.length());
+    checkPointWriter.write(jsonStr.getBytes());
+    return jsonStr;
+  }
+
   /**
    * @param logPathFile2
    * @return
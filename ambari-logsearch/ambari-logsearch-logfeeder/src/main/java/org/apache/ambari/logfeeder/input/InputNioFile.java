@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ambari.logfeeder.input;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.ambari.logfeeder.LogFeederUtil;
+import org.apache.ambari.logfeeder.input.reader.GZIPReader;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.solr.common.util.Base64;
+
+/**
+ * Tails a file through a FileChannel on the shared {@link NioFileReaderPool}
+ * instead of a dedicated sleeping thread. Lines are split on the raw bytes, so
+ * lines skipped while resuming from a checkpoint are never decoded. Checkpoints
+ * are only recorded in memory on checkIn and written in batches by the pool.
+ * Rotation is detected by comparing the file key of the configured path.
+ *
+ * Non tailing inputs and gzip files are read by the regular {@link InputFile}
+ * thread.
+ */
+public class InputNioFile extends InputFile {
+  static private Logger logger = Logger.getLogger(InputNioFile.class);
+
+  private int readBufferSize = 64 * 1024;
+  private int idleFlushMS = 2 * 1000;
+
+  private final Charset charset = Charset.defaultCharset();
+  private ByteBuffer readBuffer = null;
+  private byte[] lineBuffer = new byte[1024];
+  private int lineLength = 0;
+
+  private File currentFile = null;
+  private FileChannel channel = null;
+  private int lineCount = 0;
+  private int resumeFromLineNumber = 0;
+  private long lastDataMS = 0;
+  private boolean isFlushed = true;
+
+  private final Object checkPointLock = new Object();
+  private InputMarker pendingCheckPoint = null;
+
+  @Override
+  public void init() throws Exception {
+    super.init();
+    readBufferSize = getIntValue("read_buffer_size", readBufferSize);
+    idleFlushMS = getIntValue("idle_flush_ms", idleFlushMS);
+  }
+
+  @Override
+  public boolean monitor() {
+    if (!isReady()) {
+      return false;
+    }
+    File file = logPathFiles[0];
+    if (!isTail() || GZIPReader.isValidFile(file.getAbsolutePath())) {
+      logger.info("Using thread per file reader. " + getShortDescription());
+      return super.monitor();
+    }
+    try {
+      openFile(file);
+    } catch (IOException e) {
+      logger.error("Error opening file. " + getShortDescription(), e);
+      return false;
+    }
+    logger.info("Registering with NIO reader pool. " + getShortDescription());
+    NioFileReaderPool.getInstance().register(this);
+    return true;
+  }
+
+  void openFile(File file) throws IOException {
+    currentFile = file;
+    setFilePath(file.getAbsolutePath());
+    fileKey = getFileKey(file);
+    base64FileKey = Base64.byteArrayToBase64(fileKey.toString().getBytes());
+    logger.info("fileKey=" + fileKey + ", base64=" + base64FileKey + ". "
+      + getShortDescription());
+
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    if (readBuffer == null) {
+      readBuffer = ByteBuffer.allocate(readBufferSize);
+    }
+    readBuffer.clear();
+    lineLength = 0;
+    lineCount = 0;
+
+    synchronized (checkPointLock) {
+      pendingCheckPoint = null;
+      checkPointFile = null;
+      checkPointWriter = null;
+      jsonCheckPoint = null;
+      resumeFromLineNumber = openCheckPoint();
+    }
+    lastDataMS = System.currentTimeMillis();
+    setClosed(false);
+  }
+
+  /**
+   * Reads everything appended since the last call. Called from the reader
+   * pool, never concurrently for the same input.
+   *
+   * @return true if this input is done and should not be scheduled again
+   */
+  synchronized boolean readAvailable() throws IOException {
+    if (channel == null) {
+      return true;
+    }
+    if (isDrain()) {
+      finish();
+      return true;
+    }
+    if (isOutputBackPressured()) {
+      // Leave the data in the file, the pool polls again
+      return false;
+    }
+    long currMS = System.currentTimeMillis();
+    if (readToEnd()) {
+      lastDataMS = currMS;
+      isFlushed = false;
+      return false;
+    }
+
+    Object newFileKey = getFileKey(currentFile);
+    if (currentFile.exists() && newFileKey != null
+      && !newFileKey.equals(fileKey)) {
+      logger.info("File key is different. Reopening rolled over file. oldKey="
+        + fileKey + ", newKey=" + newFileKey + ", lineCount=" + lineCount
+        + ". " + getShortDescription());
+      emitPartialLine();
+      flush();
+      isFlushed = true;
+      flushCheckPoint();
+      closeFile();
+      openFile(currentFile);
+      if (readToEnd()) {
+        lastDataMS = currMS;
+        isFlushed = false;
+      }
+      return false;
+    }
+
+    if (channel.size() < channel.position()) {
+      logger.info("File is truncated. Reading from beginning. lineCount="
+        + lineCount + ". " + getShortDescription());
+      channel.position(0);
+      lineLength = 0;
+      lineCount = 0;
+      synchronized (checkPointLock) {
+        resumeFromLineNumber = 0;
+      }
+      return false;
+    }
+
+    if (!isFlushed && currMS - lastDataMS >= idleFlushMS) {
+      flush();
+      isFlushed = true;
+    }
+    return false;
+  }
+
+  private boolean readToEnd() throws IOException {
+    boolean readData = false;
+    while (!isDrain() && !isOutputBackPressured()) {
+      int readSize = channel.read(readBuffer);
+      if (readSize <= 0) {
+        break;
+      }
+      readData = true;
+      readBuffer.flip();
+      byte[] bytes = readBuffer.array();
+      int end = readBuffer.arrayOffset() + readBuffer.limit();
+      int lineStart = readBuffer.arrayOffset() + readBuffer.position();
+      for (int i = lineStart; i < end; i++) {
+        if (bytes[i] == '\n') {
+          emitLine(bytes, lineStart, i - lineStart);
+          lineStart = i + 1;
+        }
+      }
+      appendToLineBuffer(bytes, lineStart, end - lineStart);
+      readBuffer.clear();
+    }
+    return readData;
+  }
+
+  private void appendToLineBuffer(byte[] bytes, int offset, int length) {
+    if (length == 0) {
+      return;
+    }
+    if (lineLength + length > lineBuffer.length) {
+      byte[] newBuffer = new byte[Math.max(lineBuffer.length * 2, lineLength
+        + length)];
+      System.arraycopy(lineBuffer, 0, newBuffer, 0, lineLength);
+      lineBuffer = newBuffer;
+    }
+    System.arraycopy(bytes, offset, lineBuffer, lineLength, length);
+    lineLength += length;
+  }
+
+  private void emitLine(byte[] bytes, int offset, int length) {
+    if (lineLength > 0) {
+      appendToLineBuffer(bytes, offset, length);
+      bytes = lineBuffer;
+      offset = 0;
+      length = lineLength;
+      lineLength = 0;
+    }
+    if (length > 0 && bytes[offset + length - 1] == '\r') {
+      length--;
+    }
+    lineCount++;
+    if (lineCount <= resumeFromLineNumber) {
+      // Already sent before the restart, no need to decode it
+      return;
+    }
+    InputMarker marker = new InputMarker();
+    marker.fileKey = fileKey;
+    marker.base64FileKey = base64FileKey;
+    marker.filePath = filePath;
+    marker.input = this;
+    marker.lineNumber = lineCount;
+    try {
+      outputLine(new String(bytes, offset, length, charset), marker);
+    } catch (Throwable t) {
+      final String LOG_MESSAGE_KEY = this.getClass().getSimpleName()
+        + "_READ_LOOP_EXCEPTION";
+      LogFeederUtil.logErrorMessageByInterval(LOG_MESSAGE_KEY,
+        "Caught exception in read loop. lineNumber=" + lineCount
+          + ", input=" + getShortDescription(), t, logger, Level.ERROR);
+    }
+  }
+
+  /**
+   * The last line of a rolled over file may not end with a new line.
+   */
+  private void emitPartialLine() {
+    if (lineLength > 0) {
+      emitLine(lineBuffer, 0, 0);
+    }
+  }
+
+  private void finish() {
+    logger.info("Closing reader. " + getShortDescription() + ", lineCount="
+      + lineCount);
+    // close() does the final checkIn, so the checkpoint file is closed after
+    close();
+    closeFile();
+  }
+
+  private void closeFile() {
+    try {
+      if (channel != null) {
+        channel.close();
+      }
+    } catch (IOException e) {
+      logger.warn("Error closing file. " + getShortDescription(), e);
+    }
+    synchronized (checkPointLock) {
+      try {
+        if (checkPointWriter != null) {
+          checkPointWriter.close();
+        }
+      } catch (IOException e) {
+        logger.warn("Error closing checkpoint file " + checkPointFile, e);
+      }
+      checkPointWriter = null;
+    }
+  }
+
+  @Override
+  public void checkIn(InputMarker inputMarker) {
+    synchronized (checkPointLock) {
+      if (inputMarker.fileKey == null || !inputMarker.fileKey.equals(fileKey)) {
+        // Marker from the file before rollover
+        return;
+      }
+      if (pendingCheckPoint == null
+        || inputMarker.lineNumber > pendingCheckPoint.lineNumber) {
+        pendingCheckPoint = inputMarker;
+      }
+    }
+  }
+
+  @Override
+  public void checkIn() {
+    flushCheckPoint();
+  }
+
+  /**
+   * Writes the highest line checked in since the last write, if any.
+   */
+  void flushCheckPoint() {
+    synchronized (checkPointLock) {
+      if (pendingCheckPoint == null || checkPointWriter == null
+        || jsonCheckPoint == null) {
+        return;
+      }
+      try {
+        writeCheckPoint(pendingCheckPoint, System.currentTimeMillis());
+        pendingCheckPoint = null;
+      } catch (Throwable t) {
+        final String LOG_MESSAGE_KEY = this.getClass().getSimpleName()
+          + "_CHECKIN_EXCEPTION";
+        LogFeederUtil.logErrorMessageByInterval(LOG_MESSAGE_KEY,
+          "Caught exception checkIn. , input=" + getShortDescription(), t,
+          logger, Level.ERROR);
+      }
+    }
+  }
+
+  @Override
+  public void setDrain(boolean drain) {
+    super.setDrain(drain);
+    if (drain && channel != null) {
+      NioFileReaderPool.getInstance().schedule(this);
+    }
+  }
+
+  String getFileName() {
+    return currentFile != null ? currentFile.getName() : null;
+  }
+}
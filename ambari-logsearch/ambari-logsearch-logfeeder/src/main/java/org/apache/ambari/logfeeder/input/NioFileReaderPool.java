@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ambari.logfeeder.input;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ambari.logfeeder.LogFeederUtil;
+import org.apache.log4j.Logger;
+
+/**
+ * Shared reader threads for {@link InputNioFile}. Instead of one sleeping
+ * thread per file, the parent folders are registered with a WatchService and
+ * a small pool reads whichever files have new data. A periodic poll covers
+ * file systems where the watch service is unreliable, detects rotation and
+ * writes the pending checkpoints in one batch.
+ */
+public class NioFileReaderPool {
+  static private Logger logger = Logger.getLogger(NioFileReaderPool.class);
+
+  private static NioFileReaderPool instance = null;
+
+  private final ExecutorService readerPool;
+  private final ScheduledExecutorService scheduler;
+  private WatchService watchService = null;
+
+  private final Map<InputNioFile, Registration> registrations = new ConcurrentHashMap<InputNioFile, Registration>();
+  private final Map<Path, Set<InputNioFile>> watchedFolders = new ConcurrentHashMap<Path, Set<InputNioFile>>();
+
+  /**
+   * Makes sure a file is read by at most one thread at a time, and that
+   * events arriving during a read trigger one more pass.
+   */
+  private class Registration implements Runnable {
+    final InputNioFile input;
+    final AtomicBoolean scheduled = new AtomicBoolean(false);
+    final AtomicBoolean pending = new AtomicBoolean(false);
+
+    Registration(InputNioFile input) {
+      this.input = input;
+    }
+
+    void schedule() {
+      pending.set(true);
+      if (scheduled.compareAndSet(false, true)) {
+        readerPool.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      boolean done = false;
+      try {
+        while (pending.getAndSet(false) && !done) {
+          done = input.readAvailable();
+        }
+      } catch (Throwable t) {
+        logger.error("Error reading file. " + input.getShortDescription(), t);
+      } finally {
+        scheduled.set(false);
+      }
+      if (done) {
+        unregister(input);
+      } else if (pending.get()) {
+        schedule();
+      }
+    }
+  }
+
+  private NioFileReaderPool() {
+    int readerThreads = LogFeederUtil.getIntProperty(
+      "logfeeder.input.nio.reader_threads", 4);
+    long pollIntervalMS = LogFeederUtil.getIntProperty(
+      "logfeeder.input.nio.poll_interval_ms", 1000);
+    long checkPointIntervalMS = LogFeederUtil.getIntProperty(
+      "logfeeder.input.nio.checkpoint_interval_ms", 5000);
+
+    readerPool = Executors.newFixedThreadPool(readerThreads,
+      new DaemonThreadFactory("NioFileReader"));
+    scheduler = Executors.newSingleThreadScheduledExecutor(
+      new DaemonThreadFactory("NioFileReaderScheduler"));
+
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        for (Registration registration : registrations.values()) {
+          registration.schedule();
+        }
+      }
+    }, pollIntervalMS, pollIntervalMS, TimeUnit.MILLISECONDS);
+
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        writeCheckPoints();
+      }
+    }, checkPointIntervalMS, checkPointIntervalMS, TimeUnit.MILLISECONDS);
+
+    try {
+      watchService = FileSystems.getDefault().newWatchService();
+      Thread watcherThread = new Thread(new FolderWatcher(),
+        "NioFileReaderWatcher");
+      watcherThread.setDaemon(true);
+      watcherThread.start();
+    } catch (IOException e) {
+      logger.warn("Couldn't create WatchService. Will rely on polling every "
+        + pollIntervalMS + " ms", e);
+    }
+    logger.info("Started NIO file reader pool. readerThreads=" + readerThreads
+      + ", pollIntervalMS=" + pollIntervalMS + ", checkPointIntervalMS="
+      + checkPointIntervalMS);
+  }
+
+  public static synchronized NioFileReaderPool getInstance() {
+    if (instance == null) {
+      instance = new NioFileReaderPool();
+    }
+    return instance;
+  }
+
+  public void register(InputNioFile input) {
+    Registration registration = new Registration(input);
+    registrations.put(input, registration);
+
+    File parent = new File(input.getFilePath()).getAbsoluteFile()
+      .getParentFile();
+    if (watchService != null && parent != null) {
+      Path folder = parent.toPath();
+      synchronized (watchedFolders) {
+        Set<InputNioFile> inputs = watchedFolders.get(folder);
+        if (inputs == null) {
+          try {
+            folder.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+          } catch (IOException e) {
+            logger.warn("Couldn't watch folder " + folder
+              + ". Will rely on polling. " + input.getShortDescription(), e);
+          }
+          inputs = new CopyOnWriteArraySet<InputNioFile>();
+          watchedFolders.put(folder, inputs);
+        }
+        inputs.add(input);
+      }
+    }
+    registration.schedule();
+  }
+
+  public void unregister(InputNioFile input) {
+    registrations.remove(input);
+    synchronized (watchedFolders) {
+      for (Set<InputNioFile> inputs : watchedFolders.values()) {
+        inputs.remove(input);
+      }
+    }
+    input.flushCheckPoint();
+  }
+
+  public void schedule(InputNioFile input) {
+    Registration registration = registrations.get(input);
+    if (registration != null) {
+      registration.schedule();
+    }
+  }
+
+  public int getRegisteredCount() {
+    return registrations.size();
+  }
+
+  void writeCheckPoints() {
+    for (InputNioFile input : registrations.keySet()) {
+      input.flushCheckPoint();
+    }
+  }
+
+  class FolderWatcher implements Runnable {
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          WatchKey key = watchService.take();
+          Path dir = (Path) key.watchable();
+          Set<InputNioFile> inputs = watchedFolders.get(dir);
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if (inputs == null || event.context() == null) {
+              continue;
+            }
+            String fileName = event.context().toString();
+            for (InputNioFile input : inputs) {
+              if (fileName.equals(input.getFileName())) {
+                schedule(input);
+              }
+            }
+          }
+          if (!key.reset()) {
+            logger.warn("Watch key is no longer valid for folder " + dir
+              + ". Will rely on polling for it.");
+            watchedFolders.remove(dir);
+          }
+        }
+      } catch (InterruptedException e) {
+        logger.info("Stop request for thread");
+      }
+    }
+  }
+
+  static class DaemonThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    DaemonThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
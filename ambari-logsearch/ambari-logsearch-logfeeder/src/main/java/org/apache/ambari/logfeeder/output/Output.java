@@ -71,6 +71,23 @@ public abstract class Output extends ConfigBlock {
     write(LogFeederUtil.getGson().toJson(jsonObj), inputMarker);
   }
 
+  /**
+   * Outputs which write the event as a JSON block return true. OutputMgr then
+   * serializes the event once for all of them and calls
+   * {@link #write(String, InputMarker)} instead.
+   */
+  public boolean isJsonOutput() {
+    return false;
+  }
+
+  /**
+   * Outputs which can't keep up return true, so the inputs stop reading
+   * until it returns false again, instead of blocking inside the filters.
+   */
+  public boolean isBackPressured() {
+    return false;
+  }
+
   boolean isClosed = false;
 
   /**
@@ -110,6 +110,11 @@ public class OutputFile extends Output {
     }
   }
 
+  @Override
+  public boolean isJsonOutput() {
+    return !"csv".equals(codec);
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -243,6 +243,11 @@ public class OutputKafka extends Output {
     return false;
   }
 
+  @Override
+  public boolean isJsonOutput() {
+    return true;
+  }
+
   @Override
   public String getShortDescription() {
     return "output:destination=kafka,topic=" + topic;
@@ -33,6 +33,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.ambari.logfeeder.LogFeederUtil;
+import org.apache.ambari.logfeeder.MetricCount;
 import org.apache.ambari.logfeeder.input.InputMarker;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Level;
@@ -54,6 +55,9 @@ public class OutputSolr extends Output {
   private static final int DEFAULT_NUMBER_OF_SHARDS = 1;
   private static final int DEFAULT_SPLIT_INTERVAL = 30;
   private static final int DEFAULT_NUMBER_OF_WORKERS = 1;
+  private static final int DEFAULT_MIN_BUFFER_SIZE = 100;
+  private static final int DEFAULT_TARGET_LATENCY_MS = 1000;
+  private static final int DEFAULT_BACK_PRESSURE_PERCENT = 90;
 
   private String collection;
   private String splitMode;
@@ -62,11 +66,20 @@ public class OutputSolr extends Output {
   private int maxIntervalMS;
   private int workers;
   private int maxBufferSize;
+  private int pauseBufferSize;
+  private int resumeBufferSize;
+  private volatile boolean isBackPressured = false;
   private boolean isComputeCurrentCollection = false;
   private int lastSlotByMin = -1;
 
   private BlockingQueue<OutputData> outgoingBuffer = null;
   private List<SolrWorkerThread> workerThreadList = new ArrayList<>();
+  private SolrBatchController batchController;
+
+  private MetricCount batchSizeMetric = new MetricCount();
+  private MetricCount latencyMetric = new MetricCount();
+  private MetricCount backlogMetric = new MetricCount();
+  private MetricCount backPressureMetric = new MetricCount();
 
   @Override
   public void init() throws Exception {
@@ -79,6 +92,13 @@ public class OutputSolr extends Output {
   private void initParams() {
     statMetric.metricsName = "output.solr.write_logs";
     writeBytesMetric.metricsName = "output.solr.write_bytes";
+    batchSizeMetric.metricsName = "output.solr.batch_size";
+    batchSizeMetric.isPointInTime = true;
+    latencyMetric.metricsName = "output.solr.latency_ms";
+    latencyMetric.isPointInTime = true;
+    backlogMetric.metricsName = "output.solr.backlog";
+    backlogMetric.isPointInTime = true;
+    backPressureMetric.metricsName = "output.solr.back_pressure";
 
     splitMode = getStringValue("splits_interval_mins", "none");
     if (!splitMode.equalsIgnoreCase("none")) {
@@ -95,6 +115,14 @@ public class OutputSolr extends Output {
       maxBufferSize = 1;
     }
 
+    // flush_size is the upper bound when the batch size is adaptive
+    boolean isAdaptive = getBooleanValue("adaptive_batching", true);
+    int minBufferSize = getIntValue("min_flush_size", DEFAULT_MIN_BUFFER_SIZE);
+    int targetLatencyMS = getIntValue("target_latency_ms", DEFAULT_TARGET_LATENCY_MS);
+    batchController = new SolrBatchController(isAdaptive, minBufferSize, maxBufferSize, workers, targetLatencyMS);
+    LOG.info(String.format("Config: adaptive_batching=%s, min_flush_size=%d, flush_size=%d, target_latency_ms=%d. "
+        + getShortDescription(), isAdaptive, minBufferSize, maxBufferSize, targetLatencyMS));
+
     LOG.info(String.format("Config: Number of workers=%d, splitMode=%s, splitInterval=%d, " + "numberOfShards=%d. "
         + getShortDescription(), workers, splitMode, splitInterval, numberOfShards));
   }
@@ -103,6 +131,11 @@ public class OutputSolr extends Output {
     int bufferSize = maxBufferSize * (workers + 3);
     LOG.info("Creating blocking queue with bufferSize=" + bufferSize);
     outgoingBuffer = new LinkedBlockingQueue<OutputData>(bufferSize);
+
+    // The inputs are paused above this size, and resumed once half of it is sent
+    int backPressurePercent = getIntValue("back_pressure_percent", DEFAULT_BACK_PRESSURE_PERCENT);
+    pauseBufferSize = Math.max(1, bufferSize * backPressurePercent / 100);
+    resumeBufferSize = pauseBufferSize / 2;
   }
 
   private void createSolrWorkers() throws Exception, MalformedURLException {
@@ -201,6 +234,26 @@ public class OutputSolr extends Output {
     }
   }
 
+  /**
+   * Asks the inputs to stop reading when the outgoing buffer is almost full,
+   * until it drained to half of that size.
+   */
+  @Override
+  public boolean isBackPressured() {
+    int size = outgoingBuffer.size();
+    if (isBackPressured) {
+      if (size <= resumeBufferSize) {
+        LOG.info("Outgoing buffer is down to " + size + ". Resuming inputs. " + getShortDescription());
+        isBackPressured = false;
+      }
+    } else if (size >= pauseBufferSize) {
+      LOG.info("Outgoing buffer has " + size + " documents. Pausing inputs. " + getShortDescription());
+      isBackPressured = true;
+      backPressureMetric.count++;
+    }
+    return isBackPressured;
+  }
+
   /**
    * Flush document buffer
    */
@@ -240,6 +293,10 @@ public class OutputSolr extends Output {
     super.setDrain(drain);
   }
 
+  SolrBatchController getBatchController() {
+    return batchController;
+  }
+
   @Override
   public long getPendingCount() {
     long pendingCount = 0;
@@ -263,6 +320,33 @@ public class OutputSolr extends Output {
     return "output:destination=solr,collection=" + collection;
   }
 
+  private void updatePointInTimeMetrics() {
+    batchSizeMetric.count = batchController.getBatchSize();
+    latencyMetric.count = batchController.getLastLatencyMS();
+    backlogMetric.count = outgoingBuffer.size() + getPendingCount();
+  }
+
+  @Override
+  public void addMetricsContainers(List<MetricCount> metricsList) {
+    super.addMetricsContainers(metricsList);
+    updatePointInTimeMetrics();
+    metricsList.add(batchSizeMetric);
+    metricsList.add(latencyMetric);
+    metricsList.add(backlogMetric);
+    metricsList.add(backPressureMetric);
+  }
+
+  @Override
+  public synchronized void logStat() {
+    super.logStat();
+    updatePointInTimeMetrics();
+    String postFix = ", key=" + getShortDescription();
+    LogFeederUtil.logCountForMetric(batchSizeMetric, "Stat: Batch Size", postFix);
+    LogFeederUtil.logCountForMetric(latencyMetric, "Stat: Latency ms", postFix);
+    LogFeederUtil.logCountForMetric(backlogMetric, "Stat: Backlog", postFix);
+    logStatForMetric(backPressureMetric, "Stat: Back Pressure");
+  }
+
   class SolrWorkerThread extends Thread {
     private static final String ROUTER_FIELD = "_router_field_";
     private static final int RETRY_INTERVAL = 30;
@@ -298,7 +382,7 @@ public class OutputSolr extends Output {
           }
 
           if (localBuffer.size() > 0 && ((outputData == null && isDrain())
-              || (nextDispatchDuration <= 0 || localBuffer.size() >= maxBufferSize))) {
+              || (nextDispatchDuration <= 0 || localBuffer.size() >= batchController.getBatchSize()))) {
             try {
               if (isComputeCurrentCollection) {
                 // Compute the current router value
@@ -309,6 +393,13 @@ public class OutputSolr extends Output {
 
               resetLocalBuffer();
               lastDispatchTime = System.currentTimeMillis();
+            } catch (InterruptedException e) {
+              // The batch was not sent and its input markers are not checked
+              // in, so its lines are read again from the checkpoint
+              Thread.currentThread().interrupt();
+              LOG.info("Interrupted before sending " + localBuffer.size() + " documents. output="
+                  + getShortDescription());
+              break;
             } catch (IOException ioException) {
               // Transient error, lets block till it is available
               waitForSolr();
@@ -384,8 +475,17 @@ public class OutputSolr extends Output {
       }
     }
 
-    private void addToSolr(OutputData outputData) throws SolrServerException, IOException {
-      UpdateResponse response = solrClient.add(localBuffer);
+    private void addToSolr(OutputData outputData) throws SolrServerException, IOException, InterruptedException {
+      batchController.acquire();
+      long startMS = System.currentTimeMillis();
+      boolean success = false;
+      UpdateResponse response;
+      try {
+        response = solrClient.add(localBuffer);
+        success = response.getStatus() == 0;
+      } finally {
+        batchController.release(System.currentTimeMillis() - startMS, success);
+      }
       if (response.getStatus() != 0) {
         String logMessageKey = this.getClass().getSimpleName() + "_SOLR_UPDATE_ERROR";
         LogFeederUtil.logErrorMessageByInterval(logMessageKey,
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ambari.logfeeder.output;
+
+/**
+ * Sizes the Solr update batches and limits the number of concurrent update
+ * requests of the {@link OutputSolr} workers from the measured latency.
+ * While requests finish within the target latency the batch size grows
+ * step by step up to flush_size, and once it is there one more worker may
+ * send at a time. A slow or failed request halves both. When not adaptive
+ * the batch size is always flush_size and the workers are not limited.
+ */
+class SolrBatchController {
+  private final boolean adaptive;
+  private final int minBatchSize;
+  private final int maxBatchSize;
+  private final int maxInFlight;
+  private final long targetLatencyMS;
+  private final int step;
+
+  private int batchSize;
+  private int inFlightLimit;
+  private int inFlight = 0;
+  private long lastLatencyMS = 0;
+
+  SolrBatchController(boolean adaptive, int minBatchSize, int maxBatchSize,
+                      int maxInFlight, long targetLatencyMS) {
+    this.adaptive = adaptive;
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    this.minBatchSize = Math.max(1, Math.min(minBatchSize, this.maxBatchSize));
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.targetLatencyMS = targetLatencyMS;
+    this.step = Math.max(1, this.minBatchSize);
+    batchSize = adaptive ? this.minBatchSize : this.maxBatchSize;
+    inFlightLimit = this.maxInFlight;
+  }
+
+  synchronized int getBatchSize() {
+    return batchSize;
+  }
+
+  synchronized int getInFlightLimit() {
+    return inFlightLimit;
+  }
+
+  synchronized long getLastLatencyMS() {
+    return lastLatencyMS;
+  }
+
+  /**
+   * Waits until this worker is allowed to send a request
+   */
+  synchronized void acquire() throws InterruptedException {
+    while (inFlight >= inFlightLimit) {
+      wait();
+    }
+    inFlight++;
+  }
+
+  /**
+   * Records the outcome of a request started with {@link #acquire()}
+   */
+  synchronized void release(long latencyMS, boolean success) {
+    inFlight--;
+    lastLatencyMS = latencyMS;
+    if (adaptive) {
+      if (!success || latencyMS > targetLatencyMS) {
+        batchSize = Math.max(minBatchSize, batchSize / 2);
+        inFlightLimit = Math.max(1, inFlightLimit / 2);
+      } else if (batchSize < maxBatchSize) {
+        batchSize = Math.min(maxBatchSize, batchSize + step);
+      } else if (inFlightLimit < maxInFlight) {
+        inFlightLimit++;
+      }
+    }
+    notifyAll();
+  }
+}
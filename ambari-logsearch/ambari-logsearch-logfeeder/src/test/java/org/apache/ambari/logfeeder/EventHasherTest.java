@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.logfeeder;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class EventHasherTest {
+
+  private Map<String, Object> event(Map<String, Object> jsonObj) {
+    jsonObj.put("host", "c6401.ambari.apache.org");
+    jsonObj.put("type", "hbase_master");
+    jsonObj.put("logtime", new Date(1460130923548L));
+    jsonObj.put("level", "INFO");
+    jsonObj.put("log_message", "Registered Active Master=c6401 é中");
+    return jsonObj;
+  }
+
+  @Test
+  public void testHash_independentOfFieldOrder() {
+    Map<String, Object> first = event(new LinkedHashMap<String, Object>());
+    Map<String, Object> second = new LinkedHashMap<String, Object>();
+    String[] keys = first.keySet().toArray(new String[0]);
+    for (int i = keys.length - 1; i >= 0; i--) {
+      second.put(keys[i], first.get(keys[i]));
+    }
+    assertEquals(EventHasher.hash(first), EventHasher.hash(second));
+  }
+
+  @Test
+  public void testHash_ignoresNullValues() {
+    Map<String, Object> withNull = event(new HashMap<String, Object>());
+    withNull.put("thread_name", null);
+    assertEquals(EventHasher.hash(event(new HashMap<String, Object>())), EventHasher.hash(withNull));
+  }
+
+  @Test
+  public void testHash_differentEvents() {
+    Map<String, Object> first = event(new HashMap<String, Object>());
+    Map<String, Object> second = event(new HashMap<String, Object>());
+    second.put("level", "WARN");
+    assertFalse(EventHasher.hash(first) == EventHasher.hash(second));
+
+    // A value must not be able to shift into the next field
+    Map<String, Object> third = event(new HashMap<String, Object>());
+    third.put("level", "INFOlog_message");
+    third.remove("log_message");
+    Map<String, Object> fourth = event(new HashMap<String, Object>());
+    fourth.put("log_message", "");
+    fourth.put("level", "INFO");
+    assertFalse(EventHasher.hash(third) == EventHasher.hash(fourth));
+  }
+}
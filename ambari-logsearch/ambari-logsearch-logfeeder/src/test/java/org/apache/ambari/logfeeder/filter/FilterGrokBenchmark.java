@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.logfeeder.filter;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.logfeeder.LogFeederUtil;
+import org.apache.ambari.logfeeder.OutputMgr;
+import org.apache.ambari.logfeeder.input.InputFile;
+import org.apache.ambari.logfeeder.input.InputMarker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Single threaded throughput of the grok and key value filters over a sample
+ * HBase master log, so the score is lines per second per core. Not run by
+ * the unit tests, after mvn test-compile run main() or
+ * org.openjdk.jmh.Main FilterGrokBenchmark with the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class FilterGrokBenchmark {
+  private static final String SAMPLE_LOG = "samples/logs/hbase-master.log";
+
+  private static final String MESSAGE_PATTERN = "(?m)^%{TIMESTAMP_ISO8601:logtime}%{SPACE}%{LOGLEVEL:level}%{SPACE}\\[%{DATA:thread_name}\\]%{SPACE}%{JAVACLASS:logger_name}:%{SPACE}%{GREEDYDATA:log_message}";
+  private static final String MULTILINE_PATTERN = "^(%{TIMESTAMP_ISO8601:logtime})";
+
+  private String[] lines;
+  private String[] keyValueLines;
+  private int index = 0;
+
+  private FilterGrok filterGrok;
+  private FilterKeyValue filterKeyValue;
+  private BlackholeOutputMgr outputMgr;
+
+  private Type jsonType = new TypeToken<Map<String, String>>() {
+  }.getType();
+
+  /**
+   * Hands the events to the JMH blackhole instead of the outputs
+   */
+  static class BlackholeOutputMgr extends OutputMgr {
+    Blackhole blackhole;
+
+    @Override
+    public void write(Map<String, Object> jsonObj, InputMarker inputMarker) {
+      blackhole.consume(jsonObj);
+    }
+  }
+
+  @Setup
+  public void setUp() throws Exception {
+    List<String> lineList = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+      getClass().getClassLoader().getResourceAsStream(SAMPLE_LOG), "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineList.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+    lines = lineList.toArray(new String[lineList.size()]);
+
+    keyValueLines = new String[lines.length];
+    for (int i = 0; i < lines.length; i++) {
+      keyValueLines[i] = "cluster=cl1\tline=" + i + "\thost=c6401.ambari.apache.org"
+        + "\tlevel=INFO\tlength=" + lines[i].length();
+    }
+
+    outputMgr = new BlackholeOutputMgr();
+
+    Map<String, Object> config = new HashMap<String, Object>();
+    config.put("message_pattern", MESSAGE_PATTERN);
+    config.put("multiline_pattern", MULTILINE_PATTERN);
+    filterGrok = new FilterGrok();
+    filterGrok.loadConfig(config);
+    filterGrok.setOutputMgr(outputMgr);
+    filterGrok.setInput(new InputFile());
+    filterGrok.init();
+
+    config = new HashMap<String, Object>();
+    config.put("source_field", "log_message");
+    filterKeyValue = new FilterKeyValue();
+    filterKeyValue.loadConfig(config);
+    filterKeyValue.setOutputMgr(outputMgr);
+    filterKeyValue.setInput(new InputFile());
+    filterKeyValue.init();
+  }
+
+  private int nextIndex() {
+    int i = index;
+    index = i + 1 == lines.length ? 0 : i + 1;
+    return i;
+  }
+
+  @Benchmark
+  public void grokFilter(Blackhole blackhole) {
+    outputMgr.blackhole = blackhole;
+    filterGrok.apply(lines[nextIndex()], new InputMarker());
+  }
+
+  /**
+   * The previous per line path: java-grok capture to JSON, then Gson back to
+   * a map. Kept as the baseline for grokFilter.
+   */
+  @Benchmark
+  public Map<String, String> grokCaptureBaseline() {
+    String jsonStr = filterGrok.grokParse(lines[nextIndex()]);
+    return LogFeederUtil.getGson().fromJson(jsonStr, jsonType);
+  }
+
+  @Benchmark
+  public void keyValueFilter(Blackhole blackhole) {
+    outputMgr.blackhole = blackhole;
+    Map<String, Object> jsonObj = new HashMap<String, Object>();
+    jsonObj.put("log_message", keyValueLines[nextIndex()]);
+    filterKeyValue.apply(jsonObj, new InputMarker());
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new OptionsBuilder()
+      .include(FilterGrokBenchmark.class.getSimpleName())
+      .build();
+    new Runner(options).run();
+  }
+}
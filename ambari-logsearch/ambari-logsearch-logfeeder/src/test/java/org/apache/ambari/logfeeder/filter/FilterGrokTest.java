@@ -21,6 +21,7 @@ package org.apache.ambari.logfeeder.filter;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.ambari.logfeeder.LogFeederUtil;
 import org.apache.ambari.logfeeder.OutputMgr;
 import org.apache.ambari.logfeeder.input.Input;
 import org.apache.ambari.logfeeder.input.InputMarker;
@@ -31,6 +32,8 @@ import org.easymock.EasyMock;
 import org.junit.After;
 import org.junit.Test;
 
+import com.google.gson.reflect.TypeToken;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -150,6 +153,35 @@ public class FilterGrokTest {
     assertFalse("Something was captured", capture.hasCaptured());
   }
 
+  @Test
+  public void testFilterGrok_sameFieldsAsGrokCapture() throws Exception {
+    LOG.info("testFilterGrok_sameFieldsAsGrokCapture()");
+
+    Map<String, Object> config = new HashMap<String, Object>();
+    config.put("message_pattern",
+        "(?m)^%{TIMESTAMP_ISO8601:logtime}%{SPACE}%{LOGLEVEL:level}%{SPACE}\\[%{DATA:thread_name}\\]%{SPACE}%{JAVACLASS:logger_name}:%{SPACE}%{GREEDYDATA:log_message}");
+    init(config);
+
+    mockOutputMgr.write(EasyMock.capture(capture), EasyMock.anyObject(InputMarker.class));
+    EasyMock.expectLastCall().times(2);
+    EasyMock.replay(mockOutputMgr);
+
+    String[] lines = {
+        "2016-04-08 15:55:24,233 WARN  [master/c6401:16000] util.NativeCodeLoader: Unable to load native-hadoop library",
+        "2016-04-08 15:55:25,107 INFO  [main] master.HMaster: 'quoted message'"};
+    for (String line : lines) {
+      filterGrok.apply(line, new InputMarker());
+      Map<String, String> expected = LogFeederUtil.getGson().fromJson(filterGrok.grokParse(line),
+          new TypeToken<Map<String, String>>() {}.getType());
+      Map<String, Object> jsonParams = capture.getValue();
+      for (String field : new String[] {"logtime", "level", "thread_name", "logger_name", "log_message"}) {
+        assertEquals("Different from grok capture: " + field, expected.get(field), jsonParams.get(field));
+      }
+    }
+    EasyMock.verify(mockOutputMgr);
+    assertEquals("Quotes not removed", "quoted message", capture.getValue().get("log_message"));
+  }
+
   @After
   public void cleanUp() {
     capture.reset();
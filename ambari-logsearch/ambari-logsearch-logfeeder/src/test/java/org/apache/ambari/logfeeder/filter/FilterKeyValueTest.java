@@ -22,6 +22,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.ambari.logfeeder.OutputMgr;
+import org.apache.ambari.logfeeder.input.Input;
 import org.apache.ambari.logfeeder.input.InputMarker;
 import org.apache.log4j.Logger;
 import org.easymock.Capture;
@@ -76,6 +77,33 @@ public class FilterKeyValueTest {
     assertTrue("jsonParams are not empty!", jsonParams.isEmpty());
   }
 
+  @Test
+  public void testFilterKeyValue_emptyAndUnbalancedPairs() throws Exception {
+    LOG.info("testFilterKeyValue_emptyAndUnbalancedPairs()");
+
+    Map<String, Object> config = new HashMap<String, Object>();
+    config.put("source_field", "keyValueField");
+    config.put("field_split", "&");
+    init(config);
+    Input input = EasyMock.niceMock(Input.class);
+    EasyMock.replay(input);
+    filterKeyValue.setInput(input);
+
+    mockOutputMgr.write(EasyMock.capture(capture), EasyMock.anyObject(InputMarker.class));
+    EasyMock.expectLastCall();
+    EasyMock.replay(mockOutputMgr);
+
+    filterKeyValue.apply("{ keyValueField: '&&name1==value1&name2&name3=value3=extra&' }", new InputMarker());
+
+    EasyMock.verify(mockOutputMgr);
+    Map<String, Object> jsonParams = capture.getValue();
+
+    jsonParams.remove("keyValueField");
+    assertEquals("Incorrect extraction: name1", "value1", jsonParams.remove("name1"));
+    assertEquals("Incorrect extraction: name3", "value3", jsonParams.remove("name3"));
+    assertTrue("jsonParams are not empty!", jsonParams.isEmpty());
+  }
+
   @Test
   public void testFilterKeyValue_missingSourceField() throws Exception {
     LOG.info("testFilterKeyValue_missingSourceField()");
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ambari.logfeeder.input;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ambari.logfeeder.InputMgr;
+import org.apache.ambari.logfeeder.filter.Filter;
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InputNioFileTest {
+  private static final Logger LOG = Logger.getLogger(InputNioFileTest.class);
+
+  private static final String TEST_DIR_NAME = "/logfeeder_nio_test_dir/";
+  private static final File TEST_DIR = new File(FileUtils.getTempDirectoryPath() + TEST_DIR_NAME);
+
+  private static final String TEST_LOG_FILE_CONTENT = "2016-03-10 14:09:38,278 INFO  datanode.DataNode (DataNode.java:<init>(418)) - File descriptor passing is enabled.\n"
+      + "2016-03-10 14:09:38,278 INFO  datanode.DataNode (DataNode.java:<init>(429)) - Configured hostname is c6401.ambari.apache.org\r\n"
+      + "2016-03-10 14:09:38,294 INFO  datanode.DataNode (DataNode.java:startDataNode(1127)) - Starting DataNode with maxLockedMemory = 0\n";
+
+  private InputNioFile inputFile;
+  private List<String> rows = new ArrayList<>();
+  private InputMarker lastInputMarker;
+
+  @BeforeClass
+  public static void initDir() throws IOException {
+    if (!TEST_DIR.exists()) {
+      TEST_DIR.mkdir();
+    }
+    FileUtils.cleanDirectory(TEST_DIR);
+  }
+
+  private void init(File file, File checkPointDir) throws Exception {
+    Map<String, Object> config = new HashMap<String, Object>();
+    config.put("source", "file_nio");
+    config.put("tail", "true");
+    config.put("type", "hdfs_datanode");
+    config.put("rowtype", "service");
+    config.put("path", file.getAbsolutePath());
+    // Small buffer so that lines span several reads
+    config.put("read_buffer_size", "16");
+
+    Filter capture = new Filter() {
+      @Override
+      public void init() {
+      }
+
+      @Override
+      public void apply(String inputStr, InputMarker inputMarker) {
+        rows.add(inputStr);
+        lastInputMarker = inputMarker;
+      }
+    };
+
+    InputMgr inputMgr = EasyMock.createNiceMock(InputMgr.class);
+    EasyMock.expect(inputMgr.getCheckPointFolderFile()).andReturn(checkPointDir).anyTimes();
+    EasyMock.replay(inputMgr);
+
+    inputFile = new InputNioFile();
+    inputFile.loadConfig(config);
+    inputFile.setFirstFilter(capture);
+    inputFile.setInputMgr(inputMgr);
+    inputFile.init();
+    assertTrue(inputFile.isReady());
+    inputFile.openFile(file);
+  }
+
+  @Test
+  public void testInputNioFile_readAndAppend() throws Exception {
+    LOG.info("testInputNioFile_readAndAppend()");
+
+    File testFile = createFile("append.log", TEST_LOG_FILE_CONTENT);
+    init(testFile, createCheckpointDir("append_checkpoint"));
+
+    inputFile.readAvailable();
+    assertEquals("Amount of the rows is incorrect", 3, rows.size());
+    assertEquals("Carriage return should be removed",
+        "2016-03-10 14:09:38,278 INFO  datanode.DataNode (DataNode.java:<init>(429)) - Configured hostname is c6401.ambari.apache.org",
+        rows.get(1));
+
+    FileUtils.writeStringToFile(testFile, "partial", true);
+    inputFile.readAvailable();
+    assertEquals("Partial line should not be sent", 3, rows.size());
+
+    FileUtils.writeStringToFile(testFile, " line\n", true);
+    inputFile.readAvailable();
+    assertEquals("Amount of the rows is incorrect", 4, rows.size());
+    assertEquals("partial line", rows.get(3));
+    assertEquals(4, lastInputMarker.lineNumber);
+  }
+
+  @Test
+  public void testInputNioFile_resumeFromCheckPoint() throws Exception {
+    LOG.info("testInputNioFile_resumeFromCheckPoint()");
+
+    File checkPointDir = createCheckpointDir("resume_checkpoint");
+    File testFile = createFile("resume.log", TEST_LOG_FILE_CONTENT);
+    init(testFile, checkPointDir);
+    inputFile.readAvailable();
+    inputFile.checkIn(lastInputMarker);
+    inputFile.flushCheckPoint();
+
+    FileUtils.writeStringToFile(testFile, "new line\n", true);
+    rows.clear();
+    init(testFile, checkPointDir);
+    inputFile.readAvailable();
+
+    assertEquals("Only the new line should be sent", 1, rows.size());
+    assertEquals("new line", rows.get(0));
+  }
+
+  @Test
+  public void testInputNioFile_rollOver() throws Exception {
+    LOG.info("testInputNioFile_rollOver()");
+
+    File testFile = createFile("rollover.log", TEST_LOG_FILE_CONTENT);
+    init(testFile, createCheckpointDir("rollover_checkpoint"));
+    inputFile.readAvailable();
+    FileUtils.writeStringToFile(testFile, "last line without new line", true);
+
+    assertTrue(testFile.renameTo(new File(TEST_DIR, "rollover.log.1")));
+    createFile("rollover.log", "first line of new file\n");
+    inputFile.readAvailable();
+    inputFile.readAvailable();
+
+    assertEquals("Amount of the rows is incorrect", 5, rows.size());
+    assertEquals("last line without new line", rows.get(3));
+    assertEquals("first line of new file", rows.get(4));
+    assertEquals(1, lastInputMarker.lineNumber);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    rows.clear();
+  }
+
+  @AfterClass
+  public static void cleanUp() throws Exception {
+    FileUtils.deleteDirectory(TEST_DIR);
+  }
+
+  private File createFile(String filename, String content) throws IOException {
+    File newFile = new File(TEST_DIR, filename);
+    FileUtils.writeStringToFile(newFile, content);
+    return newFile;
+  }
+
+  private File createCheckpointDir(String dirname) {
+    File newDir = new File(TEST_DIR, dirname);
+    if (!newDir.exists()) {
+      newDir.mkdir();
+    }
+    return newDir;
+  }
+}
@@ -25,6 +25,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.ambari.logfeeder.input.Input;
 import org.apache.ambari.logfeeder.input.InputMarker;
@@ -42,7 +43,9 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class OutputSolrTest {
   private static final Logger LOG = Logger.getLogger(OutputSolrTest.class);
@@ -158,6 +161,99 @@ public class OutputSolrTest {
     outputSolr.init();
   }
 
+  @Test
+  public void testOutputToSolr_backPressure() throws Exception {
+    LOG.info("testOutputToSolr_backPressure()");
+
+    final CountDownLatch solrAvailable = new CountDownLatch(1);
+    OutputSolr slowOutputSolr = new OutputSolr() {
+      @Override
+      SolrClient getSolrClient(String solrUrl, String zkHosts, int count) throws Exception, MalformedURLException {
+        return new CloudSolrClient(null) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          public UpdateResponse add(Collection<SolrInputDocument> docs) {
+            try {
+              solrAvailable.await();
+            } catch (InterruptedException e) {
+              // ignore
+            }
+            UpdateResponse response = new UpdateResponse();
+            response.setResponse(new NamedList<Object>());
+            return response;
+          }
+        };
+      }
+    };
+
+    Map<String, Object> config = new HashMap<String, Object>();
+    config.put("url", "some url");
+    config.put("flush_size", "1");
+    config.put("idle_flush_time_ms", "10");
+    slowOutputSolr.loadConfig(config);
+    slowOutputSolr.init();
+    assertFalse(slowOutputSolr.isBackPressured());
+
+    // One document is stuck in the worker, the buffer holds 4
+    for (int i = 0; i < 5; i++) {
+      Map<String, Object> jsonObj = new HashMap<>();
+      jsonObj.put("id", i);
+      InputMarker inputMarker = new InputMarker();
+      inputMarker.input = EasyMock.createNiceMock(Input.class);
+      slowOutputSolr.write(jsonObj, inputMarker);
+    }
+    assertTrue("Inputs should be paused", slowOutputSolr.isBackPressured());
+
+    solrAvailable.countDown();
+    for (int i = 0; i < 50 && slowOutputSolr.isBackPressured(); i++) {
+      Thread.sleep(100);
+    }
+    assertFalse("Inputs should be resumed", slowOutputSolr.isBackPressured());
+    slowOutputSolr.close();
+  }
+
+  @Test
+  public void testOutputToSolr_interruptWhileWaitingToSend() throws Exception {
+    LOG.info("testOutputToSolr_interruptWhileWaitingToSend()");
+
+    Map<String, Object> config = new HashMap<String, Object>();
+    config.put("url", "some url");
+    config.put("workers", "1");
+    config.put("flush_size", "1");
+    config.put("idle_flush_time_ms", "10");
+    outputSolr.loadConfig(config);
+    outputSolr.init();
+
+    // Take the only send slot, so the worker waits for it
+    outputSolr.getBatchController().acquire();
+    Map<String, Object> jsonObj = new HashMap<>();
+    jsonObj.put("id", 1);
+    InputMarker inputMarker = new InputMarker();
+    inputMarker.input = EasyMock.createNiceMock(Input.class);
+    outputSolr.write(jsonObj, inputMarker);
+    for (int i = 0; i < 50 && outputSolr.getPendingCount() == 0; i++) {
+      Thread.sleep(100);
+    }
+    assertEquals(1, outputSolr.getPendingCount());
+
+    Thread worker = null;
+    for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+      for (StackTraceElement element : entry.getValue()) {
+        if (element.getClassName().equals(SolrBatchController.class.getName())
+            && element.getMethodName().equals("acquire")) {
+          worker = entry.getKey();
+        }
+      }
+    }
+    assertNotNull(worker);
+    worker.interrupt();
+    worker.join(5000);
+
+    assertFalse("Worker should exit", worker.isAlive());
+    assertTrue(receivedDocs.isEmpty());
+  }
+
   @After
   public void cleanUp() {
     receivedDocs.clear();
@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.logfeeder.output;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SolrBatchControllerTest {
+
+  @Test
+  public void testBatchSize_growsWhileFast() throws Exception {
+    SolrBatchController controller = new SolrBatchController(true, 100, 350, 2, 1000);
+    assertEquals(100, controller.getBatchSize());
+
+    sendRequest(controller, 10, true);
+    assertEquals(200, controller.getBatchSize());
+    sendRequest(controller, 10, true);
+    sendRequest(controller, 10, true);
+    assertEquals("Bounded by flush_size", 350, controller.getBatchSize());
+    assertEquals(2, controller.getInFlightLimit());
+  }
+
+  @Test
+  public void testBatchSize_shrinksWhenSlowOrFailing() throws Exception {
+    SolrBatchController controller = new SolrBatchController(true, 100, 1000, 4, 1000);
+    for (int i = 0; i < 20; i++) {
+      sendRequest(controller, 10, true);
+    }
+    assertEquals(1000, controller.getBatchSize());
+
+    sendRequest(controller, 5000, true);
+    assertEquals(500, controller.getBatchSize());
+    assertEquals(2, controller.getInFlightLimit());
+
+    sendRequest(controller, 10, false);
+    assertEquals(250, controller.getBatchSize());
+    assertEquals(1, controller.getInFlightLimit());
+
+    for (int i = 0; i < 5; i++) {
+      sendRequest(controller, 10, false);
+    }
+    assertEquals("Bounded by min_flush_size", 100, controller.getBatchSize());
+    assertEquals(1, controller.getInFlightLimit());
+    assertEquals(10, controller.getLastLatencyMS());
+  }
+
+  @Test
+  public void testNotAdaptive() throws Exception {
+    SolrBatchController controller = new SolrBatchController(false, 100, 5000, 3, 1000);
+    assertEquals(5000, controller.getBatchSize());
+    sendRequest(controller, 5000, false);
+    assertEquals(5000, controller.getBatchSize());
+    assertEquals(3, controller.getInFlightLimit());
+  }
+
+  private void sendRequest(SolrBatchController controller, long latencyMS, boolean success) throws Exception {
+    controller.acquire();
+    controller.release(latencyMS, success);
+  }
+}
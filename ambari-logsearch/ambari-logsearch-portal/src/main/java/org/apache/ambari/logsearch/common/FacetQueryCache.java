@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ambari.logsearch.common;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.ambari.logsearch.util.PropertiesUtil;
+import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded cache for the dashboard facet, pivot and histogram queries.
+ * Entries are keyed by the query name, the parameters of the Solr query that
+ * is sent and the current time bucket, so a bucket rollover naturally expires
+ * them. Concurrent requests for the same key share a single Solr round trip.
+ */
+@Component
+public class FacetQueryCache {
+  private static final Logger logger = Logger.getLogger(FacetQueryCache.class);
+
+  private static final String PROP_ENABLE = "logsearch.facet.cache.enable";
+  private static final String PROP_MAX_ENTRIES = "logsearch.facet.cache.max_entries";
+  private static final String PROP_BUCKET_SECONDS = "logsearch.facet.cache.bucket_seconds";
+  private static final String PROP_STATS_INTERVAL_SECONDS = "logsearch.facet.cache.stats_interval_seconds";
+
+  private boolean enabled = true;
+  private int maxEntries = 500;
+  private long bucketMS = 30 * 1000;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  private Map<String, Object> cache;
+  private final ConcurrentHashMap<String, FutureTask<Object>> inFlight =
+    new ConcurrentHashMap<String, FutureTask<Object>>();
+
+  private Timer statsTimer = null;
+
+  public FacetQueryCache() {
+  }
+
+  FacetQueryCache(int maxEntries, long bucketMS) {
+    this.maxEntries = maxEntries;
+    this.bucketMS = bucketMS;
+    createCache();
+  }
+
+  @PostConstruct
+  public void init() {
+    enabled = PropertiesUtil.getBooleanProperty(PROP_ENABLE, enabled);
+    maxEntries = PropertiesUtil.getIntProperty(PROP_MAX_ENTRIES, maxEntries);
+    bucketMS = PropertiesUtil.getLongProperty(PROP_BUCKET_SECONDS,
+      bucketMS / 1000) * 1000;
+    createCache();
+
+    long statsIntervalMS = PropertiesUtil.getLongProperty(
+      PROP_STATS_INTERVAL_SECONDS, 300) * 1000;
+    if (enabled && statsIntervalMS > 0) {
+      statsTimer = new Timer("facet_query_cache_stats", true);
+      statsTimer.scheduleAtFixedRate(new TimerTask() {
+        @Override
+        public void run() {
+          logger.info(getStats());
+        }
+      }, statsIntervalMS, statsIntervalMS);
+    }
+    logger.info("Facet query cache enabled=" + enabled + ", maxEntries="
+      + maxEntries + ", bucketMS=" + bucketMS);
+  }
+
+  private void createCache() {
+    cache = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+        if (size() > maxEntries) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  @PreDestroy
+  public void close() {
+    if (statsTimer != null) {
+      statsTimer.cancel();
+    }
+  }
+
+  /**
+   * Returns the cached result for the given Solr query, loading it at most
+   * once across concurrent callers. The query must be fully built, as its
+   * parameters are the key. Failures are not cached.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(String queryName, SolrQuery solrQuery, Callable<T> loader) {
+    if (!enabled) {
+      return call(loader);
+    }
+    String key = buildKey(queryName, solrQuery);
+    synchronized (cache) {
+      Object value = cache.get(key);
+      if (value != null) {
+        hits.incrementAndGet();
+        return (T) value;
+      }
+    }
+
+    FutureTask<Object> task = new FutureTask<Object>((Callable<Object>) loader);
+    FutureTask<Object> existing = inFlight.putIfAbsent(key, task);
+    if (existing != null) {
+      coalesced.incrementAndGet();
+      return (T) waitFor(existing);
+    }
+
+    misses.incrementAndGet();
+    try {
+      task.run();
+      Object value = waitFor(task);
+      if (value != null) {
+        synchronized (cache) {
+          cache.put(key, value);
+        }
+      }
+      return (T) value;
+    } finally {
+      inFlight.remove(key, task);
+    }
+  }
+
+  public void invalidateAll() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public double getHitRatio() {
+    long requests = hits.get() + misses.get() + coalesced.get();
+    return requests == 0 ? 0 : (double) (hits.get() + coalesced.get()) / requests;
+  }
+
+  public String getStats() {
+    int size;
+    synchronized (cache) {
+      size = cache.size();
+    }
+    return "Facet query cache: size=" + size + ", hits=" + hits.get()
+      + ", misses=" + misses.get() + ", coalesced=" + coalesced.get()
+      + ", evictions=" + evictions.get() + ", hitRatio="
+      + String.format("%.3f", getHitRatio());
+  }
+
+  /**
+   * Builds the key from the parameters sent to Solr. Parameter names and the
+   * values of multi-valued parameters like fq are sorted, so the order they
+   * were added in does not matter. Relative time expressions like NOW are
+   * resolved by the time bucket suffix.
+   */
+  String buildKey(String queryName, SolrQuery solrQuery) {
+    Map<String, String> params = new TreeMap<String, String>();
+    Iterator<String> names = solrQuery.getParameterNamesIterator();
+    while (names.hasNext()) {
+      String name = names.next();
+      String[] values = solrQuery.getParams(name);
+      if (values != null) {
+        values = values.clone();
+        Arrays.sort(values);
+        params.put(name, Arrays.toString(values));
+      }
+    }
+    return queryName + '|' + params + '|' + currentTimeMillis() / bucketMS;
+  }
+
+  long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private Object waitFor(FutureTask<Object> task) {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private <T> T call(Callable<T> loader) {
+    try {
+      return loader.call();
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
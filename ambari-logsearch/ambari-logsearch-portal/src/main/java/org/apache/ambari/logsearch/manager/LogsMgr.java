@@ -30,12 +30,14 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.Response;
 
+import org.apache.ambari.logsearch.common.FacetQueryCache;
 import org.apache.ambari.logsearch.common.LogSearchConstants;
 import org.apache.ambari.logsearch.common.MessageEnums;
 import org.apache.ambari.logsearch.common.SearchCriteria;
@@ -101,6 +103,16 @@ public class LogsMgr extends MgrBase {
   @Autowired
   GraphDataGenerator graphDataGenerator;
 
+  @Autowired
+  FacetQueryCache facetQueryCache;
+
+  private static final String[] DASHBOARD_COUNT_FIELDS = {
+    LogSearchConstants.SOLR_LEVEL, LogSearchConstants.SOLR_COMPONENT,
+    LogSearchConstants.SOLR_HOST };
+
+  private static final String TREE_FIRST_HIERARCHY = "host,type,level";
+  private static final String TREE_SECOND_HIERARCHY = "host,level";
+
 
   public String searchLogs(SearchCriteria searchCriteria) {
     String keyword = (String) searchCriteria.getParamValue("keyword");
@@ -240,36 +252,54 @@ public class LogsMgr extends MgrBase {
   }
 
   public VCountList getFieldCount(SearchCriteria searchCriteria, String field){
-    VCountList collection = new VCountList();
-    List<VCount> vCounts = new ArrayList<VCount>();
+    if (field == null) {
+      return new VCountList();
+    }
+    return getFieldCounts(searchCriteria, field).get(field);
+  }
+
+  /**
+   * Runs one facet request for all given fields and returns a count list per
+   * field. Fields missing from the response map to an empty count list.
+   */
+  public Map<String, VCountList> getFieldCounts(SearchCriteria searchCriteria,
+                                                String... fields) {
+    return loadFieldCounts(buildFieldCountQuery(fields), fields);
+  }
+
+  private SolrQuery buildFieldCountQuery(String... fields) {
     SolrQuery solrQuery = new SolrQuery();
     queryGenerator.setMainQuery(solrQuery, null);
-    if(field == null){
-      return collection;
+    queryGenerator.setFacetFields(solrQuery, fields);
+    return solrQuery;
+  }
+
+  private Map<String, VCountList> loadFieldCounts(SolrQuery solrQuery,
+                                                  String... fields) {
+    Map<String, VCountList> collections = new HashMap<String, VCountList>();
+    for (String field : fields) {
+      collections.put(field, new VCountList());
     }
-    queryGenerator.setFacetField(solrQuery, field);
     try {
       QueryResponse response = serviceLogsSolrDao.process(solrQuery);
       if (response == null){
-        return collection;
-      }
-      FacetField facetFields = response.getFacetField(field);
-      if (facetFields == null){
-        return collection;
+        return collections;
       }
-      List<Count> fieldList = facetFields.getValues();
-      
-      if(fieldList == null){
-        return collection;
-      }
-      
-      for (Count cnt : fieldList) {
-        if (cnt != null) {
-          VCount vCount = new VCount();
-          vCount.setName(cnt.getName());
-          vCount.setCount(cnt.getCount());
-          vCounts.add(vCount);
+      for (String field : fields) {
+        FacetField facetFields = response.getFacetField(field);
+        if (facetFields == null || facetFields.getValues() == null){
+          continue;
         }
+        List<VCount> vCounts = new ArrayList<VCount>();
+        for (Count cnt : facetFields.getValues()) {
+          if (cnt != null) {
+            VCount vCount = new VCount();
+            vCount.setName(cnt.getName());
+            vCount.setCount(cnt.getCount());
+            vCounts.add(vCount);
+          }
+        }
+        collections.get(field).setCounts(vCounts);
       }
 
     } catch (SolrException | SolrServerException | IOException e) {
@@ -277,21 +307,36 @@ public class LogsMgr extends MgrBase {
       throw restErrorUtil.createRESTException(MessageEnums.SOLR_ERROR
           .getMessage().getMessage(), MessageEnums.ERROR_SYSTEM);
     }
-    
-    collection.setCounts(vCounts);
-    return collection;
+    return collections;
   }
-  
+
+  /**
+   * The dashboard asks for level, component and host counts with the same
+   * criteria, so they are fetched together and cached as one entry.
+   */
+  private VCountList getDashboardFieldCount(String field) {
+    final SolrQuery solrQuery = buildFieldCountQuery(DASHBOARD_COUNT_FIELDS);
+    Map<String, VCountList> counts = facetQueryCache.get(
+      "dashboardFieldCounts", solrQuery,
+      new Callable<Map<String, VCountList>>() {
+        @Override
+        public Map<String, VCountList> call() {
+          return loadFieldCounts(solrQuery, DASHBOARD_COUNT_FIELDS);
+        }
+      });
+    return counts.get(field);
+  }
+
   public VCountList getLogLevelCount(SearchCriteria searchCriteria) {
-    return getFieldCount(searchCriteria, LogSearchConstants.SOLR_LEVEL);
+    return getDashboardFieldCount(LogSearchConstants.SOLR_LEVEL);
   }
 
   public VCountList getComponentsCount(SearchCriteria searchCriteria) {
-    return getFieldCount(searchCriteria, LogSearchConstants.SOLR_COMPONENT);
+    return getDashboardFieldCount(LogSearchConstants.SOLR_COMPONENT);
   }
 
   public VCountList getHostsCount(SearchCriteria searchCriteria) {
-    return getFieldCount(searchCriteria, LogSearchConstants.SOLR_HOST);
+    return getDashboardFieldCount(LogSearchConstants.SOLR_HOST);
   }
 
   public List<VNode> buidTreeData(List<PivotField> pivotFields,
@@ -387,7 +432,7 @@ public class LogsMgr extends MgrBase {
   }
 
   public VNodeList getTreeExtension(SearchCriteria searchCriteria) {
-    SolrQuery solrQuery = queryGenerator.commonServiceFilterQuery(searchCriteria);
+    final SolrQuery solrQuery = queryGenerator.commonServiceFilterQuery(searchCriteria);
     solrQuery.setParam("event", "/getTreeExtension");
 
     if (searchCriteria.getSortBy() == null) {
@@ -402,28 +447,34 @@ public class LogsMgr extends MgrBase {
       solrQuery.addFilterQuery(LogSearchConstants.SOLR_HOST + ":*"
         + hostName + "*");
     }
-    String firstHirarchy = "host,type,level";
-    String secondHirarchy = "host,level";
+    queryGenerator.setFacetPivot(solrQuery, 1, TREE_FIRST_HIERARCHY,
+      TREE_SECOND_HIERARCHY);
+    return facetQueryCache.get("treeExtension", solrQuery,
+      new Callable<VNodeList>() {
+        @Override
+        public VNodeList call() {
+          return loadTreeExtension(solrQuery);
+        }
+      });
+  }
+
+  private VNodeList loadTreeExtension(SolrQuery solrQuery) {
     VNodeList list = new VNodeList();
     try {
-
-      queryGenerator.setFacetPivot(solrQuery, 1, firstHirarchy,
-        secondHirarchy);
-
       QueryResponse response = serviceLogsSolrDao.process(solrQuery);
       List<List<PivotField>> listFirstHirarchicalPivotFields = new ArrayList<List<PivotField>>();
       NamedList<List<PivotField>> firstNamedList = response
         .getFacetPivot();
       if (firstNamedList != null) {
         listFirstHirarchicalPivotFields = firstNamedList
-          .getAll(firstHirarchy);
+          .getAll(TREE_FIRST_HIERARCHY);
       }
       List<List<PivotField>> listSecondHirarchicalPivotFields = new ArrayList<List<PivotField>>();
       NamedList<List<PivotField>> secondNamedList = response
         .getFacetPivot();
       if (secondNamedList != null) {
         listSecondHirarchicalPivotFields = secondNamedList
-          .getAll(secondHirarchy);
+          .getAll(TREE_SECOND_HIERARCHY);
       }
       List<PivotField> firstHirarchicalPivotFields = new ArrayList<PivotField>();
       List<PivotField> secondHirarchicalPivotFields = new ArrayList<PivotField>();
@@ -1233,28 +1284,38 @@ public class LogsMgr extends MgrBase {
     return field.getValues();
   }
 
-  @SuppressWarnings("unchecked")
   public String getHistogramData(SearchCriteria searchCriteria) {
-    String deafalutValue = "0";
-    VBarDataList dataList = new VBarDataList();
-    SolrQuery solrQuery = queryGenerator.commonServiceFilterQuery(searchCriteria);
+    final SolrQuery solrQuery = queryGenerator.commonServiceFilterQuery(searchCriteria);
     solrQuery.set("event", "/getHistogramData");
     String from = getFrom((String) searchCriteria.getParamValue("from"));
     String to = getTo((String) searchCriteria.getParamValue("to"));
     String unit = getUnit((String) searchCriteria.getParamValue("unit"));
 
-    List<VBarGraphData> histogramData = new ArrayList<VBarGraphData>();
-    List<String> logLevels = ConfigUtil.logLevels;
-
     String jsonHistogramQuery = queryGenerator
       .buildJSONFacetTermTimeRangeQuery(
         LogSearchConstants.SOLR_LEVEL,
         LogSearchConstants.LOGTIME, from, to, unit).replace(
         "\\", "");
+    queryGenerator.setJSONFacet(solrQuery, jsonHistogramQuery);
+    queryGenerator.setRowCount(solrQuery, 0);
+    return facetQueryCache.get("histogramData", solrQuery,
+      new Callable<String>() {
+        @Override
+        public String call() {
+          return loadHistogramData(solrQuery);
+        }
+      });
+  }
+
+  @SuppressWarnings("unchecked")
+  private String loadHistogramData(SolrQuery solrQuery) {
+    String deafalutValue = "0";
+    VBarDataList dataList = new VBarDataList();
+
+    List<VBarGraphData> histogramData = new ArrayList<VBarGraphData>();
+    List<String> logLevels = ConfigUtil.logLevels;
 
     try {
-      queryGenerator.setJSONFacet(solrQuery, jsonHistogramQuery);
-      queryGenerator.setRowCount(solrQuery,Integer.parseInt(deafalutValue));
       QueryResponse response = serviceLogsSolrDao.process(solrQuery);
       if (response == null){
         return convertObjToString(dataList);
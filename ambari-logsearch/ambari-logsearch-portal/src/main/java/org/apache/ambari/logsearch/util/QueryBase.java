@@ -36,6 +36,13 @@ public class QueryBase {
     setFacetLimit(solrQuery, -1);
   }
 
+  public void setFacetFields(SolrQuery solrQuery, String... facetFields) {
+    solrQuery.setFacet(true);
+    setRowCount(solrQuery, 0);
+    solrQuery.set(LogSearchConstants.FACET_FIELD, facetFields);
+    setFacetLimit(solrQuery, -1);
+  }
+
   public void setJSONFacet(SolrQuery solrQuery, String jsonQuery) {
     solrQuery.setFacet(true);
     setRowCount(solrQuery, 0);
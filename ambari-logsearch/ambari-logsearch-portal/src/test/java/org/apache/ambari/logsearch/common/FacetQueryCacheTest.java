@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ambari.logsearch.common;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FacetQueryCacheTest {
+  private static final long BUCKET_MS = 30 * 1000;
+
+  private static class TestCache extends FacetQueryCache {
+    long time = 1000 * BUCKET_MS;
+
+    TestCache(int maxEntries) {
+      super(maxEntries, BUCKET_MS);
+    }
+
+    @Override
+    long currentTimeMillis() {
+      return time;
+    }
+  }
+
+  private static class CountingLoader implements Callable<String> {
+    final AtomicInteger calls = new AtomicInteger();
+
+    @Override
+    public String call() {
+      return "result" + calls.incrementAndGet();
+    }
+  }
+
+  private static SolrQuery query(String... filterQueries) {
+    SolrQuery solrQuery = new SolrQuery("*:*");
+    solrQuery.setFacet(true);
+    solrQuery.addFacetField("level", "host");
+    for (String filterQuery : filterQueries) {
+      solrQuery.addFilterQuery(filterQuery);
+    }
+    return solrQuery;
+  }
+
+  @Test
+  public void testHit() throws Exception {
+    TestCache cache = new TestCache(10);
+    CountingLoader loader = new CountingLoader();
+
+    assertEquals("result1", cache.get("counts", query("host:h1", "level:ERROR"), loader));
+    // Same parameters added in another order
+    assertEquals("result1", cache.get("counts", query("level:ERROR", "host:h1"), loader));
+
+    assertEquals(1, loader.calls.get());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void testMiss() throws Exception {
+    TestCache cache = new TestCache(10);
+    CountingLoader loader = new CountingLoader();
+
+    assertEquals("result1", cache.get("counts", query("host:h1"), loader));
+    assertEquals("result2", cache.get("counts", query("host:h2"), loader));
+    assertEquals("result3", cache.get("histogram", query("host:h1"), loader));
+
+    assertEquals(3, loader.calls.get());
+    assertEquals(0, cache.getHits());
+    assertEquals(3, cache.getMisses());
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    TestCache cache = new TestCache(10);
+    CountingLoader loader = new CountingLoader();
+
+    assertEquals("result1", cache.get("counts", query("host:h1"), loader));
+    cache.time += BUCKET_MS - 1;
+    assertEquals("result1", cache.get("counts", query("host:h1"), loader));
+
+    // The next time bucket does not see the entry of the previous one
+    cache.time += 1;
+    assertEquals("result2", cache.get("counts", query("host:h1"), loader));
+    assertEquals(1, cache.getHits());
+    assertEquals(2, cache.getMisses());
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    TestCache cache = new TestCache(2);
+    CountingLoader loader = new CountingLoader();
+
+    cache.get("counts", query("host:h1"), loader);
+    cache.get("counts", query("host:h2"), loader);
+    cache.get("counts", query("host:h3"), loader);
+    assertEquals(1, cache.getEvictions());
+
+    assertEquals("result4", cache.get("counts", query("host:h1"), loader));
+    assertEquals("result3", cache.get("counts", query("host:h3"), loader));
+  }
+
+  @Test
+  public void testFailureNotCached() throws Exception {
+    TestCache cache = new TestCache(10);
+    try {
+      cache.get("counts", query("host:h1"), new Callable<String>() {
+        @Override
+        public String call() {
+          throw new IllegalArgumentException("Failed");
+        }
+      });
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Failed", e.getMessage());
+    }
+
+    CountingLoader loader = new CountingLoader();
+    assertEquals("result1", cache.get("counts", query("host:h1"), loader));
+    assertEquals(2, cache.getMisses());
+  }
+}
@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Machine readable result of a load simulator benchmark run, written as
+ * json so that runs of different builds can be compared.
+ */
+public class BenchmarkReport {
+  private final String name;
+  private final long timestamp = System.currentTimeMillis();
+  private final Map<String, Object> settings = new LinkedHashMap<String, Object>();
+  private final Map<String, Map<String, Object>> results =
+    new LinkedHashMap<String, Map<String, Object>>();
+
+  public BenchmarkReport(String name) {
+    this.name = name;
+  }
+
+  public void addSetting(String key, Object value) {
+    settings.put(key, value);
+  }
+
+  public void addResult(String section, String key, Object value) {
+    Map<String, Object> sectionResults = results.get(section);
+    if (sectionResults == null) {
+      sectionResults = new LinkedHashMap<String, Object>();
+      results.put(section, sectionResults);
+    }
+    sectionResults.put(key, value);
+  }
+
+  public void addResults(String section, Map<String, Object> values) {
+    for (Map.Entry<String, Object> value : values.entrySet()) {
+      addResult(section, value.getKey(), value.getValue());
+    }
+  }
+
+  public Map<String, Object> getResults(String section) {
+    return results.get(section);
+  }
+
+  public String toJson() throws IOException {
+    return new Json(true).serialize(this);
+  }
+
+  public void write(File file) throws IOException {
+    FileUtils.writeStringToFile(file, toJson());
+  }
+}
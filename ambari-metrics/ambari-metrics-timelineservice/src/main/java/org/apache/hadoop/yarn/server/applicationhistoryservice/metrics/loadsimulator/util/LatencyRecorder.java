@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records the latencies of an operation of the load simulator and reports
+ * their percentiles. Every sample is kept, which is fine for the number of
+ * operations of a benchmark run.
+ */
+public class LatencyRecorder {
+  private long[] samples = new long[1024];
+  private int count = 0;
+
+  /**
+   * @param nanos duration of one operation
+   */
+  public synchronized void record(long nanos) {
+    if (count == samples.length) {
+      samples = Arrays.copyOf(samples, count * 2);
+    }
+    samples[count++] = nanos;
+  }
+
+  public synchronized int getCount() {
+    return count;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return latency in milliseconds at the percentile, 0 if nothing was
+   * recorded
+   */
+  public synchronized double getPercentileMillis(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long[] sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100 * count) - 1;
+    return toMillis(sorted[Math.max(0, rank)]);
+  }
+
+  public synchronized double getMeanMillis() {
+    if (count == 0) {
+      return 0;
+    }
+    long total = 0;
+    for (int i = 0; i < count; i++) {
+      total += samples[i];
+    }
+    return toMillis(total) / count;
+  }
+
+  /**
+   * Summary for a benchmark report.
+   */
+  public Map<String, Object> toReport() {
+    Map<String, Object> report = new LinkedHashMap<String, Object>();
+    report.put("count", getCount());
+    report.put("meanMillis", getMeanMillis());
+    report.put("p50Millis", getPercentileMillis(50));
+    report.put("p99Millis", getPercentileMillis(99));
+    report.put("maxMillis", getPercentileMillis(100));
+    return report;
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1000000.0;
+  }
+}
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.SingleValuedTimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Grouped query result that is downsampled while the rows are read. The
+ * time range is cut into maxPoints buckets of equal width and every series
+ * keeps the average of its values in each bucket, timestamped with the
+ * start of the bucket, so a long range never holds the full series in
+ * memory. Averages are used rather than largest-triangle-three-buckets
+ * because the rows of a grouped series do not arrive in time order.
+ */
+public class DownsampledTimelineMetrics extends TimelineMetrics {
+  private final long startTime;
+  private final long bucketMillis;
+  // Number of values averaged into each bucket, per series
+  private final Map<TimelineMetric, Map<Long, Integer>> bucketCounts =
+    new IdentityHashMap<TimelineMetric, Map<Long, Integer>>();
+
+  public DownsampledTimelineMetrics(long startTime, long endTime, int maxPoints) {
+    this.startTime = startTime;
+    long range = Math.max(1, endTime - startTime);
+    this.bucketMillis = (range + maxPoints - 1) / maxPoints;
+  }
+
+  /**
+   * Container for the result of the condition, downsampled if it is a
+   * grouped range query with a maximum number of points.
+   */
+  public static TimelineMetrics forCondition(Condition condition) {
+    Integer maxPoints = condition.getMaxPoints();
+    if (maxPoints == null || maxPoints <= 0 || !condition.isGrouped()
+        || condition.isPointInTime()) {
+      return new TimelineMetrics();
+    }
+    return new DownsampledTimelineMetrics(condition.getStartTime(),
+      condition.getEndTime(), maxPoints);
+  }
+
+  /**
+   * Plain copy for the web service, whose JAXB context only knows
+   * {@link TimelineMetrics}.
+   */
+  public static TimelineMetrics toTimelineMetrics(TimelineMetrics metrics) {
+    if (!(metrics instanceof DownsampledTimelineMetrics)) {
+      return metrics;
+    }
+    TimelineMetrics copy = new TimelineMetrics();
+    copy.setMetrics(metrics.getMetrics());
+    return copy;
+  }
+
+  long getBucketMillis() {
+    return bucketMillis;
+  }
+
+  @Override
+  public void addOrMergeTimelineMetric(TimelineMetric metric) {
+    TimelineMetric series = null;
+    for (TimelineMetric existing : getMetrics()) {
+      if (existing.equalsExceptTime(metric)) {
+        series = existing;
+        break;
+      }
+    }
+    if (series == null) {
+      series = newSeries(new TimelineMetric(metric));
+    }
+    updateTimes(series, metric.getTimestamp(), metric.getStartTime());
+
+    if (metric.getMetricValues() != null) {
+      for (Map.Entry<Long, Double> value : metric.getMetricValues().entrySet()) {
+        addValue(series, value.getKey(), value.getValue());
+      }
+    }
+  }
+
+  @Override
+  public void addOrMergeTimelineMetric(SingleValuedTimelineMetric metric) {
+    TimelineMetric series = null;
+    for (TimelineMetric existing : getMetrics()) {
+      if (metric.equalsExceptTime(existing)) {
+        series = existing;
+        break;
+      }
+    }
+    if (series == null) {
+      series = newSeries(metric.getTimelineMetric());
+    }
+    updateTimes(series, metric.getTimestamp(), metric.getStartTime());
+    addValue(series, metric.getTimestamp(), metric.getValue());
+  }
+
+  private TimelineMetric newSeries(TimelineMetric series) {
+    series.setMetricValues(new TreeMap<Long, Double>());
+    getMetrics().add(series);
+    bucketCounts.put(series, new HashMap<Long, Integer>());
+    return series;
+  }
+
+  private static void updateTimes(TimelineMetric series, long timestamp, long startTime) {
+    if (series.getTimestamp() > timestamp) {
+      series.setTimestamp(timestamp);
+    }
+    if (series.getStartTime() > startTime) {
+      series.setStartTime(startTime);
+    }
+  }
+
+  private void addValue(TimelineMetric series, Long timestamp, Double value) {
+    if (timestamp == null || value == null) {
+      return;
+    }
+    long offset = timestamp - startTime;
+    long bucketIndex = offset / bucketMillis;
+    if (offset < 0 && offset % bucketMillis != 0) {
+      bucketIndex--;
+    }
+    long bucket = startTime + bucketIndex * bucketMillis;
+
+    Map<Long, Integer> counts = bucketCounts.get(series);
+    Integer count = counts.get(bucket);
+    if (count == null) {
+      series.getMetricValues().put(bucket, value);
+      counts.put(bucket, 1);
+    } else {
+      double average = series.getMetricValues().get(bucket);
+      series.getMetricValues().put(bucket, average + (value - average) / (count + 1));
+      counts.put(bucket, count + 1);
+    }
+  }
+}
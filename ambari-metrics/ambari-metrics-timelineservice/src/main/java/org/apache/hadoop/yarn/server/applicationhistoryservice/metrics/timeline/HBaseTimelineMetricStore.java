@@ -21,6 +21,7 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.sink.timeline.ContainerMetric;
 import org.apache.hadoop.metrics2.sink.timeline.Precision;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
@@ -43,6 +44,7 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -57,6 +59,8 @@ import java.util.concurrent.TimeUnit;
 
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.USE_GROUPBY_AGGREGATOR_QUERIES;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.DEFAULT_TOPN_HOSTS_LIMIT;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_HOT_TIER_ENABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_CACHE_ENABLED;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.AggregationTaskRunner.ACTUAL_AGGREGATOR_NAMES;
 
 public class HBaseTimelineMetricStore extends AbstractService implements TimelineMetricStore {
@@ -70,6 +74,9 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
   private TimelineMetricMetadataManager metricMetadataManager;
   private TimelineMetricHAController haController;
   private Integer defaultTopNHostsLimit;
+  private TimelineMetricHotTier hotTier;
+  private TimelineMetricQueryExecutor queryExecutor;
+  private TimelineMetricQueryCache queryCache;
 
   /**
    * Construct the service.
@@ -95,6 +102,7 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
       // Initialize metadata from store
       metricMetadataManager = new TimelineMetricMetadataManager(hBaseAccessor, metricsConf);
       metricMetadataManager.initializeMetadata();
+      hBaseAccessor.setMetadataInstance(metricMetadataManager);
       // Initialize policies before TTL update
       hBaseAccessor.initPoliciesAndTTL();
       // Start HA service
@@ -108,9 +116,28 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
           throw new MetricsSystemInitializationException("Unable to " +
             "initialize HA controller", e);
         }
+        // Collectors agree on the row key ids through zookeeper
+        metricMetadataManager.setUuidClaims(haController.getUuidClaimManager());
       }
 
       defaultTopNHostsLimit = Integer.parseInt(metricsConf.get(DEFAULT_TOPN_HOSTS_LIMIT, "20"));
+      queryExecutor = new TimelineMetricQueryExecutor(metricsConf);
+
+      // Each collector only receives part of the data in distributed mode
+      if (metricsConf.getBoolean(TIMELINE_METRICS_HOT_TIER_ENABLED, false)) {
+        if (configuration.isDistributedOperationModeEnabled()) {
+          LOG.info("Hot tier disabled in distributed operation mode.");
+        } else {
+          hotTier = new TimelineMetricHotTier(metricsConf);
+          DefaultMetricsSystem.instance().register("TimelineMetricHotTier",
+            "Recent precision data kept in memory", hotTier);
+        }
+      }
+      if (metricsConf.getBoolean(TIMELINE_METRICS_QUERY_CACHE_ENABLED, false)) {
+        queryCache = new TimelineMetricQueryCache(metricsConf);
+        DefaultMetricsSystem.instance().register("TimelineMetricQueryCache",
+          "Results of recent range queries", queryCache);
+      }
       if (Boolean.parseBoolean(metricsConf.get(USE_GROUPBY_AGGREGATOR_QUERIES, "true"))) {
         LOG.info("Using group by aggregators for aggregating host and cluster metrics.");
       }
@@ -175,6 +202,9 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
 
   @Override
   protected void serviceStop() throws Exception {
+    if (queryExecutor != null) {
+      queryExecutor.shutdown();
+    }
     super.serviceStop();
   }
 
@@ -182,7 +212,8 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
   public TimelineMetrics getTimelineMetrics(List<String> metricNames,
       List<String> hostnames, String applicationId, String instanceId,
       Long startTime, Long endTime, Precision precision, Integer limit,
-      boolean groupedByHosts, TopNConfig topNConfig) throws SQLException, IOException {
+      boolean groupedByHosts, TopNConfig topNConfig, Integer maxPoints)
+      throws SQLException, IOException {
 
     if (metricNames == null || metricNames.isEmpty()) {
       throw new IllegalArgumentException("No metric name filter specified.");
@@ -194,7 +225,10 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
     if (limit != null && limit > PhoenixHBaseAccessor.RESULTSET_LIMIT){
       throw new IllegalArgumentException("Limit too big");
     }
-    Map<String, List<Function>> metricFunctions =
+    if (maxPoints != null && maxPoints <= 0) {
+      throw new IllegalArgumentException("maxPoints should be a positive number");
+    }
+    final Map<String, List<Function>> metricFunctions =
       parseMetricNamesToAggregationFunctions(metricNames);
 
     ConditionBuilder conditionBuilder = new ConditionBuilder(new ArrayList<String>(metricFunctions.keySet()))
@@ -205,7 +239,8 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
       .endTime(endTime)
       .precision(precision)
       .limit(limit)
-      .grouped(groupedByHosts);
+      .grouped(groupedByHosts)
+      .maxPoints(maxPoints);
 
     if (topNConfig != null) {
       if (TopNCondition.isTopNHostCondition(metricNames, hostnames) || TopNCondition.isTopNMetricCondition(metricNames, hostnames)) {
@@ -226,17 +261,108 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
 
     Condition condition = conditionBuilder.build();
 
-    TimelineMetrics metrics;
+    final boolean hostLevel = hostnames != null && !hostnames.isEmpty();
+    TimelineMetricQueryExecutor.MetricsQuery storeQuery = new TimelineMetricQueryExecutor.MetricsQuery() {
+      @Override
+      public TimelineMetrics execute(Condition query) throws SQLException, IOException {
+        if (hostLevel) {
+          return getMetricRecords(query, metricFunctions);
+        }
+        return queryExecutor.execute(query, new TimelineMetricQueryExecutor.MetricsQuery() {
+          @Override
+          public TimelineMetrics execute(Condition split) throws SQLException {
+            return hBaseAccessor.getAggregateMetricRecords(split, metricFunctions);
+          }
+        });
+      }
+    };
 
-    if (hostnames == null || hostnames.isEmpty()) {
-      metrics = hBaseAccessor.getAggregateMetricRecords(condition, metricFunctions);
+    TimelineMetrics metrics;
+    if (queryCache != null) {
+      metrics = queryCache.execute(condition, metricFunctions, storeQuery);
     } else {
-      metrics = hBaseAccessor.getMetricRecords(condition, metricFunctions);
+      metrics = storeQuery.execute(condition);
     }
     return postProcessMetrics(metrics);
   }
 
+  /**
+   * Host level records, from the hot tier as far as it covers the time
+   * range and from HBase for the rest.
+   */
+  private TimelineMetrics getMetricRecords(Condition condition,
+      final Map<String, List<Function>> metricFunctions) throws SQLException, IOException {
+
+    TimelineMetricQueryExecutor.MetricsQuery hBaseQuery = new TimelineMetricQueryExecutor.MetricsQuery() {
+      @Override
+      public TimelineMetrics execute(Condition split) throws SQLException, IOException {
+        return hBaseAccessor.getMetricRecords(split, metricFunctions);
+      }
+    };
+
+    if (hotTier == null || !hotTier.canServe(condition, metricFunctions)) {
+      return queryExecutor.execute(condition, hBaseQuery);
+    }
+
+    long startTime = condition.getStartTime();
+    long endTime = condition.getEndTime();
+    long coverageStartTime = hotTier.getCoverageStartTime();
+
+    if (startTime >= coverageStartTime) {
+      hotTier.recordHit();
+      return hotTier.getMetrics(condition, metricFunctions, startTime, endTime);
+    }
+    if (endTime <= coverageStartTime) {
+      hotTier.recordMiss();
+      return queryExecutor.execute(condition, hBaseQuery);
+    }
+
+    // Older part from HBase, keeping the precision of the whole range.
+    // Both parts are downsampled over the buckets of the whole range.
+    hotTier.recordPartialHit();
+    Integer limit = condition.getLimit();
+    // With a row limit the rows of both parts are merged before it is
+    // applied, each part returns at most the limit
+    boolean grouped = condition.isGrouped() && limit == null;
+    Condition olderCondition = new ConditionBuilder(condition.getMetricNames())
+      .hostnames(condition.getHostnames())
+      .appId(condition.getAppId())
+      .instanceId(condition.getInstanceId())
+      .startTime(condition.getStartTime())
+      .endTime(coverageStartTime)
+      .limit(limit)
+      .grouped(grouped)
+      .precision(Precision.SECONDS)
+      .build();
+    Condition newerCondition = grouped ? condition : new ConditionBuilder(condition.getMetricNames())
+      .hostnames(condition.getHostnames())
+      .appId(condition.getAppId())
+      .instanceId(condition.getInstanceId())
+      .startTime(coverageStartTime)
+      .endTime(endTime)
+      .limit(limit)
+      .grouped(false)
+      .precision(Precision.SECONDS)
+      .build();
+    List<TimelineMetric> results = new ArrayList<TimelineMetric>(
+      queryExecutor.execute(olderCondition, hBaseQuery).getMetrics());
+    results.addAll(hotTier.getMetrics(newerCondition, metricFunctions, coverageStartTime, endTime).getMetrics());
+    if (limit != null) {
+      results = TimelineMetricHotTier.limitRows(results, limit);
+    }
+    TimelineMetrics metrics = DownsampledTimelineMetrics.forCondition(condition);
+    for (TimelineMetric metric : results) {
+      if (condition.isGrouped()) {
+        metrics.addOrMergeTimelineMetric(metric);
+      } else {
+        metrics.getMetrics().add(metric);
+      }
+    }
+    return metrics;
+  }
+
   private TimelineMetrics postProcessMetrics(TimelineMetrics metrics) {
+    metrics = DownsampledTimelineMetrics.toTimelineMetrics(metrics);
     List<TimelineMetric> metricsList = metrics.getMetrics();
 
     for (TimelineMetric metric : metricsList){
@@ -312,11 +438,34 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
     // Error indicated by the Sql exception
     TimelinePutResponse response = new TimelinePutResponse();
 
-    hBaseAccessor.insertMetricRecordsWithMetadata(metricMetadataManager, metrics);
+    // The hot tier keeps the rows with the SERVER_TIME they are written with,
+    // once they are committed
+    long serverTime = System.currentTimeMillis();
+    BitSet inserted = hBaseAccessor.insertMetricRecordsWithMetadata(metricMetadataManager, metrics, serverTime);
+    if (hotTier != null && !inserted.isEmpty()) {
+      TimelineMetrics insertedMetrics = new TimelineMetrics();
+      for (int i = inserted.nextSetBit(0); i >= 0; i = inserted.nextSetBit(i + 1)) {
+        insertedMetrics.getMetrics().add(metrics.getMetrics().get(i));
+      }
+      hotTier.put(insertedMetrics, serverTime);
+    }
 
     return response;
   }
 
+  @Override
+  public TimelinePutResponse putMetrics(TimelineMetricSeriesBuffer metrics)
+      throws SQLException, IOException {
+    long serverTime = System.currentTimeMillis();
+    BitSet inserted = hBaseAccessor.insertMetricRecordsWithMetadata(metricMetadataManager, metrics, serverTime);
+    if (hotTier != null && !inserted.isEmpty()) {
+      // Values maps of the committed series
+      hotTier.put(metrics.toTimelineMetrics(inserted), serverTime);
+    }
+
+    return new TimelinePutResponse();
+  }
+
   @Override
   public TimelinePutResponse putContainerMetrics(List<ContainerMetric> metrics)
       throws SQLException, IOException {
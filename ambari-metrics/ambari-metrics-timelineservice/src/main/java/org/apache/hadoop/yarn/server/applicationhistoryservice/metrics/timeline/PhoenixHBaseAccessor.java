@@ -26,6 +26,7 @@ import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.client.Durability;
 import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.RetryCounter;
 import org.apache.hadoop.hbase.util.RetryCounterFactory;
 import org.apache.hadoop.metrics2.sink.timeline.ContainerMetric;
@@ -39,15 +40,19 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricClusterAggregate;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricHostAggregate;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricSketch;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineClusterMetric;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricReadHelper;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataKey;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataManager;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricUuid;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultPhoenixDataSource;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixConnectionProvider;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.SplitByMetricNamesCondition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.TopNCondition;
 import org.apache.hadoop.yarn.util.timeline.TimelineUtils;
 import org.apache.phoenix.exception.PhoenixIOException;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -58,9 +63,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -68,12 +76,24 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATE_TABLE_SPLIT_POINTS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HBASE_BLOCKING_STORE_FILES;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_TABLES_DURABILITY;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_UUID_SCHEMA_ENABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_AGGREGATE_SKETCH_ENABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_AGGREGATE_WRITE_BATCH_SIZE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_AGGREGATE_WRITE_PARALLELISM;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATORS_SKIP_BLOCK_CACHE;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_DAILY_TABLE_TTL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_HOUR_TABLE_TTL;
@@ -91,6 +111,11 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.PRECISION_TABLE_SPLIT_POINTS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.PRECISION_TABLE_TTL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CONTAINER_METRICS_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.ALTER_AGGREGATE_ADD_SKETCH_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.ALTER_HOSTED_APPS_METADATA_ADD_UUID_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.ALTER_HOSTED_APPS_METADATA_ADD_UUID_START_TIME_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.ALTER_METRICS_METADATA_ADD_UUID_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.ALTER_METRICS_METADATA_ADD_UUID_START_TIME_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CONTAINER_METRICS_TABLE_NAME;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CREATE_CONTAINER_METRICS_TABLE_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CREATE_HOSTED_APPS_METADATA_TABLE_SQL;
@@ -99,10 +124,13 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CREATE_METRICS_CLUSTER_AGGREGATE_TABLE_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CREATE_METRICS_METADATA_TABLE_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CREATE_METRICS_TABLE_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CREATE_METRICS_UUID_TABLE_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.DEFAULT_ENCODING;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.DEFAULT_TABLE_COMPRESSION;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_HOSTED_APPS_METADATA_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_HOST_UUID_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_METRIC_METADATA_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_METRIC_UUID_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_AGGREGATE_DAILY_TABLE_NAME;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_AGGREGATE_HOURLY_TABLE_NAME;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_AGGREGATE_MINUTE_TABLE_NAME;
@@ -111,13 +139,21 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_CLUSTER_AGGREGATE_MINUTE_TABLE_NAME;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_CLUSTER_AGGREGATE_TABLE_NAME;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_RECORD_TABLE_NAME;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_RECORD_UUID_TABLE_NAME;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.PHOENIX_TABLES;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.SKETCH_TABLES;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_AGGREGATE_RECORD_SKETCH_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_AGGREGATE_RECORD_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_CLUSTER_AGGREGATE_SKETCH_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_CLUSTER_AGGREGATE_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_CLUSTER_AGGREGATE_TIME_SKETCH_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_CLUSTER_AGGREGATE_TIME_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_HOSTED_APPS_METADATA_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_HOST_UUID_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_METADATA_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_METRICS_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_METRICS_UUID_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_METRIC_UUID_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_CONTAINER_METRICS_SQL;
 
 
@@ -151,6 +187,13 @@ public class PhoenixHBaseAccessor {
   private final long outOfBandTimeAllowance;
   private final boolean skipBlockCacheForAggregatorsEnabled;
   private final String timelineMetricsTablesDurability;
+  private final boolean uuidSchemaEnabled;
+  private final boolean sketchEnabled;
+  private final int aggregateWriteBatchSize;
+  private final int aggregateWriteParallelism;
+  private ExecutorService aggregateWriterPool;
+  // Translates names to row key ids for the id keyed precision table
+  private TimelineMetricMetadataManager metadataManagerInstance;
 
   static final String HSTORE_COMPACTION_CLASS_KEY =
     "hbase.hstore.defaultengine.compactionpolicy.class";
@@ -187,8 +230,16 @@ public class PhoenixHBaseAccessor {
       DEFAULT_OUT_OF_BAND_TIME_ALLOWANCE);
     this.skipBlockCacheForAggregatorsEnabled = metricsConf.getBoolean(AGGREGATORS_SKIP_BLOCK_CACHE, false);
     this.timelineMetricsTablesDurability = metricsConf.get(TIMELINE_METRICS_TABLES_DURABILITY, "");
+    this.uuidSchemaEnabled = metricsConf.getBoolean(TIMELINE_METRICS_UUID_SCHEMA_ENABLED, false);
+    this.sketchEnabled = metricsConf.getBoolean(TIMELINE_METRICS_AGGREGATE_SKETCH_ENABLED, false);
+    // Phoenix keeps the mutations of a connection in memory until commit
+    this.aggregateWriteBatchSize = Math.max(1, Math.min(PHOENIX_MAX_MUTATION_STATE_SIZE - 1,
+      metricsConf.getInt(TIMELINE_METRICS_AGGREGATE_WRITE_BATCH_SIZE, 10000)));
+    this.aggregateWriteParallelism = Math.max(1,
+      metricsConf.getInt(TIMELINE_METRICS_AGGREGATE_WRITE_PARALLELISM, 4));
 
     tableTTL.put(METRICS_RECORD_TABLE_NAME, metricsConf.get(PRECISION_TABLE_TTL, String.valueOf(1 * 86400)));  // 1 day
+    tableTTL.put(METRICS_RECORD_UUID_TABLE_NAME, tableTTL.get(METRICS_RECORD_TABLE_NAME));
     tableTTL.put(CONTAINER_METRICS_TABLE_NAME, metricsConf.get(CONTAINER_METRICS_TTL, String.valueOf(30 * 86400)));  // 30 days
     tableTTL.put(METRICS_AGGREGATE_MINUTE_TABLE_NAME, metricsConf.get(HOST_MINUTE_TABLE_TTL, String.valueOf(7 * 86400))); //7 days
     tableTTL.put(METRICS_AGGREGATE_HOURLY_TABLE_NAME, metricsConf.get(HOST_HOUR_TABLE_TTL, String.valueOf(30 * 86400))); //30 days
@@ -251,6 +302,10 @@ public class PhoenixHBaseAccessor {
     return dataSource.getConnection();
   }
 
+  public void setMetadataInstance(TimelineMetricMetadataManager metadataManager) {
+    this.metadataManagerInstance = metadataManager;
+  }
+
   /**
    * Unit test purpose only for now.
    * @return @HBaseAdmin
@@ -280,6 +335,12 @@ public class PhoenixHBaseAccessor {
       String hostedAppSql = String.format(CREATE_HOSTED_APPS_METADATA_TABLE_SQL,
         encoding, compression);
       stmt.executeUpdate(hostedAppSql);
+      if (uuidSchemaEnabled) {
+        stmt.executeUpdate(ALTER_METRICS_METADATA_ADD_UUID_SQL);
+        stmt.executeUpdate(ALTER_HOSTED_APPS_METADATA_ADD_UUID_SQL);
+        stmt.executeUpdate(ALTER_METRICS_METADATA_ADD_UUID_START_TIME_SQL);
+        stmt.executeUpdate(ALTER_HOSTED_APPS_METADATA_ADD_UUID_START_TIME_SQL);
+      }
 
       // Container Metrics
       stmt.executeUpdate( String.format(CREATE_CONTAINER_METRICS_TABLE_SQL,
@@ -293,6 +354,10 @@ public class PhoenixHBaseAccessor {
         precisionSql += getSplitPointsStr(splitPoints);
       }
       stmt.executeUpdate(precisionSql);
+      if (uuidSchemaEnabled) {
+        stmt.executeUpdate(String.format(CREATE_METRICS_UUID_TABLE_SQL,
+          encoding, tableTTL.get(METRICS_RECORD_UUID_TABLE_NAME), compression));
+      }
       stmt.executeUpdate(String.format(CREATE_METRICS_AGGREGATE_TABLE_SQL,
         METRICS_AGGREGATE_MINUTE_TABLE_NAME, encoding,
         tableTTL.get(METRICS_AGGREGATE_MINUTE_TABLE_NAME),
@@ -328,7 +393,11 @@ public class PhoenixHBaseAccessor {
         METRICS_CLUSTER_AGGREGATE_DAILY_TABLE_NAME, encoding,
         tableTTL.get(METRICS_CLUSTER_AGGREGATE_DAILY_TABLE_NAME),
         compression));
-
+      if (sketchEnabled) {
+        for (String tableName : SKETCH_TABLES) {
+          stmt.executeUpdate(String.format(ALTER_AGGREGATE_ADD_SKETCH_SQL, tableName));
+        }
+      }
 
       conn.commit();
 
@@ -366,8 +435,13 @@ public class PhoenixHBaseAccessor {
       LOG.warn("Unable to initialize HBaseAdmin for setting policies.", e);
     }
 
+    List<String> tableNames = new ArrayList<>(Arrays.asList(PHOENIX_TABLES));
+    if (uuidSchemaEnabled) {
+      tableNames.add(METRICS_RECORD_UUID_TABLE_NAME);
+    }
+
     if (hBaseAdmin != null) {
-      for (String tableName : PHOENIX_TABLES) {
+      for (String tableName : tableNames) {
         try {
           boolean modifyTable = false;
           HTableDescriptor tableDescriptor = hBaseAdmin.getTableDescriptor(tableName.getBytes());
@@ -554,21 +628,109 @@ public class PhoenixHBaseAccessor {
 
   public void insertMetricRecordsWithMetadata(TimelineMetricMetadataManager metadataManager,
                                               TimelineMetrics metrics) throws SQLException, IOException {
-    List<TimelineMetric> timelineMetrics = metrics.getMetrics();
+    insertMetricRecordsWithMetadata(metadataManager, metrics, System.currentTimeMillis());
+  }
+
+  /**
+   * Insert the metrics with the given SERVER_TIME, so that the caller can
+   * use the same time for the copies it keeps.
+   * @return indexes of the metrics written and committed to the store
+   */
+  public BitSet insertMetricRecordsWithMetadata(TimelineMetricMetadataManager metadataManager,
+                                                TimelineMetrics metrics, long serverTime)
+      throws SQLException, IOException {
+    final List<TimelineMetric> timelineMetrics = metrics.getMetrics();
     if (timelineMetrics == null || timelineMetrics.isEmpty()) {
       LOG.debug("Empty metrics insert request.");
-      return;
+      return new BitSet();
+    }
+
+    return insertMetricRecordsWithMetadata(metadataManager, timelineMetrics.size(), serverTime, new MetricRecordSource() {
+      @Override
+      public TimelineMetric getMetric(int index) {
+        return timelineMetrics.get(index);
+      }
+
+      @Override
+      public double[] getAggregates(int index) {
+        return AggregatorUtils.calculateAggregates(timelineMetrics.get(index).getMetricValues());
+      }
+
+      @Override
+      public String getValuesJson(int index) throws IOException {
+        return TimelineUtils.dumpTimelineRecordtoJSON(timelineMetrics.get(index).getMetricValues());
+      }
+    });
+  }
+
+  /**
+   * Insert the series read by the streaming ingestion path, without
+   * building the values maps.
+   */
+  public void insertMetricRecordsWithMetadata(TimelineMetricMetadataManager metadataManager,
+                                              TimelineMetricSeriesBuffer metrics)
+      throws SQLException, IOException {
+    insertMetricRecordsWithMetadata(metadataManager, metrics, System.currentTimeMillis());
+  }
+
+  /**
+   * @return indexes of the series written and committed to the store
+   */
+  public BitSet insertMetricRecordsWithMetadata(TimelineMetricMetadataManager metadataManager,
+                                                final TimelineMetricSeriesBuffer metrics, long serverTime)
+      throws SQLException, IOException {
+    if (metrics.size() == 0) {
+      LOG.debug("Empty metrics insert request.");
+      return new BitSet();
     }
 
+    return insertMetricRecordsWithMetadata(metadataManager, metrics.size(), serverTime, new MetricRecordSource() {
+      @Override
+      public TimelineMetric getMetric(int index) {
+        return metrics.getMetric(index);
+      }
+
+      @Override
+      public double[] getAggregates(int index) {
+        return metrics.getAggregates(index);
+      }
+
+      @Override
+      public String getValuesJson(int index) {
+        return metrics.getValuesJson(index);
+      }
+    });
+  }
+
+  /**
+   * Series fields, aggregates and values json of the rows to insert.
+   */
+  private interface MetricRecordSource {
+    TimelineMetric getMetric(int index);
+
+    double[] getAggregates(int index);
+
+    String getValuesJson(int index) throws IOException;
+  }
+
+  private BitSet insertMetricRecordsWithMetadata(TimelineMetricMetadataManager metadataManager,
+                                                 int size, long currentTime, MetricRecordSource records)
+      throws SQLException, IOException {
     Connection conn = getConnection();
     PreparedStatement metricRecordStmt = null;
-    long currentTime = System.currentTimeMillis();
+    PreparedStatement metricRecordUuidStmt = null;
+    BitSet inserted = new BitSet(size);
 
     try {
       metricRecordStmt = conn.prepareStatement(String.format(
         UPSERT_METRICS_SQL, METRICS_RECORD_TABLE_NAME));
+      if (metadataManager != null && metadataManager.isUuidSchemaEnabled()) {
+        metricRecordUuidStmt = conn.prepareStatement(String.format(
+          UPSERT_METRICS_UUID_SQL, METRICS_RECORD_UUID_TABLE_NAME));
+      }
 
-      for (TimelineMetric metric : timelineMetrics) {
+      for (int i = 0; i < size; i++) {
+        TimelineMetric metric = records.getMetric(i);
         if (Math.abs(currentTime - metric.getStartTime()) > outOfBandTimeAllowance) {
           // If timeseries start time is way in the past : discard
           LOG.debug("Discarding out of band timeseries, currentTime = "
@@ -579,13 +741,13 @@ public class PhoenixHBaseAccessor {
 
         metricRecordStmt.clearParameters();
 
+        String json = records.getValuesJson(i);
         if (LOG.isTraceEnabled()) {
           LOG.trace("host: " + metric.getHostName() + ", " +
             "metricName = " + metric.getMetricName() + ", " +
-            "values: " + metric.getMetricValues());
+            "values: " + json);
         }
-        double[] aggregates =  AggregatorUtils.calculateAggregates(
-          metric.getMetricValues());
+        double[] aggregates = records.getAggregates(i);
 
         metricRecordStmt.setString(1, metric.getMetricName());
         metricRecordStmt.setString(2, metric.getHostName());
@@ -598,11 +760,27 @@ public class PhoenixHBaseAccessor {
         metricRecordStmt.setDouble(9, aggregates[1]);
         metricRecordStmt.setDouble(10, aggregates[2]);
         metricRecordStmt.setLong(11, (long) aggregates[3]);
-        String json = TimelineUtils.dumpTimelineRecordtoJSON(metric.getMetricValues());
         metricRecordStmt.setString(12, json);
 
         try {
           metricRecordStmt.executeUpdate();
+          inserted.set(i);
+
+          byte[] uuid = metricRecordUuidStmt == null ? null : metadataManager.getUuid(metric);
+          if (uuid != null) {
+            metricRecordUuidStmt.clearParameters();
+            metricRecordUuidStmt.setBytes(1, uuid);
+            metricRecordUuidStmt.setString(2, metric.getInstanceId());
+            metricRecordUuidStmt.setLong(3, currentTime);
+            metricRecordUuidStmt.setLong(4, metric.getStartTime());
+            metricRecordUuidStmt.setString(5, metric.getUnits());
+            metricRecordUuidStmt.setDouble(6, aggregates[0]);
+            metricRecordUuidStmt.setDouble(7, aggregates[1]);
+            metricRecordUuidStmt.setDouble(8, aggregates[2]);
+            metricRecordUuidStmt.setLong(9, (long) aggregates[3]);
+            metricRecordUuidStmt.setString(10, json);
+            metricRecordUuidStmt.executeUpdate();
+          }
 
           if (metadataManager != null) {
             // Write to metadata cache on successful write to store
@@ -620,6 +798,7 @@ public class PhoenixHBaseAccessor {
 
       // commit() blocked if HBase unavailable
       conn.commit();
+      return inserted;
 
     } finally {
       if (metricRecordStmt != null) {
@@ -629,6 +808,13 @@ public class PhoenixHBaseAccessor {
           // Ignore
         }
       }
+      if (metricRecordUuidStmt != null) {
+        try {
+          metricRecordUuidStmt.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
       if (conn != null) {
         try {
           conn.close();
@@ -649,11 +835,12 @@ public class PhoenixHBaseAccessor {
     throws SQLException, IOException {
 
     validateConditionIsNotEmpty(condition);
+    condition.setReadSketch(sketchEnabled);
 
     Connection conn = getConnection();
     PreparedStatement stmt = null;
     ResultSet rs = null;
-    TimelineMetrics metrics = new TimelineMetrics();
+    TimelineMetrics metrics = DownsampledTimelineMetrics.forCondition(condition);
 
     try {
       //get latest
@@ -661,10 +848,12 @@ public class PhoenixHBaseAccessor {
         getLatestMetricRecords(condition, conn, metrics);
       } else {
         if (condition.getEndTime() >= condition.getStartTime()) {
-          stmt = PhoenixTransactSQL.prepareGetMetricsSqlStmt(conn, condition);
-          rs = stmt.executeQuery();
-          while (rs.next()) {
-            appendMetricFromResultSet(metrics, condition, metricFunctions, rs);
+          if (!getMetricRecordsByUuid(conn, condition, metricFunctions, metrics)) {
+            stmt = PhoenixTransactSQL.prepareGetMetricsSqlStmt(conn, condition);
+            rs = stmt.executeQuery();
+            while (rs.next()) {
+              appendMetricFromResultSet(metrics, condition, metricFunctions, rs);
+            }
           }
         } else {
           LOG.warn("Skipping metrics query because endTime < startTime");
@@ -739,6 +928,162 @@ public class PhoenixHBaseAccessor {
     return metrics;
   }
 
+  /**
+   * Serve a precision query from the id keyed table. Returns false if the
+   * query has to go to the name keyed table: the schema is not enabled, the
+   * names cannot be translated to ids or the whole time range predates the
+   * ids in the id keyed table. A range that starts before that is read from
+   * the name keyed table up to the start of the ids and merged.
+   */
+  private boolean getMetricRecordsByUuid(Connection conn, Condition condition,
+                                         Map<String, List<Function>> metricFunctions,
+                                         TimelineMetrics metrics) throws SQLException, IOException {
+    if (metadataManagerInstance == null || !metadataManagerInstance.isUuidSchemaEnabled()
+        || condition.getStatement() != null || condition instanceof TopNCondition) {
+      return false;
+    }
+    if (condition.getPrecision() == null) {
+      long endTime = condition.getEndTime() == null ? System.currentTimeMillis() : condition.getEndTime();
+      long startTime = condition.getStartTime() == null ? 0 : condition.getStartTime();
+      condition.setPrecision(Precision.getPrecision(startTime, endTime));
+    }
+    if (condition.getPrecision() != Precision.SECONDS) {
+      return false;
+    }
+    List<byte[]> uuids = metadataManagerInstance.getUuids(condition);
+    if (uuids == null) {
+      return false;
+    }
+
+    long coverageStartTime = metadataManagerInstance.getUuidCoverageStartTime(uuids);
+    if (condition.getEndTime() != null && condition.getEndTime() <= coverageStartTime) {
+      return false;
+    }
+    Condition uuidCondition = condition;
+    if (condition.getStartTime() == null || condition.getStartTime() < coverageStartTime) {
+      Integer limit = condition.getLimit();
+      int rows = getMetricRecordsByName(conn, copyCondition(condition,
+        condition.getStartTime(), coverageStartTime, limit), metricFunctions, metrics);
+      if (limit != null && rows >= limit) {
+        return true;
+      }
+      uuidCondition = copyCondition(condition, coverageStartTime,
+        condition.getEndTime(), limit == null ? null : limit - rows);
+    }
+
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+    try {
+      stmt = PhoenixTransactSQL.prepareGetMetricsUuidSqlStmt(conn, uuidCondition, uuids);
+      rs = stmt.executeQuery();
+      while (rs.next()) {
+        TimelineMetric key = metadataManagerInstance.getMetricFromUuid(rs.getBytes("UUID"));
+        if (key != null) {
+          appendMetricFromUuidResultSet(metrics, condition, metricFunctions, rs, key);
+        }
+      }
+    } finally {
+      if (rs != null) {
+        try {
+          rs.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+      if (stmt != null) {
+        try {
+          stmt.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Read the rows of the condition from the name keyed table, returns the
+   * number of rows read.
+   */
+  private int getMetricRecordsByName(Connection conn, Condition condition,
+                                     Map<String, List<Function>> metricFunctions,
+                                     TimelineMetrics metrics) throws SQLException, IOException {
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+    int rows = 0;
+    try {
+      stmt = PhoenixTransactSQL.prepareGetMetricsSqlStmt(conn, condition);
+      rs = stmt.executeQuery();
+      while (rs.next()) {
+        appendMetricFromResultSet(metrics, condition, metricFunctions, rs);
+        rows++;
+      }
+    } finally {
+      if (rs != null) {
+        try {
+          rs.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+      if (stmt != null) {
+        try {
+          stmt.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Same query over a part of the time range, a null limit reads all rows.
+   */
+  private static Condition copyCondition(Condition condition, Long startTime,
+                                         Long endTime, Integer limit) {
+    Condition copy = new DefaultCondition(condition.getMetricNames(), condition.getHostnames(),
+      condition.getAppId(), condition.getInstanceId(), startTime, endTime,
+      condition.getPrecision(), limit, condition.isGrouped());
+    if (limit == null) {
+      copy.setNoLimit();
+    }
+    copy.setFetchSize(condition.getFetchSize());
+    copy.setMaxPoints(condition.getMaxPoints());
+    copy.setReadSketch(condition.isReadSketch());
+    return copy;
+  }
+
+  private void appendMetricFromUuidResultSet(TimelineMetrics metrics, Condition condition,
+                                             Map<String, List<Function>> metricFunctions,
+                                             ResultSet rs, TimelineMetric key)
+      throws SQLException, IOException {
+    List<Function> functions = metricFunctions.get(key.getMetricName());
+    Function f = null;
+    if (functions != null && !functions.isEmpty()) {
+      if (functions.size() > 1) {
+        throw new IllegalArgumentException("Multiple aggregate functions not supported.");
+      }
+      f = functions.get(0);
+    }
+
+    if (f == null || f.getReadFunction() == Function.ReadFunction.VALUE) {
+      TimelineMetric metric = TIMELINE_METRIC_READ_HELPER.getTimelineMetricFromUuidResultSet(rs, key);
+      if (f != null && f.getSuffix() != null) { //Case : Requesting "._rate" for precision data
+        metric.setMetricName(metric.getMetricName() + f.getSuffix());
+      }
+      if (condition.isGrouped()) {
+        metrics.addOrMergeTimelineMetric(metric);
+      } else {
+        metrics.getMetrics().add(metric);
+      }
+    } else {
+      SingleValuedTimelineMetric metric =
+        TIMELINE_METRIC_READ_HELPER.getAggregatedTimelineMetricFromUuidResultSet(rs, key, f);
+      addSingleValuedMetric(metrics, condition, metric);
+    }
+  }
+
   /**
    * Apply aggregate function to the result if supplied else get precision
    * or aggregate data with default function applied.
@@ -761,11 +1106,7 @@ public class PhoenixHBaseAccessor {
           SingleValuedTimelineMetric metric =
             TIMELINE_METRIC_READ_HELPER.getAggregatedTimelineMetricFromResultSet(rs, f);
 
-          if (condition.isGrouped()) {
-            metrics.addOrMergeTimelineMetric(metric);
-          } else {
-            metrics.getMetrics().add(metric.getTimelineMetric());
-          }
+          addSingleValuedMetric(metrics, condition, metric);
         }
       }
     } else {
@@ -790,11 +1131,7 @@ public class PhoenixHBaseAccessor {
     } else {
       SingleValuedTimelineMetric metric =
         TIMELINE_METRIC_READ_HELPER.getAggregatedTimelineMetricFromResultSet(rs, f);
-      if (condition.isGrouped()) {
-        metrics.addOrMergeTimelineMetric(metric);
-      } else {
-        metrics.getMetrics().add(metric.getTimelineMetric());
-      }
+      addSingleValuedMetric(metrics, condition, metric);
     }
   }
 
@@ -836,11 +1173,12 @@ public class PhoenixHBaseAccessor {
       Map<String, List<Function>> metricFunctions) throws SQLException {
 
     validateConditionIsNotEmpty(condition);
+    condition.setReadSketch(sketchEnabled);
 
     Connection conn = getConnection();
     PreparedStatement stmt = null;
     ResultSet rs = null;
-    TimelineMetrics metrics = new TimelineMetrics();
+    TimelineMetrics metrics = DownsampledTimelineMetrics.forCondition(condition);
 
     try {
       //get latest
@@ -900,11 +1238,7 @@ public class PhoenixHBaseAccessor {
         metric = getAggregateTimelineMetricFromResultSet(rs, aggregateFunction, true);
       }
 
-      if (condition.isGrouped()) {
-        metrics.addOrMergeTimelineMetric(metric);
-      } else {
-        metrics.getMetrics().add(metric.getTimelineMetric());
-      }
+      addSingleValuedMetric(metrics, condition, metric);
     }
   }
 
@@ -930,11 +1264,7 @@ public class PhoenixHBaseAccessor {
               SingleValuedTimelineMetric metric =
                 getAggregateTimelineMetricFromResultSet(rs, f, true);
 
-              if (condition.isGrouped()) {
-                metrics.addOrMergeTimelineMetric(metric);
-              } else {
-                metrics.getMetrics().add(metric.getTimelineMetric());
-              }
+              addSingleValuedMetric(metrics, condition, metric);
             }
           } else {
             SingleValuedTimelineMetric metric =
@@ -975,8 +1305,16 @@ public class PhoenixHBaseAccessor {
       rs.getString("UNITS")
     );
 
-    double value;
+    Double value;
     switch(f.getReadFunction()){
+      case P95:
+      case P99:
+        try {
+          value = TimelineMetricReadHelper.getQuantileFromResultSet(rs, f.getReadFunction().getQuantile());
+        } catch (IOException e) {
+          throw new SQLException("Unable to read metric sketch.", e);
+        }
+        break;
       case AVG:
         value = rs.getDouble("METRIC_SUM") / rs.getInt(countColumnName);
         break;
@@ -999,6 +1337,22 @@ public class PhoenixHBaseAccessor {
     return metric;
   }
 
+  /**
+   * Quantiles of rows without a sketch have no value, those rows are left
+   * out.
+   */
+  private static void addSingleValuedMetric(TimelineMetrics metrics, Condition condition,
+                                            SingleValuedTimelineMetric metric) {
+    if (metric.getValue() == null) {
+      return;
+    }
+    if (condition.isGrouped()) {
+      metrics.addOrMergeTimelineMetric(metric);
+    } else {
+      metrics.getMetrics().add(metric.getTimelineMetric());
+    }
+  }
+
   private void validateConditionIsNotEmpty(Condition condition) {
     if (condition.isEmpty()) {
       throw new IllegalArgumentException("No filter criteria specified.");
@@ -1013,73 +1367,28 @@ public class PhoenixHBaseAccessor {
       return;
     }
 
-    Connection conn = getConnection();
-    PreparedStatement stmt = null;
-
-    long start = System.currentTimeMillis();
-    int rowCount = 0;
-
-    try {
-      stmt = conn.prepareStatement(
-        String.format(UPSERT_AGGREGATE_RECORD_SQL, phoenixTableName));
-
-      for (Map.Entry<TimelineMetric, MetricHostAggregate> metricAggregate :
-        hostAggregateMap.entrySet()) {
-
-        TimelineMetric metric = metricAggregate.getKey();
-        MetricHostAggregate hostAggregate = metricAggregate.getValue();
-
-        rowCount++;
-        stmt.clearParameters();
-        stmt.setString(1, metric.getMetricName());
-        stmt.setString(2, metric.getHostName());
-        stmt.setString(3, metric.getAppId());
-        stmt.setString(4, metric.getInstanceId());
-        stmt.setLong(5, metric.getTimestamp());
-        stmt.setString(6, metric.getType());
-        stmt.setDouble(7, hostAggregate.getSum());
-        stmt.setDouble(8, hostAggregate.getMax());
-        stmt.setDouble(9, hostAggregate.getMin());
-        stmt.setDouble(10, hostAggregate.getNumberOfSamples());
-
-        try {
-          stmt.executeUpdate();
-        } catch (SQLException sql) {
-          LOG.error(sql);
-        }
-
-        if (rowCount >= PHOENIX_MAX_MUTATION_STATE_SIZE - 1) {
-          conn.commit();
-          rowCount = 0;
-        }
-
-      }
-
-      conn.commit();
-
-    } finally {
-      if (stmt != null) {
-        try {
-          stmt.close();
-        } catch (SQLException e) {
-          // Ignore
-        }
-      }
-      if (conn != null) {
-        try {
-          conn.close();
-        } catch (SQLException sql) {
-          // Ignore
+    String sqlStr = String.format(sketchEnabled ?
+      UPSERT_AGGREGATE_RECORD_SKETCH_SQL : UPSERT_AGGREGATE_RECORD_SQL, phoenixTableName);
+    upsertAggregateRecords(sqlStr, phoenixTableName, hostAggregateMap,
+      new AggregateRowBinder<TimelineMetric, MetricHostAggregate>() {
+        @Override
+        public void bind(PreparedStatement stmt, TimelineMetric metric,
+                         MetricHostAggregate hostAggregate) throws SQLException {
+          stmt.setString(1, metric.getMetricName());
+          stmt.setString(2, metric.getHostName());
+          stmt.setString(3, metric.getAppId());
+          stmt.setString(4, metric.getInstanceId());
+          stmt.setLong(5, metric.getTimestamp());
+          stmt.setString(6, metric.getType());
+          stmt.setDouble(7, hostAggregate.getSum());
+          stmt.setDouble(8, hostAggregate.getMax());
+          stmt.setDouble(9, hostAggregate.getMin());
+          stmt.setDouble(10, hostAggregate.getNumberOfSamples());
+          if (sketchEnabled) {
+            setSketch(stmt, 11, hostAggregate.getSketch());
+          }
         }
-      }
-    }
-
-    long end = System.currentTimeMillis();
-
-    if ((end - start) > 60000l) {
-      LOG.info("Time to save map: " + (end - start) + ", " +
-        "thread = " + Thread.currentThread().getClass());
-    }
+      });
   }
 
   /**
@@ -1095,72 +1404,32 @@ public class PhoenixHBaseAccessor {
       return;
     }
 
-    long start = System.currentTimeMillis();
-    String sqlStr = String.format(UPSERT_CLUSTER_AGGREGATE_SQL, METRICS_CLUSTER_AGGREGATE_TABLE_NAME);
-    Connection conn = getConnection();
-    PreparedStatement stmt = null;
-    try {
-      stmt = conn.prepareStatement(sqlStr);
-      int rowCount = 0;
-
-      for (Map.Entry<TimelineClusterMetric, MetricClusterAggregate>
-        aggregateEntry : records.entrySet()) {
-        TimelineClusterMetric clusterMetric = aggregateEntry.getKey();
-        MetricClusterAggregate aggregate = aggregateEntry.getValue();
-
-        if (LOG.isTraceEnabled()) {
-          LOG.trace("clusterMetric = " + clusterMetric + ", " +
-            "aggregate = " + aggregate);
-        }
-
-        rowCount++;
-        stmt.clearParameters();
-        stmt.setString(1, clusterMetric.getMetricName());
-        stmt.setString(2, clusterMetric.getAppId());
-        stmt.setString(3, clusterMetric.getInstanceId());
-        stmt.setLong(4, clusterMetric.getTimestamp());
-        stmt.setString(5, clusterMetric.getType());
-        stmt.setDouble(6, aggregate.getSum());
-        stmt.setInt(7, aggregate.getNumberOfHosts());
-        stmt.setDouble(8, aggregate.getMax());
-        stmt.setDouble(9, aggregate.getMin());
-
-        try {
-          stmt.executeUpdate();
-        } catch (SQLException sql) {
-          // we have no way to verify it works!!!
-          LOG.error(sql);
-        }
-
-        if (rowCount >= PHOENIX_MAX_MUTATION_STATE_SIZE - 1) {
-          conn.commit();
-          rowCount = 0;
-        }
-      }
-
-      conn.commit();
+    String sqlStr = String.format(sketchEnabled ? UPSERT_CLUSTER_AGGREGATE_SKETCH_SQL :
+      UPSERT_CLUSTER_AGGREGATE_SQL, METRICS_CLUSTER_AGGREGATE_TABLE_NAME);
+    upsertAggregateRecords(sqlStr, METRICS_CLUSTER_AGGREGATE_TABLE_NAME, records,
+      new AggregateRowBinder<TimelineClusterMetric, MetricClusterAggregate>() {
+        @Override
+        public void bind(PreparedStatement stmt, TimelineClusterMetric clusterMetric,
+                         MetricClusterAggregate aggregate) throws SQLException {
+          if (LOG.isTraceEnabled()) {
+            LOG.trace("clusterMetric = " + clusterMetric + ", " +
+              "aggregate = " + aggregate);
+          }
 
-    } finally {
-      if (stmt != null) {
-        try {
-          stmt.close();
-        } catch (SQLException e) {
-          // Ignore
-        }
-      }
-      if (conn != null) {
-        try {
-          conn.close();
-        } catch (SQLException sql) {
-          // Ignore
+          stmt.setString(1, clusterMetric.getMetricName());
+          stmt.setString(2, clusterMetric.getAppId());
+          stmt.setString(3, clusterMetric.getInstanceId());
+          stmt.setLong(4, clusterMetric.getTimestamp());
+          stmt.setString(5, clusterMetric.getType());
+          stmt.setDouble(6, aggregate.getSum());
+          stmt.setInt(7, aggregate.getNumberOfHosts());
+          stmt.setDouble(8, aggregate.getMax());
+          stmt.setDouble(9, aggregate.getMin());
+          if (sketchEnabled) {
+            setSketch(stmt, 10, aggregate.getSketch());
+          }
         }
-      }
-    }
-    long end = System.currentTimeMillis();
-    if ((end - start) > 60000l) {
-      LOG.info("Time to save: " + (end - start) + ", " +
-        "thread = " + Thread.currentThread().getName());
-    }
+      });
   }
 
 
@@ -1176,34 +1445,114 @@ public class PhoenixHBaseAccessor {
       return;
     }
 
+    String sqlStr = String.format(sketchEnabled ?
+      UPSERT_CLUSTER_AGGREGATE_TIME_SKETCH_SQL : UPSERT_CLUSTER_AGGREGATE_TIME_SQL, tableName);
+    upsertAggregateRecords(sqlStr, tableName, records,
+      new AggregateRowBinder<TimelineClusterMetric, MetricHostAggregate>() {
+        @Override
+        public void bind(PreparedStatement stmt, TimelineClusterMetric clusterMetric,
+                         MetricHostAggregate aggregate) throws SQLException {
+          if (LOG.isTraceEnabled()) {
+            LOG.trace("clusterMetric = " + clusterMetric + ", " +
+              "aggregate = " + aggregate);
+          }
+
+          stmt.setString(1, clusterMetric.getMetricName());
+          stmt.setString(2, clusterMetric.getAppId());
+          stmt.setString(3, clusterMetric.getInstanceId());
+          stmt.setLong(4, clusterMetric.getTimestamp());
+          stmt.setString(5, clusterMetric.getType());
+          stmt.setDouble(6, aggregate.getSum());
+          stmt.setLong(7, aggregate.getNumberOfSamples());
+          stmt.setDouble(8, aggregate.getMax());
+          stmt.setDouble(9, aggregate.getMin());
+          if (sketchEnabled) {
+            setSketch(stmt, 10, aggregate.getSketch());
+          }
+        }
+      });
+  }
+
+  /**
+   * Sets the parameters of the upsert statement for one aggregate record.
+   */
+  private interface AggregateRowBinder<K, V> {
+    void bind(PreparedStatement stmt, K key, V value) throws SQLException;
+  }
+
+  /**
+   * Upsert the records in partitions of at least the write batch size, each
+   * written and committed on its own connection. Partitions other than the
+   * first are written by the aggregate writer pool while the calling
+   * aggregator thread writes the first one.
+   */
+  private <K, V> void upsertAggregateRecords(final String sqlStr, String tableName,
+                                             Map<K, V> records,
+                                             final AggregateRowBinder<K, V> binder)
+      throws SQLException {
+
     long start = System.currentTimeMillis();
+    List<Map.Entry<K, V>> rows = new ArrayList<>(records.entrySet());
+    int partitions = (int) Math.min(aggregateWriteParallelism,
+      (rows.size() + aggregateWriteBatchSize - 1) / aggregateWriteBatchSize);
+    int partitionSize = (rows.size() + partitions - 1) / partitions;
+    // Rounding up the size can leave the last partitions without rows
+    partitions = (rows.size() + partitionSize - 1) / partitionSize;
+
+    List<Future<Void>> futures = new ArrayList<>(partitions - 1);
+    try {
+      for (int i = 1; i < partitions; i++) {
+        final List<Map.Entry<K, V>> partition =
+          rows.subList(Math.min(rows.size(), i * partitionSize),
+            Math.min(rows.size(), (i + 1) * partitionSize));
+        futures.add(getAggregateWriterPool().submit(new Callable<Void>() {
+          @Override
+          public Void call() throws SQLException {
+            upsertAggregateRecords(sqlStr, partition, binder);
+            return null;
+          }
+        }));
+      }
+      upsertAggregateRecords(sqlStr, rows.subList(0, Math.min(rows.size(), partitionSize)), binder);
 
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while saving aggregate records to " + tableName, e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof SQLException) {
+        throw (SQLException) e.getCause();
+      }
+      throw new SQLException("Failed to save aggregate records to " + tableName, e.getCause());
+    } finally {
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+    }
+
+    if (LOG.isDebugEnabled()) {
+      long time = Math.max(1, System.currentTimeMillis() - start);
+      LOG.debug("Saved " + rows.size() + " aggregate records to " + tableName + " in " + time +
+        " ms over " + partitions + " connections, " + rows.size() * 1000L / time + " rows/s, " +
+        "thread = " + Thread.currentThread().getName());
+    }
+  }
+
+  private <K, V> void upsertAggregateRecords(String sqlStr, List<Map.Entry<K, V>> rows,
+                                             AggregateRowBinder<K, V> binder)
+      throws SQLException {
     Connection conn = getConnection();
     PreparedStatement stmt = null;
     try {
-      stmt = conn.prepareStatement(String.format(UPSERT_CLUSTER_AGGREGATE_TIME_SQL, tableName));
+      stmt = conn.prepareStatement(sqlStr);
       int rowCount = 0;
 
-      for (Map.Entry<TimelineClusterMetric, MetricHostAggregate> aggregateEntry : records.entrySet()) {
-        TimelineClusterMetric clusterMetric = aggregateEntry.getKey();
-        MetricHostAggregate aggregate = aggregateEntry.getValue();
-
-        if (LOG.isTraceEnabled()) {
-          LOG.trace("clusterMetric = " + clusterMetric + ", " +
-            "aggregate = " + aggregate);
-        }
-
+      for (Map.Entry<K, V> row : rows) {
         rowCount++;
         stmt.clearParameters();
-        stmt.setString(1, clusterMetric.getMetricName());
-        stmt.setString(2, clusterMetric.getAppId());
-        stmt.setString(3, clusterMetric.getInstanceId());
-        stmt.setLong(4, clusterMetric.getTimestamp());
-        stmt.setString(5, clusterMetric.getType());
-        stmt.setDouble(6, aggregate.getSum());
-        stmt.setLong(7, aggregate.getNumberOfSamples());
-        stmt.setDouble(8, aggregate.getMax());
-        stmt.setDouble(9, aggregate.getMin());
+        binder.bind(stmt, row.getKey(), row.getValue());
 
         try {
           stmt.executeUpdate();
@@ -1212,7 +1561,7 @@ public class PhoenixHBaseAccessor {
           LOG.error(sql);
         }
 
-        if (rowCount >= PHOENIX_MAX_MUTATION_STATE_SIZE - 1) {
+        if (rowCount >= aggregateWriteBatchSize) {
           conn.commit();
           rowCount = 0;
         }
@@ -1236,13 +1585,43 @@ public class PhoenixHBaseAccessor {
         }
       }
     }
-    long end = System.currentTimeMillis();
-    if ((end - start) > 60000l) {
-      LOG.info("Time to save: " + (end - start) + ", " +
-        "thread = " + Thread.currentThread().getName());
+  }
+
+  private synchronized ExecutorService getAggregateWriterPool() {
+    if (aggregateWriterPool == null) {
+      final AtomicInteger threadCount = new AtomicInteger();
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(aggregateWriteParallelism, aggregateWriteParallelism,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "timeline-metrics-aggregate-writer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+      pool.allowCoreThreadTimeOut(true);
+      aggregateWriterPool = pool;
+    }
+    return aggregateWriterPool;
+  }
+
+  private static void setSketch(PreparedStatement stmt, int index, MetricSketch sketch)
+      throws SQLException {
+    if (sketch == null || sketch.isEmpty()) {
+      stmt.setNull(index, Types.VARBINARY);
+    } else {
+      stmt.setBytes(index, sketch.toBytes());
     }
   }
 
+  /**
+   * Keep quantile sketches with the aggregates.
+   */
+  public boolean isSketchEnabled() {
+    return sketchEnabled;
+  }
+
   /**
    * Provide skip block cache hint for aggregator queries.
    */
@@ -1372,8 +1751,13 @@ public class PhoenixHBaseAccessor {
       rs = stmt.executeQuery();
 
       while (rs.next()) {
+        String appIds = rs.getString("APP_IDS");
+        // Host with an id but no apps synced yet
+        if (appIds == null) {
+          continue;
+        }
         hostedAppMap.put(rs.getString("HOSTNAME"),
-          new HashSet<>(Arrays.asList(StringUtils.split(rs.getString("APP_IDS"), ","))));
+          new HashSet<>(Arrays.asList(StringUtils.split(appIds, ","))));
       }
 
     } finally {
@@ -1415,6 +1799,10 @@ public class PhoenixHBaseAccessor {
       rs = stmt.executeQuery();
 
       while (rs.next()) {
+        // Metric with an id but without metadata, e.g. filtered from the cache
+        if (rs.getObject("SUPPORTS_AGGREGATION") == null) {
+          continue;
+        }
         String metricName = rs.getString("METRIC_NAME");
         String appId = rs.getString("APP_ID");
         TimelineMetricMetadata metadata = new TimelineMetricMetadata(
@@ -1458,4 +1846,176 @@ public class PhoenixHBaseAccessor {
     return metadataMap;
   }
 
+  /**
+   * Save the metric ids of the dictionary with the metric metadata.
+   * @param metricUuids ids and their start times by metric name and appId
+   * @throws SQLException
+   */
+  public void saveMetricUuids(Map<TimelineMetricMetadataKey, TimelineMetricUuid> metricUuids) throws SQLException {
+    if (metricUuids.isEmpty()) {
+      return;
+    }
+
+    Connection conn = getConnection();
+    PreparedStatement stmt = null;
+
+    try {
+      stmt = conn.prepareStatement(UPSERT_METRIC_UUID_SQL);
+      for (Map.Entry<TimelineMetricMetadataKey, TimelineMetricUuid> entry : metricUuids.entrySet()) {
+        stmt.clearParameters();
+        stmt.setString(1, entry.getKey().getMetricName());
+        stmt.setString(2, entry.getKey().getAppId());
+        stmt.setBytes(3, Bytes.toBytes(entry.getValue().getUuid()));
+        stmt.setLong(4, entry.getValue().getStartTime());
+        stmt.executeUpdate();
+      }
+      conn.commit();
+      LOG.info("Saved " + metricUuids.size() + " metric ids.");
+
+    } finally {
+      if (stmt != null) {
+        try {
+          stmt.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+      if (conn != null) {
+        try {
+          conn.close();
+        } catch (SQLException sql) {
+          // Ignore
+        }
+      }
+    }
+  }
+
+  /**
+   * Save the host ids of the dictionary with the hosted apps metadata.
+   * @param hostUuids ids and their start times by hostname
+   * @throws SQLException
+   */
+  public void saveHostUuids(Map<String, TimelineMetricUuid> hostUuids) throws SQLException {
+    if (hostUuids.isEmpty()) {
+      return;
+    }
+
+    Connection conn = getConnection();
+    PreparedStatement stmt = null;
+
+    try {
+      stmt = conn.prepareStatement(UPSERT_HOST_UUID_SQL);
+      for (Map.Entry<String, TimelineMetricUuid> entry : hostUuids.entrySet()) {
+        stmt.clearParameters();
+        stmt.setString(1, entry.getKey());
+        stmt.setBytes(2, Bytes.toBytes((int) entry.getValue().getUuid()));
+        stmt.setLong(3, entry.getValue().getStartTime());
+        stmt.executeUpdate();
+      }
+      conn.commit();
+      LOG.info("Saved " + hostUuids.size() + " host ids.");
+
+    } finally {
+      if (stmt != null) {
+        try {
+          stmt.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+      if (conn != null) {
+        try {
+          conn.close();
+        } catch (SQLException sql) {
+          // Ignore
+        }
+      }
+    }
+  }
+
+  public Map<TimelineMetricMetadataKey, TimelineMetricUuid> getMetricUuids() throws SQLException {
+    Map<TimelineMetricMetadataKey, TimelineMetricUuid> metricUuids = new HashMap<>();
+    Connection conn = getConnection();
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+
+    try {
+      stmt = conn.prepareStatement(GET_METRIC_UUID_SQL);
+      rs = stmt.executeQuery();
+
+      while (rs.next()) {
+        metricUuids.put(new TimelineMetricMetadataKey(rs.getString("METRIC_NAME"),
+          rs.getString("APP_ID")), new TimelineMetricUuid(Bytes.toLong(rs.getBytes("UUID")),
+          rs.getLong("UUID_START_TIME")));
+      }
+
+    } finally {
+      if (rs != null) {
+        try {
+          rs.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+      if (stmt != null) {
+        try {
+          stmt.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+      if (conn != null) {
+        try {
+          conn.close();
+        } catch (SQLException sql) {
+          // Ignore
+        }
+      }
+    }
+
+    return metricUuids;
+  }
+
+  public Map<String, TimelineMetricUuid> getHostUuids() throws SQLException {
+    Map<String, TimelineMetricUuid> hostUuids = new HashMap<>();
+    Connection conn = getConnection();
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+
+    try {
+      stmt = conn.prepareStatement(GET_HOST_UUID_SQL);
+      rs = stmt.executeQuery();
+
+      while (rs.next()) {
+        hostUuids.put(rs.getString("HOSTNAME"), new TimelineMetricUuid(
+          Bytes.toInt(rs.getBytes("UUID")), rs.getLong("UUID_START_TIME")));
+      }
+
+    } finally {
+      if (rs != null) {
+        try {
+          rs.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+      if (stmt != null) {
+        try {
+          stmt.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+      if (conn != null) {
+        try {
+          conn.close();
+        } catch (SQLException sql) {
+          // Ignore
+        }
+      }
+    }
+
+    return hostUuids;
+  }
+
 }
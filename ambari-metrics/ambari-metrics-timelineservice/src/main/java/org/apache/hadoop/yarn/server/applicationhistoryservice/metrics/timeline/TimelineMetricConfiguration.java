@@ -231,6 +231,57 @@ public class TimelineMetricConfiguration {
   public static final String TIMELINE_METRIC_METADATA_FILTERS =
     "timeline.metrics.service.metadata.filters";
 
+  public static final String TIMELINE_METRICS_UUID_SCHEMA_ENABLED =
+    "timeline.metrics.service.uuid.schema.enabled";
+
+  public static final String TIMELINE_METRICS_AGGREGATE_SKETCH_ENABLED =
+    "timeline.metrics.service.aggregate.sketch.enabled";
+
+  public static final String TIMELINE_METRICS_HOT_TIER_ENABLED =
+    "timeline.metrics.service.hot.tier.enabled";
+
+  public static final String TIMELINE_METRICS_HOT_TIER_WINDOW_SECONDS =
+    "timeline.metrics.service.hot.tier.window.seconds";
+
+  public static final String TIMELINE_METRICS_HOT_TIER_SEGMENT_SECONDS =
+    "timeline.metrics.service.hot.tier.segment.seconds";
+
+  public static final String TIMELINE_METRICS_HOT_TIER_MEMORY_MB =
+    "timeline.metrics.service.hot.tier.memory.mb";
+
+  public static final String TIMELINE_METRICS_QUERY_THREADS =
+    "timeline.metrics.service.query.threads";
+
+  public static final String TIMELINE_METRICS_QUERY_METRICS_PER_SPLIT =
+    "timeline.metrics.service.query.split.metrics";
+
+  public static final String TIMELINE_METRICS_QUERY_HOSTS_PER_SPLIT =
+    "timeline.metrics.service.query.split.hosts";
+
+  public static final String TIMELINE_METRICS_QUERY_TIMEOUT_SECONDS =
+    "timeline.metrics.service.query.timeout.seconds";
+
+  public static final String TIMELINE_METRICS_AGGREGATION_SHARDS =
+    "timeline.metrics.service.aggregation.shards";
+
+  public static final String TIMELINE_METRICS_AGGREGATE_WRITE_BATCH_SIZE =
+    "timeline.metrics.service.aggregate.write.batch.size";
+
+  public static final String TIMELINE_METRICS_AGGREGATE_WRITE_PARALLELISM =
+    "timeline.metrics.service.aggregate.write.parallelism";
+
+  public static final String TIMELINE_METRICS_QUERY_CACHE_ENABLED =
+    "timeline.metrics.service.query.cache.enabled";
+
+  public static final String TIMELINE_METRICS_QUERY_CACHE_MEMORY_MB =
+    "timeline.metrics.service.query.cache.memory.mb";
+
+  public static final String TIMELINE_METRICS_QUERY_CACHE_FRESHNESS_SECONDS =
+    "timeline.metrics.service.query.cache.freshness.seconds";
+
+  public static final String TIMELINE_METRICS_QUERY_CACHE_TTL_SECONDS =
+    "timeline.metrics.service.query.cache.ttl.seconds";
+
   public static final String HBASE_BLOCKING_STORE_FILES =
     "hbase.hstore.blockingStoreFiles";
 
@@ -369,6 +420,17 @@ public class TimelineMetricConfiguration {
     return 3;
   }
 
+  /**
+   * Number of metric name hash ranges the aggregation work is split into
+   * across the collectors of a distributed deployment.
+   */
+  public int getAggregationShards() {
+    if (metricsConf != null) {
+      return Integer.parseInt(metricsConf.get(TIMELINE_METRICS_AGGREGATION_SHARDS, "1"));
+    }
+    return 1;
+  }
+
   public String getTimelineServiceRpcAddress() {
     String defaultRpcAddress = "0.0.0.0:60200";
     if (metricsConf != null) {
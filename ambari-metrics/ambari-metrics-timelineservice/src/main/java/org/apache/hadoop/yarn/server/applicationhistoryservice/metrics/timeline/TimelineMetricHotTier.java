@@ -0,0 +1,393 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.Interns;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
+import org.apache.hadoop.metrics2.sink.timeline.Precision;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.TopNCondition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.OUT_OFF_BAND_DATA_TIME_ALLOWANCE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_HOT_TIER_MEMORY_MB;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_HOT_TIER_SEGMENT_SECONDS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_HOT_TIER_WINDOW_SECONDS;
+
+/**
+ * Keeps the precision records written by this collector in memory, in time
+ * segments of SERVER_TIME, for the last window (2 hours by default) and up to
+ * a memory budget. Oldest segments are dropped first.
+ *
+ * The tier only knows what was written since it was started and since the
+ * last dropped segment, see {@link #getCoverageStartTime()}, queries for
+ * older data have to go to HBase. That way a restarted collector falls back
+ * to HBase until it has received a full window again.
+ */
+public class TimelineMetricHotTier implements MetricsSource {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricHotTier.class);
+
+  // Rough heap cost of a record and of a single value in its TreeMap
+  static final long RECORD_OVERHEAD_BYTES = 200;
+  static final long VALUE_OVERHEAD_BYTES = 88;
+
+  private final long windowMillis;
+  private final long segmentMillis;
+  private final long memoryBudgetBytes;
+  private final long outOfBandTimeAllowance;
+
+  private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+  // Puts share the read lock, dropping segments takes the write lock
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final AtomicLong memoryBytes = new AtomicLong();
+  private volatile long coverageStartTime;
+
+  private final MetricsRegistry registry = new MetricsRegistry("TimelineMetricHotTier");
+  private final MutableCounterLong hits = registry.newCounter("hotTierHits",
+    "Queries answered from memory", 0L);
+  private final MutableCounterLong partialHits = registry.newCounter("hotTierPartialHits",
+    "Queries answered from memory and HBase", 0L);
+  private final MutableCounterLong misses = registry.newCounter("hotTierMisses",
+    "Precision queries answered from HBase", 0L);
+  private final MutableGaugeLong memoryGauge = registry.newGauge("hotTierMemoryBytes",
+    "Estimated heap used by the records", 0L);
+  private final MutableGaugeLong segmentsGauge = registry.newGauge("hotTierSegments",
+    "Number of time segments", 0L);
+
+  private static class Record {
+    final long serverTime;
+    final TimelineMetric metric;
+
+    Record(long serverTime, TimelineMetric metric) {
+      this.serverTime = serverTime;
+      this.metric = metric;
+    }
+  }
+
+  private static class Segment {
+    final long startTime;
+    final long endTime;
+    final ConcurrentMap<String, Queue<Record>> recordsByMetricName = new ConcurrentHashMap<>();
+    final AtomicLong sizeBytes = new AtomicLong();
+
+    Segment(long startTime, long endTime) {
+      this.startTime = startTime;
+      this.endTime = endTime;
+    }
+  }
+
+  public TimelineMetricHotTier(Configuration metricsConf) {
+    this(metricsConf.getLong(TIMELINE_METRICS_HOT_TIER_WINDOW_SECONDS, 7200) * 1000,
+      metricsConf.getLong(TIMELINE_METRICS_HOT_TIER_SEGMENT_SECONDS, 600) * 1000,
+      metricsConf.getLong(TIMELINE_METRICS_HOT_TIER_MEMORY_MB, 256) * 1024 * 1024,
+      metricsConf.getLong(OUT_OFF_BAND_DATA_TIME_ALLOWANCE,
+        PhoenixHBaseAccessor.DEFAULT_OUT_OF_BAND_TIME_ALLOWANCE),
+      System.currentTimeMillis());
+  }
+
+  TimelineMetricHotTier(long windowMillis, long segmentMillis, long memoryBudgetBytes,
+                        long outOfBandTimeAllowance, long startTime) {
+    this.windowMillis = windowMillis;
+    this.segmentMillis = Math.max(1000, Math.min(segmentMillis, windowMillis));
+    this.memoryBudgetBytes = memoryBudgetBytes;
+    this.outOfBandTimeAllowance = outOfBandTimeAllowance;
+    this.coverageStartTime = startTime;
+    LOG.info("Hot tier window = " + windowMillis + " ms, segment = " +
+      this.segmentMillis + " ms, memory budget = " + memoryBudgetBytes + " bytes.");
+  }
+
+  /**
+   * Records with a SERVER_TIME from this time on are all in memory
+   */
+  public long getCoverageStartTime() {
+    return coverageStartTime;
+  }
+
+  public long getMemoryBytes() {
+    return memoryBytes.get();
+  }
+
+  /**
+   * Add the records just committed to the store with the given SERVER_TIME.
+   * Copies of the records are kept, the caller can reuse the metrics.
+   */
+  public void put(TimelineMetrics metrics, long serverTime) {
+    if (metrics.getMetrics() == null || metrics.getMetrics().isEmpty()) {
+      return;
+    }
+    lock.readLock().lock();
+    try {
+      // Segment dropped for the memory budget
+      if (serverTime < coverageStartTime) {
+        return;
+      }
+      long segmentStart = serverTime - serverTime % segmentMillis;
+      Segment segment = segments.get(segmentStart);
+      if (segment == null) {
+        Segment newSegment = new Segment(segmentStart, segmentStart + segmentMillis);
+        segment = segments.putIfAbsent(segmentStart, newSegment);
+        if (segment == null) {
+          segment = newSegment;
+        }
+      }
+
+      long addedBytes = 0;
+      for (TimelineMetric metric : metrics.getMetrics()) {
+        // Same rule as the store, out of band data is not written
+        if (Math.abs(serverTime - metric.getStartTime()) > outOfBandTimeAllowance) {
+          continue;
+        }
+        Queue<Record> records = segment.recordsByMetricName.get(metric.getMetricName());
+        if (records == null) {
+          Queue<Record> newRecords = new ConcurrentLinkedQueue<>();
+          records = segment.recordsByMetricName.putIfAbsent(metric.getMetricName(), newRecords);
+          records = records == null ? newRecords : records;
+        }
+        records.add(new Record(serverTime, new TimelineMetric(metric)));
+        addedBytes += estimateSize(metric);
+      }
+      segment.sizeBytes.addAndGet(addedBytes);
+      memoryBytes.addAndGet(addedBytes);
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    Map.Entry<Long, Segment> oldest = segments.firstEntry();
+    if (memoryBytes.get() > memoryBudgetBytes
+        || (oldest != null && oldest.getValue().endTime <= serverTime - windowMillis)) {
+      evict(serverTime);
+    }
+  }
+
+  private void evict(long now) {
+    lock.writeLock().lock();
+    try {
+      while (!segments.isEmpty()) {
+        Segment oldest = segments.firstEntry().getValue();
+        if (oldest.endTime > now - windowMillis && memoryBytes.get() <= memoryBudgetBytes) {
+          break;
+        }
+        segments.remove(oldest.startTime);
+        memoryBytes.addAndGet(-oldest.sizeBytes.get());
+        if (oldest.endTime > coverageStartTime) {
+          coverageStartTime = oldest.endTime;
+        }
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Dropped hot tier segment starting at " + oldest.startTime +
+            ", coverage starts at " + coverageStartTime);
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    memoryGauge.set(memoryBytes.get());
+    segmentsGauge.set(segments.size());
+  }
+
+  static long estimateSize(TimelineMetric metric) {
+    int values = metric.getMetricValues() == null ? 0 : metric.getMetricValues().size();
+    return RECORD_OVERHEAD_BYTES + VALUE_OVERHEAD_BYTES * values
+      + 2 * (length(metric.getMetricName()) + length(metric.getHostName())
+      + length(metric.getAppId()) + length(metric.getInstanceId()));
+  }
+
+  private static int length(String str) {
+    return str == null ? 0 : str.length();
+  }
+
+  /**
+   * Host level precision queries without patterns, TopN or aggregate
+   * functions can be answered from memory.
+   */
+  public boolean canServe(Condition condition, Map<String, List<Function>> metricFunctions) {
+    if (condition instanceof TopNCondition || condition.getStatement() != null
+        || condition.getStartTime() == null || condition.getEndTime() == null
+        || condition.getHostnames() == null || condition.getHostnames().isEmpty()) {
+      return false;
+    }
+    Precision precision = condition.getPrecision() != null ? condition.getPrecision() :
+      Precision.getPrecision(condition.getStartTime(), condition.getEndTime());
+    if (precision != Precision.SECONDS) {
+      return false;
+    }
+    for (String hostname : condition.getHostnames()) {
+      if (hostname.contains("%")) {
+        return false;
+      }
+    }
+    for (Map.Entry<String, List<Function>> entry : metricFunctions.entrySet()) {
+      if (entry.getKey().contains("%")) {
+        return false;
+      }
+      for (Function f : entry.getValue()) {
+        if (f.getReadFunction() != Function.ReadFunction.VALUE) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Records with a SERVER_TIME in [startTime, endTime) matching the
+   * condition, built the same way as from the precision table.
+   */
+  public TimelineMetrics getMetrics(Condition condition,
+                                    Map<String, List<Function>> metricFunctions,
+                                    long startTime, long endTime) {
+    Set<String> hostnames = new HashSet<>(condition.getHostnames());
+    String appId = condition.getAppId();
+    String instanceId = condition.getInstanceId();
+
+    List<Record> matches = new ArrayList<>();
+    long fromSegment = startTime - startTime % segmentMillis;
+    for (Segment segment : segments.subMap(fromSegment, true, endTime, false).values()) {
+      for (String metricName : metricFunctions.keySet()) {
+        Queue<Record> records = segment.recordsByMetricName.get(metricName);
+        if (records == null) {
+          continue;
+        }
+        for (Record record : records) {
+          TimelineMetric metric = record.metric;
+          if (record.serverTime >= startTime && record.serverTime < endTime
+              && hostnames.contains(metric.getHostName())
+              && (appId == null || appId.equals(metric.getAppId()))
+              && (instanceId == null || instanceId.equals(metric.getInstanceId()))) {
+            matches.add(record);
+          }
+        }
+      }
+    }
+
+    // Same order as the precision table query
+    Collections.sort(matches, new Comparator<Record>() {
+      @Override
+      public int compare(Record r1, Record r2) {
+        int result = r1.metric.getMetricName().compareTo(r2.metric.getMetricName());
+        if (result == 0) {
+          result = Long.compare(r1.serverTime, r2.serverTime);
+        }
+        return result;
+      }
+    });
+
+    Integer limit = condition.getLimit();
+    TimelineMetrics metrics = DownsampledTimelineMetrics.forCondition(condition);
+    int count = 0;
+    for (Record record : matches) {
+      if (limit != null && count++ >= limit) {
+        break;
+      }
+      List<Function> functions = metricFunctions.get(record.metric.getMetricName());
+      String suffix = functions == null || functions.isEmpty() ? null : functions.get(0).getSuffix();
+      TimelineMetric metric = copy(record, suffix);
+      if (condition.isGrouped()) {
+        metrics.addOrMergeTimelineMetric(metric);
+      } else {
+        metrics.getMetrics().add(metric);
+      }
+    }
+    return metrics;
+  }
+
+  /**
+   * First rows in the order of the precision table query, by metric name
+   * and SERVER_TIME, of rows read from HBase and from memory. Rows of the
+   * same metric and time keep their order.
+   */
+  static List<TimelineMetric> limitRows(List<TimelineMetric> rows, int limit) {
+    List<TimelineMetric> sorted = new ArrayList<TimelineMetric>(rows);
+    Collections.sort(sorted, new Comparator<TimelineMetric>() {
+      @Override
+      public int compare(TimelineMetric m1, TimelineMetric m2) {
+        int result = m1.getMetricName().compareTo(m2.getMetricName());
+        if (result == 0) {
+          result = Long.compare(m1.getTimestamp(), m2.getTimestamp());
+        }
+        return result;
+      }
+    });
+    return sorted.size() > limit ? sorted.subList(0, limit) : sorted;
+  }
+
+  private static TimelineMetric copy(Record record, String suffix) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(suffix == null ? record.metric.getMetricName() :
+      record.metric.getMetricName() + suffix);
+    metric.setAppId(record.metric.getAppId());
+    metric.setInstanceId(record.metric.getInstanceId());
+    metric.setHostName(record.metric.getHostName());
+    metric.setTimestamp(record.serverTime);
+    metric.setStartTime(record.metric.getStartTime());
+    metric.setType(record.metric.getUnits());
+    metric.setMetricValues(record.metric.getMetricValues() == null ?
+      new TreeMap<Long, Double>() : new TreeMap<>(record.metric.getMetricValues()));
+    return metric;
+  }
+
+  void recordHit() {
+    hits.incr();
+  }
+
+  void recordPartialHit() {
+    partialHits.incr();
+  }
+
+  void recordMiss() {
+    misses.incr();
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    memoryGauge.set(memoryBytes.get());
+    segmentsGauge.set(segments.size());
+    MetricsRecordBuilder builder = collector.addRecord(registry.info());
+    registry.snapshot(builder, all);
+    long total = hits.value() + partialHits.value() + misses.value();
+    builder.addGauge(Interns.info("hotTierHitRatio", "Share of precision queries answered from memory"),
+      total == 0 ? 0f : (float) (hits.value() + partialHits.value()) / total);
+  }
+}
@@ -0,0 +1,391 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.Interns;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
+import org.apache.hadoop.metrics2.sink.timeline.Precision;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.ConditionBuilder;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.TopNCondition;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_DAILY_CHECKPOINT_CUTOFF_MULTIPLIER;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_DAILY_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_HOUR_CHECKPOINT_CUTOFF_MULTIPLIER;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_HOUR_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_MINUTE_CHECKPOINT_CUTOFF_MULTIPLIER;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_MINUTE_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_SECOND_CHECKPOINT_CUTOFF_MULTIPLIER;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_SECOND_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_DAILY_CHECKPOINT_CUTOFF_MULTIPLIER;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_DAILY_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_HOUR_CHECKPOINT_CUTOFF_MULTIPLIER;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_HOUR_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_MINUTE_CHECKPOINT_CUTOFF_MULTIPLIER;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_MINUTE_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_CACHE_FRESHNESS_SECONDS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_CACHE_MEMORY_MB;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_CACHE_TTL_SECONDS;
+
+/**
+ * Caches the results of range queries in time buckets aligned to the
+ * precision of the query (10 minutes for seconds, 2 hours for minutes,
+ * a day for hours and 30 days for days precision), keyed by the metrics
+ * and their functions, hosts, app, instance, precision and grouping.
+ *
+ * Only sealed buckets are cached: buckets that end before the write lag of
+ * the aggregator feeding the table, plus a freshness horizon, so that late
+ * rows, like the ones written by the cluster second aggregator, are never
+ * missed. The rest of the range is read from the store on every request,
+ * so a dashboard refreshing a sliding window only reads its newest part.
+ * Buckets partly covered by the requested range are trimmed on the
+ * timestamps of the values.
+ *
+ * Entries expire after a time to live and the least recently used ones are
+ * evicted when the memory budget is exceeded.
+ */
+public class TimelineMetricQueryCache implements MetricsSource {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricQueryCache.class);
+
+  private static final long MINUTE = 60000;
+  private static final long HOUR = 60 * MINUTE;
+  private static final long DAY = 24 * HOUR;
+  // Requests over more buckets go straight to the store
+  static final int MAX_BUCKETS_PER_QUERY = 64;
+  static final long ENTRY_OVERHEAD_BYTES = 300;
+
+  private final long memoryBudgetBytes;
+  private final long freshnessMillis;
+  private final long ttlMillis;
+  private final Map<Precision, Long> writeLagMillis;
+
+  // Access ordered for LRU eviction, guarded by this
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long memoryBytes;
+
+  private final MetricsRegistry registry = new MetricsRegistry("TimelineMetricQueryCache");
+  private final MutableCounterLong hits = registry.newCounter("queryCacheHits",
+    "Time buckets read from the cache", 0L);
+  private final MutableCounterLong misses = registry.newCounter("queryCacheMisses",
+    "Time buckets read from the store and cached", 0L);
+  private final MutableCounterLong bypasses = registry.newCounter("queryCacheBypasses",
+    "Queries that cannot be cached", 0L);
+  private final MutableCounterLong evictions = registry.newCounter("queryCacheEvictions",
+    "Entries evicted for the memory budget or expired", 0L);
+  private final MutableGaugeLong memoryGauge = registry.newGauge("queryCacheMemoryBytes",
+    "Estimated heap used by the entries", 0L);
+  private final MutableGaugeLong entriesGauge = registry.newGauge("queryCacheEntries",
+    "Number of cached time buckets", 0L);
+
+  private static class Entry {
+    final List<TimelineMetric> metrics;
+    final long sizeBytes;
+    final long expiryTime;
+
+    Entry(List<TimelineMetric> metrics, long sizeBytes, long expiryTime) {
+      this.metrics = metrics;
+      this.sizeBytes = sizeBytes;
+      this.expiryTime = expiryTime;
+    }
+  }
+
+  public TimelineMetricQueryCache(Configuration metricsConf) {
+    this(metricsConf.getLong(TIMELINE_METRICS_QUERY_CACHE_MEMORY_MB, 128) * 1024 * 1024,
+      metricsConf.getLong(TIMELINE_METRICS_QUERY_CACHE_FRESHNESS_SECONDS, 120) * 1000,
+      metricsConf.getLong(TIMELINE_METRICS_QUERY_CACHE_TTL_SECONDS, 3600) * 1000,
+      getWriteLagMillis(metricsConf));
+  }
+
+  TimelineMetricQueryCache(long memoryBudgetBytes, long freshnessMillis, long ttlMillis,
+                           Map<Precision, Long> writeLagMillis) {
+    this.memoryBudgetBytes = memoryBudgetBytes;
+    this.freshnessMillis = freshnessMillis;
+    this.ttlMillis = ttlMillis;
+    this.writeLagMillis = writeLagMillis;
+    LOG.info("Query cache memory budget = " + memoryBudgetBytes + " bytes, freshness = " +
+      freshnessMillis + " ms, ttl = " + ttlMillis + " ms, write lag = " + writeLagMillis);
+  }
+
+  /**
+   * Longest time after which the aggregators write the rows of a table,
+   * an aggregator that fell behind catches up to its checkpoint cutoff.
+   */
+  static Map<Precision, Long> getWriteLagMillis(Configuration metricsConf) {
+    Map<Precision, Long> lag = new EnumMap<>(Precision.class);
+    lag.put(Precision.SECONDS, getAggregatorLagMillis(metricsConf,
+      CLUSTER_AGGREGATOR_SECOND_SLEEP_INTERVAL, 120, CLUSTER_AGGREGATOR_SECOND_CHECKPOINT_CUTOFF_MULTIPLIER, 2));
+    lag.put(Precision.MINUTES, Math.max(
+      getAggregatorLagMillis(metricsConf,
+        HOST_AGGREGATOR_MINUTE_SLEEP_INTERVAL, 300, HOST_AGGREGATOR_MINUTE_CHECKPOINT_CUTOFF_MULTIPLIER, 3),
+      getAggregatorLagMillis(metricsConf,
+        CLUSTER_AGGREGATOR_MINUTE_SLEEP_INTERVAL, 300, CLUSTER_AGGREGATOR_MINUTE_CHECKPOINT_CUTOFF_MULTIPLIER, 2)));
+    lag.put(Precision.HOURS, Math.max(
+      getAggregatorLagMillis(metricsConf,
+        HOST_AGGREGATOR_HOUR_SLEEP_INTERVAL, 3600, HOST_AGGREGATOR_HOUR_CHECKPOINT_CUTOFF_MULTIPLIER, 2),
+      getAggregatorLagMillis(metricsConf,
+        CLUSTER_AGGREGATOR_HOUR_SLEEP_INTERVAL, 3600, CLUSTER_AGGREGATOR_HOUR_CHECKPOINT_CUTOFF_MULTIPLIER, 2)));
+    lag.put(Precision.DAYS, Math.max(
+      getAggregatorLagMillis(metricsConf,
+        HOST_AGGREGATOR_DAILY_SLEEP_INTERVAL, 86400, HOST_AGGREGATOR_DAILY_CHECKPOINT_CUTOFF_MULTIPLIER, 1),
+      getAggregatorLagMillis(metricsConf,
+        CLUSTER_AGGREGATOR_DAILY_SLEEP_INTERVAL, 86400, CLUSTER_AGGREGATOR_DAILY_CHECKPOINT_CUTOFF_MULTIPLIER, 1)));
+    return lag;
+  }
+
+  private static long getAggregatorLagMillis(Configuration metricsConf,
+      String intervalKey, long defaultInterval, String multiplierKey, int defaultMultiplier) {
+    long intervalMillis = metricsConf.getLong(intervalKey, defaultInterval) * 1000;
+    return intervalMillis * (metricsConf.getInt(multiplierKey, defaultMultiplier) + 1);
+  }
+
+  static long getBucketMillis(Precision precision) {
+    switch (precision) {
+      case DAYS:
+        return 30 * DAY;
+      case HOURS:
+        return DAY;
+      case MINUTES:
+        return 2 * HOUR;
+      default:
+        return 10 * MINUTE;
+    }
+  }
+
+  /**
+   * Range queries without TopN or a limit below the default result set limit.
+   */
+  public boolean canCache(Condition condition) {
+    Integer limit = condition.getLimit();
+    return !(condition instanceof TopNCondition) && condition.getStatement() == null
+      && condition.getMetricNames() != null && !condition.isPointInTime()
+      && condition.getStartTime() != null && condition.getEndTime() != null
+      && condition.getEndTime() > condition.getStartTime()
+      && (limit == null || limit >= PhoenixHBaseAccessor.RESULTSET_LIMIT);
+  }
+
+  public TimelineMetrics execute(Condition condition, Map<String, List<Function>> metricFunctions,
+                                 TimelineMetricQueryExecutor.MetricsQuery query)
+      throws SQLException, IOException {
+    return execute(condition, metricFunctions, query, System.currentTimeMillis());
+  }
+
+  TimelineMetrics execute(Condition condition, Map<String, List<Function>> metricFunctions,
+                          TimelineMetricQueryExecutor.MetricsQuery query, long now)
+      throws SQLException, IOException {
+    if (!canCache(condition)) {
+      bypasses.incr();
+      return query.execute(condition);
+    }
+
+    long startTime = condition.getStartTime();
+    long endTime = condition.getEndTime();
+    // All buckets have to read the table of the whole range
+    Precision precision = condition.getPrecision() != null ? condition.getPrecision() :
+      Precision.getPrecision(startTime, endTime);
+    long bucketMillis = getBucketMillis(precision);
+    long firstBucket = startTime - startTime % bucketMillis;
+    long sealedTime = now - writeLagMillis.get(precision) - freshnessMillis;
+    if (firstBucket + bucketMillis > sealedTime
+        || (endTime - firstBucket) / bucketMillis > MAX_BUCKETS_PER_QUERY) {
+      bypasses.incr();
+      return query.execute(condition);
+    }
+    // Limits apply to the request as a whole
+    PhoenixTransactSQL.validateRowCountLimit(createCondition(condition, startTime, endTime, precision));
+
+    String queryKey = getQueryKey(condition, metricFunctions, precision);
+    List<TimelineMetric> results = new ArrayList<>();
+    for (long bucketStart = firstBucket; bucketStart < endTime; bucketStart += bucketMillis) {
+      long bucketEnd = bucketStart + bucketMillis;
+      if (bucketEnd > sealedTime) {
+        // Not sealed yet, read the rest of the range
+        long from = Math.max(bucketStart, startTime);
+        results.addAll(query.execute(createCondition(condition, from, endTime, precision)).getMetrics());
+        break;
+      }
+
+      String key = queryKey + bucketStart;
+      List<TimelineMetric> cached = get(key, now);
+      if (cached == null) {
+        cached = query.execute(createCondition(condition, bucketStart, bucketEnd, precision)).getMetrics();
+        put(key, cached, now);
+        misses.incr();
+      } else {
+        hits.incr();
+      }
+
+      boolean trim = bucketStart < startTime || bucketEnd > endTime;
+      for (TimelineMetric metric : cached) {
+        // Results are changed by the caller
+        TimelineMetric copy = copy(metric);
+        if (trim) {
+          copy.setMetricValues(new TreeMap<>(copy.getMetricValues().subMap(startTime, endTime)));
+          if (copy.getMetricValues().isEmpty()) {
+            continue;
+          }
+        }
+        results.add(copy);
+      }
+    }
+
+    TimelineMetrics metrics = DownsampledTimelineMetrics.forCondition(condition);
+    if (condition.isGrouped()) {
+      for (TimelineMetric metric : results) {
+        metrics.addOrMergeTimelineMetric(metric);
+      }
+    } else {
+      // Same order as a single query, the sort keeps the time order of the buckets
+      Collections.sort(results, new Comparator<TimelineMetric>() {
+        @Override
+        public int compare(TimelineMetric m1, TimelineMetric m2) {
+          return m1.getMetricName().compareTo(m2.getMetricName());
+        }
+      });
+      metrics.getMetrics().addAll(results);
+    }
+    return metrics;
+  }
+
+  private static Condition createCondition(Condition condition, long startTime, long endTime,
+                                           Precision precision) {
+    return new ConditionBuilder(condition.getMetricNames())
+      .hostnames(condition.getHostnames())
+      .appId(condition.getAppId())
+      .instanceId(condition.getInstanceId())
+      .startTime(startTime)
+      .endTime(endTime)
+      .precision(precision)
+      .grouped(condition.isGrouped())
+      .build();
+  }
+
+  static String getQueryKey(Condition condition, Map<String, List<Function>> metricFunctions,
+                            Precision precision) {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, List<Function>> entry : new TreeMap<>(metricFunctions).entrySet()) {
+      sb.append(entry.getKey());
+      for (Function function : entry.getValue()) {
+        sb.append(function.getSuffix());
+      }
+      sb.append(',');
+    }
+    sb.append('|').append(condition.getHostnames())
+      .append('|').append(condition.getAppId())
+      .append('|').append(condition.getInstanceId())
+      .append('|').append(precision)
+      .append('|').append(condition.isGrouped())
+      .append('|');
+    return sb.toString();
+  }
+
+  private static TimelineMetric copy(TimelineMetric metric) {
+    if (metric.getMetricValues() == null) {
+      metric.setMetricValues(new TreeMap<Long, Double>());
+    }
+    return new TimelineMetric(metric);
+  }
+
+  private synchronized List<TimelineMetric> get(String key, long now) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.expiryTime <= now) {
+      remove(key, entry);
+      return null;
+    }
+    return entry.metrics;
+  }
+
+  private synchronized void put(String key, List<TimelineMetric> metrics, long now) {
+    long sizeBytes = ENTRY_OVERHEAD_BYTES + 2 * key.length();
+    for (TimelineMetric metric : metrics) {
+      sizeBytes += TimelineMetricHotTier.estimateSize(metric);
+    }
+    if (sizeBytes > memoryBudgetBytes) {
+      return;
+    }
+    Entry previous = entries.put(key, new Entry(metrics, sizeBytes, now + ttlMillis));
+    if (previous != null) {
+      memoryBytes -= previous.sizeBytes;
+    }
+    memoryBytes += sizeBytes;
+
+    Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, Entry> eldest = it.next();
+      if (memoryBytes <= memoryBudgetBytes && eldest.getValue().expiryTime > now) {
+        break;
+      }
+      it.remove();
+      memoryBytes -= eldest.getValue().sizeBytes;
+      evictions.incr();
+    }
+  }
+
+  private void remove(String key, Entry entry) {
+    entries.remove(key);
+    memoryBytes -= entry.sizeBytes;
+    evictions.incr();
+  }
+
+  public synchronized long getMemoryBytes() {
+    return memoryBytes;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    synchronized (this) {
+      memoryGauge.set(memoryBytes);
+      entriesGauge.set(entries.size());
+    }
+    MetricsRecordBuilder builder = collector.addRecord(registry.info());
+    registry.snapshot(builder, all);
+    long total = hits.value() + misses.value();
+    builder.addGauge(Interns.info("queryCacheHitRatio", "Share of time buckets read from the cache"),
+      total == 0 ? 0f : (float) hits.value() / total);
+  }
+}
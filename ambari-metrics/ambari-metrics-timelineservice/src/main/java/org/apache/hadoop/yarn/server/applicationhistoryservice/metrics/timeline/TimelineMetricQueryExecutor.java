@@ -0,0 +1,257 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.Precision;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.TopNCondition;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_HOSTS_PER_SPLIT;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_METRICS_PER_SPLIT;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_THREADS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_TIMEOUT_SECONDS;
+
+/**
+ * Splits a range query for many metrics into sub-queries for a few metric
+ * names, or for a few hosts when a single metric is requested for many
+ * hosts, and runs them in parallel on a bounded pool. The sub-queries
+ * cover disjoint series so their results are simply appended in the
+ * order of the split, the row limit of the request is divided between
+ * them. The whole request has to finish before the deadline.
+ * Point in time and top N queries are always run as a single query.
+ */
+public class TimelineMetricQueryExecutor {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricQueryExecutor.class);
+
+  /**
+   * Runs one (sub-)query against the store.
+   */
+  public interface MetricsQuery {
+    TimelineMetrics execute(Condition condition) throws SQLException, IOException;
+  }
+
+  private final ExecutorService executorService;
+  private final int metricsPerSplit;
+  private final int hostsPerSplit;
+  private final long timeoutMillis;
+
+  public TimelineMetricQueryExecutor(Configuration metricsConf) {
+    this(metricsConf.getInt(TIMELINE_METRICS_QUERY_THREADS, 8),
+      metricsConf.getInt(TIMELINE_METRICS_QUERY_METRICS_PER_SPLIT, 10),
+      metricsConf.getInt(TIMELINE_METRICS_QUERY_HOSTS_PER_SPLIT, 10),
+      TimeUnit.SECONDS.toMillis(metricsConf.getInt(TIMELINE_METRICS_QUERY_TIMEOUT_SECONDS, 30)));
+  }
+
+  TimelineMetricQueryExecutor(int threads, int metricsPerSplit, int hostsPerSplit, long timeoutMillis) {
+    this.metricsPerSplit = Math.max(1, metricsPerSplit);
+    this.hostsPerSplit = Math.max(1, hostsPerSplit);
+    this.timeoutMillis = timeoutMillis;
+    if (threads > 0) {
+      final AtomicInteger threadCount = new AtomicInteger();
+      // Sub-queries are run by the caller when the queue is full
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(threads * 16),
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "timeline-metrics-query-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+      pool.allowCoreThreadTimeOut(true);
+      executorService = pool;
+    } else {
+      executorService = null;
+    }
+  }
+
+  public TimelineMetrics execute(Condition condition, final MetricsQuery query)
+      throws SQLException, IOException {
+
+    List<Condition> splits = split(condition);
+    if (splits.size() < 2) {
+      return query.execute(condition);
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Running " + condition.getMetricNames().size() + " metrics for "
+        + (condition.getHostnames() == null ? 0 : condition.getHostnames().size())
+        + " hosts as " + splits.size() + " sub-queries.");
+    }
+
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    List<Future<TimelineMetrics>> futures = new ArrayList<Future<TimelineMetrics>>(splits.size());
+    try {
+      for (final Condition split : splits) {
+        futures.add(executorService.submit(new Callable<TimelineMetrics>() {
+          @Override
+          public TimelineMetrics call() throws Exception {
+            return query.execute(split);
+          }
+        }));
+      }
+
+      TimelineMetrics metrics = new TimelineMetrics();
+      for (Future<TimelineMetrics> future : futures) {
+        long remaining = deadline - System.currentTimeMillis();
+        List<TimelineMetric> results =
+          future.get(Math.max(0, remaining), TimeUnit.MILLISECONDS).getMetrics();
+        metrics.getMetrics().addAll(results);
+      }
+      return metrics;
+
+    } catch (TimeoutException e) {
+      throw new IOException("Metrics query did not complete within " + timeoutMillis + " ms.");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for metrics query.");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    } finally {
+      for (Future<TimelineMetrics> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Sub-queries for the condition, a single element list if it should
+   * not be split.
+   */
+  List<Condition> split(Condition condition) {
+    List<Condition> splits = new ArrayList<Condition>();
+    List<String> metricNames = condition.getMetricNames();
+    List<String> hostnames = condition.getHostnames();
+    int numHosts = hostnames == null ? 0 : hostnames.size();
+
+    if (executorService == null || metricNames == null || condition.isPointInTime()
+        || condition instanceof TopNCondition || condition.getStatement() != null
+        || (metricNames.size() <= metricsPerSplit && numHosts <= hostsPerSplit)) {
+      splits.add(condition);
+      return splits;
+    }
+
+    // Limits apply to the request as a whole
+    PhoenixTransactSQL.validateRowCountLimit(condition);
+    // All sub-queries have to read the same table
+    Precision precision = condition.getPrecision();
+    if (precision == null) {
+      precision = Precision.getPrecision(condition.getStartTime(), condition.getEndTime());
+    }
+
+    List<List<String>> parts = new ArrayList<List<String>>();
+    boolean byMetricNames = metricNames.size() > metricsPerSplit && !hasPatterns(metricNames);
+    if (byMetricNames) {
+      for (int i = 0; i < metricNames.size(); i += metricsPerSplit) {
+        parts.add(new ArrayList<String>(
+          metricNames.subList(i, Math.min(metricNames.size(), i + metricsPerSplit))));
+      }
+    } else if (numHosts > hostsPerSplit) {
+      for (int i = 0; i < numHosts; i += hostsPerSplit) {
+        parts.add(new ArrayList<String>(hostnames.subList(i, Math.min(numHosts, i + hostsPerSplit))));
+      }
+    }
+
+    // The row limit is shared by the sub-queries, too small a limit to share is left to one query
+    Integer limit = condition.getLimit();
+    if (parts.isEmpty() || (limit != null && limit < parts.size())) {
+      splits.add(condition);
+      return splits;
+    }
+    for (int i = 0; i < parts.size(); i++) {
+      Integer splitLimit = null;
+      if (limit != null) {
+        splitLimit = limit / parts.size() + (i < limit % parts.size() ? 1 : 0);
+      }
+      if (byMetricNames) {
+        splits.add(createCondition(condition, parts.get(i), hostnames, precision, splitLimit));
+      } else {
+        splits.add(createCondition(condition, metricNames, parts.get(i), precision, splitLimit));
+      }
+    }
+    return splits;
+  }
+
+  /**
+   * Patterns of different sub-queries could match the same series
+   */
+  private static boolean hasPatterns(List<String> metricNames) {
+    for (String metricName : metricNames) {
+      if (metricName.contains("%")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Sub-query with the settings of the condition, a null limit reads all rows.
+   */
+  private Condition createCondition(Condition condition, List<String> metricNames,
+                                    List<String> hostnames, Precision precision, Integer limit) {
+    Condition split = new DefaultCondition(metricNames, hostnames, condition.getAppId(),
+      condition.getInstanceId(), condition.getStartTime(), condition.getEndTime(),
+      precision, limit, condition.isGrouped());
+    if (limit == null) {
+      split.setNoLimit();
+    }
+    split.setFetchSize(condition.getFetchSize());
+    split.setMaxPoints(condition.getMaxPoints());
+    return split;
+  }
+
+  public void shutdown() {
+    if (executorService != null) {
+      executorService.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,222 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The series of a metrics put request with their values kept in primitive
+ * arrays shared by all series, instead of a {@link TreeMap} of boxed values
+ * per series. The {@link TimelineMetric} of each series only carries the
+ * series fields, its values map stays empty.
+ */
+public class TimelineMetricSeriesBuffer {
+  private static final int INITIAL_VALUES = 1024;
+
+  private final List<TimelineMetric> metrics = new ArrayList<>();
+  // Values of series i are at [offsets[i], offsets[i + 1])
+  private int[] offsets = new int[16];
+  private long[] timestamps = new long[INITIAL_VALUES];
+  private double[] values = new double[INITIAL_VALUES];
+  private int valueCount;
+  private boolean seriesOpen;
+
+  private final StringBuilder json = new StringBuilder();
+
+  /**
+   * Start a series, the values added until {@link #endSeries()} belong to it.
+   */
+  public void startSeries(TimelineMetric metric) {
+    if (seriesOpen) {
+      throw new IllegalStateException("Series " + metrics.size() + " is not ended");
+    }
+    if (metrics.size() + 1 >= offsets.length) {
+      offsets = Arrays.copyOf(offsets, offsets.length * 2);
+    }
+    metrics.add(metric);
+    offsets[metrics.size() - 1] = valueCount;
+    seriesOpen = true;
+  }
+
+  public void addValue(long timestamp, double value) {
+    if (!seriesOpen) {
+      throw new IllegalStateException("No series started");
+    }
+    if (valueCount == timestamps.length) {
+      timestamps = Arrays.copyOf(timestamps, valueCount * 2);
+      values = Arrays.copyOf(values, valueCount * 2);
+    }
+    timestamps[valueCount] = timestamp;
+    values[valueCount] = value;
+    valueCount++;
+  }
+
+  /**
+   * Drop the values added to the open series so far.
+   */
+  public void clearValues() {
+    if (seriesOpen) {
+      valueCount = offsets[metrics.size() - 1];
+    }
+  }
+
+  /**
+   * End the open series. Values are sorted by timestamp and the last value
+   * of a repeated timestamp is kept, as the values map would do.
+   */
+  public void endSeries() {
+    if (!seriesOpen) {
+      throw new IllegalStateException("No series started");
+    }
+    int start = offsets[metrics.size() - 1];
+    boolean sorted = true;
+    for (int i = start + 1; i < valueCount && sorted; i++) {
+      sorted = timestamps[i - 1] < timestamps[i];
+    }
+    // Sinks send the values in order, sort the odd series through a map
+    if (!sorted) {
+      TreeMap<Long, Double> sortedValues = new TreeMap<>();
+      for (int i = start; i < valueCount; i++) {
+        sortedValues.put(timestamps[i], values[i]);
+      }
+      valueCount = start;
+      for (Map.Entry<Long, Double> value : sortedValues.entrySet()) {
+        timestamps[valueCount] = value.getKey();
+        values[valueCount] = value.getValue();
+        valueCount++;
+      }
+    }
+    offsets[metrics.size()] = valueCount;
+    seriesOpen = false;
+  }
+
+  /**
+   * Number of series.
+   */
+  public int size() {
+    return seriesOpen ? metrics.size() - 1 : metrics.size();
+  }
+
+  public TimelineMetric getMetric(int series) {
+    return metrics.get(series);
+  }
+
+  public int getValueCount(int series) {
+    return offsets[series + 1] - offsets[series];
+  }
+
+  public long getTimestamp(int series, int index) {
+    return timestamps[offsets[series] + index];
+  }
+
+  public double getValue(int series, int index) {
+    return values[offsets[series] + index];
+  }
+
+  /**
+   * Number of values of all series.
+   */
+  public int getTotalValueCount() {
+    return size() == 0 ? 0 : offsets[size()];
+  }
+
+  /**
+   * Sum, max, min and count of the values of the series, see
+   * {@link org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.AggregatorUtils#calculateAggregates(Map)}.
+   */
+  public double[] getAggregates(int series) {
+    double[] aggregates = new double[4];
+    double max = Double.MIN_VALUE;
+    double min = Double.MAX_VALUE;
+    double sum = 0.0;
+
+    for (int i = offsets[series]; i < offsets[series + 1]; i++) {
+      double value = values[i];
+      if (value > max) {
+        max = value;
+      }
+      if (value < min) {
+        min = value;
+      }
+      sum += value;
+    }
+    aggregates[0] = sum;
+    aggregates[1] = max != Double.MIN_VALUE ? max : 0.0;
+    aggregates[2] = min != Double.MAX_VALUE ? min : 0.0;
+    aggregates[3] = getValueCount(series);
+
+    return aggregates;
+  }
+
+  /**
+   * The values of the series as the json the store keeps in the
+   * METRICS column, same as Jackson writes the values map.
+   */
+  public String getValuesJson(int series) {
+    json.setLength(0);
+    json.append('{');
+    for (int i = offsets[series]; i < offsets[series + 1]; i++) {
+      if (i > offsets[series]) {
+        json.append(',');
+      }
+      json.append('"').append(timestamps[i]).append("\":");
+      double value = values[i];
+      if (Double.isNaN(value) || Double.isInfinite(value)) {
+        json.append('"').append(value).append('"');
+      } else {
+        json.append(value);
+      }
+    }
+    return json.append('}').toString();
+  }
+
+  /**
+   * Copy of the series as {@link TimelineMetrics}, for the consumers that
+   * need the values maps.
+   */
+  public TimelineMetrics toTimelineMetrics() {
+    BitSet allSeries = new BitSet(size());
+    allSeries.set(0, size());
+    return toTimelineMetrics(allSeries);
+  }
+
+  /**
+   * Copy of the given series only.
+   */
+  public TimelineMetrics toTimelineMetrics(BitSet seriesSet) {
+    TimelineMetrics timelineMetrics = new TimelineMetrics();
+    for (int series = seriesSet.nextSetBit(0); series >= 0 && series < size();
+         series = seriesSet.nextSetBit(series + 1)) {
+      TimelineMetric metric = new TimelineMetric(getMetric(series));
+      TreeMap<Long, Double> metricValues = metric.getMetricValues();
+      for (int i = offsets[series]; i < offsets[series + 1]; i++) {
+        metricValues.put(timestamps[i], values[i]);
+      }
+      timelineMetrics.getMetrics().add(metric);
+    }
+    return timelineMetrics;
+  }
+}
@@ -44,6 +44,9 @@ public interface TimelineMetricStore {
    * @param limit Override default result limit
    * @param groupedByHosts Group {@link TimelineMetric} by metric name, hostname,
    *                app id and instance id
+   * @param topNConfig Top N hosts or metrics, null for all
+   * @param maxPoints Maximum number of values per series of a grouped range
+   *                  query, values are averaged over equal time buckets
    *
    * @return {@link TimelineMetric}
    * @throws java.sql.SQLException
@@ -51,7 +54,7 @@ public interface TimelineMetricStore {
   TimelineMetrics getTimelineMetrics(List<String> metricNames, List<String> hostnames,
                                      String applicationId, String instanceId, Long startTime,
                                      Long endTime, Precision precision, Integer limit, boolean groupedByHosts,
-                                     TopNConfig topNConfig)
+                                     TopNConfig topNConfig, Integer maxPoints)
     throws SQLException, IOException;
 
   /**
@@ -64,6 +67,16 @@ public interface TimelineMetricStore {
    */
   TimelinePutResponse putMetrics(TimelineMetrics metrics) throws SQLException, IOException;
 
+  /**
+   * Stores the series of a put request read by the streaming ingestion
+   * path, see {@link TimelineMetricStreamReader}.
+   *
+   * @param metrics An {@link TimelineMetricSeriesBuffer}.
+   * @return An {@link org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse}.
+   * @throws SQLException, IOException
+   */
+  TimelinePutResponse putMetrics(TimelineMetricSeriesBuffer metrics) throws SQLException, IOException;
+
   /**
    * Store container metric into the timeline tore
    */
@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the json of a metrics put request with the Jackson streaming parser
+ * straight into a {@link TimelineMetricSeriesBuffer}, validating the fields
+ * while they are read. Accepts what the {@link
+ * org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics} binding accepts,
+ * except that a series needs a metric name and that null values are dropped
+ * rather than stored.
+ */
+public class TimelineMetricStreamReader {
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private TimelineMetricStreamReader() {
+  }
+
+  public static TimelineMetricSeriesBuffer read(InputStream in) throws IOException {
+    TimelineMetricSeriesBuffer buffer = new TimelineMetricSeriesBuffer();
+    JsonParser parser = JSON_FACTORY.createJsonParser(in);
+    try {
+      JsonToken token = parser.nextToken();
+      if (token == null) {
+        return buffer;
+      }
+      expect(parser, token, JsonToken.START_OBJECT);
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        token = parser.nextToken();
+        if ("metrics".equals(field) && token != JsonToken.VALUE_NULL) {
+          expect(parser, token, JsonToken.START_ARRAY);
+          while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            expect(parser, token, JsonToken.START_OBJECT);
+            readSeries(parser, buffer);
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+    } finally {
+      parser.close();
+    }
+    return buffer;
+  }
+
+  private static void readSeries(JsonParser parser, TimelineMetricSeriesBuffer buffer)
+      throws IOException {
+    TimelineMetric metric = new TimelineMetric();
+    buffer.startSeries(metric);
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      switch (field) {
+        case "metricname":
+          metric.setMetricName(readString(parser, token));
+          break;
+        case "appid":
+          metric.setAppId(readString(parser, token));
+          break;
+        case "instanceid":
+          metric.setInstanceId(readString(parser, token));
+          break;
+        case "hostname":
+          metric.setHostName(readString(parser, token));
+          break;
+        case "type":
+          metric.setType(readString(parser, token));
+          break;
+        case "units":
+          metric.setUnits(readString(parser, token));
+          break;
+        case "timestamp":
+          metric.setTimestamp(readLong(parser, token));
+          break;
+        case "starttime":
+          metric.setStartTime(readLong(parser, token));
+          break;
+        case "metrics":
+          // A repeated field replaces the values, as with the binding
+          buffer.clearValues();
+          if (token != JsonToken.VALUE_NULL) {
+            expect(parser, token, JsonToken.START_OBJECT);
+            readValues(parser, buffer);
+          }
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    if (metric.getMetricName() == null || metric.getMetricName().isEmpty()) {
+      throw new JsonParseException("Metric without metricname", parser.getCurrentLocation());
+    }
+    buffer.endSeries();
+  }
+
+  private static void readValues(JsonParser parser, TimelineMetricSeriesBuffer buffer)
+      throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      long timestamp;
+      try {
+        timestamp = Long.parseLong(parser.getCurrentName());
+      } catch (NumberFormatException e) {
+        throw new JsonParseException("Invalid metric timestamp " + parser.getCurrentName(),
+          parser.getCurrentLocation(), e);
+      }
+      JsonToken token = parser.nextToken();
+      switch (token) {
+        case VALUE_NUMBER_INT:
+        case VALUE_NUMBER_FLOAT:
+          buffer.addValue(timestamp, parser.getDoubleValue());
+          break;
+        case VALUE_STRING:
+          buffer.addValue(timestamp, parseDouble(parser));
+          break;
+        case VALUE_NULL:
+          break;
+        default:
+          throw new JsonParseException("Invalid metric value at " + timestamp,
+            parser.getCurrentLocation());
+      }
+    }
+  }
+
+  private static String readString(JsonParser parser, JsonToken token) throws IOException {
+    if (token == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (!token.isScalarValue()) {
+      throw new JsonParseException("Expected a value for " + parser.getCurrentName()
+        + " but got " + token, parser.getCurrentLocation());
+    }
+    return parser.getText();
+  }
+
+  private static long readLong(JsonParser parser, JsonToken token) throws IOException {
+    switch (token) {
+      case VALUE_NUMBER_INT:
+        return parser.getLongValue();
+      case VALUE_NUMBER_FLOAT:
+        return (long) parser.getDoubleValue();
+      case VALUE_STRING:
+        try {
+          return Long.parseLong(parser.getText().trim());
+        } catch (NumberFormatException e) {
+          return (long) parseDouble(parser);
+        }
+      case VALUE_NULL:
+        return 0;
+      default:
+        throw new JsonParseException("Expected a number for " + parser.getCurrentName()
+          + " but got " + token, parser.getCurrentLocation());
+    }
+  }
+
+  private static double parseDouble(JsonParser parser) throws IOException {
+    try {
+      return Double.parseDouble(parser.getText().trim());
+    } catch (NumberFormatException e) {
+      throw new JsonParseException("Invalid number " + parser.getText() + " for "
+        + parser.getCurrentName(), parser.getCurrentLocation(), e);
+    }
+  }
+
+  private static void expect(JsonParser parser, JsonToken token, JsonToken expected)
+      throws JsonParseException {
+    if (token != expected) {
+      throw new JsonParseException("Expected " + expected + " but got " + token,
+        parser.getCurrentLocation());
+    }
+  }
+}
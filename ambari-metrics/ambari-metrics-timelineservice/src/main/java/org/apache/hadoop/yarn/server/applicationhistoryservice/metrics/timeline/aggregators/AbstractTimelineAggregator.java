@@ -24,6 +24,8 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.AggregationTaskRunner.AGGREGATOR_NAME;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.TimelineMetricHAController;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.MetricNameHashRange;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
@@ -34,9 +36,11 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Date;
+import java.util.List;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_CHECKPOINT_DELAY;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.RESULTSET_FETCH_SIZE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_AGGREGATE_SKETCH_ENABLED;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.AggregationTaskRunner.ACTUAL_AGGREGATOR_NAMES;
 
 /**
@@ -48,6 +52,8 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
   protected final Logger LOG;
   protected final long checkpointDelayMillis;
   protected final Integer resultsetFetchSize;
+  // Keep quantile sketches with the aggregates
+  protected final boolean sketchEnabled;
   protected Configuration metricsConf;
   private String checkpointLocation;
   private Long sleepIntervalMillis;
@@ -60,6 +66,9 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
 
   // Explicitly name aggregators for logging needs
   private final AGGREGATOR_NAME aggregatorName;
+  // Metric name hash range of the current aggregation pass, null if the
+  // aggregator is not run by the HA controller
+  private MetricNameHashRange metricNameHashRange;
 
   AbstractTimelineAggregator(AGGREGATOR_NAME aggregatorName,
                              PhoenixHBaseAccessor hBaseAccessor,
@@ -69,6 +78,7 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
     this.metricsConf = metricsConf;
     this.checkpointDelayMillis = SECONDS.toMillis(metricsConf.getInt(AGGREGATOR_CHECKPOINT_DELAY, 120));
     this.resultsetFetchSize = metricsConf.getInt(RESULTSET_FETCH_SIZE, 2000);
+    this.sketchEnabled = metricsConf.getBoolean(TIMELINE_METRICS_AGGREGATE_SKETCH_ENABLED, false);
     this.LOG = LoggerFactory.getLogger(ACTUAL_AGGREGATOR_NAMES.get(aggregatorName));
   }
 
@@ -106,39 +116,46 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
    * Access relaxed for tests
    */
   public void runOnce(Long SLEEP_INTERVAL) {
-    boolean performAggregationFunction = true;
-    if (taskRunner != null) {
-      switch (getAggregatorType()) {
-        case HOST:
-          performAggregationFunction = taskRunner.performsHostAggregation();
-          break;
-        case CLUSTER:
-          performAggregationFunction = taskRunner.performsClusterAggregation();
+    if (taskRunner == null) {
+      runOnceForRange(SLEEP_INTERVAL);
+      return;
+    }
+
+    List<MetricNameHashRange> ranges = taskRunner.getOwnedHashRanges(getAggregatorType());
+    if (ranges.isEmpty()) {
+      LOG.info("Skipping aggregation function not owned by this instance.");
+      return;
+    }
+    // Each owned range has its own checkpoint
+    for (MetricNameHashRange range : ranges) {
+      metricNameHashRange = range;
+      try {
+        runOnceForRange(SLEEP_INTERVAL);
+      } finally {
+        metricNameHashRange = null;
       }
     }
+  }
 
-    if (performAggregationFunction) {
-      long currentTime = System.currentTimeMillis();
-      long lastCheckPointTime = readLastCheckpointSavingOnFirstRun(currentTime);
+  private void runOnceForRange(Long SLEEP_INTERVAL) {
+    long currentTime = System.currentTimeMillis();
+    long lastCheckPointTime = readLastCheckpointSavingOnFirstRun(currentTime);
 
-      if (lastCheckPointTime != -1) {
-        LOG.info("Last check point time: " + lastCheckPointTime + ", lagBy: "
-          + ((currentTime - lastCheckPointTime) / 1000)
-          + " seconds.");
-
-        boolean success = doWork(lastCheckPointTime, lastCheckPointTime + SLEEP_INTERVAL);
-
-        if (success) {
-          try {
-            saveCheckPoint(lastCheckPointTime + SLEEP_INTERVAL);
-          } catch (IOException io) {
-            LOG.warn("Error saving checkpoint, restarting aggregation at " +
-              "previous checkpoint.");
-          }
+    if (lastCheckPointTime != -1) {
+      LOG.info("Last check point time: " + lastCheckPointTime + ", lagBy: "
+        + ((currentTime - lastCheckPointTime) / 1000)
+        + " seconds." + (metricNameHashRange != null ? " " + metricNameHashRange : ""));
+
+      boolean success = doWork(lastCheckPointTime, lastCheckPointTime + SLEEP_INTERVAL);
+
+      if (success) {
+        try {
+          saveCheckPoint(lastCheckPointTime + SLEEP_INTERVAL);
+        } catch (IOException io) {
+          LOG.warn("Error saving checkpoint, restarting aggregation at " +
+            "previous checkpoint.");
         }
       }
-    } else {
-      LOG.info("Skipping aggregation function not owned by this instance.");
     }
   }
 
@@ -197,7 +214,7 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
 
   protected long readCheckPoint() {
     if (taskRunner != null) {
-      return taskRunner.getCheckpointManager().readCheckpoint(aggregatorName);
+      return taskRunner.getCheckpointManager().readCheckpoint(aggregatorName, metricNameHashRange);
     }
     try {
       File checkpoint = new File(getCheckpointLocation());
@@ -215,7 +232,8 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
 
   protected void saveCheckPoint(long checkpointTime) throws IOException {
     if (taskRunner != null) {
-      boolean success = taskRunner.getCheckpointManager().writeCheckpoint(aggregatorName, checkpointTime);
+      boolean success = taskRunner.getCheckpointManager().writeCheckpoint(aggregatorName,
+        metricNameHashRange, checkpointTime);
       if (!success) {
         LOG.error("Error saving checkpoint with AggregationTaskRunner, " +
           "aggregator = " + aggregatorName + "value = " + checkpointTime);
@@ -246,6 +264,9 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
 
     boolean success = true;
     Condition condition = prepareMetricQueryCondition(startTime, endTime);
+    if (metricNameHashRange != null && condition instanceof DefaultCondition) {
+      ((DefaultCondition) condition).setMetricNameHashRange(metricNameHashRange);
+    }
 
     Connection conn = null;
     PreparedStatement stmt = null;
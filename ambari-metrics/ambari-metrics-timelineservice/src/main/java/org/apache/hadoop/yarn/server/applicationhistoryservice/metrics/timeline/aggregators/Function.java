@@ -165,18 +165,38 @@ public class Function {
     AVG("._avg"),
     MIN("._min"),
     MAX("._max"),
-    SUM("._sum");
+    SUM("._sum"),
+    P95("._p95", 0.95),
+    P99("._p99", 0.99);
 
     private final String suffix;
+    private final double quantile;
 
     ReadFunction(String suffix){
+      this(suffix, Double.NaN);
+    }
+
+    ReadFunction(String suffix, double quantile){
       this.suffix = suffix;
+      this.quantile = quantile;
     }
 
     public String getSuffix() {
       return suffix;
     }
 
+    /**
+     * Quantile read from the sketch of the aggregates, NaN for the other
+     * functions.
+     */
+    public double getQuantile() {
+      return quantile;
+    }
+
+    public boolean isQuantile() {
+      return !Double.isNaN(quantile);
+    }
+
     public static boolean isPresent(String functionName) {
       try {
         ReadFunction.valueOf(functionName.toUpperCase());
@@ -194,7 +214,7 @@ public class Function {
         return ReadFunction.valueOf(functionName.toUpperCase());
       } catch (IllegalArgumentException e) {
         throw new FunctionFormatException(
-          "Function should be sum, avg, min, max. Got " + functionName, e);
+          "Function should be sum, avg, min, max, p95, p99. Got " + functionName, e);
       }
     }
   }
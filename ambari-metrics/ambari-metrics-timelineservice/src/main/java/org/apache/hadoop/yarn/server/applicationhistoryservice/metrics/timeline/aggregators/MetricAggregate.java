@@ -20,6 +20,7 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.annotate.JsonProperty;
 import org.codehaus.jackson.annotate.JsonSubTypes;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -40,6 +41,8 @@ public class MetricAggregate {
   protected Double deviation;
   protected Double max = Double.MIN_VALUE;
   protected Double min = Double.MAX_VALUE;
+  // Only kept when quantile sketches are enabled
+  protected MetricSketch sketch;
 
   public MetricAggregate() {
   }
@@ -68,6 +71,29 @@ public class MetricAggregate {
     }
   }
 
+  /**
+   * Add a single value to the sketch.
+   */
+  public void updateSketch(double value) {
+    if (sketch == null) {
+      sketch = new MetricSketch();
+    }
+    sketch.add(value);
+  }
+
+  /**
+   * Merge the sketch of an aggregate of a shorter period or another host.
+   */
+  public void updateSketch(MetricSketch sketch) {
+    if (sketch == null) {
+      return;
+    }
+    if (this.sketch == null) {
+      this.sketch = new MetricSketch();
+    }
+    this.sketch.merge(sketch);
+  }
+
   @JsonProperty("sum")
   public Double getSum() {
     return sum;
@@ -104,6 +130,15 @@ public class MetricAggregate {
     this.min = min;
   }
 
+  @JsonIgnore
+  public MetricSketch getSketch() {
+    return sketch;
+  }
+
+  public void setSketch(MetricSketch sketch) {
+    this.sketch = sketch;
+  }
+
   public String toJSON() throws IOException {
     return mapper.writeValueAsString(this);
   }
@@ -57,6 +57,7 @@ public class MetricClusterAggregate extends MetricAggregate {
     updateMax(hostAggregate.getMax());
     updateMin(hostAggregate.getMin());
     updateSum(hostAggregate.getSum());
+    updateSketch(hostAggregate.getSketch());
     updateNumberOfHosts(hostAggregate.getNumberOfHosts());
   }
 
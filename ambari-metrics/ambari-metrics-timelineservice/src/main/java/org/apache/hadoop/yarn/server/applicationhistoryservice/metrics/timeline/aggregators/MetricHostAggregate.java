@@ -65,6 +65,7 @@ public class MetricHostAggregate extends MetricAggregate {
     updateMax(hostAggregate.getMax());
     updateMin(hostAggregate.getMin());
     updateSum(hostAggregate.getSum());
+    updateSketch(hostAggregate.getSketch());
     updateNumberOfSamples(hostAggregate.getNumberOfSamples());
   }
 
@@ -0,0 +1,232 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Mergeable quantile sketch kept with the aggregates. Values are counted
+ * in logarithmic buckets, bucket i holding the values in
+ * (gamma^(i-1), gamma^i], so that any quantile is answered with a relative
+ * error of at most {@link #RELATIVE_ACCURACY}. Merging adds the bucket
+ * counts, so the sketch of an hour is the merge of its minutes. When there
+ * are more than {@link #MAX_BUCKETS} buckets the ones closest to zero are
+ * collapsed, which only affects the accuracy of the lowest quantiles.
+ */
+public class MetricSketch {
+  public static final double RELATIVE_ACCURACY = 0.01;
+  static final int MAX_BUCKETS = 2048;
+  // Smaller values are counted as zero
+  private static final double MIN_INDEXED_VALUE = 1e-9;
+  private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+  private static final double LOG_GAMMA = Math.log(GAMMA);
+  private static final byte VERSION = 1;
+
+  private final TreeMap<Integer, Long> positive = new TreeMap<Integer, Long>();
+  private final TreeMap<Integer, Long> negative = new TreeMap<Integer, Long>();
+  private long zeroCount = 0;
+  private long count = 0;
+
+  public void add(double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      return;
+    }
+    if (Math.abs(value) < MIN_INDEXED_VALUE) {
+      zeroCount++;
+    } else if (value > 0) {
+      increment(positive, index(value), 1);
+    } else {
+      increment(negative, index(-value), 1);
+    }
+    count++;
+    collapse();
+  }
+
+  public void merge(MetricSketch other) {
+    if (other == null || other == this) {
+      return;
+    }
+    for (Map.Entry<Integer, Long> bucket : other.positive.entrySet()) {
+      increment(positive, bucket.getKey(), bucket.getValue());
+    }
+    for (Map.Entry<Integer, Long> bucket : other.negative.entrySet()) {
+      increment(negative, bucket.getKey(), bucket.getValue());
+    }
+    zeroCount += other.zeroCount;
+    count += other.count;
+    collapse();
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  /**
+   * @param quantile between 0 and 1
+   * @return estimated value at the quantile, NaN if the sketch is empty
+   */
+  public double getQuantile(double quantile) {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    long rank = (long) (Math.max(0, Math.min(1, quantile)) * (count - 1));
+    long seen = 0;
+    // Most negative values first
+    for (Map.Entry<Integer, Long> bucket : negative.descendingMap().entrySet()) {
+      seen += bucket.getValue();
+      if (seen > rank) {
+        return -value(bucket.getKey());
+      }
+    }
+    seen += zeroCount;
+    if (seen > rank) {
+      return 0;
+    }
+    for (Map.Entry<Integer, Long> bucket : positive.entrySet()) {
+      seen += bucket.getValue();
+      if (seen > rank) {
+        return value(bucket.getKey());
+      }
+    }
+    return value(positive.lastKey());
+  }
+
+  public byte[] toBytes() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + 4 * (positive.size() + negative.size()));
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeByte(VERSION);
+      writeVarLong(out, zeroCount);
+      writeBuckets(out, positive);
+      writeBuckets(out, negative);
+      out.flush();
+    } catch (IOException e) {
+      // Not thrown by a byte array stream
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  public static MetricSketch fromBytes(byte[] bytes) throws IOException {
+    if (bytes == null || bytes.length == 0) {
+      return null;
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    byte version = in.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported sketch version " + version);
+    }
+    MetricSketch sketch = new MetricSketch();
+    sketch.zeroCount = readVarLong(in);
+    sketch.count = sketch.zeroCount;
+    sketch.count += readBuckets(in, sketch.positive);
+    sketch.count += readBuckets(in, sketch.negative);
+    return sketch;
+  }
+
+  private static int index(double absValue) {
+    return (int) Math.ceil(Math.log(absValue) / LOG_GAMMA);
+  }
+
+  /**
+   * Value of the bucket with the lowest relative error for all values in it
+   */
+  private static double value(int index) {
+    return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+  }
+
+  private static void increment(TreeMap<Integer, Long> buckets, int index, long count) {
+    Long current = buckets.get(index);
+    buckets.put(index, current == null ? count : current + count);
+  }
+
+  private void collapse() {
+    while (positive.size() + negative.size() > MAX_BUCKETS) {
+      TreeMap<Integer, Long> buckets = negative.size() > positive.size() ? negative : positive;
+      Map.Entry<Integer, Long> lowest = buckets.pollFirstEntry();
+      increment(buckets, buckets.firstKey(), lowest.getValue());
+    }
+  }
+
+  private static void writeBuckets(DataOutputStream out, NavigableMap<Integer, Long> buckets)
+      throws IOException {
+    writeVarLong(out, buckets.size());
+    int previous = 0;
+    for (Map.Entry<Integer, Long> bucket : buckets.entrySet()) {
+      int delta = bucket.getKey() - previous;
+      // Zig-zag, the first index can be negative
+      writeVarLong(out, (delta << 1) ^ (delta >> 31));
+      writeVarLong(out, bucket.getValue());
+      previous = bucket.getKey();
+    }
+  }
+
+  private static long readBuckets(DataInputStream in, TreeMap<Integer, Long> buckets)
+      throws IOException {
+    long size = readVarLong(in);
+    long total = 0;
+    int index = 0;
+    for (long i = 0; i < size; i++) {
+      int zigZag = (int) readVarLong(in);
+      index += (zigZag >>> 1) ^ -(zigZag & 1);
+      long count = readVarLong(in);
+      buckets.put(index, count);
+      total += count;
+    }
+    return total;
+  }
+
+  private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  private static long readVarLong(DataInputStream in) throws IOException {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = in.readByte();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    return "MetricSketch{" +
+      "count=" + count +
+      ", buckets=" + (positive.size() + negative.size()) +
+      '}';
+  }
+}
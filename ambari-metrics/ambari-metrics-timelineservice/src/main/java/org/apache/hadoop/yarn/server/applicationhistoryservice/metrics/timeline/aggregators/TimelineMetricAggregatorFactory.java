@@ -47,6 +47,8 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_MINUTE_CHECKPOINT_CUTOFF_MULTIPLIER;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_MINUTE_DISABLED;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_MINUTE_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_AGGREGATE_SKETCH_ENABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_AGGREGATION_SHARDS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_AGGREGATOR_CHECKPOINT_DIR;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.USE_GROUPBY_AGGREGATOR_QUERIES;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.AggregationTaskRunner.AGGREGATOR_NAME.METRIC_AGGREGATE_DAILY;
@@ -86,6 +88,16 @@ public class TimelineMetricAggregatorFactory {
     "timeline-metrics-cluster-aggregator-daily-checkpoint";
 
   private static boolean useGroupByAggregator(Configuration metricsConf) {
+    // Sketches are merged on the client, GROUP BY queries cannot build them
+    if (metricsConf.getBoolean(TIMELINE_METRICS_AGGREGATE_SKETCH_ENABLED, false)) {
+      return false;
+    }
+    // GROUP BY queries cover all metrics, they cannot be split by metric name
+    // hash, which only the collectors of a distributed deployment do
+    if ("distributed".equals(metricsConf.get("timeline.metrics.service.operation.mode"))
+        && metricsConf.getInt(TIMELINE_METRICS_AGGREGATION_SHARDS, 1) > 1) {
+      return false;
+    }
     return Boolean.parseBoolean(metricsConf.get(USE_GROUPBY_AGGREGATOR_QUERIES, "true"));
   }
 
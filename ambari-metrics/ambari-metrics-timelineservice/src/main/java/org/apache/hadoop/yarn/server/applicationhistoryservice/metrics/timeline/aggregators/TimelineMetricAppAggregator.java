@@ -34,6 +34,7 @@ import java.util.Set;
 
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_APP_IDS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_APP_ID;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_AGGREGATE_SKETCH_ENABLED;
 
 /**
  * Aggregator responsible for providing app level host aggregates. This task
@@ -46,12 +47,14 @@ public class TimelineMetricAppAggregator {
   // Lookup to check candidacy of an app
   private final List<String> appIdsToAggregate;
   private final Map<String, Set<String>> hostedAppsMap;
+  private final boolean sketchEnabled;
   Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics;
 
   public TimelineMetricAppAggregator(TimelineMetricMetadataManager metadataManager,
                                      Configuration metricsConf) {
     appIdsToAggregate = getAppIdsForHostAggregation(metricsConf);
     hostedAppsMap = metadataManager.getHostedAppsCache();
+    sketchEnabled = metricsConf.getBoolean(TIMELINE_METRICS_AGGREGATE_SKETCH_ENABLED, false);
     LOG.info("AppIds configured for aggregation: " + appIdsToAggregate);
   }
 
@@ -144,6 +147,9 @@ public class TimelineMetricAppAggregator {
         clusterAggregate.updateMax(metricValue);
         clusterAggregate.updateMin(metricValue);
       }
+      if (sketchEnabled) {
+        clusterAggregate.updateSketch(metricValue);
+      }
 
     }
   }
@@ -30,7 +30,9 @@ import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_CLUSTER_AGGREGATE_SKETCH_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_CLUSTER_AGGREGATE_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_CLUSTER_AGGREGATE_TIME_SKETCH_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_CLUSTER_AGGREGATE_TIME_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_CLUSTER_AGGREGATE_TABLE_NAME;
 
@@ -54,6 +56,7 @@ public class TimelineMetricClusterAggregator extends AbstractTimelineAggregator
       hostAggregatorDisabledParam, inputTableName, outputTableName,
       nativeTimeRangeDelay, haController);
     isClusterPrecisionInputTable = inputTableName.equals(METRICS_CLUSTER_AGGREGATE_TABLE_NAME);
+    readHelper.setReadSketch(sketchEnabled);
   }
 
   @Override
@@ -62,10 +65,12 @@ public class TimelineMetricClusterAggregator extends AbstractTimelineAggregator
       endTime, null, null, true);
     condition.setNoLimit();
     condition.setFetchSize(resultsetFetchSize);
-    String sqlStr = String.format(GET_CLUSTER_AGGREGATE_TIME_SQL, getQueryHint(startTime), tableName);
+    String sqlStr = String.format(sketchEnabled ? GET_CLUSTER_AGGREGATE_TIME_SKETCH_SQL :
+      GET_CLUSTER_AGGREGATE_TIME_SQL, getQueryHint(startTime), tableName);
     // HOST_COUNT vs METRIC_COUNT
     if (isClusterPrecisionInputTable) {
-      sqlStr = String.format(GET_CLUSTER_AGGREGATE_SQL, getQueryHint(startTime), tableName);
+      sqlStr = String.format(sketchEnabled ? GET_CLUSTER_AGGREGATE_SKETCH_SQL :
+        GET_CLUSTER_AGGREGATE_SQL, getQueryHint(startTime), tableName);
     }
 
     condition.setStatement(sqlStr);
@@ -131,5 +136,6 @@ public class TimelineMetricClusterAggregator extends AbstractTimelineAggregator
     agg.updateMin(currentClusterAggregate.getMin());
     agg.updateSum(currentClusterAggregate.getSum());
     agg.updateNumberOfSamples(currentClusterAggregate.getNumberOfHosts());
+    agg.updateSketch(currentClusterAggregate.getSketch());
   }
 }
@@ -24,6 +24,7 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.
 
 import java.io.IOException;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.Map;
 import java.util.TreeMap;
@@ -31,6 +32,7 @@ import java.util.TreeMap;
 public class TimelineMetricReadHelper {
 
   private boolean ignoreInstance = false;
+  private boolean readSketch = false;
 
   public TimelineMetricReadHelper() {}
 
@@ -38,6 +40,13 @@ public class TimelineMetricReadHelper {
     this.ignoreInstance = ignoreInstance;
   }
 
+  /**
+   * Read the quantile sketch of the rows into the aggregates
+   */
+  public void setReadSketch(boolean readSketch) {
+    this.readSketch = readSketch;
+  }
+
   public TimelineMetric getTimelineMetricFromResultSet(ResultSet rs)
       throws SQLException, IOException {
     TimelineMetric metric = getTimelineMetricCommonsFromResultSet(rs);
@@ -61,6 +70,54 @@ public class TimelineMetricReadHelper {
       rs.getString("UNITS")
     );
 
+    metric.setSingleTimeseriesValue(rs.getLong("SERVER_TIME"), getAggregateValue(rs, function));
+
+    return metric;
+  }
+
+  /**
+   * Row of the id keyed precision table, the names come from the given key
+   * decoded from the UUID column.
+   */
+  public TimelineMetric getTimelineMetricFromUuidResultSet(ResultSet rs, TimelineMetric key)
+      throws SQLException, IOException {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(key.getMetricName());
+    metric.setAppId(key.getAppId());
+    if (!ignoreInstance) {
+      metric.setInstanceId(rs.getString("INSTANCE_ID"));
+    }
+    metric.setHostName(key.getHostName());
+    metric.setTimestamp(rs.getLong("SERVER_TIME"));
+    metric.setStartTime(rs.getLong("START_TIME"));
+    metric.setType(rs.getString("UNITS"));
+    metric.setMetricValues(PhoenixHBaseAccessor.readMetricFromJSON(rs.getString("METRICS")));
+    return metric;
+  }
+
+  public SingleValuedTimelineMetric getAggregatedTimelineMetricFromUuidResultSet(ResultSet rs,
+      TimelineMetric key, Function f) throws SQLException, IOException {
+
+    Function function = (f != null) ? f : Function.DEFAULT_VALUE_FUNCTION;
+    SingleValuedTimelineMetric metric = new SingleValuedTimelineMetric(
+      key.getMetricName() + function.getSuffix(),
+      key.getAppId(),
+      rs.getString("INSTANCE_ID"),
+      key.getHostName(),
+      rs.getLong("SERVER_TIME"),
+      rs.getLong("SERVER_TIME"),
+      rs.getString("UNITS")
+    );
+
+    metric.setSingleTimeseriesValue(rs.getLong("SERVER_TIME"), getAggregateValue(rs, function));
+
+    return metric;
+  }
+
+  private Double getAggregateValue(ResultSet rs, Function function) throws SQLException, IOException {
+    if (function.getReadFunction().isQuantile()) {
+      return getQuantileFromResultSet(rs, function.getReadFunction().getQuantile());
+    }
     double value;
     switch(function.getReadFunction()){
       case AVG:
@@ -79,10 +136,54 @@ public class TimelineMetricReadHelper {
         value = rs.getDouble("METRIC_SUM") / rs.getInt("METRIC_COUNT");
         break;
     }
+    return value;
+  }
 
-    metric.setSingleTimeseriesValue(rs.getLong("SERVER_TIME"), value);
+  /**
+   * Quantile of the row from its sketch, or from its values for precision
+   * rows. Null for rows without a sketch, such as the rows written before
+   * sketches were enabled, the point is then left out of the result.
+   */
+  public static Double getQuantileFromResultSet(ResultSet rs, double quantile)
+      throws SQLException, IOException {
+    MetricSketch sketch = getSketchFromResultSet(rs);
+    if (sketch == null || sketch.isEmpty()) {
+      return null;
+    }
+    return sketch.getQuantile(quantile);
+  }
 
-    return metric;
+  /**
+   * Sketch stored with an aggregate row or built from the values of a
+   * precision row, null if the row has neither.
+   */
+  public static MetricSketch getSketchFromResultSet(ResultSet rs)
+      throws SQLException, IOException {
+    ResultSetMetaData metaData = rs.getMetaData();
+    boolean hasSketch = false;
+    boolean hasValues = false;
+    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+      String column = metaData.getColumnLabel(i);
+      if ("METRIC_SKETCH".equalsIgnoreCase(column)) {
+        hasSketch = true;
+      } else if ("METRICS".equalsIgnoreCase(column)) {
+        hasValues = true;
+      }
+    }
+
+    if (hasSketch) {
+      return MetricSketch.fromBytes(rs.getBytes("METRIC_SKETCH"));
+    }
+    if (hasValues) {
+      MetricSketch sketch = new MetricSketch();
+      for (Double value : PhoenixHBaseAccessor.readMetricFromJSON(rs.getString("METRICS")).values()) {
+        if (value != null) {
+          sketch.add(value);
+        }
+      }
+      return sketch;
+    }
+    return null;
   }
 
   /**
@@ -104,7 +205,7 @@ public class TimelineMetricReadHelper {
   }
 
   public MetricClusterAggregate getMetricClusterAggregateFromResultSet(ResultSet rs)
-      throws SQLException {
+      throws SQLException, IOException {
     MetricClusterAggregate agg = new MetricClusterAggregate();
     agg.setSum(rs.getDouble("METRIC_SUM"));
     agg.setMax(rs.getDouble("METRIC_MAX"));
@@ -112,12 +213,15 @@ public class TimelineMetricReadHelper {
     agg.setNumberOfHosts(rs.getInt("HOSTS_COUNT"));
 
     agg.setDeviation(0.0);
+    if (readSketch) {
+      agg.setSketch(getSketchFromResultSet(rs));
+    }
 
     return agg;
   }
 
   public MetricClusterAggregate getMetricClusterTimeAggregateFromResultSet(ResultSet rs)
-      throws SQLException {
+      throws SQLException, IOException {
     MetricClusterAggregate agg = new MetricClusterAggregate();
     agg.setSum(rs.getDouble("METRIC_SUM"));
     agg.setMax(rs.getDouble("METRIC_MAX"));
@@ -125,6 +229,9 @@ public class TimelineMetricReadHelper {
     agg.setNumberOfHosts(rs.getInt("METRIC_COUNT"));
 
     agg.setDeviation(0.0);
+    if (readSketch) {
+      agg.setSketch(getSketchFromResultSet(rs));
+    }
 
     return agg;
   }
@@ -140,7 +247,7 @@ public class TimelineMetricReadHelper {
   }
 
   public MetricHostAggregate getMetricHostAggregateFromResultSet(ResultSet rs)
-      throws SQLException {
+      throws SQLException, IOException {
     MetricHostAggregate metricHostAggregate = new MetricHostAggregate();
     metricHostAggregate.setSum(rs.getDouble("METRIC_SUM"));
     metricHostAggregate.setMax(rs.getDouble("METRIC_MAX"));
@@ -148,6 +255,9 @@ public class TimelineMetricReadHelper {
     metricHostAggregate.setNumberOfSamples(rs.getLong("METRIC_COUNT"));
 
     metricHostAggregate.setDeviation(0.0);
+    if (readSketch) {
+      metricHostAggregate.setSketch(getSketchFromResultSet(rs));
+    }
     return metricHostAggregate;
   }
 
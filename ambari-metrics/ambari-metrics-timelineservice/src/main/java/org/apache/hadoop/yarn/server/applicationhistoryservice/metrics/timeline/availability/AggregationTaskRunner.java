@@ -20,14 +20,18 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregator.AGGREGATOR_TYPE;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.MetricNameHashRange;
 import org.apache.helix.HelixManager;
 import org.apache.helix.HelixManagerFactory;
 import org.apache.helix.InstanceType;
 import org.apache.helix.participant.StateMachineEngine;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregator.AGGREGATOR_TYPE.CLUSTER;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregator.AGGREGATOR_TYPE.HOST;
@@ -39,20 +43,18 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.AggregationTaskRunner.AGGREGATOR_NAME.METRIC_RECORD_HOURLY;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.AggregationTaskRunner.AGGREGATOR_NAME.METRIC_RECORD_MINUTE;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.TimelineMetricHAController.CLUSTER_NAME;
-import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.TimelineMetricHAController.METRIC_AGGREGATORS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.TimelineMetricHAController.STATE_MODEL_NAME;
 
 public class AggregationTaskRunner {
   private final String instanceName;
   private final String zkAddress;
+  private final int shards;
   private HelixManager manager;
   private static final Log LOG = LogFactory.getLog(AggregationTaskRunner.class);
   private CheckpointManager checkpointManager;
-  // Map partition name to an aggregator dimension
-  static final Map<String, AGGREGATOR_TYPE> PARTITION_AGGREGATION_TYPES = new HashMap<>();
-  // Ownership flags to be set by the State transitions
-  private final AtomicBoolean performsClusterAggregation = new AtomicBoolean(false);
-  private final AtomicBoolean performsHostAggregation = new AtomicBoolean(false);
+  // Owned metric name hash ranges, set by the State transitions
+  private final Set<Integer> clusterAggregationShards = new ConcurrentSkipListSet<>();
+  private final Set<Integer> hostAggregationShards = new ConcurrentSkipListSet<>();
 
   public enum AGGREGATOR_NAME {
     METRIC_RECORD_MINUTE,
@@ -74,15 +76,43 @@ public class AggregationTaskRunner {
     ACTUAL_AGGREGATOR_NAMES.put(METRIC_AGGREGATE_MINUTE, "TimelineClusterAggregatorMinute");
     ACTUAL_AGGREGATOR_NAMES.put(METRIC_AGGREGATE_HOURLY, "TimelineClusterAggregatorHourly");
     ACTUAL_AGGREGATOR_NAMES.put(METRIC_AGGREGATE_DAILY, "TimelineClusterAggregatorDaily");
-
-    // Partition name to task assignment
-    PARTITION_AGGREGATION_TYPES.put(METRIC_AGGREGATORS + "_0", CLUSTER);
-    PARTITION_AGGREGATION_TYPES.put(METRIC_AGGREGATORS + "_1", HOST);
   }
 
   public AggregationTaskRunner(String instanceName, String zkAddress) {
+    this(instanceName, zkAddress, 1);
+  }
+
+  /**
+   * @param shards number of metric name hash ranges of each aggregator type
+   */
+  public AggregationTaskRunner(String instanceName, String zkAddress, int shards) {
     this.instanceName = instanceName;
     this.zkAddress = zkAddress;
+    this.shards = Math.max(1, Math.min(shards, MetricNameHashRange.MAX_SHARDS));
+  }
+
+  /**
+   * Number of partitions of the aggregator resource, a cluster and a host
+   * partition per metric name hash range.
+   */
+  static int getPartitionCount(int shards) {
+    return 2 * shards;
+  }
+
+  /**
+   * Even partitions are cluster aggregation, odd ones host aggregation, so
+   * that a single range maps to the partitions of earlier versions.
+   */
+  static AGGREGATOR_TYPE getPartitionAggregatorType(String partitionName) {
+    return getPartitionIndex(partitionName) % 2 == 0 ? CLUSTER : HOST;
+  }
+
+  static int getPartitionShard(String partitionName) {
+    return getPartitionIndex(partitionName) / 2;
+  }
+
+  private static int getPartitionIndex(String partitionName) {
+    return Integer.parseInt(partitionName.substring(partitionName.lastIndexOf('_') + 1));
   }
 
   public void initialize() throws Exception {
@@ -100,39 +130,52 @@ public class AggregationTaskRunner {
   }
 
   public boolean performsClusterAggregation() {
-    return performsClusterAggregation.get();
+    return !clusterAggregationShards.isEmpty();
   }
 
   public boolean performsHostAggregation() {
-    return performsHostAggregation.get();
+    return !hostAggregationShards.isEmpty();
   }
 
   public CheckpointManager getCheckpointManager() {
     return checkpointManager;
   }
 
-  public void setPartitionAggregationFunction(AGGREGATOR_TYPE type) {
-    switch (type) {
-      case HOST:
-        performsHostAggregation.set(true);
-        LOG.info("Set host aggregator function for : " + instanceName);
-        break;
-      case CLUSTER:
-        performsClusterAggregation.set(true);
-        LOG.info("Set cluster aggregator function for : " + instanceName);
-    }
+  public int getShards() {
+    return shards;
   }
 
-  public void unsetPartitionAggregationFunction(AGGREGATOR_TYPE type) {
-    switch (type) {
-      case HOST:
-        performsHostAggregation.set(false);
-        LOG.info("Unset host aggregator function for : " + instanceName);
-        break;
-      case CLUSTER:
-        performsClusterAggregation.set(false);
-        LOG.info("Unset cluster aggregator function for : " + instanceName);
+  /**
+   * Metric name hash ranges of the aggregator type owned by this instance.
+   */
+  public List<MetricNameHashRange> getOwnedHashRanges(AGGREGATOR_TYPE type) {
+    List<MetricNameHashRange> ranges = new ArrayList<>();
+    for (Integer shard : getOwnedShards(type)) {
+      if (shard < shards) {
+        ranges.add(new MetricNameHashRange(shard, shards));
+      }
     }
+    return ranges;
+  }
+
+  private Set<Integer> getOwnedShards(AGGREGATOR_TYPE type) {
+    return type == HOST ? hostAggregationShards : clusterAggregationShards;
+  }
+
+  public void setPartitionAggregationFunction(String partitionName) {
+    AGGREGATOR_TYPE type = getPartitionAggregatorType(partitionName);
+    int shard = getPartitionShard(partitionName);
+    getOwnedShards(type).add(shard);
+    LOG.info("Set " + type + " aggregator function for shard " + shard + " of " + shards
+      + " : " + instanceName);
+  }
+
+  public void unsetPartitionAggregationFunction(String partitionName) {
+    AGGREGATOR_TYPE type = getPartitionAggregatorType(partitionName);
+    int shard = getPartitionShard(partitionName);
+    getOwnedShards(type).remove(shard);
+    LOG.info("Unset " + type + " aggregator function for shard " + shard + " of " + shards
+      + " : " + instanceName);
   }
 
   /**
@@ -21,11 +21,19 @@ import org.I0Itec.zkclient.DataUpdater;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.AggregationTaskRunner.AGGREGATOR_NAME;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.MetricNameHashRange;
 import org.apache.helix.AccessOption;
 import org.apache.helix.ZNRecord;
 import org.apache.helix.store.zk.ZkHelixPropertyStore;
 import org.apache.zookeeper.data.Stat;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.AggregationTaskRunner.ACTUAL_AGGREGATOR_NAMES;
 
 public class CheckpointManager {
@@ -34,6 +42,7 @@ public class CheckpointManager {
 
   static final String ZNODE_FIELD = "checkpoint";
   static final String CHECKPOINT_PATH_PREFIX = "CHECKPOINTS";
+  private static final Pattern SHARDED_CHECKPOINT_PATTERN = Pattern.compile("(.+)_(\\d+)_OF_(\\d+)");
 
   public CheckpointManager(ZkHelixPropertyStore<ZNRecord> propertyStore) {
     this.propertyStore = propertyStore;
@@ -45,7 +54,80 @@ public class CheckpointManager {
    * @return timestamp
    */
   public long readCheckpoint(AGGREGATOR_NAME aggregatorName) {
-    String path = getCheckpointZKPath(aggregatorName);
+    return readCheckpoint(getCheckpointZKPath(aggregatorName));
+  }
+
+  /**
+   * Read the checkpoint of a metric name hash range of an aggregator. The
+   * checkpoints of each number of ranges are kept apart. A range without a
+   * checkpoint, or with one older than the ranges of another number of
+   * ranges, was not aggregated since that number of ranges was used, it
+   * continues from the oldest checkpoint of the ranges it overlaps in the
+   * last used one.
+   *
+   * @param range null for the whole aggregator
+   * @return timestamp
+   */
+  public long readCheckpoint(AGGREGATOR_NAME aggregatorName, MetricNameHashRange range) {
+    if (range == null) {
+      range = new MetricNameHashRange(0, 1);
+    }
+    long checkpoint = readCheckpoint(getCheckpointZKPath(aggregatorName, range));
+
+    // Checkpoints of the other numbers of ranges
+    Map<Integer, Map<MetricNameHashRange, Long>> layouts = new HashMap<>();
+    String aggregatorPath = getCheckpointZKPath(aggregatorName);
+    String parentPath = aggregatorPath.substring(0, aggregatorPath.lastIndexOf('/'));
+    List<String> names = propertyStore.getChildNames(parentPath, AccessOption.PERSISTENT);
+    if (names == null) {
+      return checkpoint;
+    }
+    for (String name : names) {
+      MetricNameHashRange other = getCheckpointRange(aggregatorName, name);
+      if (other == null || other.getShards() == range.getShards()) {
+        continue;
+      }
+      long otherCheckpoint = readCheckpoint(parentPath + "/" + name);
+      if (otherCheckpoint == -1) {
+        continue;
+      }
+      Map<MetricNameHashRange, Long> layout = layouts.get(other.getShards());
+      if (layout == null) {
+        layout = new HashMap<>();
+        layouts.put(other.getShards(), layout);
+      }
+      layout.put(other, otherCheckpoint);
+    }
+
+    // The last used number of ranges has the latest checkpoint
+    Map<MetricNameHashRange, Long> lastLayout = null;
+    long lastCheckpoint = -1;
+    for (Map<MetricNameHashRange, Long> layout : layouts.values()) {
+      long latest = Collections.max(layout.values());
+      if (latest > lastCheckpoint) {
+        lastCheckpoint = latest;
+        lastLayout = layout;
+      }
+    }
+    if (lastLayout == null || checkpoint >= lastCheckpoint) {
+      return checkpoint;
+    }
+
+    long migrated = -1;
+    for (Map.Entry<MetricNameHashRange, Long> other : lastLayout.entrySet()) {
+      if (other.getKey().overlaps(range) && (migrated == -1 || other.getValue() < migrated)) {
+        migrated = other.getValue();
+      }
+    }
+    if (migrated != -1) {
+      LOG.info("Continuing " + range + " of " + aggregatorName + " from checkpoint " + migrated
+        + " of " + lastLayout.keySet().iterator().next().getShards() + " ranges.");
+      return migrated;
+    }
+    return checkpoint;
+  }
+
+  private long readCheckpoint(String path) {
     LOG.debug("Reading checkpoint at " + path);
     Stat stat = new Stat();
     ZNRecord znRecord = propertyStore.get(path, stat, AccessOption.PERSISTENT);
@@ -64,7 +146,21 @@ public class CheckpointManager {
    * @return sucsess
    */
   public boolean writeCheckpoint(AGGREGATOR_NAME aggregatorName, long value) {
-    String path = getCheckpointZKPath(aggregatorName);
+    return writeCheckpoint(getCheckpointZKPath(aggregatorName), value);
+  }
+
+  /**
+   * Write the checkpoint of a metric name hash range of an aggregator.
+   *
+   * @param range null for the whole aggregator
+   * @param value timestamp
+   * @return success
+   */
+  public boolean writeCheckpoint(AGGREGATOR_NAME aggregatorName, MetricNameHashRange range, long value) {
+    return writeCheckpoint(getCheckpointZKPath(aggregatorName, range), value);
+  }
+
+  private boolean writeCheckpoint(String path, long value) {
     LOG.debug(String.format("Saving checkpoint at %s with value %s", path, value));
     return propertyStore.update(path, new CheckpointDataUpdater(path, value), AccessOption.PERSISTENT);
   }
@@ -95,4 +191,39 @@ public class CheckpointManager {
     sb.append(ACTUAL_AGGREGATOR_NAMES.get(aggregatorName));
     return sb.toString();
   }
+
+  /**
+   * A single range keeps the checkpoint of the whole aggregator.
+   */
+  String getCheckpointZKPath(AGGREGATOR_NAME aggregatorName, MetricNameHashRange range) {
+    if (!isSharded(range)) {
+      return getCheckpointZKPath(aggregatorName);
+    }
+    return getCheckpointZKPath(aggregatorName) + "_" + range.getShard() + "_OF_" + range.getShards();
+  }
+
+  /**
+   * Range of a checkpoint znode of the aggregator, null for the znodes of the
+   * other aggregators.
+   */
+  static MetricNameHashRange getCheckpointRange(AGGREGATOR_NAME aggregatorName, String name) {
+    String aggregator = ACTUAL_AGGREGATOR_NAMES.get(aggregatorName);
+    if (name.equals(aggregator)) {
+      return new MetricNameHashRange(0, 1);
+    }
+    Matcher matcher = SHARDED_CHECKPOINT_PATTERN.matcher(name);
+    if (!matcher.matches() || !matcher.group(1).equals(aggregator)) {
+      return null;
+    }
+    try {
+      return new MetricNameHashRange(Integer.parseInt(matcher.group(2)),
+        Integer.parseInt(matcher.group(3)));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static boolean isSharded(MetricNameHashRange range) {
+    return range != null && range.getShards() > 1;
+  }
 }
@@ -31,6 +31,7 @@ import org.apache.helix.NotificationContext;
 import org.apache.helix.controller.GenericHelixController;
 import org.apache.helix.manager.zk.ZKHelixAdmin;
 import org.apache.helix.model.ExternalView;
+import org.apache.helix.model.IdealState;
 import org.apache.helix.model.InstanceConfig;
 import org.apache.helix.model.LiveInstance;
 import org.apache.helix.model.OnlineOfflineSMD;
@@ -67,6 +68,7 @@ public class TimelineMetricHAController {
   HelixManager manager;
 
   private volatile boolean isInitialized = false;
+  private UuidClaimManager uuidClaimManager;
 
   public TimelineMetricHAController(TimelineMetricConfiguration configuration) {
     String instancePort;
@@ -99,7 +101,8 @@ public class TimelineMetricHAController {
     instanceConfig.setHostName(instanceHostname);
     instanceConfig.setPort(instancePort);
     instanceConfig.setInstanceEnabled(true);
-    aggregationTaskRunner = new AggregationTaskRunner(instanceConfig.getInstanceName(), zkConnectUrl);
+    aggregationTaskRunner = new AggregationTaskRunner(instanceConfig.getInstanceName(),
+      zkConnectUrl, configuration.getAggregationShards());
   }
 
   /**
@@ -125,13 +128,22 @@ public class TimelineMetricHAController {
     }
 
     // Add resources with 1 cluster-wide replica
-    // Since our aggregators are unbalanced in terms of work distribution we
-    // only need to distribute writes to METRIC_AGGREGATE and
-    // METRIC_RECORD_MINUTE
+    // A cluster and a host aggregation partition per metric name hash range,
+    // Helix spreads them over the live instances and moves them when
+    // instances join or leave
+    int partitions = AggregationTaskRunner.getPartitionCount(aggregationTaskRunner.getShards());
     List<String> resources = admin.getResourcesInCluster(CLUSTER_NAME);
     if (!resources.contains(METRIC_AGGREGATORS)) {
-      LOG.info("Adding resource " + METRIC_AGGREGATORS + " with 2 partitions and 1 replicas");
-      admin.addResource(CLUSTER_NAME, METRIC_AGGREGATORS, 2, OnlineOfflineSMD.name, FULL_AUTO.toString());
+      LOG.info("Adding resource " + METRIC_AGGREGATORS + " with " + partitions + " partitions and 1 replicas");
+      admin.addResource(CLUSTER_NAME, METRIC_AGGREGATORS, partitions, OnlineOfflineSMD.name, FULL_AUTO.toString());
+    } else {
+      IdealState idealState = admin.getResourceIdealState(CLUSTER_NAME, METRIC_AGGREGATORS);
+      if (idealState.getNumPartitions() != partitions) {
+        LOG.info("Changing partitions of resource " + METRIC_AGGREGATORS + " from "
+          + idealState.getNumPartitions() + " to " + partitions);
+        idealState.setNumPartitions(partitions);
+        admin.setResourceIdealState(CLUSTER_NAME, METRIC_AGGREGATORS, idealState);
+      }
     }
     // this will set up the ideal state, it calculates the preference list for
     // each partition similar to consistent hashing
@@ -180,6 +192,7 @@ public class TimelineMetricHAController {
     );
 
     manager.connect();
+    uuidClaimManager = new UuidClaimManager(manager.getHelixPropertyStore());
     HelixController controller = new HelixController();
     manager.addLiveInstanceChangeListener(controller);
   }
@@ -201,6 +214,13 @@ public class TimelineMetricHAController {
     return sb.toString();
   }
 
+  /**
+   * Registry of the row key ids shared by the collectors
+   */
+  public UuidClaimManager getUuidClaimManager() {
+    return uuidClaimManager;
+  }
+
   public AggregationTaskRunner getAggregationTaskRunner() {
     return aggregationTaskRunner;
   }
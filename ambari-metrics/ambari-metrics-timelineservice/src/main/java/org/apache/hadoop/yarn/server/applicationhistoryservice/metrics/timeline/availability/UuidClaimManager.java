@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricUuidClaims;
+import org.apache.helix.AccessOption;
+import org.apache.helix.ZNRecord;
+import org.apache.helix.store.zk.ZkHelixPropertyStore;
+
+/**
+ * Keeps the claims of the row key ids in zookeeper, a znode per id. Creating
+ * the znode fails if another collector created it first.
+ */
+public class UuidClaimManager implements TimelineMetricUuidClaims {
+  private final ZkHelixPropertyStore<ZNRecord> propertyStore;
+  private static final Log LOG = LogFactory.getLog(UuidClaimManager.class);
+
+  static final String NAME_FIELD = "name";
+  static final String TIME_FIELD = "time";
+  static final String UUID_PATH_PREFIX = "UUIDS";
+
+  public UuidClaimManager(ZkHelixPropertyStore<ZNRecord> propertyStore) {
+    this.propertyStore = propertyStore;
+  }
+
+  @Override
+  public Long claim(String type, long uuid, String name, long time) {
+    String path = getUuidZKPath(type, uuid);
+    ZNRecord znRecord = new ZNRecord(Long.toHexString(uuid));
+    znRecord.setSimpleField(NAME_FIELD, name);
+    znRecord.setLongField(TIME_FIELD, time);
+    if (!propertyStore.create(path, znRecord, AccessOption.PERSISTENT)) {
+      znRecord = propertyStore.get(path, null, AccessOption.PERSISTENT);
+      if (znRecord == null) {
+        throw new IllegalStateException("Unable to claim id at " + path);
+      }
+    }
+    if (!name.equals(znRecord.getSimpleField(NAME_FIELD))) {
+      LOG.debug("Id at " + path + " belongs to " + znRecord.getSimpleField(NAME_FIELD));
+      return null;
+    }
+    return znRecord.getLongField(TIME_FIELD, time);
+  }
+
+  String getUuidZKPath(String type, long uuid) {
+    return "/" + UUID_PATH_PREFIX + "/" + type + "/" + Long.toHexString(uuid);
+  }
+}
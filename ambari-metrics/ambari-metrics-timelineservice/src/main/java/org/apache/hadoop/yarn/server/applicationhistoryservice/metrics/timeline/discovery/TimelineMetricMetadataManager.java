@@ -21,14 +21,20 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.metrics2.sink.timeline.MetadataException;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +48,7 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_METADATA_SYNC_INIT_DELAY;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_METADATA_SYNC_SCHEDULE_DELAY;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRIC_METADATA_FILTERS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_UUID_SCHEMA_ENABLED;
 
 public class TimelineMetricMetadataManager {
   private static final Log LOG = LogFactory.getLog(TimelineMetricMetadataManager.class);
@@ -53,6 +60,33 @@ public class TimelineMetricMetadataManager {
   // Sync only when needed
   AtomicBoolean SYNC_HOSTED_APPS_METADATA = new AtomicBoolean(false);
 
+  // Row key ids: 8 bytes for the metric (name, appId) followed by 4 for the host
+  public static final int METRIC_UUID_LENGTH = 8;
+  public static final int HOST_UUID_LENGTH = 4;
+  public static final int UUID_LENGTH = METRIC_UUID_LENGTH + HOST_UUID_LENGTH;
+  // Upper bound of row keys a single query is translated to
+  static final int MAX_UUIDS_PER_QUERY = 5000;
+
+  // Dictionary of the ids in both directions
+  private final Map<TimelineMetricMetadataKey, Long> METRIC_UUID_MAP = new ConcurrentHashMap<>();
+  private final Map<Long, TimelineMetricMetadataKey> UUID_METRIC_MAP = new ConcurrentHashMap<>();
+  private final Map<String, Integer> HOST_UUID_MAP = new ConcurrentHashMap<>();
+  private final Map<Integer, String> UUID_HOST_MAP = new ConcurrentHashMap<>();
+  // Ids assigned since the last sync
+  private final Set<TimelineMetricMetadataKey> UNPERSISTED_METRIC_UUIDS =
+    Collections.newSetFromMap(new ConcurrentHashMap<TimelineMetricMetadataKey, Boolean>());
+  private final Set<String> UNPERSISTED_HOST_UUIDS =
+    Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  // Since when the writes of an id are known to be in the id keyed table:
+  // the first claim of the id, kept with the id in the store. Ids stored
+  // without it are covered since the start of this manager.
+  private final long uuidCoverageStartTime = System.currentTimeMillis();
+  private final Map<Long, Long> METRIC_UUID_START_TIMES = new ConcurrentHashMap<>();
+  private final Map<Integer, Long> HOST_UUID_START_TIMES = new ConcurrentHashMap<>();
+  private boolean uuidSchemaEnabled = false;
+  // Ids shared with the other collectors, null with a single collector
+  private TimelineMetricUuidClaims uuidClaims;
+
   // Single thread to sync back new writes to the store
   private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
 
@@ -72,6 +106,7 @@ public class TimelineMetricMetadataManager {
     if (!StringUtils.isEmpty(patternStrings)) {
       metricNameFilters.addAll(Arrays.asList(patternStrings.split(",")));
     }
+    uuidSchemaEnabled = metricsConf.getBoolean(TIMELINE_METRICS_UUID_SCHEMA_ENABLED, false);
   }
 
   /**
@@ -80,6 +115,10 @@ public class TimelineMetricMetadataManager {
   public void initializeMetadata() {
     if (metricsConf.getBoolean(DISABLE_METRIC_METADATA_MGMT, false)) {
       isDisabled = true;
+      if (uuidSchemaEnabled) {
+        LOG.warn(TIMELINE_METRICS_UUID_SCHEMA_ENABLED + " is ignored, the " +
+          "metric ids are kept with the metadata which is disabled.");
+      }
     } else {
       metricMetadataSync = new TimelineMetricMetadataSync(this);
       // Schedule the executor to sync to store
@@ -100,6 +139,13 @@ public class TimelineMetricMetadataManager {
         LOG.info("Retrieved " + hostedAppData.size() + " host objects from store.");
         HOSTED_APPS_MAP.putAll(hostedAppData);
 
+        if (uuidSchemaEnabled) {
+          putMetricUuidsFromStore(getMetricUuidsFromStore());
+          putHostUuidsFromStore(getHostUuidsFromStore());
+          LOG.info("Retrieved " + METRIC_UUID_MAP.size() + " metric and " +
+            HOST_UUID_MAP.size() + " host ids from store.");
+        }
+
       } catch (SQLException e) {
         LOG.warn("Exception loading metric metadata", e);
       }
@@ -204,6 +250,305 @@ public class TimelineMetricMetadataManager {
     return isDisabled;
   }
 
+  /**
+   * Precision data is written to and read from the id keyed table
+   */
+  public boolean isUuidSchemaEnabled() {
+    return uuidSchemaEnabled && !isDisabled;
+  }
+
+  /**
+   * Claim the ids through the given registry, so that all the collectors
+   * agree on them - HA mode
+   */
+  public void setUuidClaims(TimelineMetricUuidClaims uuidClaims) {
+    this.uuidClaims = uuidClaims;
+  }
+
+  /**
+   * Row key id of the metric on its host. The ids are derived from a hash
+   * of the names, a collision with an id already in use is resolved by
+   * rehashing with a salt. In HA mode the ids are claimed in the shared
+   * registry, which decides the owner of a colliding id. Returns null if
+   * the registry cannot be reached, the row is then only written to the
+   * name keyed table.
+   */
+  public byte[] getUuid(TimelineMetric timelineMetric) {
+    Long metricUuid;
+    Integer hostUuid;
+    try {
+      metricUuid = getMetricUuid(timelineMetric.getMetricName(), timelineMetric.getAppId());
+      hostUuid = getHostUuid(timelineMetric.getHostName());
+    } catch (RuntimeException e) {
+      LOG.warn("Unable to claim the id of " + timelineMetric.getMetricName() + ", appId = "
+        + timelineMetric.getAppId() + ", host = " + timelineMetric.getHostName(), e);
+      return null;
+    }
+    byte[] uuid = new byte[UUID_LENGTH];
+    Bytes.putLong(uuid, 0, metricUuid);
+    Bytes.putInt(uuid, METRIC_UUID_LENGTH, hostUuid);
+    return uuid;
+  }
+
+  Long getMetricUuid(String metricName, String appId) {
+    TimelineMetricMetadataKey key = new TimelineMetricMetadataKey(metricName, appId);
+    Long uuid = METRIC_UUID_MAP.get(key);
+    if (uuid != null) {
+      return uuid;
+    }
+    synchronized (METRIC_UUID_MAP) {
+      uuid = METRIC_UUID_MAP.get(key);
+      if (uuid != null) {
+        return uuid;
+      }
+      String name = appId + "\u0000" + metricName;
+      for (int salt = 0; ; salt++) {
+        long candidate = Bytes.toLong(hash(name, salt));
+        Long startTime = UUID_METRIC_MAP.containsKey(candidate) ? null :
+          claimUuid(TimelineMetricUuidClaims.METRIC_UUIDS, candidate, name);
+        if (startTime != null) {
+          METRIC_UUID_START_TIMES.put(candidate, startTime);
+          UUID_METRIC_MAP.put(candidate, key);
+          METRIC_UUID_MAP.put(key, candidate);
+          UNPERSISTED_METRIC_UUIDS.add(key);
+          return candidate;
+        }
+        LOG.warn("Metric id collision for " + metricName + ", appId = " + appId);
+      }
+    }
+  }
+
+  Integer getHostUuid(String hostname) {
+    String host = hostname == null ? "" : hostname;
+    Integer uuid = HOST_UUID_MAP.get(host);
+    if (uuid != null) {
+      return uuid;
+    }
+    synchronized (HOST_UUID_MAP) {
+      uuid = HOST_UUID_MAP.get(host);
+      if (uuid != null) {
+        return uuid;
+      }
+      for (int salt = 0; ; salt++) {
+        int candidate = Bytes.toInt(hash(host, salt));
+        Long startTime = UUID_HOST_MAP.containsKey(candidate) ? null :
+          claimUuid(TimelineMetricUuidClaims.HOST_UUIDS, candidate, host);
+        if (startTime != null) {
+          HOST_UUID_START_TIMES.put(candidate, startTime);
+          UUID_HOST_MAP.put(candidate, host);
+          HOST_UUID_MAP.put(host, candidate);
+          UNPERSISTED_HOST_UUIDS.add(host);
+          return candidate;
+        }
+        LOG.warn("Host id collision for " + host);
+      }
+    }
+  }
+
+  /**
+   * Time since which the id is used for the name, null if it is used for
+   * another name.
+   */
+  private Long claimUuid(String type, long uuid, String name) {
+    long time = System.currentTimeMillis();
+    return uuidClaims == null ? Long.valueOf(time) : uuidClaims.claim(type, uuid, name, time);
+  }
+
+  private static byte[] hash(String value, int salt) {
+    try {
+      MessageDigest md5 = MessageDigest.getInstance("MD5");
+      md5.update(Bytes.toBytes(value));
+      if (salt > 0) {
+        md5.update(Bytes.toBytes(salt));
+      }
+      return md5.digest();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Metric name, appId and hostname of a row key id, null if the id is
+   * not in the dictionary.
+   */
+  public TimelineMetric getMetricFromUuid(byte[] uuid) {
+    if (uuid == null || uuid.length != UUID_LENGTH) {
+      return null;
+    }
+    TimelineMetricMetadataKey key = UUID_METRIC_MAP.get(Bytes.toLong(uuid, 0));
+    String host = UUID_HOST_MAP.get(Bytes.toInt(uuid, METRIC_UUID_LENGTH));
+    if (key == null || host == null) {
+      return null;
+    }
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(key.getMetricName());
+    metric.setAppId(key.getAppId());
+    metric.setHostName(host.isEmpty() ? null : host);
+    return metric;
+  }
+
+  /**
+   * Translate the metric names and hostnames of a precision query to row
+   * key ids. Without hostnames all the hosts of the app are queried.
+   * Returns null if the condition cannot be expressed with known ids, like
+   * name patterns or names not written since the dictionary was loaded, the
+   * query then has to go to the name keyed table.
+   */
+  public List<byte[]> getUuids(Condition condition) {
+    if (!isUuidSchemaEnabled() || condition.getMetricNames() == null
+        || condition.getMetricNames().isEmpty()) {
+      return null;
+    }
+    String appId = condition.getAppId();
+
+    List<TimelineMetricMetadataKey> metricKeys = new ArrayList<>();
+    for (String metricName : condition.getMetricNames()) {
+      if (metricName.contains("%")) {
+        return null;
+      }
+      if (appId != null) {
+        TimelineMetricMetadataKey key = new TimelineMetricMetadataKey(metricName, appId);
+        if (!METRIC_UUID_MAP.containsKey(key)) {
+          return null;
+        }
+        metricKeys.add(key);
+      } else {
+        boolean found = false;
+        for (TimelineMetricMetadataKey key : METRIC_UUID_MAP.keySet()) {
+          if (key.getMetricName().equals(metricName)) {
+            metricKeys.add(key);
+            found = true;
+          }
+        }
+        if (!found) {
+          return null;
+        }
+      }
+    }
+
+    List<String> hosts = new ArrayList<>();
+    if (condition.getHostnames() != null && !condition.getHostnames().isEmpty()) {
+      for (String hostname : condition.getHostnames()) {
+        if (hostname.contains("%") || !HOST_UUID_MAP.containsKey(hostname)) {
+          return null;
+        }
+        hosts.add(hostname);
+      }
+    } else {
+      for (String hostname : HOST_UUID_MAP.keySet()) {
+        Set<String> apps = HOSTED_APPS_MAP.get(hostname);
+        if (appId == null || apps == null || apps.contains(appId)) {
+          hosts.add(hostname);
+        }
+      }
+    }
+
+    if ((long) metricKeys.size() * hosts.size() > MAX_UUIDS_PER_QUERY) {
+      return null;
+    }
+    List<byte[]> uuids = new ArrayList<>(metricKeys.size() * hosts.size());
+    for (TimelineMetricMetadataKey key : metricKeys) {
+      long metricUuid = METRIC_UUID_MAP.get(key);
+      for (String hostname : hosts) {
+        byte[] uuid = new byte[UUID_LENGTH];
+        Bytes.putLong(uuid, 0, metricUuid);
+        Bytes.putInt(uuid, METRIC_UUID_LENGTH, HOST_UUID_MAP.get(hostname));
+        uuids.add(uuid);
+      }
+    }
+    return uuids;
+  }
+
+  /**
+   * Time since which all the writes of the ids are in the id keyed table,
+   * older rows are only in the name keyed table. That is the first claim of
+   * the ids, read back from the store after a restart. For ids stored
+   * without it, how long they were in use before this collector started is
+   * not known, so their coverage starts with this collector.
+   */
+  public long getUuidCoverageStartTime(List<byte[]> uuids) {
+    long startTime = uuids.isEmpty() ? uuidCoverageStartTime : 0;
+    for (byte[] uuid : uuids) {
+      Long metricStartTime = METRIC_UUID_START_TIMES.get(Bytes.toLong(uuid, 0));
+      Long hostStartTime = HOST_UUID_START_TIMES.get(Bytes.toInt(uuid, METRIC_UUID_LENGTH));
+      startTime = Math.max(startTime, metricStartTime != null ? metricStartTime : uuidCoverageStartTime);
+      startTime = Math.max(startTime, hostStartTime != null ? hostStartTime : uuidCoverageStartTime);
+    }
+    return startTime;
+  }
+
+  /**
+   * Ids assigned since the last successful sync
+   */
+  Map<TimelineMetricMetadataKey, TimelineMetricUuid> getUnpersistedMetricUuids() {
+    Map<TimelineMetricMetadataKey, TimelineMetricUuid> uuids = new HashMap<>();
+    for (TimelineMetricMetadataKey key : UNPERSISTED_METRIC_UUIDS) {
+      long uuid = METRIC_UUID_MAP.get(key);
+      uuids.put(key, new TimelineMetricUuid(uuid, METRIC_UUID_START_TIMES.get(uuid)));
+    }
+    return uuids;
+  }
+
+  Map<String, TimelineMetricUuid> getUnpersistedHostUuids() {
+    Map<String, TimelineMetricUuid> uuids = new HashMap<>();
+    for (String host : UNPERSISTED_HOST_UUIDS) {
+      int uuid = HOST_UUID_MAP.get(host);
+      uuids.put(host, new TimelineMetricUuid(uuid, HOST_UUID_START_TIMES.get(uuid)));
+    }
+    return uuids;
+  }
+
+  void persistMetricUuids(Map<TimelineMetricMetadataKey, TimelineMetricUuid> uuids) throws SQLException {
+    hBaseAccessor.saveMetricUuids(uuids);
+    UNPERSISTED_METRIC_UUIDS.removeAll(uuids.keySet());
+  }
+
+  void persistHostUuids(Map<String, TimelineMetricUuid> uuids) throws SQLException {
+    hBaseAccessor.saveHostUuids(uuids);
+    UNPERSISTED_HOST_UUIDS.removeAll(uuids.keySet());
+  }
+
+  /**
+   * Add the ids assigned by other collectors. Ids already assigned here win,
+   * a mismatch can only come from ids assigned without the shared registry.
+   */
+  void putMetricUuidsFromStore(Map<TimelineMetricMetadataKey, TimelineMetricUuid> uuids) {
+    synchronized (METRIC_UUID_MAP) {
+      for (Map.Entry<TimelineMetricMetadataKey, TimelineMetricUuid> entry : uuids.entrySet()) {
+        Long uuid = METRIC_UUID_MAP.get(entry.getKey());
+        long storedUuid = entry.getValue().getUuid();
+        if (uuid == null && !UUID_METRIC_MAP.containsKey(storedUuid)) {
+          METRIC_UUID_START_TIMES.put(storedUuid, getStoredStartTime(entry.getValue()));
+          METRIC_UUID_MAP.put(entry.getKey(), storedUuid);
+          UUID_METRIC_MAP.put(storedUuid, entry.getKey());
+        } else if (uuid == null || uuid != storedUuid) {
+          LOG.warn("Conflicting id in store for " + entry.getKey().getMetricName()
+            + ", appId = " + entry.getKey().getAppId());
+        }
+      }
+    }
+  }
+
+  void putHostUuidsFromStore(Map<String, TimelineMetricUuid> uuids) {
+    synchronized (HOST_UUID_MAP) {
+      for (Map.Entry<String, TimelineMetricUuid> entry : uuids.entrySet()) {
+        Integer uuid = HOST_UUID_MAP.get(entry.getKey());
+        int storedUuid = (int) entry.getValue().getUuid();
+        if (uuid == null && !UUID_HOST_MAP.containsKey(storedUuid)) {
+          HOST_UUID_START_TIMES.put(storedUuid, getStoredStartTime(entry.getValue()));
+          HOST_UUID_MAP.put(entry.getKey(), storedUuid);
+          UUID_HOST_MAP.put(storedUuid, entry.getKey());
+        } else if (uuid == null || uuid != storedUuid) {
+          LOG.warn("Conflicting id in store for host " + entry.getKey());
+        }
+      }
+    }
+  }
+
+  private long getStoredStartTime(TimelineMetricUuid uuid) {
+    return uuid.getStartTime() > 0 ? uuid.getStartTime() : uuidCoverageStartTime;
+  }
+
   boolean isDistributedModeEnabled() {
     return metricsConf.get("timeline.metrics.service.operation.mode", "").equals("distributed");
   }
@@ -223,4 +568,16 @@ public class TimelineMetricMetadataManager {
   Map<String, Set<String>> getHostedAppsFromStore() throws SQLException {
     return hBaseAccessor.getHostedAppsMetadata();
   }
+
+  /**
+   * Fetch metric and host ids from store
+   * @throws SQLException
+   */
+  Map<TimelineMetricMetadataKey, TimelineMetricUuid> getMetricUuidsFromStore() throws SQLException {
+    return hBaseAccessor.getMetricUuids();
+  }
+
+  Map<String, TimelineMetricUuid> getHostUuidsFromStore() throws SQLException {
+    return hBaseAccessor.getHostUuids();
+  }
 }
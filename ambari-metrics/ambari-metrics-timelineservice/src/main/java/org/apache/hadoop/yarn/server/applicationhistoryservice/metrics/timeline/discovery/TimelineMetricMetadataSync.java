@@ -45,11 +45,53 @@ public class TimelineMetricMetadataSync implements Runnable {
     persistMetricMetadata();
     LOG.debug("Persisting hosted apps metadata...");
     persistHostAppsMetadata();
+    if (cacheManager.isUuidSchemaEnabled()) {
+      LOG.debug("Persisting metric and host ids...");
+      persistUuids();
+    }
     if (cacheManager.isDistributedModeEnabled()) {
       LOG.debug("Refreshing metric metadata...");
       refreshMetricMetadata();
       LOG.debug("Refreshing hosted apps metadata...");
       refreshHostAppsMetadata();
+      if (cacheManager.isUuidSchemaEnabled()) {
+        LOG.debug("Refreshing metric and host ids...");
+        refreshUuids();
+      }
+    }
+  }
+
+  /**
+   * Persist the ids assigned since the last run
+   */
+  private void persistUuids() {
+    Map<TimelineMetricMetadataKey, TimelineMetricUuid> metricUuids = cacheManager.getUnpersistedMetricUuids();
+    if (!metricUuids.isEmpty()) {
+      try {
+        cacheManager.persistMetricUuids(metricUuids);
+      } catch (SQLException e) {
+        LOG.warn("Error persisting metric ids.", e);
+      }
+    }
+    Map<String, TimelineMetricUuid> hostUuids = cacheManager.getUnpersistedHostUuids();
+    if (!hostUuids.isEmpty()) {
+      try {
+        cacheManager.persistHostUuids(hostUuids);
+      } catch (SQLException e) {
+        LOG.warn("Error persisting host ids.", e);
+      }
+    }
+  }
+
+  /**
+   * Read ids assigned by other collectors - HA mode
+   */
+  private void refreshUuids() {
+    try {
+      cacheManager.putMetricUuidsFromStore(cacheManager.getMetricUuidsFromStore());
+      cacheManager.putHostUuidsFromStore(cacheManager.getHostUuidsFromStore());
+    } catch (SQLException e) {
+      LOG.warn("Error refreshing metric and host ids from store.", e);
     }
   }
 
@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery;
+
+/**
+ * Row key id of a metric or a host and the time since which the writes of
+ * the id are in the id keyed table, 0 if not known.
+ */
+public class TimelineMetricUuid {
+  private final long uuid;
+  private final long startTime;
+
+  public TimelineMetricUuid(long uuid, long startTime) {
+    this.uuid = uuid;
+    this.startTime = startTime;
+  }
+
+  public long getUuid() {
+    return uuid;
+  }
+
+  public long getStartTime() {
+    return startTime;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    TimelineMetricUuid that = (TimelineMetricUuid) o;
+
+    return uuid == that.uuid && startTime == that.startTime;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = (int) (uuid ^ (uuid >>> 32));
+    result = 31 * result + (int) (startTime ^ (startTime >>> 32));
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "TimelineMetricUuid{uuid=" + uuid + ", startTime=" + startTime + "}";
+  }
+}
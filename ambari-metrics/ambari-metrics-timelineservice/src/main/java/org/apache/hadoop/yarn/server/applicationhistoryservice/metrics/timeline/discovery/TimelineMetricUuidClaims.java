@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery;
+
+/**
+ * Registry of the row key ids shared by the collectors, so that a metric or
+ * a host gets the same id on all of them - HA mode
+ */
+public interface TimelineMetricUuidClaims {
+  String METRIC_UUIDS = "METRICS";
+  String HOST_UUIDS = "HOSTS";
+
+  /**
+   * Claim an id for a name. The first claim of an id wins, later claims of
+   * the same name share it.
+   *
+   * @param type {@link #METRIC_UUIDS} or {@link #HOST_UUIDS}
+   * @param time time of this claim
+   * @return time of the first claim if the id belongs to the name, null if
+   * it belongs to another name
+   */
+  Long claim(String type, long uuid, String name, long time);
+}
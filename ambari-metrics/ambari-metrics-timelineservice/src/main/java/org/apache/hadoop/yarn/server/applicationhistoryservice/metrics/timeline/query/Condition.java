@@ -41,6 +41,10 @@ public interface Condition {
   Integer getLimit();
   Integer getFetchSize();
   void setFetchSize(Integer fetchSize);
+  Integer getMaxPoints();
+  void setMaxPoints(Integer maxPoints);
+  boolean isReadSketch();
+  void setReadSketch(boolean readSketch);
   void addOrderByColumn(String column);
   void setNoLimit();
   boolean doUpdate();
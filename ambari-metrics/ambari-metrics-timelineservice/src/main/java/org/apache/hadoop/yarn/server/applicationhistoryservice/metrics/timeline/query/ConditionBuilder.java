@@ -42,6 +42,7 @@ public class ConditionBuilder {
   private Integer topN;
   private boolean isBottomN;
   private Function topNFunction;
+  private Integer maxPoints;
 
   public ConditionBuilder(List<String> metricNames) {
     this.metricNames = metricNames;
@@ -122,16 +123,24 @@ public class ConditionBuilder {
     return this;
   }
 
+  public ConditionBuilder maxPoints(Integer maxPoints) {
+    this.maxPoints = maxPoints;
+    return this;
+  }
+
   public Condition build() {
+    Condition condition;
     if (topN == null) {
-      return new DefaultCondition(
+      condition = new DefaultCondition(
         metricNames,
         hostnames, appId, instanceId, startTime, endTime,
         precision, limit, grouped);
     } else {
-      return new TopNCondition(metricNames, hostnames, appId, instanceId,
+      condition = new TopNCondition(metricNames, hostnames, appId, instanceId,
         startTime, endTime, precision, limit, grouped, topN, topNFunction, isBottomN);
     }
+    condition.setMaxPoints(maxPoints);
+    return condition;
   }
 
 }
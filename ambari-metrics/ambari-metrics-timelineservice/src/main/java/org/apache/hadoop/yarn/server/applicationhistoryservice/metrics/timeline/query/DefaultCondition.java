@@ -38,6 +38,9 @@ public class DefaultCondition implements Condition {
   boolean grouped;
   boolean noLimit = false;
   Integer fetchSize;
+  Integer maxPoints;
+  boolean readSketch;
+  MetricNameHashRange metricNameHashRange;
   String statement;
   Set<String> orderByColumns = new LinkedHashSet<String>();
 
@@ -79,7 +82,13 @@ public class DefaultCondition implements Condition {
     appendConjunction = append(sb, appendConjunction, getAppId(), " APP_ID = ?");
     appendConjunction = append(sb, appendConjunction, getInstanceId(), " INSTANCE_ID = ?");
     appendConjunction = append(sb, appendConjunction, getStartTime(), " SERVER_TIME >= ?");
-    append(sb, appendConjunction, getEndTime(), " SERVER_TIME < ?");
+    appendConjunction = append(sb, appendConjunction, getEndTime(), " SERVER_TIME < ?");
+
+    if (metricNameHashRange != null) {
+      appendConjunction = append(sb, appendConjunction,
+        metricNameHashRange.getLowerBound(), " MD5(METRIC_NAME) >= ?");
+      append(sb, appendConjunction, metricNameHashRange.getUpperBound(), " MD5(METRIC_NAME) < ?");
+    }
 
     return sb;
   }
@@ -190,6 +199,40 @@ public class DefaultCondition implements Condition {
     this.fetchSize = fetchSize;
   }
 
+  /**
+   * Maximum number of values per series of a grouped range query, null
+   * for all values.
+   */
+  public Integer getMaxPoints() {
+    return maxPoints;
+  }
+
+  public void setMaxPoints(Integer maxPoints) {
+    this.maxPoints = maxPoints;
+  }
+
+  /**
+   * Read the quantile sketches along with the aggregates.
+   */
+  public boolean isReadSketch() {
+    return readSketch;
+  }
+
+  public void setReadSketch(boolean readSketch) {
+    this.readSketch = readSketch;
+  }
+
+  /**
+   * Range of metric name hashes read by an aggregator, null for all metrics.
+   */
+  public MetricNameHashRange getMetricNameHashRange() {
+    return metricNameHashRange;
+  }
+
+  public void setMetricNameHashRange(MetricNameHashRange metricNameHashRange) {
+    this.metricNameHashRange = metricNameHashRange;
+  }
+
   public void addOrderByColumn(String column) {
     orderByColumns.add(column);
   }
@@ -292,6 +335,7 @@ public class DefaultCondition implements Condition {
       ", grouped=" + grouped +
       ", orderBy=" + orderByColumns +
       ", noLimit=" + noLimit +
+      ", metricNameHashRange=" + metricNameHashRange +
       '}';
   }
 }
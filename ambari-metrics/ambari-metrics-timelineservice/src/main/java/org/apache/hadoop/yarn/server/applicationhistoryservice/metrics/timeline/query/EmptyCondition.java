@@ -118,6 +118,26 @@ public class EmptyCondition implements Condition {
 
   }
 
+  @Override
+  public Integer getMaxPoints() {
+    return null;
+  }
+
+  @Override
+  public void setMaxPoints(Integer maxPoints) {
+
+  }
+
+  @Override
+  public boolean isReadSketch() {
+    return false;
+  }
+
+  @Override
+  public void setReadSketch(boolean readSketch) {
+
+  }
+
   @Override
   public void addOrderByColumn(String column) {
 
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * One of a number of equal ranges of the MD5 hash of metric names. The
+ * aggregation work of a collector cluster is split into these ranges, the
+ * owner of a range aggregates the metrics whose name hashes into it. The
+ * hash is computed by Phoenix on the region servers, so an aggregator only
+ * reads the rows of its own range.
+ */
+public class MetricNameHashRange {
+  // Ranges are cut on the first two bytes of the hash
+  public static final int MAX_SHARDS = 1 << 16;
+  private static final int HASH_LENGTH = 16;
+
+  private final int shard;
+  private final int shards;
+
+  public MetricNameHashRange(int shard, int shards) {
+    if (shards < 1 || shards > MAX_SHARDS || shard < 0 || shard >= shards) {
+      throw new IllegalArgumentException("Invalid shard " + shard + " of " + shards);
+    }
+    this.shard = shard;
+    this.shards = shards;
+  }
+
+  public int getShard() {
+    return shard;
+  }
+
+  public int getShards() {
+    return shards;
+  }
+
+  /**
+   * @return inclusive lower bound of the hash, null for the first range
+   */
+  public byte[] getLowerBound() {
+    return shard == 0 ? null : bound(shard);
+  }
+
+  /**
+   * @return exclusive upper bound of the hash, null for the last range
+   */
+  public byte[] getUpperBound() {
+    return shard == shards - 1 ? null : bound(shard + 1);
+  }
+
+  public boolean contains(String metricName) {
+    byte[] hash = md5(metricName);
+    byte[] lower = getLowerBound();
+    byte[] upper = getUpperBound();
+    return (lower == null || compare(hash, lower) >= 0)
+      && (upper == null || compare(hash, upper) < 0);
+  }
+
+  /**
+   * Whether some metric names hash into both ranges, such as the ranges of
+   * two shard counts.
+   */
+  public boolean overlaps(MetricNameHashRange other) {
+    return boundValue(shard) < other.boundValue(other.shard + 1)
+      && other.boundValue(other.shard) < boundValue(shard + 1);
+  }
+
+  private long boundValue(int index) {
+    return (long) index * MAX_SHARDS / shards;
+  }
+
+  private byte[] bound(int index) {
+    int value = (int) boundValue(index);
+    byte[] bound = new byte[HASH_LENGTH];
+    bound[0] = (byte) (value >>> 8);
+    bound[1] = (byte) value;
+    return bound;
+  }
+
+  static byte[] md5(String value) {
+    try {
+      return MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      // Every JRE has MD5
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static int compare(byte[] left, byte[] right) {
+    for (int i = 0; i < Math.min(left.length, right.length); i++) {
+      int diff = (left[i] & 0xff) - (right[i] & 0xff);
+      if (diff != 0) {
+        return diff;
+      }
+    }
+    return left.length - right.length;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    MetricNameHashRange that = (MetricNameHashRange) o;
+    return shard == that.shard && shards == that.shards;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * shard + shards;
+  }
+
+  @Override
+  public String toString() {
+    return "MetricNameHashRange{" +
+      "shard=" + shard +
+      ", shards=" + shards +
+      '}';
+  }
+}
@@ -59,6 +59,26 @@ public class PhoenixTransactSQL {
     "INSTANCE_ID)) DATA_BLOCK_ENCODING='%s', IMMUTABLE_ROWS=true, " +
     "TTL=%s, COMPRESSION='%s'";
 
+  /**
+   * Create table to store individual metric records keyed by the fixed
+   * width ids of the metric (METRIC_NAME, APP_ID) and the host instead of
+   * the names, 8 + 4 bytes of row key prefix instead of the strings.
+   */
+  public static final String CREATE_METRICS_UUID_TABLE_SQL = "CREATE TABLE IF NOT " +
+    "EXISTS METRIC_RECORD_UUID (UUID BINARY(12) NOT NULL, " +
+    "SERVER_TIME UNSIGNED_LONG NOT NULL, " +
+    "INSTANCE_ID VARCHAR, " +
+    "START_TIME UNSIGNED_LONG, " +
+    "UNITS CHAR(20), " +
+    "METRIC_SUM DOUBLE, " +
+    "METRIC_COUNT UNSIGNED_INT, " +
+    "METRIC_MAX DOUBLE, " +
+    "METRIC_MIN DOUBLE, " +
+    "METRICS VARCHAR CONSTRAINT pk " +
+    "PRIMARY KEY (UUID, SERVER_TIME, INSTANCE_ID)) " +
+    "DATA_BLOCK_ENCODING='%s', IMMUTABLE_ROWS=true, " +
+    "TTL=%s, COMPRESSION='%s'";
+
   public static final String CREATE_CONTAINER_METRICS_TABLE_SQL =
       "CREATE TABLE IF NOT EXISTS CONTAINER_METRICS "
       + "(APP_ID VARCHAR, "
@@ -150,6 +170,30 @@ public class PhoenixTransactSQL {
       "CONSTRAINT pk PRIMARY KEY (HOSTNAME))" +
       "DATA_BLOCK_ENCODING='%s', COMPRESSION='%s'";
 
+  /**
+   * Id columns of the metric and host dictionaries, added to the metadata
+   * tables of existing installations. UUID_START_TIME is the time since
+   * which the writes of the id are in METRIC_RECORD_UUID.
+   */
+  public static final String ALTER_METRICS_METADATA_ADD_UUID_SQL =
+    "ALTER TABLE METRICS_METADATA ADD IF NOT EXISTS UUID BINARY(8)";
+
+  public static final String ALTER_HOSTED_APPS_METADATA_ADD_UUID_SQL =
+    "ALTER TABLE HOSTED_APPS_METADATA ADD IF NOT EXISTS UUID BINARY(4)";
+
+  public static final String ALTER_METRICS_METADATA_ADD_UUID_START_TIME_SQL =
+    "ALTER TABLE METRICS_METADATA ADD IF NOT EXISTS UUID_START_TIME UNSIGNED_LONG";
+
+  public static final String ALTER_HOSTED_APPS_METADATA_ADD_UUID_START_TIME_SQL =
+    "ALTER TABLE HOSTED_APPS_METADATA ADD IF NOT EXISTS UUID_START_TIME UNSIGNED_LONG";
+
+  /**
+   * Quantile sketch column of the aggregate tables, added when sketches
+   * are enabled.
+   */
+  public static final String ALTER_AGGREGATE_ADD_SKETCH_SQL =
+    "ALTER TABLE %s ADD IF NOT EXISTS METRIC_SKETCH VARBINARY";
+
   /**
    * ALTER table to set new options
    */
@@ -168,6 +212,16 @@ public class PhoenixTransactSQL {
     "METRICS) VALUES " +
     "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
+  public static final String UPSERT_METRICS_UUID_SQL = "UPSERT INTO %s " +
+    "(UUID, INSTANCE_ID, SERVER_TIME, START_TIME, " +
+    "UNITS, " +
+    "METRIC_SUM, " +
+    "METRIC_MAX, " +
+    "METRIC_MIN, " +
+    "METRIC_COUNT, " +
+    "METRICS) VALUES " +
+    "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
   public static final String UPSERT_CONTAINER_METRICS_SQL = "UPSERT INTO %s " +
       "(APP_ID,"
       + " CONTAINER_ID,"
@@ -202,6 +256,16 @@ public class PhoenixTransactSQL {
     "METRIC_MIN) " +
     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
+  public static final String UPSERT_CLUSTER_AGGREGATE_SKETCH_SQL = "UPSERT INTO " +
+    "%s (METRIC_NAME, APP_ID, INSTANCE_ID, SERVER_TIME, " +
+    "UNITS, " +
+    "METRIC_SUM, " +
+    "HOSTS_COUNT, " +
+    "METRIC_MAX, " +
+    "METRIC_MIN, " +
+    "METRIC_SKETCH) " +
+    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
   public static final String UPSERT_CLUSTER_AGGREGATE_TIME_SQL = "UPSERT INTO" +
     " %s (METRIC_NAME, APP_ID, INSTANCE_ID, SERVER_TIME, " +
     "UNITS, " +
@@ -211,6 +275,16 @@ public class PhoenixTransactSQL {
     "METRIC_MIN) " +
     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
+  public static final String UPSERT_CLUSTER_AGGREGATE_TIME_SKETCH_SQL = "UPSERT INTO" +
+    " %s (METRIC_NAME, APP_ID, INSTANCE_ID, SERVER_TIME, " +
+    "UNITS, " +
+    "METRIC_SUM, " +
+    "METRIC_COUNT, " +
+    "METRIC_MAX, " +
+    "METRIC_MIN, " +
+    "METRIC_SKETCH) " +
+    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
   public static final String UPSERT_AGGREGATE_RECORD_SQL = "UPSERT INTO " +
     "%s (METRIC_NAME, HOSTNAME, APP_ID, INSTANCE_ID, " +
     "SERVER_TIME, " +
@@ -221,6 +295,17 @@ public class PhoenixTransactSQL {
     "METRIC_COUNT) " +
     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
+  public static final String UPSERT_AGGREGATE_RECORD_SKETCH_SQL = "UPSERT INTO " +
+    "%s (METRIC_NAME, HOSTNAME, APP_ID, INSTANCE_ID, " +
+    "SERVER_TIME, " +
+    "UNITS, " +
+    "METRIC_SUM, " +
+    "METRIC_MAX, " +
+    "METRIC_MIN," +
+    "METRIC_COUNT, " +
+    "METRIC_SKETCH) " +
+    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
   public static final String UPSERT_METADATA_SQL =
     "UPSERT INTO METRICS_METADATA (METRIC_NAME, APP_ID, UNITS, TYPE, " +
       "START_TIME, SUPPORTS_AGGREGATION) " +
@@ -229,6 +314,13 @@ public class PhoenixTransactSQL {
   public static final String UPSERT_HOSTED_APPS_METADATA_SQL =
     "UPSERT INTO HOSTED_APPS_METADATA (HOSTNAME, APP_IDS) VALUES (?, ?)";
 
+  public static final String UPSERT_METRIC_UUID_SQL =
+    "UPSERT INTO METRICS_METADATA (METRIC_NAME, APP_ID, UUID, UUID_START_TIME) " +
+      "VALUES (?, ?, ?, ?)";
+
+  public static final String UPSERT_HOST_UUID_SQL =
+    "UPSERT INTO HOSTED_APPS_METADATA (HOSTNAME, UUID, UUID_START_TIME) VALUES (?, ?, ?)";
+
   /**
    * Retrieve a set of rows from metrics records table.
    */
@@ -278,6 +370,16 @@ public class PhoenixTransactSQL {
     "METRIC_COUNT " +
     "FROM %s";
 
+  public static final String GET_METRIC_AGGREGATE_SKETCH_SQL = "SELECT %s " +
+    "METRIC_NAME, HOSTNAME, APP_ID, INSTANCE_ID, SERVER_TIME, " +
+    "UNITS, " +
+    "METRIC_SUM, " +
+    "METRIC_MAX, " +
+    "METRIC_MIN, " +
+    "METRIC_COUNT, " +
+    "METRIC_SKETCH " +
+    "FROM %s";
+
   public static final String GET_CLUSTER_AGGREGATE_SQL = "SELECT %s " +
     "METRIC_NAME, APP_ID, " +
     "INSTANCE_ID, SERVER_TIME, " +
@@ -298,6 +400,28 @@ public class PhoenixTransactSQL {
     "METRIC_MIN " +
     "FROM %s";
 
+  public static final String GET_CLUSTER_AGGREGATE_SKETCH_SQL = "SELECT %s " +
+    "METRIC_NAME, APP_ID, " +
+    "INSTANCE_ID, SERVER_TIME, " +
+    "UNITS, " +
+    "METRIC_SUM, " +
+    "HOSTS_COUNT, " +
+    "METRIC_MAX, " +
+    "METRIC_MIN, " +
+    "METRIC_SKETCH " +
+    "FROM %s";
+
+  public static final String GET_CLUSTER_AGGREGATE_TIME_SKETCH_SQL = "SELECT %s " +
+    "METRIC_NAME, APP_ID, " +
+    "INSTANCE_ID, SERVER_TIME, " +
+    "UNITS, " +
+    "METRIC_SUM, " +
+    "METRIC_COUNT, " +
+    "METRIC_MAX, " +
+    "METRIC_MIN, " +
+    "METRIC_SKETCH " +
+    "FROM %s";
+
   public static final String TOP_N_INNER_SQL = "SELECT %s %s " +
     "FROM %s WHERE %s GROUP BY %s ORDER BY %s LIMIT %s";
 
@@ -308,6 +432,21 @@ public class PhoenixTransactSQL {
   public static final String GET_HOSTED_APPS_METADATA_SQL = "SELECT " +
     "HOSTNAME, APP_IDS FROM HOSTED_APPS_METADATA";
 
+  public static final String GET_METRIC_UUID_SQL = "SELECT " +
+    "METRIC_NAME, APP_ID, UUID, UUID_START_TIME FROM METRICS_METADATA WHERE UUID IS NOT NULL";
+
+  public static final String GET_HOST_UUID_SQL = "SELECT " +
+    "HOSTNAME, UUID, UUID_START_TIME FROM HOSTED_APPS_METADATA WHERE UUID IS NOT NULL";
+
+  public static final String GET_METRIC_UUID_RECORDS_SQL = "SELECT %s UUID, " +
+    "INSTANCE_ID, SERVER_TIME, START_TIME, UNITS, " +
+    "METRIC_SUM, " +
+    "METRIC_MAX, " +
+    "METRIC_MIN, " +
+    "METRIC_COUNT, " +
+    "METRICS " +
+    "FROM %s";
+
   /**
    * Aggregate host metrics using a GROUP BY clause to take advantage of
    * N - way parallel scan where N = number of regions.
@@ -333,6 +472,8 @@ public class PhoenixTransactSQL {
 
   public static final String METRICS_RECORD_TABLE_NAME = "METRIC_RECORD";
 
+  public static final String METRICS_RECORD_UUID_TABLE_NAME = "METRIC_RECORD_UUID";
+
   public static final String CONTAINER_METRICS_TABLE_NAME = "CONTAINER_METRICS";
 
   public static final String METRICS_AGGREGATE_MINUTE_TABLE_NAME =
@@ -361,6 +502,19 @@ public class PhoenixTransactSQL {
     METRICS_CLUSTER_AGGREGATE_DAILY_TABLE_NAME
   };
 
+  /**
+   * Tables that keep a quantile sketch with every aggregate.
+   */
+  public static final String[] SKETCH_TABLES = {
+    METRICS_AGGREGATE_MINUTE_TABLE_NAME,
+    METRICS_AGGREGATE_HOURLY_TABLE_NAME,
+    METRICS_AGGREGATE_DAILY_TABLE_NAME,
+    METRICS_CLUSTER_AGGREGATE_TABLE_NAME,
+    METRICS_CLUSTER_AGGREGATE_MINUTE_TABLE_NAME,
+    METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_NAME,
+    METRICS_CLUSTER_AGGREGATE_DAILY_TABLE_NAME
+  };
+
   public static final String DEFAULT_TABLE_COMPRESSION = "SNAPPY";
   public static final String DEFAULT_ENCODING = "FAST_DIFF";
   public static final long NATIVE_TIME_RANGE_DELTA = 120000; // 2 minutes
@@ -415,15 +569,15 @@ public class PhoenixTransactSQL {
       switch (condition.getPrecision()) {
         case DAYS:
           metricsTable = METRICS_AGGREGATE_DAILY_TABLE_NAME;
-          query = GET_METRIC_AGGREGATE_ONLY_SQL;
+          query = condition.isReadSketch() ? GET_METRIC_AGGREGATE_SKETCH_SQL : GET_METRIC_AGGREGATE_ONLY_SQL;
           break;
         case HOURS:
           metricsTable = METRICS_AGGREGATE_HOURLY_TABLE_NAME;
-          query = GET_METRIC_AGGREGATE_ONLY_SQL;
+          query = condition.isReadSketch() ? GET_METRIC_AGGREGATE_SKETCH_SQL : GET_METRIC_AGGREGATE_ONLY_SQL;
           break;
         case MINUTES:
           metricsTable = METRICS_AGGREGATE_MINUTE_TABLE_NAME;
-          query = GET_METRIC_AGGREGATE_ONLY_SQL;
+          query = condition.isReadSketch() ? GET_METRIC_AGGREGATE_SKETCH_SQL : GET_METRIC_AGGREGATE_ONLY_SQL;
           break;
         default:
           metricsTable = METRICS_RECORD_TABLE_NAME;
@@ -485,6 +639,72 @@ public class PhoenixTransactSQL {
       pos = addAppId(condition, pos, stmt);
       pos = addInstanceId(condition, pos, stmt);
       pos = addStartTime(condition, pos, stmt);
+      pos = addEndTime(condition, pos, stmt);
+      addMetricNameHashRange(condition, pos, stmt);
+
+      if (condition.getFetchSize() != null) {
+        stmt.setFetchSize(condition.getFetchSize());
+      }
+    } catch (SQLException e) {
+      if (stmt != null) {
+        stmt.close();
+      }
+      throw e;
+    }
+
+    return stmt;
+  }
+
+  /**
+   * Precision query against the id keyed table. The names of the condition
+   * are already translated to the given row key ids, so only the instance
+   * and the time range are taken from the condition.
+   */
+  public static PreparedStatement prepareGetMetricsUuidSqlStmt(Connection connection,
+                                                               Condition condition,
+                                                               List<byte[]> uuids) throws SQLException {
+    if (uuids == null || uuids.isEmpty()) {
+      throw new IllegalArgumentException("No metric ids to query.");
+    }
+    validateRowCountLimit(condition);
+
+    StringBuilder sb = new StringBuilder(String.format(GET_METRIC_UUID_RECORDS_SQL,
+      getNaiveTimeRangeHint(condition.getStartTime(), NATIVE_TIME_RANGE_DELTA),
+      METRICS_RECORD_UUID_TABLE_NAME));
+
+    sb.append(" WHERE UUID IN (");
+    for (int i = 0; i < uuids.size(); i++) {
+      sb.append(i == 0 ? "?" : ", ?");
+    }
+    sb.append(")");
+    if (condition.getInstanceId() != null) {
+      sb.append(" AND INSTANCE_ID = ?");
+    }
+    if (condition.getStartTime() != null) {
+      sb.append(" AND SERVER_TIME >= ?");
+    }
+    if (condition.getEndTime() != null) {
+      sb.append(" AND SERVER_TIME < ?");
+    }
+    sb.append(" ORDER BY UUID, SERVER_TIME");
+
+    if (condition.getLimit() != null) {
+      sb.append(" LIMIT ").append(condition.getLimit());
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("SQL: " + sb.toString() + ", condition: " + condition);
+    }
+
+    PreparedStatement stmt = null;
+    try {
+      stmt = connection.prepareStatement(sb.toString());
+      int pos = 1;
+      for (byte[] uuid : uuids) {
+        stmt.setBytes(pos++, uuid);
+      }
+      pos = addInstanceId(condition, pos, stmt);
+      pos = addStartTime(condition, pos, stmt);
       addEndTime(condition, pos, stmt);
 
       if (condition.getFetchSize() != null) {
@@ -506,7 +726,7 @@ public class PhoenixTransactSQL {
     }
   }
 
-  private static void validateRowCountLimit(Condition condition) {
+  public static void validateRowCountLimit(Condition condition) {
     if (condition.getMetricNames() == null
       || condition.getMetricNames().isEmpty()) {
       //aggregator can use empty metrics query
@@ -649,19 +869,19 @@ public class PhoenixTransactSQL {
     switch (condition.getPrecision()) {
       case DAYS:
         metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_DAILY_TABLE_NAME;
-        queryStmt = GET_CLUSTER_AGGREGATE_TIME_SQL;
+        queryStmt = condition.isReadSketch() ? GET_CLUSTER_AGGREGATE_TIME_SKETCH_SQL : GET_CLUSTER_AGGREGATE_TIME_SQL;
         break;
       case HOURS:
         metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_NAME;
-        queryStmt = GET_CLUSTER_AGGREGATE_TIME_SQL;
+        queryStmt = condition.isReadSketch() ? GET_CLUSTER_AGGREGATE_TIME_SKETCH_SQL : GET_CLUSTER_AGGREGATE_TIME_SQL;
         break;
       case MINUTES:
         metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_MINUTE_TABLE_NAME;
-        queryStmt = GET_CLUSTER_AGGREGATE_TIME_SQL;
+        queryStmt = condition.isReadSketch() ? GET_CLUSTER_AGGREGATE_TIME_SKETCH_SQL : GET_CLUSTER_AGGREGATE_TIME_SQL;
         break;
       default:
         metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_TABLE_NAME;
-        queryStmt = GET_CLUSTER_AGGREGATE_SQL;
+        queryStmt = condition.isReadSketch() ? GET_CLUSTER_AGGREGATE_SKETCH_SQL : GET_CLUSTER_AGGREGATE_SQL;
     }
 
     queryStmt = String.format(queryStmt,
@@ -880,4 +1100,23 @@ public class PhoenixTransactSQL {
     return pos;
   }
 
+  private static int addMetricNameHashRange(Condition condition, int pos, PreparedStatement stmt) throws SQLException {
+    if (!(condition instanceof DefaultCondition)) {
+      return pos;
+    }
+    MetricNameHashRange range = ((DefaultCondition) condition).getMetricNameHashRange();
+    if (range != null) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Setting pos: " + pos + ", value: " + range);
+      }
+      if (range.getLowerBound() != null) {
+        stmt.setBytes(pos++, range.getLowerBound());
+      }
+      if (range.getUpperBound() != null) {
+        stmt.setBytes(pos++, range.getUpperBound());
+      }
+    }
+    return pos;
+  }
+
 }
@@ -158,6 +158,26 @@ public class SplitByMetricNamesCondition implements Condition {
     adaptee.setFetchSize(fetchSize);
   }
 
+  @Override
+  public Integer getMaxPoints() {
+    return adaptee.getMaxPoints();
+  }
+
+  @Override
+  public void setMaxPoints(Integer maxPoints) {
+    adaptee.setMaxPoints(maxPoints);
+  }
+
+  @Override
+  public boolean isReadSketch() {
+    return adaptee.isReadSketch();
+  }
+
+  @Override
+  public void setReadSketch(boolean readSketch) {
+    adaptee.setReadSketch(readSketch);
+  }
+
   @Override
   public void addOrderByColumn(String column) {
     adaptee.addOrderByColumn(column);
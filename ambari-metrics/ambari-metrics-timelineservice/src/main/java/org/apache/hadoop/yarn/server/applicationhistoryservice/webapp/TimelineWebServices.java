@@ -36,7 +36,9 @@ import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
 import org.apache.hadoop.metrics2.sink.timeline.Precision;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricSeriesBuffer;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricStore;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricStreamReader;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.EntityIdentifier;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.GenericObjectMapper;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.NameValuePair;
@@ -44,6 +46,7 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.Timeline
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.TimelineStore;
 import org.apache.hadoop.yarn.util.timeline.TimelineUtils;
 import org.apache.hadoop.yarn.webapp.BadRequestException;
+import org.codehaus.jackson.JsonProcessingException;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -63,6 +66,7 @@ import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -252,7 +256,8 @@ public class TimelineWebServices {
 
   /**
    * Store the given metrics into the timeline store, and return errors that
-   * happened during storing.
+   * happened during storing. The request is read with the streaming parser
+   * into primitive series buffers rather than bound to {@link TimelineMetrics}.
    */
   @Path("/metrics")
   @POST
@@ -260,10 +265,19 @@ public class TimelineWebServices {
   public TimelinePutResponse postMetrics(
     @Context HttpServletRequest req,
     @Context HttpServletResponse res,
-    TimelineMetrics metrics) {
+    InputStream in) {
 
     init(res);
-    if (metrics == null) {
+    TimelineMetricSeriesBuffer metrics;
+    try {
+      metrics = TimelineMetricStreamReader.read(in);
+    } catch (JsonProcessingException e) {
+      throw new BadRequestException(e.getMessage());
+    } catch (IOException e) {
+      LOG.error("Error reading metrics.", e);
+      throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
+    }
+    if (metrics.size() == 0) {
       return new TimelinePutResponse();
     }
 
@@ -274,7 +288,7 @@ public class TimelineWebServices {
 
       if (LOG.isDebugEnabled()) {
         LOG.debug("Storing metrics: " +
-          TimelineUtils.dumpTimelineRecordtoJSON(metrics, true));
+          TimelineUtils.dumpTimelineRecordtoJSON(metrics.toTimelineMetrics(), true));
       }
 
       return timelineMetricStore.putMetrics(metrics);
@@ -324,6 +338,8 @@ public class TimelineWebServices {
    * @param precision Precision [ seconds, minutes, hours ]
    * @param limit limit on total number of {@link TimelineMetric} records
    *              retrieved.
+   * @param maxPoints maximum number of values per series of a grouped
+   *                  query, e.g. the width of the chart in pixels.
    * @return {@link @TimelineMetrics}
    */
   @GET
@@ -343,7 +359,8 @@ public class TimelineWebServices {
     @QueryParam("grouped") String grouped,
     @QueryParam("topN") String topN,
     @QueryParam("topNFunction") String topNFunction,
-    @QueryParam("isBottomN") String isBottomN
+    @QueryParam("isBottomN") String isBottomN,
+    @QueryParam("maxPoints") String maxPoints
   ) {
     init(res);
     try {
@@ -352,18 +369,19 @@ public class TimelineWebServices {
           "appId: " + appId + ", instanceId: " + instanceId + ", " +
           "hostname: " + hostname + ", startTime: " + startTime + ", " +
           "endTime: " + endTime + ", " +
-          "precision: " + precision);
+          "precision: " + precision + ", maxPoints: " + maxPoints);
       }
 
       return timelineMetricStore.getTimelineMetrics(
         parseListStr(metricNames, ","), parseListStr(hostname, ","), appId, instanceId,
         parseLongStr(startTime), parseLongStr(endTime),
         Precision.getPrecision(precision), parseIntStr(limit),
-        parseBoolean(grouped), parseTopNConfig(topN, topNFunction, isBottomN));
+        parseBoolean(grouped), parseTopNConfig(topN, topNFunction, isBottomN),
+        parseIntStr(maxPoints));
 
     } catch (NumberFormatException ne) {
-      throw new BadRequestException("startTime and limit should be numeric " +
-        "values");
+      throw new BadRequestException("startTime, limit and maxPoints should be " +
+        "numeric values");
     } catch (Precision.PrecisionFormatException pfe) {
       throw new BadRequestException("precision should be seconds, minutes " +
         "or hours");
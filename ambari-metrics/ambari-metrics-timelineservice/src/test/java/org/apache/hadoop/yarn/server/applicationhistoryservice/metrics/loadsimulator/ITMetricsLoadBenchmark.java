@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.Precision;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.AppID;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.ApplicationInstance;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.HostMetricsGenerator;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.util.BenchmarkReport;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.util.LatencyRecorder;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.util.RandomMetricsProvider;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.util.TimeStampProvider;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.AbstractMiniHBaseClusterTest;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregator;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregatorFactory;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataManager;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.LoadSimulatorTestHelper.countValues;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.LoadSimulatorTestHelper.toTimelineMetrics;
+
+/**
+ * Ingestion and query benchmark of the collector store over the embedded
+ * HBase mini cluster, driven by the load simulator generators. Measures put
+ * throughput and latency, the time the aggregators need to catch up with
+ * the written data and the latency of typical dashboard queries, and writes
+ * the results as json, by default to target/ams-benchmark-report.json.
+ *
+ * The load is configured with system properties:
+ * <pre>
+ * ams.benchmark.hosts      number of simulated hosts (10)
+ * ams.benchmark.metrics    metrics per host (50)
+ * ams.benchmark.intervals  minutes of 10 second values per host, at most 18 (10)
+ * ams.benchmark.senders    concurrent senders (4)
+ * ams.benchmark.queries    runs of each query shape (10)
+ * ams.benchmark.report     report file
+ * </pre>
+ */
+public class ITMetricsLoadBenchmark extends AbstractMiniHBaseClusterTest {
+  private static final long MINUTE = 60000;
+  private static final int COLLECT_INTERVAL = 10000;
+
+  private final int hosts = Integer.getInteger("ams.benchmark.hosts", 10);
+  private final int metrics = Integer.getInteger("ams.benchmark.metrics", 50);
+  // Values must stay within the out of band allowance of the accessor
+  private final int intervals = Math.min(18, Integer.getInteger("ams.benchmark.intervals", 10));
+  private final int senders = Integer.getInteger("ams.benchmark.senders", 4);
+  private final int queries = Integer.getInteger("ams.benchmark.queries", 10);
+  private final File reportFile = new File(System.getProperty("ams.benchmark.report",
+    "target/ams-benchmark-report.json"));
+
+  @Test
+  public void testIngestionAndQueryBenchmark() throws Exception {
+    BenchmarkReport report = new BenchmarkReport("ams-load-simulator");
+    report.addSetting("hosts", hosts);
+    report.addSetting("metricsPerHost", metrics);
+    report.addSetting("intervals", intervals);
+    report.addSetting("senders", senders);
+    report.addSetting("queryRuns", queries);
+
+    long startTime = System.currentTimeMillis() - intervals / 2 * MINUTE;
+    long endTime = startTime + intervals * MINUTE;
+
+    List<String> hostnames = new ArrayList<String>();
+    List<String> metricNames = new ArrayList<String>();
+    for (int i = 0; i < hosts; i++) {
+      hostnames.add("benchmark-host" + i);
+    }
+    for (int i = 0; i < metrics; i++) {
+      metricNames.add("benchmark.metric" + i);
+    }
+
+    ingest(report, hostnames, metricNames, startTime);
+    aggregate(report, startTime, endTime + MINUTE);
+    query(report, hostnames, metricNames, startTime, endTime + MINUTE);
+
+    report.write(reportFile);
+    LOG.info("Benchmark report written to " + reportFile.getAbsolutePath()
+      + "\n" + report.toJson());
+  }
+
+  private void ingest(BenchmarkReport report, List<String> hostnames,
+                      final List<String> metricNames, final long startTime) throws Exception {
+    final LatencyRecorder putLatency = new LatencyRecorder();
+    ExecutorService executor = Executors.newFixedThreadPool(senders);
+    List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+
+    long start = System.nanoTime();
+    for (final String hostname : hostnames) {
+      results.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          HostMetricsGenerator generator = createGenerator(hostname, metricNames, startTime);
+          int values = 0;
+          // One put per host and minute, like the sinks
+          for (int i = 0; i < intervals; i++) {
+            TimelineMetrics timelineMetrics = toTimelineMetrics(generator.createMetrics());
+            long putStart = System.nanoTime();
+            hdb.insertMetricRecords(timelineMetrics);
+            putLatency.record(System.nanoTime() - putStart);
+            values += countValues(timelineMetrics);
+          }
+          return values;
+        }
+      }));
+    }
+    long values = 0;
+    for (Future<Integer> result : results) {
+      values += result.get();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    executor.shutdown();
+
+    report.addResults("ingestion", putLatency.toReport());
+    report.addResult("ingestion", "values", values);
+    report.addResult("ingestion", "seconds", seconds);
+    report.addResult("ingestion", "valuesPerSecond", values / seconds);
+    report.addResult("ingestion", "putsPerSecond", putLatency.getCount() / seconds);
+    assertEquals(hostnames.size() * intervals, putLatency.getCount());
+  }
+
+  /**
+   * Aggregator lag is the time an aggregator needs for the written range
+   * once the data is in.
+   */
+  private void aggregate(BenchmarkReport report, long startTime, long endTime) throws Exception {
+    Configuration metricsConf = new Configuration();
+    Map<String, TimelineMetricAggregator> aggregators =
+      new LinkedHashMap<String, TimelineMetricAggregator>();
+    aggregators.put("hostMinute",
+      TimelineMetricAggregatorFactory.createTimelineMetricAggregatorMinute(hdb, metricsConf, null));
+    aggregators.put("clusterSecond",
+      TimelineMetricAggregatorFactory.createTimelineClusterAggregatorSecond(hdb, metricsConf,
+        new TimelineMetricMetadataManager(hdb, new Configuration()), null));
+
+    for (Map.Entry<String, TimelineMetricAggregator> aggregator : aggregators.entrySet()) {
+      long start = System.nanoTime();
+      boolean success = aggregator.getValue().doWork(startTime, endTime);
+      report.addResult("aggregatorLag", aggregator.getKey() + "Millis",
+        (System.nanoTime() - start) / 1e6);
+      assertTrue(aggregator.getKey() + " failed", success);
+    }
+  }
+
+  private void query(BenchmarkReport report, List<String> hostnames, List<String> metricNames,
+                     long startTime, long endTime) throws Exception {
+    Map<String, List<Function>> functions = new HashMap<String, List<Function>>();
+    for (String metricName : metricNames) {
+      functions.put(metricName, Collections.singletonList(new Function()));
+    }
+    List<String> firstMetric = metricNames.subList(0, 1);
+
+    // Host page: every metric of a host
+    Condition hostPage = new DefaultCondition(metricNames, hostnames.subList(0, 1), "HOST",
+      null, startTime, endTime, null, null, true);
+    // Heatmap: one metric of every host
+    Condition heatmap = new DefaultCondition(firstMetric, hostnames, "HOST",
+      null, startTime, endTime, null, null, true);
+    // Same heatmap read from the minute aggregates
+    Condition heatmapMinutes = new DefaultCondition(firstMetric, hostnames, "HOST",
+      null, startTime, endTime, Precision.MINUTES, null, true);
+    // Service widget: cluster aggregate of a metric
+    Condition widget = new DefaultCondition(firstMetric, null, "HOST",
+      null, startTime, endTime, null, null, true);
+
+    runQuery(report, "hostPage", hostPage, functions, false);
+    runQuery(report, "heatmap", heatmap, functions, false);
+    runQuery(report, "heatmapMinutes", heatmapMinutes, functions, false);
+    runQuery(report, "clusterWidget", widget, functions, true);
+
+    assertEquals(metricNames.size(), report.getResults("hostPage").get("series"));
+    assertEquals(hostnames.size(), report.getResults("heatmap").get("series"));
+  }
+
+  private void runQuery(BenchmarkReport report, String shape, Condition condition,
+                        Map<String, List<Function>> functions, boolean aggregate) throws Exception {
+    LatencyRecorder latency = new LatencyRecorder();
+    TimelineMetrics result = null;
+    for (int i = 0; i < queries; i++) {
+      long start = System.nanoTime();
+      result = aggregate ? hdb.getAggregateMetricRecords(condition, functions)
+        : hdb.getMetricRecords(condition, functions);
+      latency.record(System.nanoTime() - start);
+    }
+    report.addResults(shape, latency.toReport());
+    report.addResult(shape, "series", result.getMetrics().size());
+    report.addResult(shape, "values", countValues(result));
+  }
+
+  private static HostMetricsGenerator createGenerator(String hostname, List<String> metricNames,
+                                                      long startTime) {
+    Map<String, RandomMetricsProvider> providers = new HashMap<String, RandomMetricsProvider>();
+    for (String metricName : metricNames) {
+      providers.put(metricName, new RandomMetricsProvider(0, 100));
+    }
+    return new HostMetricsGenerator(new ApplicationInstance(hostname, AppID.HOST, ""),
+      new TimeStampProvider(startTime, COLLECT_INTERVAL, (int) MINUTE), providers);
+  }
+}
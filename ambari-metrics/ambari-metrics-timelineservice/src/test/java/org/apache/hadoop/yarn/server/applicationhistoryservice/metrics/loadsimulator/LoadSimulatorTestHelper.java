@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.AppMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.Metric;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Converts the metrics of the load simulator generators for the tests that
+ * write them to the store directly.
+ */
+public class LoadSimulatorTestHelper {
+
+  public static TimelineMetrics toTimelineMetrics(AppMetrics appMetrics) {
+    TimelineMetrics timelineMetrics = new TimelineMetrics();
+    for (Metric metric : appMetrics.getMetrics()) {
+      TimelineMetric timelineMetric = new TimelineMetric();
+      timelineMetric.setMetricName(metric.getMetricname());
+      timelineMetric.setHostName(metric.getHostname());
+      timelineMetric.setAppId(metric.getAppid());
+      timelineMetric.setStartTime(Long.parseLong(metric.getStarttime()));
+      timelineMetric.setTimestamp(Long.parseLong(metric.getStarttime()));
+      TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+      for (Map.Entry<String, String> entry : metric.getMetrics().entrySet()) {
+        values.put(Long.parseLong(entry.getKey()), Double.parseDouble(entry.getValue()));
+      }
+      timelineMetric.setMetricValues(values);
+      timelineMetrics.getMetrics().add(timelineMetric);
+    }
+    return timelineMetrics;
+  }
+
+  public static int countValues(TimelineMetrics timelineMetrics) {
+    int count = 0;
+    for (TimelineMetric metric : timelineMetrics.getMetrics()) {
+      count += metric.getMetricValues().size();
+    }
+    return count;
+  }
+}
@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.util;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestLatencyRecorder {
+
+  @Test
+  public void testPercentiles() {
+    LatencyRecorder recorder = new LatencyRecorder();
+    // 1 to 2000 ms, recorded out of order
+    for (int i = 2000; i > 0; i--) {
+      recorder.record(i * 1000000L);
+    }
+
+    assertEquals(2000, recorder.getCount());
+    assertEquals(1000.0, recorder.getPercentileMillis(50), 0.0);
+    assertEquals(1980.0, recorder.getPercentileMillis(99), 0.0);
+    assertEquals(2000.0, recorder.getPercentileMillis(100), 0.0);
+    assertEquals(1.0, recorder.getPercentileMillis(0), 0.0);
+    assertEquals(1000.5, recorder.getMeanMillis(), 0.000001);
+  }
+
+  @Test
+  public void testReport() {
+    LatencyRecorder recorder = new LatencyRecorder();
+    assertEquals(0.0, recorder.getPercentileMillis(99), 0.0);
+
+    recorder.record(1500000);
+    Map<String, Object> report = recorder.toReport();
+    assertEquals(1, report.get("count"));
+    assertEquals(1.5, report.get("p50Millis"));
+    assertEquals(1.5, report.get("p99Millis"));
+  }
+}
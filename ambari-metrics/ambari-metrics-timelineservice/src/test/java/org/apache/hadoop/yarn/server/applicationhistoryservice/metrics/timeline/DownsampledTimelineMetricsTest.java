@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.SingleValuedTimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.ConditionBuilder;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DownsampledTimelineMetricsTest {
+  private static final long START = 1460000000000L;
+  private static final long DAY = 86400000L;
+
+  private TimelineMetric metric(String hostname, long startTime, int count, long interval) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("cpu_user");
+    metric.setAppId("HOST");
+    metric.setHostName(hostname);
+    metric.setStartTime(startTime);
+    metric.setTimestamp(startTime);
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+    for (int i = 0; i < count; i++) {
+      values.put(startTime + i * interval, (double) i);
+    }
+    metric.setMetricValues(values);
+    return metric;
+  }
+
+  @Test
+  public void testBucketAverages() throws Exception {
+    DownsampledTimelineMetrics metrics = new DownsampledTimelineMetrics(START, START + 1000, 10);
+    assertEquals(100, metrics.getBucketMillis());
+
+    // Rows of the same series arrive in any order
+    metrics.addOrMergeTimelineMetric(metric("h1", START + 500, 5, 10));
+    metrics.addOrMergeTimelineMetric(metric("h1", START, 20, 10));
+
+    assertEquals(1, metrics.getMetrics().size());
+    TimelineMetric series = metrics.getMetrics().get(0);
+    assertEquals(START, series.getStartTime());
+    assertEquals(START, series.getTimestamp());
+    assertEquals(3, series.getMetricValues().size());
+    assertEquals(4.5, series.getMetricValues().get(START), 0.000001);
+    assertEquals(14.5, series.getMetricValues().get(START + 100), 0.000001);
+    assertEquals(2.0, series.getMetricValues().get(START + 500), 0.000001);
+
+    // Single values of the aggregate tables
+    SingleValuedTimelineMetric single = new SingleValuedTimelineMetric("cpu_user", "HOST",
+      null, "h1", START + 120, START + 120, null);
+    single.setSingleTimeseriesValue(START + 120, 30.0);
+    metrics.addOrMergeTimelineMetric(single);
+    assertEquals(1, metrics.getMetrics().size());
+    assertEquals(175.0 / 11, series.getMetricValues().get(START + 100), 0.000001);
+  }
+
+  @Test
+  public void testMaxPointsPerSeries() throws Exception {
+    Condition condition = new ConditionBuilder(Collections.singletonList("cpu_user"))
+      .hostnames(Arrays.asList("h1", "h2"))
+      .startTime(START)
+      .endTime(START + 30 * DAY)
+      .grouped(true)
+      .maxPoints(800)
+      .build();
+    TimelineMetrics metrics = DownsampledTimelineMetrics.forCondition(condition);
+    assertTrue(metrics instanceof DownsampledTimelineMetrics);
+
+    // A month of minute values for two hosts, read a day at a time
+    for (int day = 0; day < 30; day++) {
+      metrics.addOrMergeTimelineMetric(metric("h1", START + day * DAY, 1440, 60000));
+      metrics.addOrMergeTimelineMetric(metric("h2", START + day * DAY, 1440, 60000));
+    }
+
+    assertEquals(2, metrics.getMetrics().size());
+    for (TimelineMetric series : metrics.getMetrics()) {
+      assertTrue(series.getMetricValues().size() <= 800);
+      assertTrue(series.getMetricValues().size() >= 799);
+      assertEquals(START, (long) series.getMetricValues().firstKey());
+    }
+
+    TimelineMetrics plain = DownsampledTimelineMetrics.toTimelineMetrics(metrics);
+    assertEquals(TimelineMetrics.class, plain.getClass());
+    assertEquals(metrics.getMetrics(), plain.getMetrics());
+  }
+
+  @Test
+  public void testNotDownsampled() throws Exception {
+    ConditionBuilder builder = new ConditionBuilder(Collections.singletonList("cpu_user"))
+      .hostnames(Collections.singletonList("h1"))
+      .startTime(START)
+      .endTime(START + DAY)
+      .grouped(true);
+    assertFalse(DownsampledTimelineMetrics.forCondition(builder.build())
+      instanceof DownsampledTimelineMetrics);
+
+    // Rows of non grouped queries are returned as they are
+    builder.maxPoints(100).grouped(false);
+    assertFalse(DownsampledTimelineMetrics.forCondition(builder.build())
+      instanceof DownsampledTimelineMetrics);
+
+    // Point in time
+    builder.grouped(true).startTime(null).endTime(null);
+    assertFalse(DownsampledTimelineMetrics.forCondition(builder.build())
+      instanceof DownsampledTimelineMetrics);
+  }
+}
@@ -23,6 +23,7 @@ import org.junit.Test;
 
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function.fromMetricName;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function.ReadFunction.AVG;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function.ReadFunction.P95;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function.PostProcessingFunction.RATE;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function.PostProcessingFunction.DIFF;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -52,6 +53,10 @@ public class FunctionTest {
     f = fromMetricName("Metric._diff");
     assertThat(f).isEqualTo(new Function(null, DIFF));
 
+    // Quantiles from the aggregate sketches
+    f = fromMetricName("Metric._rate._p95");
+    assertThat(f).isEqualTo(new Function(P95, RATE));
+    assertThat(f.getReadFunction().getQuantile()).isEqualTo(0.95);
   }
 
   @Ignore // If unknown function: behavior is best effort query without function
@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.AppID;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.ApplicationInstance;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.HostMetricsGenerator;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.MetricsGeneratorConfigurer;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.util.TimeStampProvider;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.LoadSimulatorTestHelper.countValues;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.LoadSimulatorTestHelper.toTimelineMetrics;
+
+/**
+ * Compares a single query with the split parallel query for a dashboard
+ * sized request over the host metrics of the load simulator.
+ */
+public class ITTimelineMetricQueryExecutor extends AbstractMiniHBaseClusterTest {
+  private static final int HOSTS = 5;
+  private static final int INTERVALS = 18;
+  private static final int RUNS = 5;
+
+  @Test
+  public void testParallelQueryMatchesSingleQuery() throws Exception {
+    long minute = 60 * 1000;
+    long startTime = System.currentTimeMillis() - INTERVALS / 2 * minute;
+    List<String> hostnames = new ArrayList<String>();
+    List<String> metricNames = null;
+
+    for (int i = 0; i < HOSTS; i++) {
+      String hostname = "host" + i;
+      hostnames.add(hostname);
+      HostMetricsGenerator generator = MetricsGeneratorConfigurer.createMetricsForHost(
+        new ApplicationInstance(hostname, AppID.HOST, ""),
+        new TimeStampProvider(startTime, 10000, 60000));
+      for (int j = 0; j < INTERVALS; j++) {
+        TimelineMetrics metrics = toTimelineMetrics(generator.createMetrics());
+        hdb.insertMetricRecords(metrics);
+        if (metricNames == null) {
+          metricNames = new ArrayList<String>();
+          for (TimelineMetric metric : metrics.getMetrics()) {
+            metricNames.add(metric.getMetricName());
+          }
+        }
+      }
+    }
+
+    final Map<String, List<Function>> metricFunctions = new HashMap<String, List<Function>>();
+    for (String metricName : metricNames) {
+      metricFunctions.put(metricName, Collections.singletonList(new Function()));
+    }
+    TimelineMetricQueryExecutor.MetricsQuery query = new TimelineMetricQueryExecutor.MetricsQuery() {
+      @Override
+      public TimelineMetrics execute(Condition condition) throws SQLException, IOException {
+        return hdb.getMetricRecords(condition, metricFunctions);
+      }
+    };
+    long endTime = startTime + (INTERVALS + 2) * minute;
+    TimelineMetricQueryExecutor executor = new TimelineMetricQueryExecutor(8, 4, 10, 60000);
+
+    TimelineMetrics single = null;
+    TimelineMetrics parallel = null;
+    long singleTime = 0;
+    long parallelTime = 0;
+    for (int i = 0; i < RUNS; i++) {
+      long start = System.nanoTime();
+      single = query.execute(new DefaultCondition(metricNames, hostnames, "HOST", null,
+        startTime, endTime, null, null, true));
+      singleTime += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      parallel = executor.execute(new DefaultCondition(metricNames, hostnames, "HOST", null,
+        startTime, endTime, null, null, true), query);
+      parallelTime += System.nanoTime() - start;
+    }
+    executor.shutdown();
+
+    LOG.info("Query for " + metricNames.size() + " metrics on " + HOSTS + " hosts: single query "
+      + singleTime / RUNS / 1000000 + " ms, parallel query " + parallelTime / RUNS / 1000000 + " ms");
+
+    assertEquals(metricNames.size() * HOSTS, single.getMetrics().size());
+    assertEquals(single.getMetrics().size(), parallel.getMetrics().size());
+    assertEquals(countValues(single), countValues(parallel));
+  }
+}
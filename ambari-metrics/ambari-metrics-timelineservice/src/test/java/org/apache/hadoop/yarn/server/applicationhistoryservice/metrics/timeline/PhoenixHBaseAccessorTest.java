@@ -20,16 +20,26 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.DoNotRetryIOException;
 import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.metrics2.sink.timeline.Precision;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricClusterAggregate;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineClusterMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataKey;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataManager;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricUuid;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.ConnectionProvider;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixConnectionProvider;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
 import org.apache.phoenix.exception.PhoenixIOException;
+import org.easymock.Capture;
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.powermock.api.easymock.PowerMock;
@@ -41,12 +51,17 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 @RunWith(PowerMockRunner.class)
@@ -206,4 +221,308 @@ public class PhoenixHBaseAccessorTest {
     PowerMock.verifyAll();
   }
 
+  @Test
+  public void testGetMetricRecordsByUuidReadsOlderRowsByName() throws SQLException, IOException {
+    long startTime = 1500000000000L;
+    long coverageStartTime = startTime + 10000;
+    long endTime = startTime + 20000;
+    byte[] uuid = new byte[TimelineMetricMetadataManager.UUID_LENGTH];
+    PhoenixHBaseAccessor accessor = createAccessorWithUuids(uuid, coverageStartTime);
+
+    PowerMock.mockStatic(PhoenixTransactSQL.class);
+    Capture<Condition> nameCondition = EasyMock.newCapture();
+    Capture<Condition> uuidCondition = EasyMock.newCapture();
+    PreparedStatement nameStmt = EasyMock.createNiceMock(PreparedStatement.class);
+    PreparedStatement uuidStmt = EasyMock.createNiceMock(PreparedStatement.class);
+    EasyMock.expect(PhoenixTransactSQL.prepareGetMetricsSqlStmt(EasyMock.<Connection>isNull(),
+      EasyMock.capture(nameCondition))).andReturn(nameStmt).once();
+    EasyMock.expect(PhoenixTransactSQL.prepareGetMetricsUuidSqlStmt(EasyMock.<Connection>isNull(),
+      EasyMock.capture(uuidCondition), EasyMock.<List<byte[]>>anyObject())).andReturn(uuidStmt).once();
+
+    ResultSet nameRs = EasyMock.createNiceMock(ResultSet.class);
+    EasyMock.expect(nameRs.next()).andReturn(true).andReturn(false);
+    EasyMock.expect(nameRs.getString("METRIC_NAME")).andReturn("m1").anyTimes();
+    EasyMock.expect(nameRs.getString("APP_ID")).andReturn("a1").anyTimes();
+    EasyMock.expect(nameRs.getString("HOSTNAME")).andReturn("h1").anyTimes();
+    EasyMock.expect(nameRs.getString("METRICS")).andReturn("{\"" + (startTime + 1000) + "\":1.0}").anyTimes();
+    EasyMock.expect(nameStmt.executeQuery()).andReturn(nameRs);
+    ResultSet uuidRs = EasyMock.createNiceMock(ResultSet.class);
+    EasyMock.expect(uuidRs.next()).andReturn(true).andReturn(false);
+    EasyMock.expect(uuidRs.getBytes("UUID")).andReturn(uuid).anyTimes();
+    EasyMock.expect(uuidRs.getString("METRICS")).andReturn("{\"" + (startTime + 11000) + "\":2.0}").anyTimes();
+    EasyMock.expect(uuidStmt.executeQuery()).andReturn(uuidRs);
+
+    PowerMock.replayAll();
+    EasyMock.replay(nameStmt, uuidStmt, nameRs, uuidRs);
+
+    Condition condition = new DefaultCondition(Collections.singletonList("m1"),
+      Collections.singletonList("h1"), "a1", null, startTime, endTime, Precision.SECONDS, 10, true);
+    TimelineMetrics metrics = accessor.getMetricRecords(condition, new HashMap<String, List<Function>>());
+
+    PowerMock.verifyAll();
+    // The rows before the ids were written to the id keyed table come from the name keyed table
+    assertEquals(startTime, nameCondition.getValue().getStartTime().longValue());
+    assertEquals(coverageStartTime, nameCondition.getValue().getEndTime().longValue());
+    assertEquals(10, nameCondition.getValue().getLimit().intValue());
+    assertEquals(coverageStartTime, uuidCondition.getValue().getStartTime().longValue());
+    assertEquals(endTime, uuidCondition.getValue().getEndTime().longValue());
+    assertEquals(9, uuidCondition.getValue().getLimit().intValue());
+    // and are merged with the newer rows of the series
+    assertEquals(1, metrics.getMetrics().size());
+    assertEquals(2, metrics.getMetrics().get(0).getMetricValues().size());
+  }
+
+  @Test
+  public void testGetMetricRecordsByUuidAfterCoverageStart() throws SQLException, IOException {
+    long startTime = 1500000000000L;
+    byte[] uuid = new byte[TimelineMetricMetadataManager.UUID_LENGTH];
+    PhoenixHBaseAccessor accessor = createAccessorWithUuids(uuid, startTime - 1000);
+
+    PowerMock.mockStatic(PhoenixTransactSQL.class);
+    Condition condition = new DefaultCondition(Collections.singletonList("m1"),
+      Collections.singletonList("h1"), "a1", null, startTime, startTime + 20000, Precision.SECONDS, 10, true);
+    PreparedStatement uuidStmt = EasyMock.createNiceMock(PreparedStatement.class);
+    EasyMock.expect(PhoenixTransactSQL.prepareGetMetricsUuidSqlStmt(EasyMock.<Connection>isNull(),
+      EasyMock.same(condition), EasyMock.<List<byte[]>>anyObject())).andReturn(uuidStmt).once();
+    ResultSet rsMock = EasyMock.createNiceMock(ResultSet.class);
+    EasyMock.expect(uuidStmt.executeQuery()).andReturn(rsMock);
+
+    PowerMock.replayAll();
+    EasyMock.replay(uuidStmt, rsMock);
+
+    // Nothing is read from the name keyed table, not even for an empty result
+    TimelineMetrics metrics = accessor.getMetricRecords(condition, new HashMap<String, List<Function>>());
+    assertEquals(0, metrics.getMetrics().size());
+
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testGetMetricRecordsByUuidBeforeCoverageStart() throws SQLException, IOException {
+    long startTime = 1500000000000L;
+    byte[] uuid = new byte[TimelineMetricMetadataManager.UUID_LENGTH];
+    PhoenixHBaseAccessor accessor = createAccessorWithUuids(uuid, startTime + 30000);
+
+    PowerMock.mockStatic(PhoenixTransactSQL.class);
+    Condition condition = new DefaultCondition(Collections.singletonList("m1"),
+      Collections.singletonList("h1"), "a1", null, startTime, startTime + 20000, Precision.SECONDS, 10, true);
+    PreparedStatement nameStmt = EasyMock.createNiceMock(PreparedStatement.class);
+    EasyMock.expect(PhoenixTransactSQL.prepareGetMetricsSqlStmt(null, condition)).andReturn(nameStmt).once();
+    ResultSet rsMock = EasyMock.createNiceMock(ResultSet.class);
+    EasyMock.expect(nameStmt.executeQuery()).andReturn(rsMock);
+
+    PowerMock.replayAll();
+    EasyMock.replay(nameStmt, rsMock);
+
+    accessor.getMetricRecords(condition, new HashMap<String, List<Function>>());
+
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testGetMetricRecordsByUuidAfterRestart() throws SQLException, IOException {
+    long firstUse = System.currentTimeMillis() - 3600000;
+    PhoenixHBaseAccessor accessor = createAccessor();
+
+    // Ids stored with the time of their first claim before the restart
+    Configuration metricsConf = new Configuration();
+    metricsConf.setBoolean(TimelineMetricConfiguration.TIMELINE_METRICS_UUID_SCHEMA_ENABLED, true);
+    PhoenixHBaseAccessor store = EasyMock.createNiceMock(PhoenixHBaseAccessor.class);
+    EasyMock.expect(store.getTimelineMetricMetadata()).andReturn(
+      new HashMap<TimelineMetricMetadataKey, TimelineMetricMetadata>());
+    EasyMock.expect(store.getHostedAppsMetadata()).andReturn(
+      Collections.<String, Set<String>>singletonMap("h1", Collections.singleton("a1")));
+    EasyMock.expect(store.getMetricUuids()).andReturn(Collections.singletonMap(
+      new TimelineMetricMetadataKey("m1", "a1"), new TimelineMetricUuid(1L, firstUse)));
+    EasyMock.expect(store.getHostUuids()).andReturn(
+      Collections.singletonMap("h1", new TimelineMetricUuid(2, firstUse)));
+    EasyMock.replay(store);
+    TimelineMetricMetadataManager metadataManager = new TimelineMetricMetadataManager(store, metricsConf);
+    metadataManager.initializeMetadata();
+    accessor.setMetadataInstance(metadataManager);
+
+    PowerMock.mockStatic(PhoenixTransactSQL.class);
+    Condition condition = new DefaultCondition(Collections.singletonList("m1"),
+      Collections.singletonList("h1"), "a1", null, firstUse + 1000, firstUse + 20000, Precision.SECONDS, 10, true);
+    Capture<List<byte[]>> uuids = EasyMock.newCapture();
+    PreparedStatement uuidStmt = EasyMock.createNiceMock(PreparedStatement.class);
+    EasyMock.expect(PhoenixTransactSQL.prepareGetMetricsUuidSqlStmt(EasyMock.<Connection>isNull(),
+      EasyMock.same(condition), EasyMock.capture(uuids))).andReturn(uuidStmt).once();
+    ResultSet rsMock = EasyMock.createNiceMock(ResultSet.class);
+    EasyMock.expect(uuidStmt.executeQuery()).andReturn(rsMock);
+
+    PowerMock.replayAll();
+    EasyMock.replay(uuidStmt, rsMock);
+
+    // The range is covered by the id keyed table although it is before the restart
+    accessor.getMetricRecords(condition, new HashMap<String, List<Function>>());
+
+    PowerMock.verifyAll();
+    assertEquals(1, uuids.getValue().size());
+    assertEquals(1L, Bytes.toLong(uuids.getValue().get(0), 0));
+    assertEquals(2, Bytes.toInt(uuids.getValue().get(0), TimelineMetricMetadataManager.METRIC_UUID_LENGTH));
+  }
+
+  private PhoenixHBaseAccessor createAccessor() {
+    Configuration hbaseConf = new Configuration();
+    hbaseConf.setStrings(ZOOKEEPER_QUORUM, "quorum");
+    PhoenixConnectionProvider connectionProvider = new PhoenixConnectionProvider() {
+      @Override
+      public HBaseAdmin getHBaseAdmin() throws IOException {
+        return null;
+      }
+
+      @Override
+      public Connection getConnection() throws SQLException {
+        return null;
+      }
+    };
+    return new PhoenixHBaseAccessor(hbaseConf, new Configuration(), connectionProvider);
+  }
+
+  private PhoenixHBaseAccessor createAccessorWithUuids(byte[] uuid, long coverageStartTime) {
+    PhoenixHBaseAccessor accessor = createAccessor();
+
+    TimelineMetric key = new TimelineMetric();
+    key.setMetricName("m1");
+    key.setAppId("a1");
+    key.setHostName("h1");
+    List<byte[]> uuids = Collections.singletonList(uuid);
+    TimelineMetricMetadataManager metadataManager = EasyMock.createNiceMock(TimelineMetricMetadataManager.class);
+    EasyMock.expect(metadataManager.isUuidSchemaEnabled()).andReturn(true).anyTimes();
+    EasyMock.expect(metadataManager.getUuids(EasyMock.<Condition>anyObject())).andReturn(uuids).anyTimes();
+    EasyMock.expect(metadataManager.getUuidCoverageStartTime(uuids)).andReturn(coverageStartTime).anyTimes();
+    EasyMock.expect(metadataManager.getMetricFromUuid(uuid)).andReturn(key).anyTimes();
+    EasyMock.replay(metadataManager);
+    accessor.setMetadataInstance(metadataManager);
+    return accessor;
+  }
+
+  @Test
+  public void testInsertMetricRecordsReturnsCommittedRows() throws SQLException, IOException {
+    Configuration hbaseConf = new Configuration();
+    hbaseConf.setStrings(ZOOKEEPER_QUORUM, "quorum");
+    final Connection connection = EasyMock.createNiceMock(Connection.class);
+    PreparedStatement stmt = EasyMock.createNiceMock(PreparedStatement.class);
+    EasyMock.expect(connection.prepareStatement(EasyMock.anyString())).andReturn(stmt).anyTimes();
+    EasyMock.expect(stmt.executeUpdate()).andReturn(1).andThrow(new SQLException("Failed")).andReturn(1);
+    connection.commit();
+    EasyMock.expectLastCall().once().andThrow(new SQLException("Commit failed")).once();
+    EasyMock.replay(connection, stmt);
+    PhoenixConnectionProvider connectionProvider = new PhoenixConnectionProvider() {
+      @Override
+      public HBaseAdmin getHBaseAdmin() throws IOException {
+        return null;
+      }
+
+      @Override
+      public Connection getConnection() throws SQLException {
+        return connection;
+      }
+    };
+    PhoenixHBaseAccessor accessor = new PhoenixHBaseAccessor(hbaseConf, new Configuration(), connectionProvider);
+
+    long serverTime = System.currentTimeMillis();
+    TimelineMetrics metrics = new TimelineMetrics();
+    for (int i = 0; i < 3; i++) {
+      metrics.getMetrics().add(MetricTestHelper.createTimelineMetric(serverTime, "m" + i, "h1", null, null, 1.0));
+    }
+    // The second row failed
+    BitSet inserted = accessor.insertMetricRecordsWithMetadata(null, metrics, serverTime);
+    assertEquals(2, inserted.cardinality());
+    assertTrue(inserted.get(0));
+    assertTrue(inserted.get(2));
+
+    // None of the rows of a failed commit is reported
+    try {
+      accessor.insertMetricRecordsWithMetadata(null, metrics, serverTime);
+      fail();
+    } catch (SQLException e) {
+      assertEquals("Commit failed", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testSaveClusterAggregateRecordsInParallel() throws SQLException {
+    AggregateWriteCounts counts = saveClusterAggregateRecords(100, 10, 3);
+
+    assertEquals(100, counts.rows.get());
+    assertEquals(3, counts.connections.get());
+    assertTrue(counts.commits.get() >= 10);
+  }
+
+  @Test
+  public void testSaveClusterAggregateRecordsSmallBatches() throws SQLException {
+    // Partitions of 2 rows, the fourth one would be empty
+    AggregateWriteCounts counts = saveClusterAggregateRecords(5, 1, 4);
+
+    assertEquals(5, counts.rows.get());
+    assertEquals(3, counts.connections.get());
+    assertEquals(5 + 3, counts.commits.get());
+
+    counts = saveClusterAggregateRecords(3, 1, 8);
+    assertEquals(3, counts.rows.get());
+    assertEquals(3, counts.connections.get());
+  }
+
+  private static class AggregateWriteCounts {
+    final AtomicInteger connections = new AtomicInteger();
+    final AtomicInteger rows = new AtomicInteger();
+    final AtomicInteger commits = new AtomicInteger();
+  }
+
+  private AggregateWriteCounts saveClusterAggregateRecords(int recordCount, int batchSize,
+                                                           int parallelism) throws SQLException {
+    Configuration hbaseConf = new Configuration();
+    hbaseConf.setStrings(ZOOKEEPER_QUORUM, "quorum");
+    Configuration metricsConf = new Configuration();
+    metricsConf.setInt(TimelineMetricConfiguration.TIMELINE_METRICS_AGGREGATE_WRITE_BATCH_SIZE, batchSize);
+    metricsConf.setInt(TimelineMetricConfiguration.TIMELINE_METRICS_AGGREGATE_WRITE_PARALLELISM, parallelism);
+
+    final AggregateWriteCounts counts = new AggregateWriteCounts();
+    final IAnswer<Integer> countRow = new IAnswer<Integer>() {
+      @Override
+      public Integer answer() {
+        counts.rows.incrementAndGet();
+        return 1;
+      }
+    };
+    final IAnswer<Object> countCommit = new IAnswer<Object>() {
+      @Override
+      public Object answer() {
+        counts.commits.incrementAndGet();
+        return null;
+      }
+    };
+
+    PhoenixConnectionProvider connectionProvider = new PhoenixConnectionProvider() {
+      @Override
+      public HBaseAdmin getHBaseAdmin() throws IOException {
+        return null;
+      }
+
+      @Override
+      public Connection getConnection() throws SQLException {
+        counts.connections.incrementAndGet();
+        Connection connection = EasyMock.createNiceMock(Connection.class);
+        PreparedStatement stmt = EasyMock.createNiceMock(PreparedStatement.class);
+        EasyMock.expect(connection.prepareStatement(EasyMock.anyString())).andReturn(stmt);
+        connection.commit();
+        EasyMock.expectLastCall().andAnswer(countCommit).anyTimes();
+        EasyMock.expect(stmt.executeUpdate()).andAnswer(countRow).anyTimes();
+        EasyMock.replay(connection, stmt);
+        return connection;
+      }
+    };
+
+    PhoenixHBaseAccessor accessor = new PhoenixHBaseAccessor(hbaseConf, metricsConf, connectionProvider);
+
+    Map<TimelineClusterMetric, MetricClusterAggregate> records = new HashMap<>();
+    for (int i = 0; i < recordCount; i++) {
+      records.put(new TimelineClusterMetric("metric" + i, "app", null, 1000L, null),
+        new MetricClusterAggregate(1.0, 2, null, 1.0, 0.0));
+    }
+    accessor.saveClusterAggregateRecords(records);
+    return counts;
+  }
 }
@@ -21,6 +21,7 @@ import org.apache.hadoop.metrics2.sink.timeline.Precision;
 import org.apache.hadoop.metrics2.sink.timeline.PrecisionLimitExceededException;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.MetricNameHashRange;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.SplitByMetricNamesCondition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.TopNCondition;
@@ -139,6 +140,62 @@ public class TestPhoenixTransactSQL {
     Assert.assertEquals(expectedClause, preparedClause);
   }
 
+  @Test
+  public void testConditionClauseWithMetricNameHashRange() throws Exception {
+    DefaultCondition condition = new DefaultCondition(
+      null, null, null, null, 1407959718L, 1407959918L, null, null, false);
+    condition.setMetricNameHashRange(new MetricNameHashRange(1, 4));
+
+    String preparedClause = condition.getConditionClause().toString();
+    String expectedClause = " SERVER_TIME >= ? AND SERVER_TIME < ? AND " +
+      "MD5(METRIC_NAME) >= ? AND MD5(METRIC_NAME) < ?";
+    Assert.assertEquals(expectedClause, preparedClause);
+
+    // First range has no lower bound
+    condition.setMetricNameHashRange(new MetricNameHashRange(0, 4));
+    preparedClause = condition.getConditionClause().toString();
+    expectedClause = " SERVER_TIME >= ? AND SERVER_TIME < ? AND MD5(METRIC_NAME) < ?";
+    Assert.assertEquals(expectedClause, preparedClause);
+
+    condition = new DefaultCondition(
+      Arrays.asList("cpu_user"), Collections.singletonList("h1"),
+      "a1", null, 1407959718L, 1407959918L, null, null, false);
+    condition.setMetricNameHashRange(new MetricNameHashRange(3, 4));
+    Connection connection = createNiceMock(Connection.class);
+    PreparedStatement preparedStatement = createNiceMock(PreparedStatement.class);
+    expect(connection.prepareStatement(EasyMock.anyString())).andReturn(preparedStatement);
+    // Bound after the metric name, host, app and times, last range has no upper bound
+    preparedStatement.setBytes(EasyMock.eq(6),
+      EasyMock.aryEq(new MetricNameHashRange(3, 4).getLowerBound()));
+    EasyMock.expectLastCall();
+    replay(connection, preparedStatement);
+    PhoenixTransactSQL.prepareGetMetricsSqlStmt(connection, condition);
+    verify(connection, preparedStatement);
+  }
+
+  @Test
+  public void testMetricNameHashRangesCoverAllNames() throws Exception {
+    int shards = 5;
+    List<MetricNameHashRange> ranges = new ArrayList<MetricNameHashRange>();
+    for (int i = 0; i < shards; i++) {
+      ranges.add(new MetricNameHashRange(i, shards));
+    }
+    int[] counts = new int[shards];
+    for (int i = 0; i < 1000; i++) {
+      int owners = 0;
+      for (MetricNameHashRange range : ranges) {
+        if (range.contains("metric." + i)) {
+          owners++;
+          counts[range.getShard()]++;
+        }
+      }
+      Assert.assertEquals(1, owners);
+    }
+    for (int count : counts) {
+      Assert.assertTrue(count > 100);
+    }
+  }
+
   @Test
   public void testPrepareGetAggregatePrecisionMINUTES() throws SQLException {
     Condition condition = new DefaultCondition(
@@ -157,6 +214,34 @@ public class TestPhoenixTransactSQL {
     verify(connection, preparedStatement);
   }
 
+  @Test
+  public void testPrepareGetAggregateReadSketch() throws SQLException {
+    Condition condition = new DefaultCondition(
+      Arrays.asList("cpu_user", "mem_free"), Collections.singletonList("h1"),
+      "a1", "i1", 1407959718L, 1407959918L, Precision.MINUTES, null, false);
+    Connection connection = createNiceMock(Connection.class);
+    PreparedStatement preparedStatement = createNiceMock(PreparedStatement.class);
+    Capture<String> stmtCapture = new Capture<String>();
+    expect(connection.prepareStatement(EasyMock.and(EasyMock.anyString(), EasyMock.capture(stmtCapture))))
+        .andReturn(preparedStatement).anyTimes();
+
+    replay(connection, preparedStatement);
+    PhoenixTransactSQL.prepareGetAggregateSqlStmt(connection, condition);
+    Assert.assertFalse(stmtCapture.getValue().contains("METRIC_SKETCH"));
+
+    condition.setReadSketch(true);
+    PhoenixTransactSQL.prepareGetAggregateSqlStmt(connection, condition);
+    Assert.assertTrue(stmtCapture.getValue().contains("METRIC_SKETCH"));
+
+    // The flag goes with the condition, not with the class
+    Condition other = new DefaultCondition(
+      Arrays.asList("cpu_user"), Collections.singletonList("h1"),
+      "a1", "i1", 1407959718L, 1407959918L, Precision.MINUTES, null, false);
+    PhoenixTransactSQL.prepareGetAggregateSqlStmt(connection, other);
+    Assert.assertFalse(stmtCapture.getValue().contains("METRIC_SKETCH"));
+    verify(connection, preparedStatement);
+  }
+
   @Test
   public void testPrepareGetAggregateNoPrecision() throws SQLException {
     Long endTime = 1407959918L;
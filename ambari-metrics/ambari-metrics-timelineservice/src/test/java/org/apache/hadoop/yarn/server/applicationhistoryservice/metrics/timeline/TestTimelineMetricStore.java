@@ -38,7 +38,7 @@ public class TestTimelineMetricStore implements TimelineMetricStore {
   @Override
   public TimelineMetrics getTimelineMetrics(List<String> metricNames,
       List<String> hostnames, String applicationId, String instanceId, Long startTime,
-      Long endTime, Precision precision, Integer limit, boolean groupedByHost, TopNConfig topNConfig) throws SQLException,
+      Long endTime, Precision precision, Integer limit, boolean groupedByHost, TopNConfig topNConfig, Integer maxPoints) throws SQLException,
     IOException {
     TimelineMetrics timelineMetrics = new TimelineMetrics();
     List<TimelineMetric> metricList = new ArrayList<TimelineMetric>();
@@ -79,6 +79,13 @@ public class TestTimelineMetricStore implements TimelineMetricStore {
     return new TimelinePutResponse();
   }
 
+  @Override
+  public TimelinePutResponse putMetrics(TimelineMetricSeriesBuffer metrics)
+      throws SQLException, IOException {
+
+    return new TimelinePutResponse();
+  }
+
   @Override
   public TimelinePutResponse putContainerMetrics(List<ContainerMetric> metrics)
       throws SQLException, IOException {
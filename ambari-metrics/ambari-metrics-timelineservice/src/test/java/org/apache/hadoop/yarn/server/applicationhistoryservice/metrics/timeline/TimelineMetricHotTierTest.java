@@ -0,0 +1,199 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.Precision;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.MetricTestHelper.prepareSingleTimelineMetric;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimelineMetricHotTierTest {
+  // Start of a segment
+  private static final long START = 1460000400000L;
+  private static final long SEGMENT = 600000;
+  private static final long WINDOW = 7200000;
+
+  private Condition condition(List<String> metricNames, long startTime, long endTime, boolean grouped) {
+    return new DefaultCondition(metricNames, Arrays.asList("h1"), "host", null,
+      startTime, endTime, null, null, grouped);
+  }
+
+  @Test
+  public void testQueryWithinWindow() throws Exception {
+    TimelineMetricHotTier hotTier = new TimelineMetricHotTier(WINDOW, SEGMENT,
+      Long.MAX_VALUE, 300000, START);
+
+    hotTier.put(prepareSingleTimelineMetric(START, "h1", "disk_free", 1), START);
+    hotTier.put(prepareSingleTimelineMetric(START + 60000, "h1", "disk_free", 2), START + 60000);
+    hotTier.put(prepareSingleTimelineMetric(START + 60000, "h2", "disk_free", 3), START + 60000);
+    hotTier.put(prepareSingleTimelineMetric(START + 60000, "h1", "mem_free", 4), START + 60000);
+    // Next segment
+    hotTier.put(prepareSingleTimelineMetric(START + SEGMENT, "h1", "disk_free", 5), START + SEGMENT);
+
+    Map<String, List<Function>> functions =
+      HBaseTimelineMetricStore.parseMetricNamesToAggregationFunctions(Collections.singletonList("disk_free"));
+
+    Condition condition = condition(Collections.singletonList("disk_free"), START, START + WINDOW, false);
+    assertTrue(hotTier.canServe(condition, functions));
+    TimelineMetrics metrics = hotTier.getMetrics(condition, functions, START, START + WINDOW);
+    assertEquals(3, metrics.getMetrics().size());
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      assertEquals("disk_free", metric.getMetricName());
+      assertEquals("h1", metric.getHostName());
+    }
+    assertEquals(START + SEGMENT, metrics.getMetrics().get(2).getTimestamp());
+
+    // End time is exclusive
+    metrics = hotTier.getMetrics(condition, functions, START, START + SEGMENT);
+    assertEquals(2, metrics.getMetrics().size());
+
+    // Grouped into a single series
+    condition = condition(Collections.singletonList("disk_free"), START, START + WINDOW, true);
+    metrics = hotTier.getMetrics(condition, functions, START, START + WINDOW);
+    assertEquals(1, metrics.getMetrics().size());
+    assertEquals(START, metrics.getMetrics().get(0).getTimestamp());
+  }
+
+  @Test
+  public void testRateSuffixAndUnsupportedQueries() throws Exception {
+    TimelineMetricHotTier hotTier = new TimelineMetricHotTier(WINDOW, SEGMENT,
+      Long.MAX_VALUE, 300000, START);
+    hotTier.put(prepareSingleTimelineMetric(START, "h1", "bytes_in", 1), START);
+
+    Map<String, List<Function>> functions =
+      HBaseTimelineMetricStore.parseMetricNamesToAggregationFunctions(Collections.singletonList("bytes_in._rate"));
+    Condition condition = condition(Collections.singletonList("bytes_in"), START, START + WINDOW, true);
+    assertTrue(hotTier.canServe(condition, functions));
+    TimelineMetrics metrics = hotTier.getMetrics(condition, functions, START, START + WINDOW);
+    assertEquals("bytes_in._rate", metrics.getMetrics().get(0).getMetricName());
+
+    // Aggregate functions, patterns and lower precision go to HBase
+    functions = HBaseTimelineMetricStore.parseMetricNamesToAggregationFunctions(
+      Collections.singletonList("bytes_in._avg"));
+    assertFalse(hotTier.canServe(condition, functions));
+    functions = HBaseTimelineMetricStore.parseMetricNamesToAggregationFunctions(
+      Collections.singletonList("bytes%"));
+    assertFalse(hotTier.canServe(condition(Collections.singletonList("bytes%"), START, START + WINDOW, true), functions));
+    functions = HBaseTimelineMetricStore.parseMetricNamesToAggregationFunctions(
+      Collections.singletonList("bytes_in"));
+    assertFalse(hotTier.canServe(new DefaultCondition(Collections.singletonList("bytes_in"),
+      Arrays.asList("h1"), "host", null, START, START + WINDOW, Precision.MINUTES, null, true), functions));
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    TimelineMetrics metrics = prepareSingleTimelineMetric(START, "h1", "disk_free", 1);
+    long recordSize = TimelineMetricHotTier.estimateSize(metrics.getMetrics().get(0));
+
+    // Budget of three records
+    TimelineMetricHotTier hotTier = new TimelineMetricHotTier(WINDOW, SEGMENT,
+      3 * recordSize, 300000, START);
+    assertEquals(START, hotTier.getCoverageStartTime());
+
+    for (int i = 0; i < 3; i++) {
+      long serverTime = START + i * SEGMENT;
+      hotTier.put(prepareSingleTimelineMetric(serverTime, "h1", "disk_free", i), serverTime);
+    }
+    assertEquals(3 * recordSize, hotTier.getMemoryBytes());
+    assertEquals(START, hotTier.getCoverageStartTime());
+
+    // Over budget, the oldest segment is dropped
+    long serverTime = START + 3 * SEGMENT;
+    hotTier.put(prepareSingleTimelineMetric(serverTime, "h1", "disk_free", 3), serverTime);
+    assertEquals(3 * recordSize, hotTier.getMemoryBytes());
+    assertEquals(START + SEGMENT, hotTier.getCoverageStartTime());
+
+    // Two segments out of the window
+    serverTime = START + 3 * SEGMENT + WINDOW;
+    hotTier.put(prepareSingleTimelineMetric(serverTime, "h1", "disk_free", 4), serverTime);
+    assertEquals(2 * recordSize, hotTier.getMemoryBytes());
+    assertEquals(START + 3 * SEGMENT, hotTier.getCoverageStartTime());
+
+    // Records of dropped segments are not accepted again
+    hotTier.put(prepareSingleTimelineMetric(START, "h1", "disk_free", 5), START);
+    Map<String, List<Function>> functions =
+      HBaseTimelineMetricStore.parseMetricNamesToAggregationFunctions(Collections.singletonList("disk_free"));
+    Condition condition = condition(Collections.singletonList("disk_free"), START, serverTime + 1, false);
+    assertEquals(2, hotTier.getMetrics(condition, functions, START, serverTime + 1).getMetrics().size());
+  }
+
+  @Test
+  public void testPutKeepsCopies() throws Exception {
+    TimelineMetricHotTier hotTier = new TimelineMetricHotTier(WINDOW, SEGMENT,
+      Long.MAX_VALUE, 300000, START);
+    TimelineMetrics metrics = prepareSingleTimelineMetric(START, "h1", "disk_free", 1);
+    hotTier.put(metrics, START);
+
+    // The caller reuses its metric after the put
+    TimelineMetric metric = metrics.getMetrics().get(0);
+    metric.setHostName("h2");
+    metric.getMetricValues().clear();
+
+    Map<String, List<Function>> functions =
+      HBaseTimelineMetricStore.parseMetricNamesToAggregationFunctions(Collections.singletonList("disk_free"));
+    Condition condition = condition(Collections.singletonList("disk_free"), START, START + WINDOW, false);
+    metrics = hotTier.getMetrics(condition, functions, START, START + WINDOW);
+    assertEquals(1, metrics.getMetrics().size());
+    assertEquals("h1", metrics.getMetrics().get(0).getHostName());
+    assertEquals(4, metrics.getMetrics().get(0).getMetricValues().size());
+  }
+
+  @Test
+  public void testLimitRowsOfPartialHit() throws Exception {
+    // Older rows from HBase and newer rows from the hot tier, each within the limit
+    List<TimelineMetric> rows = new ArrayList<>();
+    rows.add(row("m1", 1000L, 1.0));
+    rows.add(row("m1", 2000L, 2.0));
+    rows.add(row("m2", 1000L, 3.0));
+    rows.add(row("m1", 3000L, 4.0));
+    rows.add(row("m2", 3000L, 5.0));
+    rows.add(row("m1", 3000L, 6.0));
+
+    List<TimelineMetric> limited = TimelineMetricHotTier.limitRows(rows, 4);
+    assertEquals(4, limited.size());
+    assertEquals(1.0, limited.get(0).getMetricValues().firstEntry().getValue(), 0.0);
+    assertEquals(2.0, limited.get(1).getMetricValues().firstEntry().getValue(), 0.0);
+    assertEquals(4.0, limited.get(2).getMetricValues().firstEntry().getValue(), 0.0);
+    assertEquals(6.0, limited.get(3).getMetricValues().firstEntry().getValue(), 0.0);
+
+    assertEquals(6, TimelineMetricHotTier.limitRows(rows, 10).size());
+  }
+
+  private static TimelineMetric row(String metricName, long serverTime, double value) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(metricName);
+    metric.setHostName("h1");
+    metric.setTimestamp(serverTime);
+    metric.getMetricValues().put(serverTime, value);
+    return metric;
+  }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.AggregatorUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single threaded cost of turning a metrics put request into the values the
+ * store writes for each series: the aggregates and the values json. The
+ * binding benchmark is the previous path through {@link TimelineMetrics},
+ * the streaming one reads into a {@link TimelineMetricSeriesBuffer}. Run with
+ * -prof gc to compare the allocation rate per request. Not run by the unit
+ * tests, after mvn test-compile run main() or org.openjdk.jmh.Main
+ * TimelineMetricIngestionBenchmark with the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class TimelineMetricIngestionBenchmark {
+
+  /**
+   * Series per request, about a NodeManager and a RegionServer with many
+   * regions.
+   */
+  @Param({"150", "2000"})
+  private int seriesCount;
+
+  /**
+   * Values per series, a minute of 10 second values or an hour of them.
+   */
+  @Param({"6", "360"})
+  private int valueCount;
+
+  private ObjectMapper mapper;
+  private byte[] request;
+
+  @Setup
+  public void setUp() throws Exception {
+    // Configured as YarnJacksonJaxbJsonProvider does for the web service
+    mapper = new ObjectMapper();
+    mapper.setAnnotationIntrospector(new JaxbAnnotationIntrospector());
+
+    long startTime = System.currentTimeMillis() - valueCount * 10000L;
+    TimelineMetrics metrics = new TimelineMetrics();
+    for (int i = 0; i < seriesCount; i++) {
+      TimelineMetric metric = new TimelineMetric();
+      metric.setMetricName("regionserver.Regions.table_" + (i / 20) + ".region_metric_" + i);
+      metric.setAppId("hbase");
+      metric.setHostName("c6401.ambari.apache.org");
+      metric.setStartTime(startTime);
+      metric.setTimestamp(startTime);
+      metric.setType("Long");
+      for (int j = 0; j < valueCount; j++) {
+        metric.getMetricValues().put(startTime + j * 10000L, (double) (i * j % 1000) / 8);
+      }
+      metrics.getMetrics().add(metric);
+    }
+    request = mapper.writeValueAsBytes(metrics);
+  }
+
+  @Benchmark
+  public void binding(Blackhole blackhole) throws Exception {
+    TimelineMetrics metrics = mapper.readValue(new ByteArrayInputStream(request), TimelineMetrics.class);
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      blackhole.consume(AggregatorUtils.calculateAggregates(metric.getMetricValues()));
+      blackhole.consume(mapper.writeValueAsString(metric.getMetricValues()));
+    }
+  }
+
+  @Benchmark
+  public void streaming(Blackhole blackhole) throws Exception {
+    TimelineMetricSeriesBuffer metrics =
+      TimelineMetricStreamReader.read(new ByteArrayInputStream(request));
+    for (int i = 0; i < metrics.size(); i++) {
+      blackhole.consume(metrics.getMetric(i));
+      blackhole.consume(metrics.getAggregates(i));
+      blackhole.consume(metrics.getValuesJson(i));
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new OptionsBuilder()
+      .include(TimelineMetricIngestionBenchmark.class.getSimpleName())
+      .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.Precision;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.ConditionBuilder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TimelineMetricQueryCacheTest {
+  private static final long NOW = 1460000000000L;
+  private static final long HOUR = 3600000;
+  private static final Map<String, List<Function>> FUNCTIONS =
+    HBaseTimelineMetricStore.parseMetricNamesToAggregationFunctions(Collections.singletonList("cpu_user"));
+
+  /**
+   * A value every 10 seconds of the range for each host.
+   */
+  private static class FakeStore implements TimelineMetricQueryExecutor.MetricsQuery {
+    final List<Condition> queries = new ArrayList<Condition>();
+
+    @Override
+    public TimelineMetrics execute(Condition condition) {
+      queries.add(condition);
+      TimelineMetrics metrics = new TimelineMetrics();
+      for (String hostname : condition.getHostnames()) {
+        TimelineMetric metric = new TimelineMetric();
+        metric.setMetricName("cpu_user");
+        metric.setAppId("HOST");
+        metric.setHostName(hostname);
+        metric.setStartTime(condition.getStartTime());
+        metric.setTimestamp(condition.getStartTime());
+        TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+        long first = (condition.getStartTime() + 9999) / 10000 * 10000;
+        for (long time = first; time < condition.getEndTime(); time += 10000) {
+          values.put(time, (double) (time / 10000 % 100));
+        }
+        metric.setMetricValues(values);
+        metrics.getMetrics().add(metric);
+      }
+      return metrics;
+    }
+  }
+
+  private static TimelineMetricQueryCache createCache(long memoryBudgetBytes) {
+    Map<Precision, Long> lag = new EnumMap<Precision, Long>(Precision.class);
+    lag.put(Precision.SECONDS, 360000L);
+    lag.put(Precision.MINUTES, 1200000L);
+    lag.put(Precision.HOURS, 3 * HOUR);
+    lag.put(Precision.DAYS, 48 * HOUR);
+    return new TimelineMetricQueryCache(memoryBudgetBytes, 120000, HOUR, lag);
+  }
+
+  private static ConditionBuilder builder(long startTime, long endTime) {
+    return new ConditionBuilder(Collections.singletonList("cpu_user"))
+      .hostnames(Collections.singletonList("h1"))
+      .appId("HOST")
+      .startTime(startTime)
+      .endTime(endTime)
+      .grouped(true);
+  }
+
+  @Test
+  public void testSlidingWindow() throws Exception {
+    TimelineMetricQueryCache cache = createCache(Long.MAX_VALUE);
+    FakeStore store = new FakeStore();
+
+    Condition condition = builder(NOW - HOUR, NOW).build();
+    TimelineMetrics metrics = cache.execute(condition, FUNCTIONS, store, NOW);
+    assertEquals(1, metrics.getMetrics().size());
+    TreeMap<Long, Double> values = metrics.getMetrics().get(0).getMetricValues();
+    assertEquals(360, values.size());
+    assertEquals(NOW - HOUR, (long) values.firstKey());
+    assertEquals(NOW - 10000, (long) values.lastKey());
+    int firstQueries = store.queries.size();
+    assertTrue(cache.size() > 0);
+    for (Condition query : store.queries) {
+      assertEquals(Precision.SECONDS, query.getPrecision());
+      assertNull(query.getMaxPoints());
+    }
+    // Callers change the results
+    values.clear();
+
+    // Refresh a minute later only reads the newest part
+    store.queries.clear();
+    condition = builder(NOW - HOUR + 60000, NOW + 60000).build();
+    metrics = cache.execute(condition, FUNCTIONS, store, NOW + 60000);
+    values = metrics.getMetrics().get(0).getMetricValues();
+    assertEquals(360, values.size());
+    assertEquals(NOW - HOUR + 60000, (long) values.firstKey());
+    assertTrue(store.queries.size() <= 2);
+    assertTrue(store.queries.size() < firstQueries);
+    Condition tail = store.queries.get(store.queries.size() - 1);
+    assertEquals(NOW + 60000, (long) tail.getEndTime());
+    // Not sealed yet
+    assertTrue(tail.getStartTime() > NOW + 60000 - 360000 - 120000 - 600000);
+  }
+
+  @Test
+  public void testNotCached() throws Exception {
+    TimelineMetricQueryCache cache = createCache(Long.MAX_VALUE);
+    FakeStore store = new FakeStore();
+
+    Condition limited = builder(NOW - HOUR, NOW).limit(100).build();
+    cache.execute(limited, FUNCTIONS, store, NOW);
+    Condition topN = builder(NOW - HOUR, NOW).topN(2).build();
+    cache.execute(topN, FUNCTIONS, store, NOW);
+    // Whole range too recent
+    Condition recent = builder(NOW - 300000, NOW).build();
+    cache.execute(recent, FUNCTIONS, store, NOW);
+
+    assertEquals(3, store.queries.size());
+    assertSame(limited, store.queries.get(0));
+    assertSame(topN, store.queries.get(1));
+    assertSame(recent, store.queries.get(2));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testMemoryBudget() throws Exception {
+    // Room for about two buckets of a single series
+    TimelineMetricQueryCache cache = createCache(15000);
+    FakeStore store = new FakeStore();
+
+    Condition condition = builder(NOW - HOUR, NOW).build();
+    TimelineMetrics metrics = cache.execute(condition, FUNCTIONS, store, NOW);
+    assertEquals(360, metrics.getMetrics().get(0).getMetricValues().size());
+    assertTrue(cache.size() <= 2);
+    assertTrue(cache.getMemoryBytes() <= 15000);
+  }
+
+  @Test
+  public void testMaxPointsAndNotGrouped() throws Exception {
+    TimelineMetricQueryCache cache = createCache(Long.MAX_VALUE);
+    FakeStore store = new FakeStore();
+
+    Condition condition = builder(NOW - HOUR, NOW).maxPoints(20).build();
+    TimelineMetrics metrics = cache.execute(condition, FUNCTIONS, store, NOW);
+    assertTrue(metrics.getMetrics().get(0).getMetricValues().size() <= 20);
+
+    condition = builder(NOW - HOUR, NOW)
+      .hostnames(Arrays.asList("h1", "h2"))
+      .grouped(false).build();
+    metrics = cache.execute(condition, FUNCTIONS, store, NOW);
+    int values = 0;
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      values += metric.getMetricValues().size();
+    }
+    assertEquals(720, values);
+  }
+}
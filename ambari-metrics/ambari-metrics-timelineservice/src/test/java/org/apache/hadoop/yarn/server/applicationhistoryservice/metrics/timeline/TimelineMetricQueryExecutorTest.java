@@ -0,0 +1,242 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.Precision;
+import org.apache.hadoop.metrics2.sink.timeline.PrecisionLimitExceededException;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.TopNCondition;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TimelineMetricQueryExecutorTest {
+  private static final long START = 1460000000000L;
+  private static final long MINUTE = 60000;
+  private static final long HOUR = 3600000;
+
+  private List<String> names(String prefix, int count) {
+    List<String> names = new ArrayList<String>();
+    for (int i = 0; i < count; i++) {
+      names.add(prefix + i);
+    }
+    return names;
+  }
+
+  /**
+   * Returns one series for every metric and host of the condition.
+   */
+  private static class SeriesQuery implements TimelineMetricQueryExecutor.MetricsQuery {
+    final List<Condition> conditions = Collections.synchronizedList(new ArrayList<Condition>());
+
+    @Override
+    public TimelineMetrics execute(Condition condition) throws SQLException, IOException {
+      conditions.add(condition);
+      TimelineMetrics metrics = new TimelineMetrics();
+      for (String metricName : condition.getMetricNames()) {
+        List<String> hostnames = condition.getHostnames() == null ?
+          Collections.<String>singletonList(null) : condition.getHostnames();
+        for (String hostname : hostnames) {
+          TimelineMetric metric = new TimelineMetric();
+          metric.setMetricName(metricName);
+          metric.setHostName(hostname);
+          metrics.getMetrics().add(metric);
+        }
+      }
+      return metrics;
+    }
+  }
+
+  @Test
+  public void testSplitByMetrics() throws Exception {
+    TimelineMetricQueryExecutor executor = new TimelineMetricQueryExecutor(4, 10, 10, 10000);
+    List<String> metricNames = names("metric", 45);
+    Condition condition = new DefaultCondition(metricNames, Arrays.asList("h1", "h2"),
+      "HOST", null, START, START + 10 * MINUTE, null, null, false);
+
+    SeriesQuery query = new SeriesQuery();
+    TimelineMetrics metrics = executor.execute(condition, query);
+
+    assertEquals(5, query.conditions.size());
+    for (Condition split : query.conditions) {
+      assertTrue(split.getMetricNames().size() <= 10);
+      assertEquals(Precision.SECONDS, split.getPrecision());
+      assertEquals(condition.getStartTime(), split.getStartTime());
+      assertEquals(condition.getEndTime(), split.getEndTime());
+    }
+    // Results keep the order of the request
+    assertEquals(90, metrics.getMetrics().size());
+    for (int i = 0; i < metricNames.size(); i++) {
+      assertEquals(metricNames.get(i), metrics.getMetrics().get(2 * i).getMetricName());
+      assertEquals("h1", metrics.getMetrics().get(2 * i).getHostName());
+      assertEquals("h2", metrics.getMetrics().get(2 * i + 1).getHostName());
+    }
+    executor.shutdown();
+  }
+
+  @Test
+  public void testSplitByHosts() throws Exception {
+    TimelineMetricQueryExecutor executor = new TimelineMetricQueryExecutor(4, 10, 10, 10000);
+    Condition condition = new DefaultCondition(Arrays.asList("cpu_user"), names("host", 25),
+      "HOST", null, START, START + 3 * HOUR, null, null, true);
+
+    SeriesQuery query = new SeriesQuery();
+    TimelineMetrics metrics = executor.execute(condition, query);
+
+    assertEquals(3, query.conditions.size());
+    assertEquals(Precision.MINUTES, query.conditions.get(0).getPrecision());
+    assertTrue(query.conditions.get(0).isGrouped());
+    assertEquals(25, metrics.getMetrics().size());
+    executor.shutdown();
+  }
+
+  @Test
+  public void testNotSplit() throws Exception {
+    TimelineMetricQueryExecutor executor = new TimelineMetricQueryExecutor(4, 10, 10, 10000);
+    List<String> metricNames = names("metric", 20);
+
+    // Small request
+    Condition condition = new DefaultCondition(names("metric", 10), Arrays.asList("h1"),
+      "HOST", null, START, START + HOUR, null, null, false);
+    assertEquals(1, executor.split(condition).size());
+
+    // Point in time
+    condition = new DefaultCondition(metricNames, Arrays.asList("h1"),
+      "HOST", null, null, null, null, null, false);
+    assertEquals(1, executor.split(condition).size());
+
+    // Top N
+    condition = new TopNCondition(metricNames, Arrays.asList("h1"), "HOST", null,
+      START, START + HOUR, null, null, false, 5, null, false);
+    assertEquals(1, executor.split(condition).size());
+
+    // Patterns could match the same series in several sub-queries
+    List<String> patterns = new ArrayList<String>(metricNames);
+    patterns.add("metric%");
+    condition = new DefaultCondition(patterns, Arrays.asList("h1"),
+      "HOST", null, START, START + HOUR, null, null, false);
+    assertEquals(1, executor.split(condition).size());
+
+    // Disabled
+    executor.shutdown();
+    executor = new TimelineMetricQueryExecutor(0, 10, 10, 10000);
+    condition = new DefaultCondition(metricNames, Arrays.asList("h1"),
+      "HOST", null, START, START + HOUR, null, null, false);
+    assertEquals(1, executor.split(condition).size());
+  }
+
+  @Test
+  public void testLimitSharedBySplits() throws Exception {
+    TimelineMetricQueryExecutor executor = new TimelineMetricQueryExecutor(4, 10, 10, 10000);
+    Condition condition = new DefaultCondition(names("metric", 45), Arrays.asList("h1", "h2"),
+      "HOST", null, START, START + 10 * MINUTE, null, 1002, false);
+    condition.setFetchSize(500);
+
+    List<Condition> splits = executor.split(condition);
+    assertEquals(5, splits.size());
+    int limit = 0;
+    for (Condition split : splits) {
+      assertTrue(split.getLimit() == 200 || split.getLimit() == 201);
+      assertEquals(Integer.valueOf(500), split.getFetchSize());
+      limit += split.getLimit();
+    }
+    assertEquals(1002, limit);
+
+    // Without a limit none of the sub-queries has one
+    condition = new DefaultCondition(names("metric", 45), Arrays.asList("h1", "h2"),
+      "HOST", null, START, START + 10 * MINUTE, null, null, false);
+    condition.setNoLimit();
+    for (Condition split : executor.split(condition)) {
+      assertNull(split.getLimit());
+    }
+
+    // Too small a limit to share
+    condition = new DefaultCondition(names("metric", 45), Arrays.asList("h1", "h2"),
+      "HOST", null, START, START + 10 * MINUTE, null, 3, false);
+    assertEquals(1, executor.split(condition).size());
+    executor.shutdown();
+  }
+
+  @Test
+  public void testRowCountLimitOfWholeRequest() throws Exception {
+    TimelineMetricQueryExecutor executor = new TimelineMetricQueryExecutor(4, 10, 10, 10000);
+    // Each sub-query would be below the limit
+    Condition condition = new DefaultCondition(names("metric", 30), Arrays.asList("h1", "h2"),
+      "HOST", null, START, START + HOUR, Precision.SECONDS, null, false);
+    try {
+      executor.split(condition);
+      fail();
+    } catch (PrecisionLimitExceededException e) {
+      // Expected
+    }
+    executor.shutdown();
+  }
+
+  @Test
+  public void testFailures() throws Exception {
+    TimelineMetricQueryExecutor executor = new TimelineMetricQueryExecutor(4, 10, 10, 200);
+    Condition condition = new DefaultCondition(names("metric", 30), Arrays.asList("h1"),
+      "HOST", null, START, START + HOUR, null, null, false);
+
+    try {
+      executor.execute(condition, new TimelineMetricQueryExecutor.MetricsQuery() {
+        @Override
+        public TimelineMetrics execute(Condition condition) throws SQLException {
+          if (condition.getMetricNames().contains("metric25")) {
+            throw new SQLException("Failed");
+          }
+          return new TimelineMetrics();
+        }
+      });
+      fail();
+    } catch (SQLException e) {
+      assertEquals("Failed", e.getMessage());
+    }
+
+    try {
+      executor.execute(condition, new TimelineMetricQueryExecutor.MetricsQuery() {
+        @Override
+        public TimelineMetrics execute(Condition condition) throws IOException {
+          try {
+            Thread.sleep(10000);
+          } catch (InterruptedException e) {
+            // Cancelled
+          }
+          return new TimelineMetrics();
+        }
+      });
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("did not complete"));
+    }
+    executor.shutdown();
+  }
+}
@@ -57,7 +57,7 @@ public class TimelineMetricStoreWatcherTest {
     expect(metricStore.getTimelineMetrics(EasyMock.<List<String>>anyObject(),
       EasyMock.<List<String>>anyObject(), anyObject(String.class),
       anyObject(String.class), anyObject(Long.class), anyObject(Long.class),
-      eq(Precision.SECONDS), eq(1), eq(true), anyObject(TopNConfig.class)))
+      eq(Precision.SECONDS), eq(1), eq(true), anyObject(TopNConfig.class), anyObject(Integer.class)))
       .andReturn(null).anyTimes();
 
     mockStatic(ExitUtil.class);
@@ -84,7 +84,7 @@ public class TimelineMetricStoreWatcherTest {
     expect(metricStore.getTimelineMetrics(EasyMock.<List<String>>anyObject(),
       EasyMock.<List<String>>anyObject(), anyObject(String.class),
       anyObject(String.class), anyObject(Long.class), anyObject(Long.class),
-      eq(Precision.SECONDS), eq(1), eq(true), anyObject(TopNConfig.class)))
+      eq(Precision.SECONDS), eq(1), eq(true), anyObject(TopNConfig.class), anyObject(Integer.class)))
       .andReturn(null).anyTimes();
 
     String msg = "Error getting metrics from TimelineMetricStore. " +
@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.AggregatorUtils;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class TimelineMetricStreamReaderTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  static {
+    MAPPER.setAnnotationIntrospector(new JaxbAnnotationIntrospector());
+  }
+
+  private static TimelineMetricSeriesBuffer read(String json) throws IOException {
+    return TimelineMetricStreamReader.read(new ByteArrayInputStream(json.getBytes("UTF-8")));
+  }
+
+  private static TimelineMetric metric(String metricName, String hostname, long startTime, int count) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(metricName);
+    metric.setAppId("HOST");
+    metric.setHostName(hostname);
+    metric.setInstanceId(null);
+    metric.setType("Long");
+    metric.setUnits("%");
+    metric.setStartTime(startTime);
+    metric.setTimestamp(startTime);
+    for (int i = 0; i < count; i++) {
+      metric.getMetricValues().put(startTime + i * 10000, i * 1.5 - 3);
+    }
+    return metric;
+  }
+
+  @Test
+  public void testSameAsBinding() throws Exception {
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.getMetrics().add(metric("cpu_user", "h1", 1460000000000L, 6));
+    metrics.getMetrics().add(metric("mem_free", "h2", 1460000001000L, 0));
+    metrics.getMetrics().get(1).getMetricValues().put(1460000002000L, Double.NaN);
+    String json = MAPPER.writeValueAsString(metrics);
+
+    TimelineMetrics bound = MAPPER.readValue(json, TimelineMetrics.class);
+    TimelineMetricSeriesBuffer buffer = read(json);
+
+    assertEquals(2, buffer.size());
+    assertEquals(7, buffer.getTotalValueCount());
+    for (int i = 0; i < buffer.size(); i++) {
+      TimelineMetric expected = bound.getMetrics().get(i);
+      TimelineMetric actual = buffer.getMetric(i);
+      assertEquals(expected, actual);
+      assertEquals(expected.getType(), actual.getType());
+      assertEquals(expected.getUnits(), actual.getUnits());
+      assertEquals(0, actual.getMetricValues().size());
+      assertEquals(MAPPER.writeValueAsString(expected.getMetricValues()), buffer.getValuesJson(i));
+      assertArrayEquals(AggregatorUtils.calculateAggregates(expected.getMetricValues()),
+        buffer.getAggregates(i), 0.000001);
+    }
+    assertEquals(MAPPER.writeValueAsString(bound),
+      MAPPER.writeValueAsString(buffer.toTimelineMetrics()));
+  }
+
+  @Test
+  public void testValues() throws Exception {
+    TimelineMetricSeriesBuffer buffer = read("{\"metrics\":[{\"metricname\":\"cpu_user\"," +
+      "\"unknown\":{\"a\":[1,2]},\"starttime\":\"1000\",\"metrics\":" +
+      "{\"3000\":3,\"1000\":\"1.5\",\"2000\":null,\"3000\":4.0}}],\"type\":\"ignored\"}");
+
+    assertEquals(1, buffer.size());
+    assertEquals("cpu_user", buffer.getMetric(0).getMetricName());
+    assertNull(buffer.getMetric(0).getHostName());
+    assertEquals(1000, buffer.getMetric(0).getStartTime());
+    // Sorted, null dropped and the last of a repeated timestamp kept
+    assertEquals(2, buffer.getValueCount(0));
+    assertEquals(1000, buffer.getTimestamp(0, 0));
+    assertEquals(1.5, buffer.getValue(0, 0), 0.000001);
+    assertEquals(3000, buffer.getTimestamp(0, 1));
+    assertEquals(4.0, buffer.getValue(0, 1), 0.000001);
+
+    TreeMap<Long, Double> values = buffer.toTimelineMetrics().getMetrics().get(0).getMetricValues();
+    assertEquals(2, values.size());
+
+    assertEquals(0, read("").size());
+    assertEquals(0, read("{\"metrics\":null}").size());
+  }
+
+  @Test
+  public void testInvalid() throws Exception {
+    String[] invalid = {
+      "[]",
+      "{\"metrics\":[{\"hostname\":\"h1\"}]}",
+      "{\"metrics\":[{\"metricname\":\"\"}]}",
+      "{\"metrics\":[{\"metricname\":\"m\",\"metrics\":{\"now\":1.0}}]}",
+      "{\"metrics\":[{\"metricname\":\"m\",\"metrics\":{\"1000\":\"high\"}}]}",
+      "{\"metrics\":[{\"metricname\":\"m\",\"metrics\":{\"1000\":[1.0]}}]}",
+      "{\"metrics\":[{\"metricname\":\"m\",\"starttime\":{}}]}",
+      "{\"metrics\":[{\"metricname\":{\"a\":1}}]}",
+      "{\"metrics\":[null]}",
+      "{\"metrics\":[{\"metricname\":\"m\",\"metrics\":{\"1000\":1.0}"
+    };
+    for (String json : invalid) {
+      try {
+        read(json);
+        fail(json);
+      } catch (JsonParseException e) {
+        // expected
+      }
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
+
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MetricSketchTest {
+
+  private static double exactQuantile(List<Double> sorted, double quantile) {
+    return sorted.get((int) (quantile * (sorted.size() - 1)));
+  }
+
+  private static void assertRelativeError(double expected, double actual) {
+    assertTrue("Expected " + expected + " got " + actual,
+      Math.abs(actual - expected) <= MetricSketch.RELATIVE_ACCURACY * Math.abs(expected) + 1e-9);
+  }
+
+  @Test
+  public void testQuantileAccuracy() throws Exception {
+    Random random = new Random(42);
+    MetricSketch sketch = new MetricSketch();
+    List<Double> values = new ArrayList<Double>();
+    for (int i = 0; i < 100000; i++) {
+      // Long tailed, like latencies
+      double value = Math.exp(random.nextGaussian() * 2 + 3);
+      sketch.add(value);
+      values.add(value);
+    }
+    Collections.sort(values);
+
+    assertEquals(100000, sketch.getCount());
+    for (double quantile : new double[] {0.5, 0.95, 0.99}) {
+      assertRelativeError(exactQuantile(values, quantile), sketch.getQuantile(quantile));
+    }
+  }
+
+  @Test
+  public void testMergeEqualsSingleSketch() throws Exception {
+    Random random = new Random(7);
+    MetricSketch all = new MetricSketch();
+    MetricSketch merged = new MetricSketch();
+    // Minute sketches of three hosts merged into the hour
+    for (int host = 0; host < 3; host++) {
+      for (int minute = 0; minute < 60; minute++) {
+        MetricSketch sketch = new MetricSketch();
+        for (int i = 0; i < 6; i++) {
+          double value = random.nextDouble() * 100 * (host + 1);
+          sketch.add(value);
+          all.add(value);
+        }
+        merged.merge(sketch);
+      }
+    }
+
+    assertEquals(all.getCount(), merged.getCount());
+    assertEquals(all.getQuantile(0.95), merged.getQuantile(0.95), 0.0);
+    assertEquals(all.getQuantile(0.99), merged.getQuantile(0.99), 0.0);
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    MetricSketch sketch = new MetricSketch();
+    sketch.add(-250);
+    sketch.add(-0.5);
+    sketch.add(0);
+    for (int i = 1; i <= 1000; i++) {
+      sketch.add(i * 0.25);
+    }
+
+    MetricSketch copy = MetricSketch.fromBytes(sketch.toBytes());
+    assertEquals(sketch.getCount(), copy.getCount());
+    for (double quantile : new double[] {0, 0.001, 0.002, 0.5, 0.95, 0.99, 1}) {
+      assertEquals(sketch.getQuantile(quantile), copy.getQuantile(quantile), 0.0);
+    }
+    // A few bytes per bucket
+    assertTrue(sketch.toBytes().length < 2000);
+
+    assertNull(MetricSketch.fromBytes(null));
+    assertNull(MetricSketch.fromBytes(new byte[0]));
+  }
+
+  @Test
+  public void testNegativeAndZeroValues() throws Exception {
+    MetricSketch sketch = new MetricSketch();
+    assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+
+    sketch.add(-100);
+    sketch.add(-10);
+    sketch.add(0);
+    sketch.add(10);
+    sketch.add(100);
+    sketch.add(Double.NaN);
+
+    assertEquals(5, sketch.getCount());
+    assertRelativeError(-100, sketch.getQuantile(0));
+    assertRelativeError(-10, sketch.getQuantile(0.25));
+    assertEquals(0, sketch.getQuantile(0.5), 0.0);
+    assertRelativeError(10, sketch.getQuantile(0.75));
+    assertRelativeError(100, sketch.getQuantile(1));
+  }
+
+  @Test
+  public void testCollapseKeepsHighQuantiles() throws Exception {
+    MetricSketch sketch = new MetricSketch();
+    List<Double> values = new ArrayList<Double>();
+    // Far more buckets than allowed
+    for (int i = -2000; i < 2000; i++) {
+      double value = Math.pow(1.05, i / 4.0);
+      sketch.add(value);
+      values.add(value);
+    }
+    Collections.sort(values);
+
+    assertEquals(4000, sketch.getCount());
+    assertEquals(4000, MetricSketch.fromBytes(sketch.toBytes()).getCount());
+    assertRelativeError(exactQuantile(values, 0.95), sketch.getQuantile(0.95));
+    assertRelativeError(exactQuantile(values, 0.99), sketch.getQuantile(0.99));
+  }
+
+  private static ResultSet sketchResultSet(byte[] sketch) throws Exception {
+    ResultSetMetaData metaData = createNiceMock(ResultSetMetaData.class);
+    expect(metaData.getColumnCount()).andReturn(1).anyTimes();
+    expect(metaData.getColumnLabel(1)).andReturn("METRIC_SKETCH").anyTimes();
+    ResultSet rs = createNiceMock(ResultSet.class);
+    expect(rs.getMetaData()).andReturn(metaData).anyTimes();
+    expect(rs.getBytes("METRIC_SKETCH")).andReturn(sketch).anyTimes();
+    replay(metaData, rs);
+    return rs;
+  }
+
+  @Test
+  public void testQuantileOfRowWithoutSketch() throws Exception {
+    MetricSketch sketch = new MetricSketch();
+    for (int i = 1; i <= 100; i++) {
+      sketch.add(i);
+    }
+    assertRelativeError(95, TimelineMetricReadHelper.getQuantileFromResultSet(
+      sketchResultSet(sketch.toBytes()), 0.95));
+
+    // Rows written before sketches were enabled have no quantile
+    assertNull(TimelineMetricReadHelper.getQuantileFromResultSet(sketchResultSet(null), 0.95));
+    assertNull(TimelineMetricReadHelper.getQuantileFromResultSet(
+      sketchResultSet(new MetricSketch().toBytes()), 0.95));
+  }
+}
@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability;
+
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.MetricNameHashRange;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregator.AGGREGATOR_TYPE.CLUSTER;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregator.AGGREGATOR_TYPE.HOST;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.TimelineMetricHAController.METRIC_AGGREGATORS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AggregationTaskRunnerTest {
+
+  @Test
+  public void testPartitionMapping() throws Exception {
+    assertEquals(2, AggregationTaskRunner.getPartitionCount(1));
+    assertEquals(8, AggregationTaskRunner.getPartitionCount(4));
+
+    // Single range keeps the partitions of earlier versions
+    assertEquals(CLUSTER, AggregationTaskRunner.getPartitionAggregatorType(METRIC_AGGREGATORS + "_0"));
+    assertEquals(HOST, AggregationTaskRunner.getPartitionAggregatorType(METRIC_AGGREGATORS + "_1"));
+    assertEquals(0, AggregationTaskRunner.getPartitionShard(METRIC_AGGREGATORS + "_1"));
+
+    assertEquals(HOST, AggregationTaskRunner.getPartitionAggregatorType(METRIC_AGGREGATORS + "_5"));
+    assertEquals(2, AggregationTaskRunner.getPartitionShard(METRIC_AGGREGATORS + "_5"));
+  }
+
+  @Test
+  public void testOwnedHashRanges() throws Exception {
+    AggregationTaskRunner runner = new AggregationTaskRunner("h1_12001", "localhost:2181", 4);
+    assertFalse(runner.performsClusterAggregation());
+    assertFalse(runner.performsHostAggregation());
+
+    runner.setPartitionAggregationFunction(METRIC_AGGREGATORS + "_5");
+    runner.setPartitionAggregationFunction(METRIC_AGGREGATORS + "_6");
+    // Left over from a larger shard count
+    runner.setPartitionAggregationFunction(METRIC_AGGREGATORS + "_9");
+
+    assertTrue(runner.performsClusterAggregation());
+    assertTrue(runner.performsHostAggregation());
+    assertEquals(Collections.singletonList(new MetricNameHashRange(2, 4)),
+      runner.getOwnedHashRanges(HOST));
+    assertEquals(Collections.singletonList(new MetricNameHashRange(3, 4)),
+      runner.getOwnedHashRanges(CLUSTER));
+
+    runner.unsetPartitionAggregationFunction(METRIC_AGGREGATORS + "_6");
+    assertFalse(runner.performsClusterAggregation());
+    assertTrue(runner.getOwnedHashRanges(CLUSTER).isEmpty());
+  }
+}
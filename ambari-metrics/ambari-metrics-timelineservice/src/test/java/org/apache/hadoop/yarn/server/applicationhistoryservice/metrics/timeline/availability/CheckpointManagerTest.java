@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability;
+
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.MetricNameHashRange;
+import org.apache.helix.AccessOption;
+import org.apache.helix.ZNRecord;
+import org.apache.helix.store.zk.ZkHelixPropertyStore;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.AggregationTaskRunner.AGGREGATOR_NAME.METRIC_AGGREGATE_MINUTE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.AggregationTaskRunner.AGGREGATOR_NAME.METRIC_AGGREGATE_SECOND;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointManagerTest {
+  private static final String AGGREGATOR = "TimelineClusterAggregatorMinute";
+
+  /**
+   * Property store holding the given checkpoints, keyed by znode name.
+   */
+  @SuppressWarnings("unchecked")
+  private static CheckpointManager checkpointManager(Map<String, Long> checkpoints) {
+    ZkHelixPropertyStore<ZNRecord> propertyStore = createNiceMock(ZkHelixPropertyStore.class);
+    expect(propertyStore.getChildNames("/" + CheckpointManager.CHECKPOINT_PATH_PREFIX,
+      AccessOption.PERSISTENT)).andReturn(new ArrayList<>(checkpoints.keySet())).anyTimes();
+    for (Map.Entry<String, Long> checkpoint : checkpoints.entrySet()) {
+      String path = "/" + CheckpointManager.CHECKPOINT_PATH_PREFIX + "/" + checkpoint.getKey();
+      ZNRecord znRecord = new ZNRecord(path);
+      znRecord.setLongField(CheckpointManager.ZNODE_FIELD, checkpoint.getValue());
+      expect(propertyStore.get(eq(path), anyObject(Stat.class), eq(AccessOption.PERSISTENT)))
+        .andReturn(znRecord).anyTimes();
+    }
+    expect(propertyStore.get(anyString(), anyObject(Stat.class), eq(AccessOption.PERSISTENT)))
+      .andReturn(null).anyTimes();
+    replay(propertyStore);
+    return new CheckpointManager(propertyStore);
+  }
+
+  private static Map<String, Long> fourRanges() {
+    Map<String, Long> checkpoints = new TreeMap<>();
+    checkpoints.put(AGGREGATOR, 500L);
+    checkpoints.put(AGGREGATOR + "_0_OF_4", 2000L);
+    checkpoints.put(AGGREGATOR + "_1_OF_4", 1900L);
+    checkpoints.put(AGGREGATOR + "_2_OF_4", 2100L);
+    checkpoints.put(AGGREGATOR + "_3_OF_4", 2050L);
+    // Another aggregator
+    checkpoints.put("TimelineClusterAggregatorSecond_1_OF_8", 100L);
+    return checkpoints;
+  }
+
+  @Test
+  public void testCheckpointPaths() throws Exception {
+    CheckpointManager checkpointManager = checkpointManager(new TreeMap<String, Long>());
+    assertEquals("/CHECKPOINTS/" + AGGREGATOR,
+      checkpointManager.getCheckpointZKPath(METRIC_AGGREGATE_MINUTE, new MetricNameHashRange(0, 1)));
+    assertEquals("/CHECKPOINTS/" + AGGREGATOR + "_2_OF_4",
+      checkpointManager.getCheckpointZKPath(METRIC_AGGREGATE_MINUTE, new MetricNameHashRange(2, 4)));
+
+    assertEquals(new MetricNameHashRange(0, 1),
+      CheckpointManager.getCheckpointRange(METRIC_AGGREGATE_MINUTE, AGGREGATOR));
+    assertEquals(new MetricNameHashRange(2, 4),
+      CheckpointManager.getCheckpointRange(METRIC_AGGREGATE_MINUTE, AGGREGATOR + "_2_OF_4"));
+    assertNull(CheckpointManager.getCheckpointRange(METRIC_AGGREGATE_SECOND, AGGREGATOR + "_2_OF_4"));
+    assertNull(CheckpointManager.getCheckpointRange(METRIC_AGGREGATE_MINUTE, AGGREGATOR + "_4_OF_4"));
+  }
+
+  @Test
+  public void testRangesFromUnsharded() throws Exception {
+    Map<String, Long> checkpoints = new TreeMap<>();
+    checkpoints.put(AGGREGATOR, 1000L);
+    CheckpointManager checkpointManager = checkpointManager(checkpoints);
+
+    assertEquals(1000L, checkpointManager.readCheckpoint(METRIC_AGGREGATE_MINUTE, new MetricNameHashRange(2, 4)));
+    assertEquals(1000L, checkpointManager.readCheckpoint(METRIC_AGGREGATE_MINUTE, null));
+    assertEquals(-1L, checkpointManager.readCheckpoint(METRIC_AGGREGATE_SECOND, new MetricNameHashRange(2, 4)));
+  }
+
+  @Test
+  public void testRangesFromOtherShardCount() throws Exception {
+    CheckpointManager checkpointManager = checkpointManager(fourRanges());
+
+    // The ranges of the last shard count, not the stale unsharded checkpoint
+    assertEquals(2100L, checkpointManager.readCheckpoint(METRIC_AGGREGATE_MINUTE, new MetricNameHashRange(5, 8)));
+    assertEquals(1900L, checkpointManager.readCheckpoint(METRIC_AGGREGATE_MINUTE, new MetricNameHashRange(2, 8)));
+    // Oldest of the overlapped ranges
+    assertEquals(1900L, checkpointManager.readCheckpoint(METRIC_AGGREGATE_MINUTE, new MetricNameHashRange(1, 3)));
+    // Back to a single range
+    assertEquals(1900L, checkpointManager.readCheckpoint(METRIC_AGGREGATE_MINUTE, null));
+    // Own checkpoint of the shard count in use
+    assertEquals(2100L, checkpointManager.readCheckpoint(METRIC_AGGREGATE_MINUTE, new MetricNameHashRange(2, 4)));
+  }
+
+  @Test
+  public void testOwnCheckpointAfterChange() throws Exception {
+    Map<String, Long> checkpoints = fourRanges();
+    checkpoints.put(AGGREGATOR + "_5_OF_8", 3000L);
+    checkpoints.put(AGGREGATOR + "_2_OF_8", 1800L);
+    CheckpointManager checkpointManager = checkpointManager(checkpoints);
+
+    assertEquals(3000L, checkpointManager.readCheckpoint(METRIC_AGGREGATE_MINUTE, new MetricNameHashRange(5, 8)));
+    // Not aggregated since the 8 ranges were last used, behind the 4 ranges
+    assertEquals(1900L, checkpointManager.readCheckpoint(METRIC_AGGREGATE_MINUTE, new MetricNameHashRange(2, 8)));
+    // 4 ranges are stale now, 8 ranges were used last
+    assertEquals(1800L, checkpointManager.readCheckpoint(METRIC_AGGREGATE_MINUTE, new MetricNameHashRange(1, 4)));
+  }
+
+  @Test
+  public void testOverlaps() throws Exception {
+    List<MetricNameHashRange> eighths = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      eighths.add(new MetricNameHashRange(i, 8));
+    }
+    MetricNameHashRange quarter = new MetricNameHashRange(2, 4);
+    for (MetricNameHashRange eighth : eighths) {
+      boolean expected = eighth.getShard() == 4 || eighth.getShard() == 5;
+      assertEquals(eighth.toString(), expected, quarter.overlaps(eighth));
+      assertEquals(eighth.toString(), expected, eighth.overlaps(quarter));
+    }
+    assertTrue(new MetricNameHashRange(0, 1).overlaps(quarter));
+    assertTrue(new MetricNameHashRange(1, 3).overlaps(new MetricNameHashRange(2, 4)));
+    assertFalse(new MetricNameHashRange(0, 3).overlaps(new MetricNameHashRange(2, 4)));
+  }
+}
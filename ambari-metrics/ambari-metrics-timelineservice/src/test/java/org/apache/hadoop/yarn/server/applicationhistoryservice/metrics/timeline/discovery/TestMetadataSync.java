@@ -19,18 +19,25 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 
 import junit.framework.Assert;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
 import org.junit.Test;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import static org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata.MetricType.GAUGE;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRIC_METADATA_FILTERS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_UUID_SCHEMA_ENABLED;
+import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.createNiceMock;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 
@@ -113,4 +120,62 @@ public class TestMetadataSync {
     Assert.assertEquals(1, metadata.size());
     Assert.assertEquals("xxx.pqr.zzz", metadata.keySet().iterator().next().getMetricName());
   }
+
+  @Test
+  public void testUuidDictionary() throws Exception {
+    Configuration configuration = createNiceMock(Configuration.class);
+    PhoenixHBaseAccessor hBaseAccessor = createNiceMock(PhoenixHBaseAccessor.class);
+
+    expect(configuration.getBoolean(TIMELINE_METRICS_UUID_SCHEMA_ENABLED, false)).andReturn(true);
+    expect(configuration.get("timeline.metrics.service.operation.mode", "")).andReturn("");
+    hBaseAccessor.saveMetricUuids(anyObject(Map.class));
+    expectLastCall().once();
+    hBaseAccessor.saveHostUuids(anyObject(Map.class));
+    expectLastCall().once();
+
+    replay(configuration, hBaseAccessor);
+
+    TimelineMetricMetadataManager metadataManager = new
+      TimelineMetricMetadataManager(hBaseAccessor, configuration);
+    Assert.assertTrue(metadataManager.isUuidSchemaEnabled());
+
+    TimelineMetric metric1 = new TimelineMetric();
+    metric1.setMetricName("m1");
+    metric1.setAppId("a1");
+    metric1.setHostName("h1");
+    TimelineMetric metric2 = new TimelineMetric();
+    metric2.setMetricName("m1");
+    metric2.setAppId("a1");
+    metric2.setHostName("h2");
+
+    byte[] uuid1 = metadataManager.getUuid(metric1);
+    byte[] uuid2 = metadataManager.getUuid(metric2);
+    Assert.assertEquals(TimelineMetricMetadataManager.UUID_LENGTH, uuid1.length);
+    Assert.assertTrue(Arrays.equals(uuid1, metadataManager.getUuid(metric1)));
+    Assert.assertFalse(Arrays.equals(uuid1, uuid2));
+
+    TimelineMetric decoded = metadataManager.getMetricFromUuid(uuid2);
+    Assert.assertEquals("m1", decoded.getMetricName());
+    Assert.assertEquals("a1", decoded.getAppId());
+    Assert.assertEquals("h2", decoded.getHostName());
+
+    // Names translate to the ids of all hosts
+    List<byte[]> uuids = metadataManager.getUuids(new DefaultCondition(
+      Collections.singletonList("m1"), null, "a1", null, 0L, 1L, null, null, false));
+    Assert.assertEquals(2, uuids.size());
+
+    // Unknown names and patterns are left to the name keyed table
+    Assert.assertNull(metadataManager.getUuids(new DefaultCondition(
+      Collections.singletonList("m2"), null, "a1", null, 0L, 1L, null, null, false)));
+    Assert.assertNull(metadataManager.getUuids(new DefaultCondition(
+      Collections.singletonList("m%"), null, "a1", null, 0L, 1L, null, null, false)));
+
+    Assert.assertEquals(1, metadataManager.getUnpersistedMetricUuids().size());
+    Assert.assertEquals(2, metadataManager.getUnpersistedHostUuids().size());
+    new TimelineMetricMetadataSync(metadataManager).run();
+    Assert.assertTrue(metadataManager.getUnpersistedMetricUuids().isEmpty());
+    Assert.assertTrue(metadataManager.getUnpersistedHostUuids().isEmpty());
+
+    verify(configuration, hBaseAccessor);
+  }
 }
@@ -0,0 +1,253 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery;
+
+import junit.framework.Assert;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.junit.Before;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_UUID_SCHEMA_ENABLED;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+public class TestMetadataUuids {
+  private TimelineMetricMetadataManager metadataManager;
+  private long startTime;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration configuration = createNiceMock(Configuration.class);
+    PhoenixHBaseAccessor hBaseAccessor = createNiceMock(PhoenixHBaseAccessor.class);
+    expect(configuration.getBoolean(TIMELINE_METRICS_UUID_SCHEMA_ENABLED, false)).andReturn(true);
+    replay(configuration, hBaseAccessor);
+
+    startTime = System.currentTimeMillis();
+    metadataManager = new TimelineMetricMetadataManager(hBaseAccessor, configuration);
+  }
+
+  @Test
+  public void testGetUuidsOfHosts() throws Exception {
+    byte[] uuid1 = write("m1", "a1", "h1");
+    byte[] uuid2 = write("m1", "a1", "h2");
+    byte[] uuid3 = write("m2", "a1", "h1");
+    write("m1", "a2", "h3");
+
+    // Explicit hosts
+    List<byte[]> uuids = metadataManager.getUuids(condition(Arrays.asList("m1", "m2"), "a1", "h1"));
+    Assert.assertEquals(2, uuids.size());
+    Assert.assertEquals(toSet(uuid1, uuid3), toSet(uuids));
+
+    // All the hosts of the app
+    uuids = metadataManager.getUuids(condition(Collections.singletonList("m1"), "a1"));
+    Assert.assertEquals(toSet(uuid1, uuid2), toSet(uuids));
+
+    // Without an app the name matches the metrics of all apps
+    uuids = metadataManager.getUuids(condition(Collections.singletonList("m1"), null, "h1"));
+    Assert.assertEquals(toSet(uuid1, metadataManager.getUuid(metric("m1", "a2", "h1"))), toSet(uuids));
+  }
+
+  @Test
+  public void testGetUuidsNotTranslated() throws Exception {
+    write("m1", "a1", "h1");
+
+    Assert.assertNull(metadataManager.getUuids(condition(null, "a1", "h1")));
+    Assert.assertNull(metadataManager.getUuids(condition(Collections.singletonList("m%"), "a1", "h1")));
+    Assert.assertNull(metadataManager.getUuids(condition(Collections.singletonList("m2"), "a1", "h1")));
+    Assert.assertNull(metadataManager.getUuids(condition(Collections.singletonList("m2"), null, "h1")));
+    Assert.assertNull(metadataManager.getUuids(condition(Collections.singletonList("m1"), "a1", "h2")));
+    Assert.assertNull(metadataManager.getUuids(condition(Collections.singletonList("m1"), "a1", "h%")));
+  }
+
+  @Test
+  public void testGetUuidsLimit() throws Exception {
+    for (int i = 0; i <= TimelineMetricMetadataManager.MAX_UUIDS_PER_QUERY; i++) {
+      write("m1", "a1", "h" + i);
+    }
+    write("m2", "a1", "h0");
+
+    Assert.assertNull(metadataManager.getUuids(condition(Collections.singletonList("m1"), "a1")));
+    Assert.assertEquals(1, metadataManager.getUuids(
+      condition(Collections.singletonList("m2"), "a1", "h0")).size());
+  }
+
+  @Test
+  public void testGetUuidsSchemaDisabled() throws Exception {
+    Configuration configuration = createNiceMock(Configuration.class);
+    PhoenixHBaseAccessor hBaseAccessor = createNiceMock(PhoenixHBaseAccessor.class);
+    replay(configuration, hBaseAccessor);
+    metadataManager = new TimelineMetricMetadataManager(hBaseAccessor, configuration);
+
+    Assert.assertFalse(metadataManager.isUuidSchemaEnabled());
+    write("m1", "a1", "h1");
+    Assert.assertNull(metadataManager.getUuids(condition(Collections.singletonList("m1"), "a1", "h1")));
+  }
+
+  @Test
+  public void testUuidCoverageStartTime() throws Exception {
+    // Ids read from the store without a start time are covered since the manager started
+    metadataManager.putMetricUuidsFromStore(Collections.singletonMap(
+      new TimelineMetricMetadataKey("m1", "a1"), new TimelineMetricUuid(1L, 0)));
+    metadataManager.putHostUuidsFromStore(Collections.singletonMap("h1", new TimelineMetricUuid(1, 0)));
+    List<byte[]> uuids = metadataManager.getUuids(condition(Collections.singletonList("m1"), "a1", "h1"));
+    long storedStartTime = metadataManager.getUuidCoverageStartTime(uuids);
+    Assert.assertTrue(storedStartTime >= startTime);
+
+    // A new id is covered since it was assigned
+    Thread.sleep(10);
+    long assignTime = System.currentTimeMillis();
+    write("m1", "a1", "h2");
+    List<byte[]> newUuids = metadataManager.getUuids(condition(Collections.singletonList("m1"), "a1", "h2"));
+    Assert.assertTrue(metadataManager.getUuidCoverageStartTime(newUuids) >= assignTime);
+
+    // The coverage of a query is the latest of its ids
+    List<byte[]> allUuids = new ArrayList<>(uuids);
+    allUuids.addAll(newUuids);
+    Assert.assertEquals(metadataManager.getUuidCoverageStartTime(newUuids),
+      metadataManager.getUuidCoverageStartTime(allUuids));
+    Assert.assertEquals(storedStartTime, metadataManager.getUuidCoverageStartTime(uuids));
+  }
+
+  @Test
+  public void testStoredUuidCoverageStartTime() throws Exception {
+    // After a restart the ids keep the start time they were stored with
+    long firstUse = startTime - 3600000;
+    metadataManager.putMetricUuidsFromStore(Collections.singletonMap(
+      new TimelineMetricMetadataKey("m1", "a1"), new TimelineMetricUuid(1L, firstUse)));
+    metadataManager.putHostUuidsFromStore(Collections.singletonMap("h1", new TimelineMetricUuid(1, firstUse - 1000)));
+    metadataManager.putHostUuidsFromStore(Collections.singletonMap("h2", new TimelineMetricUuid(2, firstUse + 1000)));
+
+    Assert.assertEquals(firstUse, metadataManager.getUuidCoverageStartTime(
+      metadataManager.getUuids(condition(Collections.singletonList("m1"), "a1", "h1"))));
+    Assert.assertEquals(firstUse + 1000, metadataManager.getUuidCoverageStartTime(
+      metadataManager.getUuids(condition(Collections.singletonList("m1"), "a1", "h2"))));
+
+    // and are saved with the start time of their first claim
+    write("m2", "a1", "h1");
+    TimelineMetricUuid uuid = metadataManager.getUnpersistedMetricUuids().get(
+      new TimelineMetricMetadataKey("m2", "a1"));
+    Assert.assertTrue(uuid.getStartTime() >= startTime);
+    Assert.assertTrue(metadataManager.getUnpersistedHostUuids().isEmpty());
+  }
+
+  @Test
+  public void testUuidClaimsShared() throws Exception {
+    TestUuidClaims claims = new TestUuidClaims();
+    metadataManager.setUuidClaims(claims);
+    Configuration configuration = createNiceMock(Configuration.class);
+    PhoenixHBaseAccessor hBaseAccessor = createNiceMock(PhoenixHBaseAccessor.class);
+    expect(configuration.getBoolean(TIMELINE_METRICS_UUID_SCHEMA_ENABLED, false)).andReturn(true);
+    replay(configuration, hBaseAccessor);
+    TimelineMetricMetadataManager otherManager = new TimelineMetricMetadataManager(hBaseAccessor, configuration);
+    otherManager.setUuidClaims(claims);
+
+    // The first id of h1 is taken by another host in the registry
+    claims.taken.add("h1");
+    byte[] uuid = write("m1", "a1", "h1");
+    Thread.sleep(10);
+    TimelineMetric metric = metric("m1", "a1", "h1");
+    Assert.assertTrue(Arrays.equals(uuid, otherManager.getUuid(metric)));
+    Assert.assertEquals(2, claims.claims.get(TimelineMetricUuidClaims.HOST_UUIDS).size());
+
+    // Both collectors cover the ids since the first claim
+    List<byte[]> uuids = Collections.singletonList(uuid);
+    Assert.assertEquals(metadataManager.getUuidCoverageStartTime(uuids),
+      otherManager.getUuidCoverageStartTime(uuids));
+  }
+
+  @Test
+  public void testUuidClaimsUnavailable() throws Exception {
+    metadataManager.setUuidClaims(new TimelineMetricUuidClaims() {
+      @Override
+      public Long claim(String type, long uuid, String name, long time) {
+        throw new IllegalStateException("Unavailable");
+      }
+    });
+
+    // The row is then only written to the name keyed table
+    Assert.assertNull(metadataManager.getUuid(metric("m1", "a1", "h1")));
+    Assert.assertTrue(metadataManager.getUnpersistedMetricUuids().isEmpty());
+    Assert.assertTrue(metadataManager.getUnpersistedHostUuids().isEmpty());
+  }
+
+  /**
+   * Registry of the claims in memory, the names in taken lose the claim of
+   * their first id to another name.
+   */
+  private static class TestUuidClaims implements TimelineMetricUuidClaims {
+    final Map<String, Map<Long, String>> claims = new HashMap<>();
+    final Map<String, Long> times = new HashMap<>();
+    final Set<String> taken = new HashSet<>();
+
+    @Override
+    public synchronized Long claim(String type, long uuid, String name, long time) {
+      Map<Long, String> owners = claims.get(type);
+      if (owners == null) {
+        owners = new HashMap<>();
+        claims.put(type, owners);
+      }
+      if (!owners.containsKey(uuid)) {
+        String owner = taken.remove(name) ? "other" : name;
+        owners.put(uuid, owner);
+        times.put(type + uuid, time);
+      }
+      return name.equals(owners.get(uuid)) ? times.get(type + uuid) : null;
+    }
+  }
+
+  private byte[] write(String metricName, String appId, String hostname) {
+    metadataManager.putIfModifiedHostedAppsMetadata(hostname, appId);
+    return metadataManager.getUuid(metric(metricName, appId, hostname));
+  }
+
+  private static TimelineMetric metric(String metricName, String appId, String hostname) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(metricName);
+    metric.setAppId(appId);
+    metric.setHostName(hostname);
+    return metric;
+  }
+
+  private static DefaultCondition condition(List<String> metricNames, String appId, String... hostnames) {
+    return new DefaultCondition(metricNames, hostnames.length == 0 ? null : Arrays.asList(hostnames),
+      appId, null, 0L, 1L, null, null, false);
+  }
+
+  private static Set<String> toSet(byte[]... uuids) {
+    return toSet(Arrays.asList(uuids));
+  }
+
+  private static Set<String> toSet(List<byte[]> uuids) {
+    Set<String> set = new HashSet<>();
+    for (byte[] uuid : uuids) {
+      set.add(Arrays.toString(uuid));
+    }
+    return set;
+  }
+}
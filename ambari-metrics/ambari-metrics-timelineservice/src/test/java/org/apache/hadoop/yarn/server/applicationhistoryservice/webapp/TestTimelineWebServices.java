@@ -24,6 +24,7 @@ import javax.ws.rs.core.MediaType;
 
 import junit.framework.Assert;
 
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.api.records.timeline.TimelineEntities;
 import org.apache.hadoop.yarn.api.records.timeline.TimelineEntity;
@@ -378,6 +379,35 @@ public class TestTimelineWebServices extends JerseyTest {
     Assert.assertEquals("test type", entity.getEntityType());
   }
 
+  @Test
+  public void testPostMetrics() throws Exception {
+    TimelineMetrics metrics = new TimelineMetrics();
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("cpu_user");
+    metric.setHostName("h1");
+    metric.setAppId("HOST");
+    metric.setStartTime(System.currentTimeMillis());
+    metric.getMetricValues().put(metric.getStartTime(), 1.0);
+    metrics.getMetrics().add(metric);
+    WebResource r = resource();
+    ClientResponse response = r.path("ws").path("v1").path("timeline")
+        .path("metrics")
+        .accept(MediaType.APPLICATION_JSON)
+        .type(MediaType.APPLICATION_JSON)
+        .post(ClientResponse.class, metrics);
+    assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getType());
+    TimelinePutResponse putResponse = response.getEntity(TimelinePutResponse.class);
+    Assert.assertNotNull(putResponse);
+    Assert.assertEquals(0, putResponse.getErrors().size());
+
+    response = r.path("ws").path("v1").path("timeline")
+        .path("metrics")
+        .accept(MediaType.APPLICATION_JSON)
+        .type(MediaType.APPLICATION_JSON)
+        .post(ClientResponse.class, "{\"metrics\":[{\"hostname\":\"h1\"}]}");
+    assertEquals(ClientResponse.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+  }
+
   @Test
   public void testGetMetrics() throws Exception {
     WebResource r = resource();
@@ -20,11 +20,13 @@ package org.apache.ambari.server.actionmanager;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import javax.annotation.Nullable;
 
@@ -48,6 +50,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
@@ -65,6 +69,19 @@ public class Stage {
    */
   public static final String INTERNAL_HOSTNAME = "_internal_ambari";
 
+  /**
+   * The number of tasks read in a single query when loading the commands of a
+   * stage.
+   */
+  static final int TASK_PAGE_SIZE = 1000;
+
+  private static final Function<String, String> SAFE_HOST = new Function<String, String>() {
+    @Override
+    public String apply(String hostname) {
+      return getSafeHost(hostname);
+    }
+  };
+
   private static Logger LOG = LoggerFactory.getLogger(Stage.class);
   private final long requestId;
   private String clusterName;
@@ -83,6 +100,28 @@ public class Stage {
 
   private volatile boolean wrappersLoaded = false;
 
+  /**
+   * {@code false} for a stage read from the database until all of its
+   * commands are used, so that reading the stages in progress does not read
+   * all of their tasks.
+   */
+  private volatile boolean hostRoleCommandsLoaded = true;
+
+  /**
+   * The hosts of a stage read from the database, kept until its commands are
+   * loaded.
+   */
+  private List<String> hosts = null;
+
+  /**
+   * The hosts whose commands were loaded on their own, before the commands
+   * of the whole stage were.
+   */
+  private Set<String> hostRoleCommandsLoadedHosts = new HashSet<String>();
+
+  private HostRoleCommandDAO hostRoleCommandDAO;
+  private ActionDBAccessor dbAccessor;
+
   //Map of roles to successFactors for this stage. Default is 1 i.e. 100%
   private Map<Role, Float> successFactors = new HashMap<Role, Float>();
 
@@ -153,21 +192,10 @@ public class Stage {
     commandParamsStage = stageEntity.getCommandParamsStage();
     hostParamsStage = stageEntity.getHostParamsStage();
 
-    List<Long> taskIds = hostRoleCommandDAO.findTaskIdsByStage(requestId, stageId);
-    Collection<HostRoleCommand> commands = dbAccessor.getTasks(taskIds);
-
-    for (HostRoleCommand command : commands) {
-      // !!! some commands won't have a hostname, because they are server-side and
-      // don't hold that information.  In that case, use the special key to
-      // use in the map
-      String hostname = getSafeHost(command.getHostName());
-
-      if (!hostRoleCommands.containsKey(hostname)) {
-        hostRoleCommands.put(hostname, new LinkedHashMap<String, HostRoleCommand>());
-      }
-
-      hostRoleCommands.get(hostname).put(command.getRole().toString(), command);
-    }
+    // the commands are loaded on first use, see checkHostRoleCommandsLoaded()
+    this.hostRoleCommandDAO = hostRoleCommandDAO;
+    this.dbAccessor = dbAccessor;
+    hostRoleCommandsLoaded = false;
 
     for (RoleSuccessCriteriaEntity successCriteriaEntity : stageEntity.getRoleSuccessCriterias()) {
       successFactors.put(successCriteriaEntity.getRole(), successCriteriaEntity.getSuccessFactor().floatValue());
@@ -202,6 +230,94 @@ public class Stage {
     return stageEntity;
   }
 
+  void checkHostRoleCommandsLoaded() {
+    if (!hostRoleCommandsLoaded) {
+      synchronized (this) {
+        if (!hostRoleCommandsLoaded) {
+          List<Long> taskIds = hostRoleCommandDAO.findTaskIdsByStage(requestId, stageId);
+
+          // keep the commands of the hosts loaded already, they may be in use
+          Set<Long> loadedTaskIds = new HashSet<Long>();
+          for (String host : hostRoleCommandsLoadedHosts) {
+            for (HostRoleCommand command : hostRoleCommands.get(host).values()) {
+              loadedTaskIds.add(command.getTaskId());
+            }
+          }
+          if (!loadedTaskIds.isEmpty()) {
+            List<Long> remainingTaskIds = new ArrayList<Long>(taskIds.size());
+            for (Long taskId : taskIds) {
+              if (!loadedTaskIds.contains(taskId)) {
+                remainingTaskIds.add(taskId);
+              }
+            }
+            taskIds = remainingTaskIds;
+          }
+
+          loadHostRoleCommands(taskIds);
+
+          hosts = null;
+          hostRoleCommandsLoadedHosts = null;
+          hostRoleCommandDAO = null;
+          dbAccessor = null;
+          hostRoleCommandsLoaded = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the commands of one host, loading only the tasks of that host if the
+   * commands of the stage are not loaded yet.
+   *
+   * @param hostname
+   *          the host name, {@link #INTERNAL_HOSTNAME} for the server-side
+   *          commands
+   * @return the commands by role, or {@code null} if the stage has none on the
+   *         host
+   */
+  private Map<String, HostRoleCommand> getHostRoleCommands(String hostname) {
+    if (!hostRoleCommandsLoaded) {
+      synchronized (this) {
+        if (!hostRoleCommandsLoaded) {
+          if (!hostRoleCommandsLoadedHosts.contains(hostname)) {
+            String hostName = INTERNAL_HOSTNAME.equals(hostname) ? null : hostname;
+            loadHostRoleCommands(hostRoleCommandDAO.findTaskIdsByStageAndHost(requestId, stageId, hostName));
+            hostRoleCommandsLoadedHosts.add(hostname);
+          }
+
+          // the map may still change while other hosts are loaded
+          return hostRoleCommands.get(hostname);
+        }
+      }
+    }
+
+    return hostRoleCommands.get(hostname);
+  }
+
+  /**
+   * Loads the commands of tasks of a stage read from the database, a page of
+   * tasks at a time so that a large stage does not read all of its tasks in
+   * one query.
+   */
+  private void loadHostRoleCommands(List<Long> taskIds) {
+    for (List<Long> page : Lists.partition(taskIds, TASK_PAGE_SIZE)) {
+      Collection<HostRoleCommand> commands = dbAccessor.getTasks(page);
+
+      for (HostRoleCommand command : commands) {
+        // !!! some commands won't have a hostname, because they are server-side and
+        // don't hold that information.  In that case, use the special key to
+        // use in the map
+        String hostname = getSafeHost(command.getHostName());
+
+        if (!hostRoleCommands.containsKey(hostname)) {
+          hostRoleCommands.put(hostname, new LinkedHashMap<String, HostRoleCommand>());
+        }
+
+        hostRoleCommands.get(hostname).put(command.getRole().toString(), command);
+      }
+    }
+  }
+
   void checkWrappersLoaded() {
     if (!wrappersLoaded) {
       synchronized (this) { // Stages are not used concurrently now, but it won't be performance loss
@@ -214,6 +330,7 @@ public class Stage {
 
   @Transactional
   void loadExecutionCommandWrappers() {
+    checkHostRoleCommandsLoaded();
     for (Map.Entry<String, Map<String, HostRoleCommand>> hostRoleCommandEntry : hostRoleCommands.entrySet()) {
       String hostname = hostRoleCommandEntry.getKey();
       commandsToSend.put(hostname, new ArrayList<ExecutionCommandWrapper>());
@@ -225,6 +342,7 @@ public class Stage {
   }
 
   public List<HostRoleCommand> getOrderedHostRoleCommands() {
+    checkHostRoleCommandsLoaded();
     List<HostRoleCommand> commands = new ArrayList<HostRoleCommand>();
     //Correct due to ordered maps
     for (Map.Entry<String, Map<String, HostRoleCommand>> hostRoleCommandEntry : hostRoleCommands.entrySet()) {
@@ -323,6 +441,7 @@ public class Stage {
 
     cmd.setServiceName("");
 
+    checkHostRoleCommandsLoaded();
     Map<String, HostRoleCommand> hrcMap = hostRoleCommands.get(hostName);
     if (hrcMap == null) {
       hrcMap = new LinkedHashMap<>();
@@ -497,6 +616,15 @@ public class Stage {
    * @return list of hosts
    */
   public synchronized List<String> getHosts() { // TODO: Check whether method should be synchronized
+    if (!hostRoleCommandsLoaded) {
+      // the hosts are enough to plan the stage, the commands are loaded once used
+      if (null == hosts) {
+        hosts = new ArrayList<String>(new TreeSet<String>(Lists.transform(
+            hostRoleCommandDAO.findHostNamesByStage(requestId, stageId), SAFE_HOST)));
+      }
+      return new ArrayList<String>(hosts);
+    }
+
     List<String> hlist = new ArrayList<String>();
     for (String h : hostRoleCommands.keySet()) {
       hlist.add(h);
@@ -549,7 +677,7 @@ public class Stage {
    * @return the last attempt time
    */
   public long getLastAttemptTime(String hostname, String role) {
-    return hostRoleCommands.get(getSafeHost(hostname)).get(role).getLastAttemptTime();
+    return getHostRoleCommand(hostname, role).getLastAttemptTime();
   }
 
   /**
@@ -558,7 +686,7 @@ public class Stage {
    * @return the number of attempts
    */
   public short getAttemptCount(String hostname, String role) {
-    return hostRoleCommands.get(getSafeHost(hostname)).get(role).getAttemptCount();
+    return getHostRoleCommand(hostname, role).getAttemptCount();
   }
 
   /**
@@ -566,7 +694,7 @@ public class Stage {
    * @param role        the role
    */
   public void incrementAttemptCount(String hostname, String role) {
-    hostRoleCommands.get(getSafeHost(hostname)).get(role).incrementAttemptCount();
+    getHostRoleCommand(hostname, role).incrementAttemptCount();
   }
 
   /**
@@ -575,7 +703,7 @@ public class Stage {
    * @param t           the last time the role was attempted
    */
   public void setLastAttemptTime(String hostname, String role, long t) {
-    hostRoleCommands.get(getSafeHost(hostname)).get(role).setLastAttemptTime(t);
+    getHostRoleCommand(hostname, role).setLastAttemptTime(t);
   }
 
   /**
@@ -585,7 +713,7 @@ public class Stage {
    */
   public ExecutionCommandWrapper getExecutionCommandWrapper(String hostname,
       String role) {
-    HostRoleCommand hrc = hostRoleCommands.get(getSafeHost(hostname)).get(role);
+    HostRoleCommand hrc = getHostRoleCommand(hostname, role);
     if (hrc != null) {
       return hrc.getExecutionCommandWrapper();
     } else {
@@ -608,7 +736,7 @@ public class Stage {
  * @return the start time for the task
  */
   public long getStartTime(String hostname, String role) {
-    return hostRoleCommands.get(getSafeHost(hostname)).get(role).getStartTime();
+    return getHostRoleCommand(hostname, role).getStartTime();
   }
 
   /**
@@ -617,7 +745,7 @@ public class Stage {
    * @param startTime   the start time
    */
   public void setStartTime(String hostname, String role, long startTime) {
-    hostRoleCommands.get(getSafeHost(hostname)).get(role).setStartTime(startTime);
+    getHostRoleCommand(hostname, role).setStartTime(startTime);
   }
 
   /**
@@ -626,7 +754,7 @@ public class Stage {
    * @return the status
    */
   public HostRoleStatus getHostRoleStatus(String hostname, String role) {
-    return hostRoleCommands.get(getSafeHost(hostname)).get(role).getStatus();
+    return getHostRoleCommand(hostname, role).getStatus();
   }
 
   /**
@@ -636,7 +764,7 @@ public class Stage {
    */
   public void setHostRoleStatus(String hostname, String role,
       HostRoleStatus status) {
-    hostRoleCommands.get(getSafeHost(hostname)).get(role).setStatus(status);
+    getHostRoleCommand(hostname, role).setStatus(status);
   }
 
   /**
@@ -645,7 +773,7 @@ public class Stage {
    * @return the wrapper event
    */
   public ServiceComponentHostEventWrapper getFsmEvent(String hostname, String roleStr) {
-    return hostRoleCommands.get(getSafeHost(hostname)).get(roleStr).getEvent();
+    return getHostRoleCommand(hostname, roleStr).getEvent();
   }
 
   /**
@@ -654,7 +782,7 @@ public class Stage {
    * @param exitCode    the exit code
    */
   public void setExitCode(String hostname, String role, int exitCode) {
-    hostRoleCommands.get(getSafeHost(hostname)).get(role).setExitCode(exitCode);
+    getHostRoleCommand(hostname, role).setExitCode(exitCode);
   }
 
   /**
@@ -663,7 +791,7 @@ public class Stage {
    * @return the exit code
    */
   public int getExitCode(String hostname, String role) {
-    return hostRoleCommands.get(getSafeHost(hostname)).get(role).getExitCode();
+    return getHostRoleCommand(hostname, role).getExitCode();
   }
 
   /**
@@ -672,7 +800,7 @@ public class Stage {
    * @param stdErr      the standard error string
    */
   public void setStderr(String hostname, String role, String stdErr) {
-    hostRoleCommands.get(getSafeHost(hostname)).get(role).setStderr(stdErr);
+    getHostRoleCommand(hostname, role).setStderr(stdErr);
   }
 
   /**
@@ -681,10 +809,11 @@ public class Stage {
    * @param stdOut      the standard output string
    */
   public void setStdout(String hostname, String role, String stdOut) {
-    hostRoleCommands.get(getSafeHost(hostname)).get(role).setStdout(stdOut);
+    getHostRoleCommand(hostname, role).setStdout(stdOut);
   }
 
   public synchronized boolean isStageInProgress() {
+    checkHostRoleCommandsLoaded();
     for(String host: hostRoleCommands.keySet()) {
       for (String role : hostRoleCommands.get(host).keySet()) {
         HostRoleCommand hrc = hostRoleCommands.get(host).get(role);
@@ -703,6 +832,7 @@ public class Stage {
 
   public synchronized boolean doesStageHaveHostRoleStatus(
       Set<HostRoleStatus> statuses) {
+    checkHostRoleCommandsLoaded();
     for(String host: hostRoleCommands.keySet()) {
       for (String role : hostRoleCommands.get(host).keySet()) {
         HostRoleCommand hrc = hostRoleCommands.get(host).get(role);
@@ -729,6 +859,7 @@ public class Stage {
   }
 
   public Map<String, Map<String, HostRoleCommand>> getHostRoleCommands() {
+    checkHostRoleCommandsLoaded();
     return hostRoleCommands;
   }
 
@@ -745,6 +876,7 @@ public class Stage {
     //used on stage creation only, no need to check if wrappers loaded
 
     hostname = getSafeHost(hostname);
+    checkHostRoleCommandsLoaded();
 
     String role = r.toString();
     if (commandsToSend.get(hostname) == null) {
@@ -766,7 +898,7 @@ public class Stage {
    * @return the role command
    */
   public HostRoleCommand getHostRoleCommand(String hostname, String role) {
-    return hostRoleCommands.get(getSafeHost(hostname)).get(role);
+    return getHostRoleCommands(getSafeHost(hostname)).get(role);
   }
 
   /**
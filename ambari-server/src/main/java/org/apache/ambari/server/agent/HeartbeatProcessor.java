@@ -604,7 +604,7 @@ public class HeartbeatProcessor extends AbstractService{
               if (prevState.equals(org.apache.ambari.server.state.State.INSTALLED)
                   || prevState.equals(org.apache.ambari.server.state.State.STARTED)
                   || prevState.equals(org.apache.ambari.server.state.State.UNKNOWN)) {
-                scHost.setState(liveState);
+                scHost.setReportedState(liveState);
                 if (!prevState.equals(liveState)) {
                   LOG.info("State of service component " + componentName
                       + " of service " + status.getServiceName()
@@ -64,12 +64,14 @@ public class StackAdvisorHelper {
    * @return {@link ValidationResponse} instance
    * @throws StackAdvisorException in case of stack advisor script errors
    */
-  public synchronized ValidationResponse validate(StackAdvisorRequest request)
+  public ValidationResponse validate(StackAdvisorRequest request)
       throws StackAdvisorException {
-    requestId += 1;
-
-    StackAdvisorCommand<ValidationResponse> command = createValidationCommand(request
-        .getRequestType());
+    // only the request id is shared, the commands can run at the same time
+    StackAdvisorCommand<ValidationResponse> command;
+    synchronized (this) {
+      requestId += 1;
+      command = createValidationCommand(request.getRequestType());
+    }
 
     return command.invoke(request);
   }
@@ -99,12 +101,14 @@ public class StackAdvisorHelper {
    * @return {@link RecommendationResponse} instance
    * @throws StackAdvisorException in case of stack advisor script errors
    */
-  public synchronized RecommendationResponse recommend(StackAdvisorRequest request)
+  public RecommendationResponse recommend(StackAdvisorRequest request)
       throws StackAdvisorException {
-    requestId += 1;
-
-    StackAdvisorCommand<RecommendationResponse> command = createRecommendationCommand(request
-        .getRequestType());
+    // only the request id is shared, the commands can run at the same time
+    StackAdvisorCommand<RecommendationResponse> command;
+    synchronized (this) {
+      requestId += 1;
+      command = createRecommendationCommand(request.getRequestType());
+    }
 
     return command.invoke(request);
   }
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.api.services.stackadvisor;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.api.services.stackadvisor.commands.StackAdvisorCommandType;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * The {@link StackAdvisorResultCache} keeps the results of the stack advisor
+ * script by command, stack and a hash of the hosts and services passed to it,
+ * so that repeated calls with the same input, as made by the UI and blueprint
+ * deployments, do not run the script again.
+ * <p/>
+ * The input includes the host resources, their configurations and the
+ * configurations of the request, so any change to them is a different key.
+ * Only the heartbeat times of the hosts, which change on every heartbeat and
+ * are not used by the stack advisors, are left out of the hash.
+ */
+public class StackAdvisorResultCache {
+
+  private final static Logger LOG = LoggerFactory.getLogger(StackAdvisorResultCache.class);
+
+  /**
+   * Host properties which are not part of the key.
+   */
+  private static final String[] VOLATILE_HOST_PROPERTIES = { "last_heartbeat_time" };
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  /**
+   * The result JSON by key.
+   */
+  private final Cache<String, String> results;
+
+  /**
+   * @param size
+   *          the number of results to keep
+   * @param expiration
+   *          the time in minutes after which a result is no longer used
+   */
+  public StackAdvisorResultCache(int size, int expiration) {
+    results = CacheBuilder.newBuilder().maximumSize(size).expireAfterWrite(expiration,
+        TimeUnit.MINUTES).build();
+  }
+
+  /**
+   * @return the result of the script for the input, or {@code null} if there
+   *         is none
+   */
+  public String get(StackAdvisorCommandType commandType, String stackName, String stackVersion,
+      String hostsJSON, String servicesJSON) {
+    String result = results.getIfPresent(getKey(commandType, stackName, stackVersion, hostsJSON,
+        servicesJSON));
+    if (null != result) {
+      LOG.info("Using the cached stack advisor result, command={}, stack={}-{}", commandType,
+          stackName, stackVersion);
+    }
+    return result;
+  }
+
+  /**
+   * Keeps the result of the script for the input.
+   */
+  public void put(StackAdvisorCommandType commandType, String stackName, String stackVersion,
+      String hostsJSON, String servicesJSON, String result) {
+    results.put(getKey(commandType, stackName, stackVersion, hostsJSON, servicesJSON), result);
+  }
+
+  /**
+   * @return the number of results kept
+   */
+  public long size() {
+    return results.size();
+  }
+
+  String getKey(StackAdvisorCommandType commandType, String stackName, String stackVersion,
+      String hostsJSON, String servicesJSON) {
+    String hash = DigestUtils.sha256Hex(withoutVolatileProperties(hostsJSON) + "\n" + servicesJSON);
+    return commandType + ":" + stackName + "-" + stackVersion + ":" + hash;
+  }
+
+  /**
+   * @return the hosts JSON without {@link #VOLATILE_HOST_PROPERTIES}, or as
+   *         it is if it can not be parsed
+   */
+  private String withoutVolatileProperties(String hostsJSON) {
+    try {
+      JsonNode items = mapper.readTree(hostsJSON).get("items");
+      if (null == items) {
+        return hostsJSON;
+      }
+
+      Iterator<JsonNode> iterator = items.getElements();
+      while (iterator.hasNext()) {
+        JsonNode hosts = iterator.next().get("Hosts");
+        if (hosts instanceof ObjectNode) {
+          ((ObjectNode) hosts).remove(Arrays.asList(VOLATILE_HOST_PROPERTIES));
+        }
+      }
+      return mapper.writeValueAsString(items);
+    } catch (Exception e) {
+      LOG.debug("Unable to parse the hosts information, using it as it is", e);
+      return hostsJSON;
+    }
+  }
+}
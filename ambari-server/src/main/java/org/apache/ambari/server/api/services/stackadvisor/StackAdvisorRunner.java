@@ -24,10 +24,12 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.ambari.server.api.services.stackadvisor.commands.StackAdvisorCommandType;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 @Singleton
@@ -35,6 +37,73 @@ public class StackAdvisorRunner {
 
   private final static Logger LOG = LoggerFactory.getLogger(StackAdvisorRunner.class);
 
+  /**
+   * The long-lived stack advisor processes, or {@code null} if a new process
+   * is started for every call.
+   */
+  private final StackAdvisorWorkerPool workerPool;
+
+  /**
+   * The results of previous calls, or {@code null} if they are not kept.
+   */
+  private final StackAdvisorResultCache resultCache;
+
+  /**
+   * Creates a runner which starts a new process for every call and keeps no
+   * results.
+   */
+  public StackAdvisorRunner() {
+    workerPool = null;
+    resultCache = null;
+  }
+
+  @Inject
+  public StackAdvisorRunner(Configuration configuration) {
+    int poolSize = configuration.getStackAdvisorWorkerPoolSize();
+    workerPool = poolSize > 0 ? new StackAdvisorWorkerPool(configuration.getStackAdvisorScript(),
+        poolSize, configuration.getStackAdvisorWorkerMaxRequests(),
+        configuration.getStackAdvisorWorkerTimeout()) : null;
+
+    int cacheSize = configuration.getStackAdvisorResultCacheSize();
+    resultCache = cacheSize > 0 ? new StackAdvisorResultCache(cacheSize,
+        configuration.getStackAdvisorResultCacheExpiration()) : null;
+  }
+
+  /**
+   * Gets the result of a previous call with the same input.
+   *
+   * @param saCommandType the command
+   * @param stackName the stack name
+   * @param stackVersion the stack version
+   * @param hostsJSON the content of hosts.json
+   * @param servicesJSON the content of services.json
+   * @return the content of the result file, or {@code null} if there is none
+   */
+  public String getCachedResult(StackAdvisorCommandType saCommandType, String stackName,
+      String stackVersion, String hostsJSON, String servicesJSON) {
+    if (null == resultCache) {
+      return null;
+    }
+    return resultCache.get(saCommandType, stackName, stackVersion, hostsJSON, servicesJSON);
+  }
+
+  /**
+   * Keeps the result of a call for the next ones with the same input.
+   *
+   * @param saCommandType the command
+   * @param stackName the stack name
+   * @param stackVersion the stack version
+   * @param hostsJSON the content of hosts.json
+   * @param servicesJSON the content of services.json
+   * @param result the content of the result file
+   */
+  public void cacheResult(StackAdvisorCommandType saCommandType, String stackName,
+      String stackVersion, String hostsJSON, String servicesJSON, String result) {
+    if (null != resultCache) {
+      resultCache.put(saCommandType, stackName, stackVersion, hostsJSON, servicesJSON, result);
+    }
+  }
+
   /**
    * Runs stack_advisor.py script in the specified {@code actionDirectory}.
    *
@@ -50,6 +119,21 @@ public class StackAdvisorRunner {
     String outputFile = actionDirectory + File.separator + "stackadvisor.out";
     String errorFile = actionDirectory + File.separator + "stackadvisor.err";
 
+    if (null != workerPool && workerPool.getScript().equals(script)) {
+      try {
+        LOG.info("Stack-advisor output={}, error={}", outputFile, errorFile);
+        handleExitCode(workerPool.run(saCommandType, actionDirectory, outputFile, errorFile),
+            outputFile, errorFile);
+        return;
+      } catch (StackAdvisorException ex) {
+        throw ex;
+      } catch (Exception e) {
+        String message = "Error executing stack advisor: ";
+        LOG.error(message, e);
+        throw new StackAdvisorException(message + e.getMessage());
+      }
+    }
+
     ProcessBuilder builder = prepareShellCommand(script, saCommandType,
         actionDirectory, outputFile,
         errorFile);
@@ -60,42 +144,7 @@ public class StackAdvisorRunner {
       try {
         LOG.info("Stack-advisor output={}, error={}", outputFile, errorFile);
 
-        int exitCode = process.waitFor();
-        String outMessage;
-        String errMessage = null;
-        try {
-          outMessage = FileUtils.readFileToString(new File(outputFile)).trim();
-          errMessage = FileUtils.readFileToString(new File(errorFile)).trim();
-          LOG.info("Stack advisor output files");
-          LOG.info("    advisor script stdout: {}", outMessage);
-          LOG.info("    advisor script stderr: {}", errMessage);
-        } catch (IOException io) {
-          LOG.error("Error in reading script log files", io);
-        }
-        if (exitCode > 0) {
-          String errorMessage;
-          if (errMessage != null) {
-            // We want to get the last line.
-            int index = errMessage.lastIndexOf("\n");
-            if (index > 0 && index == (errMessage.length() - 1)) {
-              index = errMessage.lastIndexOf("\n", index - 1); // sentence ended with newline
-            }
-            if (index > -1) {
-              errMessage = errMessage.substring(index + 1).trim();
-            }
-            errorMessage = "Stack Advisor reported an error: " + errMessage;
-          } else {
-            errorMessage = "Error occurred during stack advisor execution";
-          }
-          errorMessage += "\nStdOut file: " + outputFile + "\n";
-          errorMessage += "\nStdErr file: " + errorFile;
-          switch (exitCode) {
-            case 1:
-              throw new StackAdvisorRequestException(errorMessage);
-            case 2:
-              throw new StackAdvisorException(errorMessage);
-          }
-        }
+        handleExitCode(process.waitFor(), outputFile, errorFile);
       } finally {
         process.destroy();
       }
@@ -108,6 +157,48 @@ public class StackAdvisorRunner {
     }
   }
 
+  /**
+   * Logs the output of the script and throws the exception for its exit code.
+   */
+  private void handleExitCode(int exitCode, String outputFile, String errorFile)
+      throws StackAdvisorException {
+    String outMessage;
+    String errMessage = null;
+    try {
+      outMessage = FileUtils.readFileToString(new File(outputFile)).trim();
+      errMessage = FileUtils.readFileToString(new File(errorFile)).trim();
+      LOG.info("Stack advisor output files");
+      LOG.info("    advisor script stdout: {}", outMessage);
+      LOG.info("    advisor script stderr: {}", errMessage);
+    } catch (IOException io) {
+      LOG.error("Error in reading script log files", io);
+    }
+    if (exitCode > 0) {
+      String errorMessage;
+      if (errMessage != null) {
+        // We want to get the last line.
+        int index = errMessage.lastIndexOf("\n");
+        if (index > 0 && index == (errMessage.length() - 1)) {
+          index = errMessage.lastIndexOf("\n", index - 1); // sentence ended with newline
+        }
+        if (index > -1) {
+          errMessage = errMessage.substring(index + 1).trim();
+        }
+        errorMessage = "Stack Advisor reported an error: " + errMessage;
+      } else {
+        errorMessage = "Error occurred during stack advisor execution";
+      }
+      errorMessage += "\nStdOut file: " + outputFile + "\n";
+      errorMessage += "\nStdErr file: " + errorFile;
+      switch (exitCode) {
+        case 1:
+          throw new StackAdvisorRequestException(errorMessage);
+        case 2:
+          throw new StackAdvisorException(errorMessage);
+      }
+    }
+  }
+
   /**
    * Gets an instance of a {@link ProcessBuilder} that's ready to execute the
    * shell command to run the stack advisor script. This will take the
@@ -0,0 +1,267 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.api.services.stackadvisor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.ambari.server.api.services.stackadvisor.commands.StackAdvisorCommandType;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The {@link StackAdvisorWorkerPool} keeps long-lived stack advisor processes
+ * started with the {@code worker} action, which run one command after another
+ * without importing the stack advisor modules again.
+ * <p/>
+ * A command is sent to a worker as a line of JSON with the action and the
+ * files which the script would have been given, and the worker answers with
+ * the exit code the script would have exited with. The output and errors of
+ * the command are written to the same files as before.
+ * <p/>
+ * Workers are started when needed, up to the pool size, and checked before
+ * every command. A worker is stopped and replaced after a number of commands,
+ * and when a command fails to complete or times out.
+ */
+public class StackAdvisorWorkerPool {
+
+  private final static Logger LOG = LoggerFactory.getLogger(StackAdvisorWorkerPool.class);
+
+  private static final String WORKER_ACTION = "worker";
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final String script;
+  private final int maxRequests;
+  private final long timeout;
+
+  /**
+   * Limits the number of commands running at once to the pool size.
+   */
+  private final Semaphore permits;
+
+  /**
+   * The workers not running a command, the last one used first.
+   */
+  private final BlockingDeque<Worker> idle = new LinkedBlockingDeque<Worker>();
+
+  /**
+   * Reads the answers of the workers, so that they can time out.
+   */
+  private final ExecutorService readers = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setNameFormat("stack-advisor-worker-reader-%d").setDaemon(true).build());
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  /**
+   * @param script
+   *          the stack advisor script
+   * @param size
+   *          the maximum number of workers
+   * @param maxRequests
+   *          the number of commands after which a worker is replaced
+   * @param timeout
+   *          the time in seconds after which a command fails
+   */
+  public StackAdvisorWorkerPool(String script, int size, int maxRequests, int timeout) {
+    this.script = script;
+    this.maxRequests = maxRequests;
+    this.timeout = TimeUnit.SECONDS.toMillis(timeout);
+    permits = new Semaphore(size, true);
+  }
+
+  /**
+   * @return the stack advisor script run by the workers
+   */
+  public String getScript() {
+    return script;
+  }
+
+  /**
+   * Runs the command with the hosts and services files in the action
+   * directory on a worker, waiting for one to be free.
+   *
+   * @return the exit code of the command
+   */
+  public int run(StackAdvisorCommandType saCommandType, File actionDirectory, String outputFile,
+      String errorFile) throws IOException, InterruptedException, TimeoutException {
+    Map<String, String> command = new LinkedHashMap<String, String>();
+    command.put("action", saCommandType.toString());
+    command.put("hosts", actionDirectory + File.separator + "hosts.json");
+    command.put("services", actionDirectory + File.separator + "services.json");
+    command.put("out", outputFile);
+    command.put("err", errorFile);
+    String line = mapper.writeValueAsString(command);
+
+    permits.acquire();
+    try {
+      Worker worker = borrow();
+      boolean completed = false;
+      try {
+        int exitCode = worker.run(line);
+        completed = true;
+        return exitCode;
+      } finally {
+        if (completed && worker.requests < maxRequests) {
+          idle.push(worker);
+        } else {
+          LOG.info("Stopping stack advisor worker after {} commands", worker.requests);
+          worker.destroy();
+        }
+      }
+    } finally {
+      permits.release();
+    }
+  }
+
+  /**
+   * Stops all workers which are not running a command.
+   */
+  public void shutdown() {
+    List<Worker> workers = new ArrayList<Worker>();
+    idle.drainTo(workers);
+    for (Worker worker : workers) {
+      worker.destroy();
+    }
+  }
+
+  /**
+   * @return an idle worker which is still running, or a new one
+   */
+  private Worker borrow() throws IOException {
+    Worker worker;
+    while (null != (worker = idle.poll())) {
+      if (worker.isAlive()) {
+        return worker;
+      }
+
+      LOG.warn("Stack advisor worker exited, replacing it");
+      worker.destroy();
+    }
+
+    LOG.info("Starting stack advisor worker, script={}", script);
+    ProcessBuilder builder = prepareWorkerCommand();
+    builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+    return new Worker(builder.start());
+  }
+
+  /**
+   * Gets a {@link ProcessBuilder} that is ready to start a worker, taking the
+   * environment variables from the current process.
+   */
+  ProcessBuilder prepareWorkerCommand() {
+    List<String> builderParameters = new ArrayList<String>();
+    if (System.getProperty("os.name").contains("Windows")) {
+      builderParameters.add("cmd");
+      builderParameters.add("/c");
+    } else {
+      builderParameters.add("sh");
+      builderParameters.add("-c");
+    }
+    builderParameters.add(script + " " + WORKER_ACTION);
+
+    LOG.debug("Stack advisor worker command is {}", builderParameters);
+
+    return new ProcessBuilder(builderParameters);
+  }
+
+  /**
+   * A stack advisor process and the pipes to it.
+   */
+  private final class Worker {
+    private final Process process;
+    private final Writer writer;
+    private final BufferedReader reader;
+    private int requests = 0;
+
+    private Worker(Process process) {
+      this.process = process;
+      writer = new OutputStreamWriter(process.getOutputStream(), UTF_8);
+      reader = new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8));
+    }
+
+    private int run(String line) throws IOException, InterruptedException, TimeoutException {
+      requests++;
+      writer.write(line);
+      writer.write('\n');
+      writer.flush();
+
+      Future<String> answer = readers.submit(new Callable<String>() {
+        @Override
+        public String call() throws IOException {
+          return reader.readLine();
+        }
+      });
+
+      String exitCode;
+      try {
+        exitCode = answer.get(timeout, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        answer.cancel(true);
+        throw new TimeoutException("Stack advisor worker did not complete in " + timeout + "ms");
+      } catch (ExecutionException e) {
+        throw new IOException("Unable to read from stack advisor worker", e.getCause());
+      }
+
+      if (null == exitCode) {
+        throw new IOException("Stack advisor worker exited");
+      }
+
+      try {
+        return Integer.parseInt(exitCode.trim());
+      } catch (NumberFormatException e) {
+        throw new IOException("Unexpected answer from stack advisor worker: " + exitCode);
+      }
+    }
+
+    private boolean isAlive() {
+      try {
+        process.exitValue();
+        return false;
+      } catch (IllegalThreadStateException e) {
+        return true;
+      }
+    }
+
+    private void destroy() {
+      process.destroy();
+    }
+  }
+}
@@ -277,16 +277,27 @@ public abstract class StackAdvisorCommand<T extends StackAdvisorResponse> extend
     StackAdvisorData adjusted = adjust(new StackAdvisorData(hostsJSON, servicesJSON), request);
 
     try {
-      createRequestDirectory();
+      String result = saRunner.getCachedResult(getCommandType(), request.getStackName(),
+          request.getStackVersion(), adjusted.hostsJSON, adjusted.servicesJSON);
+      boolean cached = null != result;
 
-      FileUtils.writeStringToFile(new File(requestDirectory, "hosts.json"), adjusted.hostsJSON);
-      FileUtils.writeStringToFile(new File(requestDirectory, "services.json"),
-          adjusted.servicesJSON);
+      if (!cached) {
+        createRequestDirectory();
 
-      saRunner.runScript(stackAdvisorScript, getCommandType(), requestDirectory);
-      String result = FileUtils.readFileToString(new File(requestDirectory, getResultFileName()));
+        FileUtils.writeStringToFile(new File(requestDirectory, "hosts.json"), adjusted.hostsJSON);
+        FileUtils.writeStringToFile(new File(requestDirectory, "services.json"),
+            adjusted.servicesJSON);
 
+        saRunner.runScript(stackAdvisorScript, getCommandType(), requestDirectory);
+        result = FileUtils.readFileToString(new File(requestDirectory, getResultFileName()));
+      }
+
+      // a new response is read every time, so that the cached result is not changed
       T response = this.mapper.readValue(result, this.type);
+      if (!cached) {
+        saRunner.cacheResult(getCommandType(), request.getStackName(), request.getStackVersion(),
+            adjusted.hostsJSON, adjusted.servicesJSON, result);
+      }
       return updateResponse(request, setRequestId(response));
     } catch (StackAdvisorException ex) {
       throw ex;
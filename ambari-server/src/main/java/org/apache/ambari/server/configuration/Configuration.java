@@ -280,6 +280,15 @@ public class Configuration {
   public static final String STACK_UPGRADE_AUTO_RETRY_COMMAND_DETAILS_TO_IGNORE_KEY = "stack.upgrade.auto.retry.command.details.to.ignore";
   public static final String STACK_UPGRADE_AUTO_RETRY_COMMAND_DETAILS_TO_IGNORE_DEFAULT = "\"Execute HDFS Finalize\"";
 
+  /**
+   * The maximum number of hosts in a stage which restarts, starts or stops the
+   * components of a group that neither share hosts nor depend on one another
+   * in the role command order, or 0 to run the stages of each group one after
+   * the other in the order of the upgrade pack.
+   */
+  public static final String STACK_UPGRADE_PARALLEL_STAGE_MAX_HOSTS_KEY = "stack.upgrade.parallel.stage.max.hosts";
+  public static final String STACK_UPGRADE_PARALLEL_STAGE_MAX_HOSTS_DEFAULT = "0";
+
   public static final String JWT_AUTH_ENBABLED = "authentication.jwt.enabled";
   public static final String JWT_AUTH_PROVIDER_URL = "authentication.jwt.providerUrl";
   public static final String JWT_PUBLIC_KEY = "authentication.jwt.publicKey";
@@ -653,6 +662,132 @@ public class Configuration {
    */
   public static final String ALERTS_CACHE_SIZE_DEFAULT = "50000";
 
+  /**
+   * The time between the checks of the host component state counts against
+   * the host components, 0 to not check them.
+   */
+  public static final String HOST_COMPONENT_STATE_COUNTS_CHECK_INTERVAL = "host_component.state_counts.check.interval";
+
+  /**
+   * The default time, in minutes, between the checks of the host component
+   * state counts.
+   */
+  public static final String HOST_COMPONENT_STATE_COUNTS_CHECK_INTERVAL_DEFAULT = "60";
+
+  /**
+   * If {@code true} then the host and host component state reported by agent
+   * heartbeats is kept in memory and persisted in batches, instead of being
+   * merged on every change.
+   */
+  public static final String STATE_WRITE_BEHIND_ENABLED = "server.state.write_behind.enabled";
+
+  /**
+   * The time after which host and host component state kept in memory is
+   * flushed to the database.
+   */
+  public static final String STATE_WRITE_BEHIND_FLUSH_INTERVAL = "server.state.write_behind.flush.interval";
+
+  /**
+   * The default time, in seconds, that host and host component state kept in
+   * memory is flushed to the database.
+   */
+  public static final String STATE_WRITE_BEHIND_FLUSH_INTERVAL_DEFAULT = "10";
+
+  /**
+   * The number of long-lived stack advisor processes which run the
+   * recommendations and validations, or {@code 0} to start a new process for
+   * every call.
+   */
+  public static final String STACK_ADVISOR_WORKER_POOL_SIZE = "stackadvisor.worker.pool.size";
+
+  /**
+   * The default number of long-lived stack advisor processes.
+   */
+  public static final String STACK_ADVISOR_WORKER_POOL_SIZE_DEFAULT = "0";
+
+  /**
+   * The number of calls after which a stack advisor process is replaced.
+   */
+  public static final String STACK_ADVISOR_WORKER_MAX_REQUESTS = "stackadvisor.worker.max.requests";
+
+  /**
+   * The default number of calls after which a stack advisor process is
+   * replaced.
+   */
+  public static final String STACK_ADVISOR_WORKER_MAX_REQUESTS_DEFAULT = "100";
+
+  /**
+   * The time after which a call to a stack advisor process fails and the
+   * process is stopped.
+   */
+  public static final String STACK_ADVISOR_WORKER_TIMEOUT = "stackadvisor.worker.timeout";
+
+  /**
+   * The default time, in seconds, after which a call to a stack advisor
+   * process fails.
+   */
+  public static final String STACK_ADVISOR_WORKER_TIMEOUT_DEFAULT = "600";
+
+  /**
+   * The number of stack advisor results kept for calls with the same hosts,
+   * services and configurations, or {@code 0} to disable the cache.
+   */
+  public static final String STACK_ADVISOR_RESULT_CACHE_SIZE = "stackadvisor.result.cache.size";
+
+  /**
+   * The default number of stack advisor results kept.
+   */
+  public static final String STACK_ADVISOR_RESULT_CACHE_SIZE_DEFAULT = "100";
+
+  /**
+   * The time after which a stack advisor result is no longer used.
+   */
+  public static final String STACK_ADVISOR_RESULT_CACHE_EXPIRATION = "stackadvisor.result.cache.expiration";
+
+  /**
+   * The default time, in minutes, after which a stack advisor result is no
+   * longer used.
+   */
+  public static final String STACK_ADVISOR_RESULT_CACHE_EXPIRATION_DEFAULT = "30";
+
+  /**
+   * The number of generated client configuration archives kept, by the
+   * configurations and other input they were generated from, or {@code 0} to
+   * generate the archive for every download.
+   */
+  public static final String CLIENT_CONFIG_ARCHIVE_CACHE_SIZE = "client.config.archive.cache.size";
+
+  /**
+   * The default number of generated client configuration archives kept.
+   */
+  public static final String CLIENT_CONFIG_ARCHIVE_CACHE_SIZE_DEFAULT = "100";
+
+  /**
+   * The number of threads running the install and start tasks of the hosts
+   * added by a blueprint, or {@code 1} to run the tasks of all hosts one after
+   * the other.
+   */
+  public static final String TOPOLOGY_TASK_PARALLEL_COUNT = "topology.task.parallel.count";
+
+  /**
+   * The default number of threads running the tasks of the hosts added by a
+   * blueprint.
+   */
+  public static final String TOPOLOGY_TASK_PARALLEL_COUNT_DEFAULT = "1";
+
+  /**
+   * The time, in milliseconds, the hosts registering are collected before they
+   * are matched to the host groups of the blueprint requests together, or
+   * {@code 0} to match each host as it registers.
+   */
+  public static final String TOPOLOGY_HOST_REGISTRATION_BATCH_WINDOW = "topology.host.registration.batch.window";
+
+  /**
+   * The default time, in milliseconds, the hosts registering are collected
+   * before they are matched.
+   */
+  public static final String TOPOLOGY_HOST_REGISTRATION_BATCH_WINDOW_DEFAULT = "0";
+
   /**
    * For HTTP Response header configuration for Ambari Server UI
    */
@@ -1274,6 +1409,17 @@ public class Configuration {
     return list;
   }
 
+  /**
+   * The maximum number of hosts in a stage which restarts, starts or stops
+   * independent components of an upgrade group together.
+   * @return the number of hosts, or 0 if the stages of each group run one
+   * after the other in the order of the upgrade pack.
+   */
+  public int getStackUpgradeParallelStageMaxHosts() {
+    return Integer.parseInt(properties.getProperty(STACK_UPGRADE_PARALLEL_STAGE_MAX_HOSTS_KEY,
+        STACK_UPGRADE_PARALLEL_STAGE_MAX_HOSTS_DEFAULT));
+  }
+
   /**
    * Convert quoted elements separated by commas into a list. Values cannot contain double quotes or commas.
    * @param value, e.g., String with value "a","b","c" => ["a", "b", "c"]
@@ -2922,6 +3068,136 @@ public class Configuration {
     return Integer.parseInt(properties.getProperty(ALERTS_CACHE_SIZE, ALERTS_CACHE_SIZE_DEFAULT));
   }
 
+  /**
+   * Gets the interval at which the host component state counts are checked
+   * against the host components.
+   *
+   * @return the check interval in minutes, 0 if the counts are not checked,
+   *         or {@value #HOST_COMPONENT_STATE_COUNTS_CHECK_INTERVAL_DEFAULT} if
+   *         not set.
+   */
+  public int getHostComponentStateCountsCheckInterval() {
+    return Integer.parseInt(properties.getProperty(HOST_COMPONENT_STATE_COUNTS_CHECK_INTERVAL,
+        HOST_COMPONENT_STATE_COUNTS_CHECK_INTERVAL_DEFAULT));
+  }
+
+  /**
+   * Gets whether the host and host component state reported by agent
+   * heartbeats is persisted in batches. State changes caused by commands,
+   * versions and upgrade states are always persisted immediately.
+   * <p/>
+   * The default value is {@code false}.
+   *
+   * @return {@code true} if the state is written behind, {@code false}
+   *         otherwise.
+   */
+  public boolean isStateWriteBehindEnabled() {
+    return Boolean.parseBoolean(
+        properties.getProperty(STATE_WRITE_BEHIND_ENABLED, Boolean.FALSE.toString()));
+  }
+
+  /**
+   * Gets the interval at which host and host component state kept in memory
+   * is written out to the database, if enabled.
+   *
+   * @return the flush interval in seconds, or
+   *         {@value #STATE_WRITE_BEHIND_FLUSH_INTERVAL_DEFAULT} if not set.
+   */
+  public int getStateWriteBehindFlushInterval() {
+    return Integer.parseInt(properties.getProperty(STATE_WRITE_BEHIND_FLUSH_INTERVAL,
+        STATE_WRITE_BEHIND_FLUSH_INTERVAL_DEFAULT));
+  }
+
+  /**
+   * Gets the number of long-lived stack advisor processes.
+   *
+   * @return the number of processes, or {@code 0} if a new process is started
+   *         for every call.
+   */
+  public int getStackAdvisorWorkerPoolSize() {
+    return Integer.parseInt(properties.getProperty(STACK_ADVISOR_WORKER_POOL_SIZE,
+        STACK_ADVISOR_WORKER_POOL_SIZE_DEFAULT));
+  }
+
+  /**
+   * Gets the number of calls after which a stack advisor process is replaced.
+   *
+   * @return the number of calls, or
+   *         {@value #STACK_ADVISOR_WORKER_MAX_REQUESTS_DEFAULT} if not set.
+   */
+  public int getStackAdvisorWorkerMaxRequests() {
+    return Integer.parseInt(properties.getProperty(STACK_ADVISOR_WORKER_MAX_REQUESTS,
+        STACK_ADVISOR_WORKER_MAX_REQUESTS_DEFAULT));
+  }
+
+  /**
+   * Gets the time after which a call to a stack advisor process fails.
+   *
+   * @return the timeout in seconds, or
+   *         {@value #STACK_ADVISOR_WORKER_TIMEOUT_DEFAULT} if not set.
+   */
+  public int getStackAdvisorWorkerTimeout() {
+    return Integer.parseInt(properties.getProperty(STACK_ADVISOR_WORKER_TIMEOUT,
+        STACK_ADVISOR_WORKER_TIMEOUT_DEFAULT));
+  }
+
+  /**
+   * Gets the number of stack advisor results kept.
+   *
+   * @return the number of results, or {@code 0} if they are not kept.
+   */
+  public int getStackAdvisorResultCacheSize() {
+    return Integer.parseInt(properties.getProperty(STACK_ADVISOR_RESULT_CACHE_SIZE,
+        STACK_ADVISOR_RESULT_CACHE_SIZE_DEFAULT));
+  }
+
+  /**
+   * Gets the time after which a stack advisor result is no longer used.
+   *
+   * @return the expiration in minutes, or
+   *         {@value #STACK_ADVISOR_RESULT_CACHE_EXPIRATION_DEFAULT} if not
+   *         set.
+   */
+  public int getStackAdvisorResultCacheExpiration() {
+    return Integer.parseInt(properties.getProperty(STACK_ADVISOR_RESULT_CACHE_EXPIRATION,
+        STACK_ADVISOR_RESULT_CACHE_EXPIRATION_DEFAULT));
+  }
+
+  /**
+   * Gets the number of generated client configuration archives kept.
+   *
+   * @return the number of archives, or {@code 0} if an archive is generated
+   *         for every download.
+   */
+  public int getClientConfigArchiveCacheSize() {
+    return Integer.parseInt(properties.getProperty(CLIENT_CONFIG_ARCHIVE_CACHE_SIZE,
+        CLIENT_CONFIG_ARCHIVE_CACHE_SIZE_DEFAULT));
+  }
+
+  /**
+   * Gets the number of threads running the tasks of the hosts added by a
+   * blueprint.
+   *
+   * @return the number of threads, or {@code 1} if the tasks of all hosts run
+   *         one after the other.
+   */
+  public int getTopologyTaskParallelCount() {
+    return Integer.parseInt(properties.getProperty(TOPOLOGY_TASK_PARALLEL_COUNT,
+        TOPOLOGY_TASK_PARALLEL_COUNT_DEFAULT));
+  }
+
+  /**
+   * Gets the time the hosts registering are collected before they are matched
+   * to the host groups of the blueprint requests.
+   *
+   * @return the time in milliseconds, or {@code 0} if each host is matched as
+   *         it registers.
+   */
+  public long getTopologyHostRegistrationBatchWindow() {
+    return Long.parseLong(properties.getProperty(TOPOLOGY_HOST_REGISTRATION_BATCH_WINDOW,
+        TOPOLOGY_HOST_REGISTRATION_BATCH_WINDOW_DEFAULT));
+  }
+
   /**
    * Get the ambari display URL
    * @return
@@ -26,11 +26,19 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -38,6 +46,7 @@ import org.apache.ambari.server.state.PropertyDependencyInfo;
 import org.apache.ambari.server.state.ValueAttributesInfo;
 import org.apache.ambari.server.topology.AdvisedConfiguration;
 import org.apache.ambari.server.topology.Blueprint;
+import org.apache.ambari.server.topology.CachedClusterTopology;
 import org.apache.ambari.server.topology.Cardinality;
 import org.apache.ambari.server.topology.ClusterTopology;
 import org.apache.ambari.server.topology.ConfigRecommendationStrategy;
@@ -48,9 +57,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Predicates;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Updates configuration properties based on cluster topology.  This is done when exporting
@@ -122,6 +133,21 @@ public class BlueprintConfigurationProcessor {
   private static Collection<Map<String, Map<String, PropertyUpdater>>> allUpdaters =
       new ArrayList<Map<String, Map<String, PropertyUpdater>>>();
 
+  /**
+   * The number of threads which update the config types for cluster creation.
+   */
+  private static final int UPDATE_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * The time in milliseconds an idle update thread is kept.
+   */
+  private static final long UPDATE_THREAD_TIMEOUT = 60000L;
+
+  /**
+   * Thread pool which updates the config types for cluster creation, created on first use.
+   */
+  private static ExecutorService executorService;
+
   /**
    * Compiled regex for hostgroup token.
    */
@@ -198,6 +224,10 @@ public class BlueprintConfigurationProcessor {
 
   public Collection<String> getRequiredHostGroups() {
     Collection<String> requiredHostGroups = new HashSet<String>();
+    ClusterTopology topology = new CachedClusterTopology(clusterTopology);
+
+    // cluster scoped configuration which also includes all default and BP properties
+    Map<String, Map<String, String>> clusterProps = clusterTopology.getConfiguration().getFullProperties();
 
     for (Map<String, Map<String, PropertyUpdater>> updaterMap : createCollectionOfUpdaters()) {
       for (Map.Entry<String, Map<String, PropertyUpdater>> entry : updaterMap.entrySet()) {
@@ -206,12 +236,10 @@ public class BlueprintConfigurationProcessor {
           String propertyName = updaterEntry.getKey();
           PropertyUpdater updater = updaterEntry.getValue();
 
-          // cluster scoped configuration which also includes all default and BP properties
-          Map<String, Map<String, String>> clusterProps = clusterTopology.getConfiguration().getFullProperties();
           Map<String, String> typeMap = clusterProps.get(type);
           if (typeMap != null && typeMap.containsKey(propertyName)) {
             requiredHostGroups.addAll(updater.getRequiredHostGroups(
-                propertyName, typeMap.get(propertyName), clusterProps, clusterTopology));
+                propertyName, typeMap.get(propertyName), clusterProps, topology));
           }
 
           // host group configs
@@ -220,7 +248,7 @@ public class BlueprintConfigurationProcessor {
             Map<String, String> hgTypeMap = hgConfigProps.get(type);
             if (hgTypeMap != null && hgTypeMap.containsKey(propertyName)) {
               requiredHostGroups.addAll(updater.getRequiredHostGroups(
-                  propertyName, hgTypeMap.get(propertyName), hgConfigProps, clusterTopology));
+                  propertyName, hgTypeMap.get(propertyName), hgConfigProps, topology));
             }
           }
         }
@@ -251,50 +279,55 @@ public class BlueprintConfigurationProcessor {
     // removes a property other than the property it is registered for then we will
     // have an issue as it won't be removed from the clusterProps map as it is a copy.
     Map<String, Map<String, String>> clusterProps = clusterConfig.getFullProperties();
+    ClusterTopology topology = new CachedClusterTopology(clusterTopology);
+
+    // the host group configs are merged once for all updaters rather than once per property
+    Map<String, Map<String, Map<String, String>>> hostGroupProps =
+        new LinkedHashMap<String, Map<String, Map<String, String>>>();
+    for (HostGroupInfo groupInfo : groupInfoMap.values()) {
+      hostGroupProps.put(groupInfo.getHostGroupName(), groupInfo.getConfiguration().getFullProperties(1));
+    }
+
+    // the updaters of each config type only read the properties of other types, so each type is
+    // updated on its own, possibly in parallel, and the results are set once all of them are done
+    Map<String, List<Map.Entry<String, PropertyUpdater>>> updatersByType =
+        new LinkedHashMap<String, List<Map.Entry<String, PropertyUpdater>>>();
     for (Map<String, Map<String, PropertyUpdater>> updaterMap : createCollectionOfUpdaters()) {
       for (Map.Entry<String, Map<String, PropertyUpdater>> entry : updaterMap.entrySet()) {
         String type = entry.getKey();
-        for (Map.Entry<String, PropertyUpdater> updaterEntry : entry.getValue().entrySet()) {
-          String propertyName = updaterEntry.getKey();
-          PropertyUpdater updater = updaterEntry.getValue();
-
-          // topo cluster scoped configuration which also includes all default and BP properties
-          Map<String, String> typeMap = clusterProps.get(type);
-          if (typeMap != null && typeMap.containsKey(propertyName)) {
-            final String originalValue = typeMap.get(propertyName);
-            final String updatedValue =
-              updater.updateForClusterCreate(propertyName, originalValue, clusterProps, clusterTopology);
-            
-            if(updatedValue == null ) {
-              continue;
-            }
-
-            if (!updatedValue.equals(originalValue)) {
-              configTypesUpdated.add(type);
-            }
+        if (!clusterProps.containsKey(type) && !isTypeInHostGroups(type, hostGroupProps)) {
+          continue;
+        }
 
-            clusterConfig.setProperty(type, propertyName, updatedValue);
-          }
+        List<Map.Entry<String, PropertyUpdater>> typeUpdaters = updatersByType.get(type);
+        if (typeUpdaters == null) {
+          typeUpdaters = new ArrayList<Map.Entry<String, PropertyUpdater>>();
+          updatersByType.put(type, typeUpdaters);
+        }
+        typeUpdaters.addAll(entry.getValue().entrySet());
+      }
+    }
 
-          // host group configs
-          for (HostGroupInfo groupInfo : groupInfoMap.values()) {
-            Configuration hgConfig = groupInfo.getConfiguration();
-            Map<String, Map<String, String>> hgConfigProps = hgConfig.getFullProperties(1);
-            Map<String, String> hgTypeMap = hgConfigProps.get(type);
-            if (hgTypeMap != null && hgTypeMap.containsKey(propertyName)) {
-              final String originalValue = hgTypeMap.get(propertyName);
-              final String updatedValue =
-                updater.updateForClusterCreate(propertyName, originalValue, hgConfigProps, clusterTopology);
+    List<ConfigTypeUpdate> tasks = new ArrayList<ConfigTypeUpdate>(updatersByType.size());
+    for (Map.Entry<String, List<Map.Entry<String, PropertyUpdater>>> entry : updatersByType.entrySet()) {
+      tasks.add(new ConfigTypeUpdate(entry.getKey(), entry.getValue(), clusterProps, hostGroupProps, topology));
+    }
 
-              if (!updatedValue.equals(originalValue)) {
-                configTypesUpdated.add(type);
-              }
+    for (ConfigTypeUpdate update : invokeAll(tasks)) {
+      for (Map.Entry<String, String> property : update.clusterUpdates.entrySet()) {
+        clusterConfig.setProperty(update.type, property.getKey(), property.getValue());
+      }
 
-              hgConfig.setProperty(type, propertyName, updatedValue);
-            }
-          }
+      for (Map.Entry<String, Map<String, String>> hostGroup : update.hostGroupUpdates.entrySet()) {
+        Configuration hgConfig = groupInfoMap.get(hostGroup.getKey()).getConfiguration();
+        for (Map.Entry<String, String> property : hostGroup.getValue().entrySet()) {
+          hgConfig.setProperty(update.type, property.getKey(), property.getValue());
         }
       }
+
+      if (update.updated) {
+        configTypesUpdated.add(update.type);
+      }
     }
 
     //todo: lots of hard coded HA rules included here
@@ -310,7 +343,7 @@ public class BlueprintConfigurationProcessor {
 
       // if the active/stanbdy namenodes are not specified, assign them automatically
       if (! isNameNodeHAInitialActiveNodeSet(clusterProps) && ! isNameNodeHAInitialStandbyNodeSet(clusterProps)) {
-        Collection<String> nnHosts = clusterTopology.getHostAssignmentsForComponent("NAMENODE");
+        Collection<String> nnHosts = topology.getHostAssignmentsForComponent("NAMENODE");
         if (nnHosts.size() != 2) {
           throw new ConfigurationTopologyException("NAMENODE HA requires exactly 2 hosts running NAMENODE but there are: " +
               nnHosts.size() + " Hosts: " + nnHosts);
@@ -331,6 +364,76 @@ public class BlueprintConfigurationProcessor {
     return configTypesUpdated;
   }
 
+  /**
+   * Determines whether any of the host group configs has properties of the config type.
+   *
+   * @param type            config type
+   * @param hostGroupProps  merged properties of each host group
+   *
+   * @return true if a host group has properties of the type
+   */
+  private static boolean isTypeInHostGroups(String type, Map<String, Map<String, Map<String, String>>> hostGroupProps) {
+    for (Map<String, Map<String, String>> properties : hostGroupProps.values()) {
+      if (properties.containsKey(type)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Runs the config type updates, in parallel when there is more than one of them.
+   *
+   * @param tasks  the updates of each config type
+   *
+   * @return the results in the order of the tasks
+   *
+   * @throws ConfigurationTopologyException if the updates were interrupted
+   */
+  private static List<ConfigTypeUpdate> invokeAll(List<ConfigTypeUpdate> tasks)
+      throws ConfigurationTopologyException {
+
+    List<ConfigTypeUpdate> results = new ArrayList<ConfigTypeUpdate>(tasks.size());
+    if (tasks.size() < 2 || UPDATE_THREAD_COUNT < 2) {
+      for (ConfigTypeUpdate task : tasks) {
+        results.add(task.call());
+      }
+      return results;
+    }
+
+    try {
+      for (Future<ConfigTypeUpdate> future : getExecutorService().invokeAll(tasks)) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ConfigurationTopologyException("Interrupted while updating configuration properties", e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw new ConfigurationTopologyException("Failed to update configuration properties", e.getCause());
+    }
+    return results;
+  }
+
+  /**
+   * Get the thread pool which updates the config types in parallel.
+   */
+  private static synchronized ExecutorService getExecutorService() {
+    if (executorService == null) {
+      ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+          UPDATE_THREAD_COUNT,
+          UPDATE_THREAD_COUNT,
+          UPDATE_THREAD_TIMEOUT,
+          TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactoryBuilder().setNameFormat("blueprint-config-processor-%d").setDaemon(true).build());
+
+      threadPoolExecutor.allowCoreThreadTimeOut(true);
+      executorService = threadPoolExecutor;
+    }
+    return executorService;
+  }
+
   /**
    * Returns true if property should be retained with default value instead of deleting
    * TODO: This is a temporary work-around till BP integrates with stack advisor
@@ -1163,6 +1266,96 @@ public class BlueprintConfigurationProcessor {
     }
   }
 
+  /**
+   * Updates the properties of a single config type in the cluster config and in the host group
+   * configs for cluster creation. The properties are read from the merged properties taken before
+   * any update, with the updates of the same type applied so far, and the updated values are only
+   * collected to be set by the caller.
+   */
+  private static class ConfigTypeUpdate implements Callable<ConfigTypeUpdate> {
+    private final String type;
+    private final List<Map.Entry<String, PropertyUpdater>> updaters;
+    private final Map<String, Map<String, String>> clusterProps;
+    private final Map<String, Map<String, Map<String, String>>> hostGroupProps;
+    private final ClusterTopology topology;
+
+    private final Map<String, String> clusterUpdates = new LinkedHashMap<String, String>();
+    private final Map<String, Map<String, String>> hostGroupUpdates = new LinkedHashMap<String, Map<String, String>>();
+    private boolean updated = false;
+
+    private ConfigTypeUpdate(String type, List<Map.Entry<String, PropertyUpdater>> updaters,
+                             Map<String, Map<String, String>> clusterProps,
+                             Map<String, Map<String, Map<String, String>>> hostGroupProps,
+                             ClusterTopology topology) {
+      this.type = type;
+      this.updaters = updaters;
+      this.clusterProps = clusterProps;
+      this.hostGroupProps = hostGroupProps;
+      this.topology = topology;
+    }
+
+    @Override
+    public ConfigTypeUpdate call() {
+      // host group properties with a copy of the properties of this type, which are updated
+      Map<String, Map<String, Map<String, String>>> hgProps = new HashMap<String, Map<String, Map<String, String>>>();
+      for (Map.Entry<String, Map<String, Map<String, String>>> entry : hostGroupProps.entrySet()) {
+        Map<String, String> hgTypeMap = entry.getValue().get(type);
+        if (hgTypeMap != null) {
+          Map<String, Map<String, String>> hgConfigProps = new HashMap<String, Map<String, String>>(entry.getValue());
+          hgConfigProps.put(type, new HashMap<String, String>(hgTypeMap));
+          hgProps.put(entry.getKey(), hgConfigProps);
+        }
+      }
+
+      for (Map.Entry<String, PropertyUpdater> updaterEntry : updaters) {
+        String propertyName = updaterEntry.getKey();
+        PropertyUpdater updater = updaterEntry.getValue();
+
+        // topo cluster scoped configuration which also includes all default and BP properties
+        Map<String, String> typeMap = clusterProps.get(type);
+        if (typeMap != null && typeMap.containsKey(propertyName)) {
+          final String originalValue = typeMap.get(propertyName);
+          final String updatedValue =
+            updater.updateForClusterCreate(propertyName, originalValue, clusterProps, topology);
+
+          if(updatedValue == null ) {
+            continue;
+          }
+
+          if (!updatedValue.equals(originalValue)) {
+            updated = true;
+          }
+
+          clusterUpdates.put(propertyName, updatedValue);
+        }
+
+        // host group configs
+        for (Map.Entry<String, Map<String, Map<String, String>>> entry : hgProps.entrySet()) {
+          Map<String, Map<String, String>> hgConfigProps = entry.getValue();
+          Map<String, String> hgTypeMap = hgConfigProps.get(type);
+          if (hgTypeMap.containsKey(propertyName)) {
+            final String originalValue = hgTypeMap.get(propertyName);
+            final String updatedValue =
+              updater.updateForClusterCreate(propertyName, originalValue, hgConfigProps, topology);
+
+            if (!updatedValue.equals(originalValue)) {
+              updated = true;
+            }
+
+            hgTypeMap.put(propertyName, updatedValue);
+            Map<String, String> updates = hostGroupUpdates.get(entry.getKey());
+            if (updates == null) {
+              updates = new LinkedHashMap<String, String>();
+              hostGroupUpdates.put(entry.getKey(), updates);
+            }
+            updates.put(propertyName, updatedValue);
+          }
+        }
+      }
+      return this;
+    }
+  }
+
   /**
    * Provides functionality to update a property value.
    */
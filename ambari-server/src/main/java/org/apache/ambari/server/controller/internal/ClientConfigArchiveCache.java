@@ -0,0 +1,255 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.controller.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.controller.spi.SystemException;
+import org.apache.ambari.server.events.ClusterConfigChangedEvent;
+import org.apache.ambari.server.events.publishers.AmbariEventPublisher;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * The {@link ClientConfigArchiveCache} keeps the client configuration archives
+ * generated by {@link ClientConfigResourceProvider}, so that downloading the
+ * configurations of a component again does not run the {@code generate_configs}
+ * script again.
+ * <p/>
+ * An archive is kept by cluster, service, component, stack and a hash of the
+ * command JSON given to the script, which holds the effective configurations
+ * of the host, the cluster topology and the host parameters. Any change to the
+ * desired configurations therefore uses a new archive, and the old ones age
+ * out; the archives of a cluster are also dropped on a
+ * {@link ClusterConfigChangedEvent}. Requests for the same archive at the same
+ * time wait for a single build.
+ * <p/>
+ * Each archive is built in its own directory under the server temporary
+ * directory and copied to where the download expects it.
+ */
+@Singleton
+public class ClientConfigArchiveCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ClientConfigArchiveCache.class);
+
+  /**
+   * The directory, under the server temporary directory, of the archives.
+   */
+  private static final String CACHE_DIRECTORY = "client-config-archives";
+
+  /**
+   * Builds an archive into a directory.
+   */
+  public interface ArchiveBuilder {
+    /**
+     * @param directory
+     *          the empty directory to build the archive into
+     */
+    void build(File directory) throws SystemException;
+  }
+
+  private final File cacheDirectory;
+
+  /**
+   * The archives by key, or {@code null} if disabled.
+   */
+  private final Cache<String, Archive> archives;
+
+  @Inject
+  public ClientConfigArchiveCache(Configuration configuration, AmbariEventPublisher eventPublisher) {
+    cacheDirectory = new File(configuration.getServerTempDir(), CACHE_DIRECTORY);
+    FileUtils.deleteQuietly(cacheDirectory);
+
+    int size = configuration.getClientConfigArchiveCacheSize();
+    if (size > 0) {
+      archives = CacheBuilder.newBuilder().maximumSize(size).removalListener(
+          new RemovalListener<String, Archive>() {
+            @Override
+            public void onRemoval(RemovalNotification<String, Archive> notification) {
+              notification.getValue().delete();
+            }
+          }).build();
+      eventPublisher.register(this);
+    } else {
+      archives = null;
+    }
+  }
+
+  /**
+   * @return {@code true} if archives are kept, {@code false} if they should
+   *         be generated for every download
+   */
+  public boolean isEnabled() {
+    return null != archives;
+  }
+
+  /**
+   * Copies the archive for the input to the target file, building it first
+   * if it is not kept yet.
+   *
+   * @param clusterName
+   *          the cluster name
+   * @param key
+   *          the service, component and stack of the archive
+   * @param commandJson
+   *          the command JSON the archive is generated from
+   * @param archiveName
+   *          the name of the archive the builder creates
+   * @param builder
+   *          builds the archive
+   * @param target
+   *          the file to copy the archive to
+   */
+  public void copyArchive(final String clusterName, String key, String commandJson,
+      final String archiveName, final ArchiveBuilder builder, File target) throws SystemException {
+    final String archiveKey = clusterName + "/" + key + "/" + DigestUtils.sha256Hex(commandJson);
+
+    while (true) {
+      Archive archive;
+      try {
+        archive = archives.get(archiveKey, new Callable<Archive>() {
+          @Override
+          public Archive call() throws Exception {
+            return build(clusterName, archiveKey, archiveName, builder);
+          }
+        });
+      } catch (ExecutionException | UncheckedExecutionException e) {
+        if (e.getCause() instanceof SystemException) {
+          throw (SystemException) e.getCause();
+        }
+        throw new SystemException("Failed to generate client configs " + archiveKey, e.getCause());
+      }
+
+      synchronized (archive) {
+        // dropped since it was returned, build it again
+        if (archive.deleted) {
+          continue;
+        }
+
+        copy(archive.file, target);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Drops the archives of the cluster, since its configurations changed.
+   *
+   * @param event
+   *          the configuration change
+   */
+  @Subscribe
+  @AllowConcurrentEvents
+  public void onClusterConfigChanged(ClusterConfigChangedEvent event) {
+    for (Map.Entry<String, Archive> entry : archives.asMap().entrySet()) {
+      if (entry.getValue().clusterName.equals(event.getClusterName())) {
+        archives.invalidate(entry.getKey());
+      }
+    }
+  }
+
+  private Archive build(String clusterName, String archiveKey, String archiveName,
+      ArchiveBuilder builder) throws SystemException {
+    LOG.info("Generating client configs {}", archiveKey);
+
+    File directory;
+    try {
+      Files.createDirectories(cacheDirectory.toPath());
+      directory = Files.createTempDirectory(cacheDirectory.toPath(), "archive").toFile();
+    } catch (IOException e) {
+      throw new SystemException("Failed to create a directory to generate client configs", e);
+    }
+
+    Archive archive = new Archive(clusterName, directory, new File(directory, archiveName));
+    boolean built = false;
+    try {
+      builder.build(directory);
+      if (!archive.file.isFile()) {
+        throw new SystemException("Client configs archive was not generated: " + archive.file);
+      }
+      built = true;
+      return archive;
+    } finally {
+      if (!built) {
+        archive.delete();
+      }
+    }
+  }
+
+  /**
+   * Replaces the target with a copy of the archive at once, so that a
+   * download in progress keeps reading the previous one.
+   */
+  private static void copy(File archive, File target) throws SystemException {
+    try {
+      Path targetDirectory = target.getAbsoluteFile().getParentFile().toPath();
+      Files.createDirectories(targetDirectory);
+      Path copy = Files.createTempFile(targetDirectory, target.getName(), ".tmp");
+      try {
+        Files.copy(archive.toPath(), copy, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(copy, target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(copy);
+      }
+    } catch (IOException e) {
+      throw new SystemException("Failed to copy client configs archive to " + target, e);
+    }
+  }
+
+  /**
+   * A generated archive and the directory it was generated in.
+   */
+  private static final class Archive {
+    private final String clusterName;
+    private final File directory;
+    private final File file;
+    private boolean deleted = false;
+
+    private Archive(String clusterName, File directory, File file) {
+      this.clusterName = clusterName;
+      this.directory = directory;
+      this.file = file;
+    }
+
+    private synchronized void delete() {
+      deleted = true;
+      FileUtils.deleteQuietly(directory);
+    }
+  }
+}
@@ -18,10 +18,12 @@
 package org.apache.ambari.server.controller.internal;
 
 import com.google.gson.Gson;
+import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import com.google.inject.persist.Transactional;
 import org.apache.ambari.server.AmbariException;
+import org.apache.ambari.server.StaticallyInject;
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
 import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.AmbariManagementController;
@@ -95,6 +97,7 @@ import static org.apache.ambari.server.agent.ExecutionCommand.KeyNames.HOST_SYS_
 /**
  * Resource provider for client config resources.
  */
+@StaticallyInject
 public class ClientConfigResourceProvider extends AbstractControllerResourceProvider {
 
 
@@ -116,6 +119,13 @@ public class ClientConfigResourceProvider extends AbstractControllerResourceProv
                   COMPONENT_COMPONENT_NAME_PROPERTY_ID}));
 
   private MaintenanceStateHelper maintenanceStateHelper;
+
+  /**
+   * Keeps the generated archives, {@code null} if not injected.
+   */
+  @Inject
+  private static ClientConfigArchiveCache archiveCache;
+
   private static final Logger LOG = LoggerFactory.getLogger(ClientConfigResourceProvider.class);
 
   // ----- Constructors ----------------------------------------------------
@@ -379,40 +389,28 @@ public class ClientConfigResourceProvider extends AbstractControllerResourceProv
       jsonContent.put("clusterName", cluster.getClusterName());
       jsonConfigurations = gson.toJson(jsonContent);
 
-      File jsonFileName = new File(TMP_PATH + File.separator + componentName + "-configuration.json");
-      File tmpDirectory = new File(jsonFileName.getParent());
-      if (!tmpDirectory.exists()) {
-        try {
-          tmpDirectory.mkdirs();
-          tmpDirectory.setWritable(true, true);
-          tmpDirectory.setReadable(true, true);
-        } catch (SecurityException se) {
-          throw new SystemException("Failed to get temporary directory to store configurations", se);
-        }
-      }
-      PrintWriter printWriter = null;
-      try {
-        printWriter = new PrintWriter(jsonFileName.getAbsolutePath());
-        printWriter.print(jsonConfigurations);
-        printWriter.close();
-      } catch (FileNotFoundException e) {
-        throw new SystemException("Failed to write configurations to json file ", e);
-      }
-
-      String cmd = pythonCmd + " " + commandScriptAbsolute + " generate_configs " + jsonFileName.getAbsolutePath() + " " +
-              packageFolderAbsolute + " " + TMP_PATH + File.separator + "structured-out.json" + " INFO " + TMP_PATH;
-
-      try {
-        executeCommand(cmd, configs.getExternalScriptTimeout());
-      } catch (TimeoutException e) {
-        LOG.error("Generate client configs script was killed due to timeout ", e);
-        throw new SystemException("Generate client configs script was killed due to timeout ", e);
-      } catch (InterruptedException | IOException e) {
-        LOG.error("Failed to run generate client configs script for a component " + componentName, e);
-        throw new SystemException("Failed to run generate client configs script for a component " + componentName, e);
-      } catch (ExecutionException e) {
-        LOG.error(e.getMessage(),e);
-        throw new SystemException(e.getMessage() + " " + e.getCause());
+      if (null != archiveCache && archiveCache.isEnabled()) {
+        final String jsonContentFinal = jsonConfigurations;
+        final String componentNameFinal = componentName;
+        final String pythonCmdFinal = pythonCmd;
+        final String commandScriptFinal = commandScriptAbsolute;
+        final String packageFolderFinal = packageFolderAbsolute;
+        final Configuration configsFinal = configs;
+
+        archiveCache.copyArchive(cluster.getClusterName(),
+            serviceName + "/" + componentName + "/" + stackId.getStackId(), jsonConfigurations,
+            componentName + "-configs" + Configuration.DEF_ARCHIVE_EXTENSION,
+            new ClientConfigArchiveCache.ArchiveBuilder() {
+              @Override
+              public void build(File directory) throws SystemException {
+                generateConfigs(jsonContentFinal, componentNameFinal, directory.getAbsolutePath(),
+                    pythonCmdFinal, commandScriptFinal, packageFolderFinal, configsFinal);
+              }
+            },
+            new File(TMP_PATH, componentName + "-configs" + Configuration.DEF_ARCHIVE_EXTENSION));
+      } else {
+        generateConfigs(jsonConfigurations, componentName, TMP_PATH, pythonCmd,
+            commandScriptAbsolute, packageFolderAbsolute, configs);
       }
 
     } catch (AmbariException e) {
@@ -466,6 +464,60 @@ public class ClientConfigResourceProvider extends AbstractControllerResourceProv
   }
 
 
+  /**
+   * Writes the command JSON to the directory and runs the script of the
+   * component to generate the client configs archive in it.
+   *
+   * @param jsonConfigurations the command JSON
+   * @param componentName      the component name
+   * @param tmpPath            the directory to generate the archive in
+   * @param pythonCmd          the python command
+   * @param commandScriptAbsolute the command script of the component
+   * @param packageFolderAbsolute the package folder of the service
+   * @param configs            the server configuration
+   */
+  private void generateConfigs(String jsonConfigurations, String componentName, String tmpPath,
+                               String pythonCmd, String commandScriptAbsolute,
+                               String packageFolderAbsolute, Configuration configs)
+          throws SystemException {
+
+    File jsonFileName = new File(tmpPath + File.separator + componentName + "-configuration.json");
+    File tmpDirectory = new File(jsonFileName.getParent());
+    if (!tmpDirectory.exists()) {
+      try {
+        tmpDirectory.mkdirs();
+        tmpDirectory.setWritable(true, true);
+        tmpDirectory.setReadable(true, true);
+      } catch (SecurityException se) {
+        throw new SystemException("Failed to get temporary directory to store configurations", se);
+      }
+    }
+    PrintWriter printWriter = null;
+    try {
+      printWriter = new PrintWriter(jsonFileName.getAbsolutePath());
+      printWriter.print(jsonConfigurations);
+      printWriter.close();
+    } catch (FileNotFoundException e) {
+      throw new SystemException("Failed to write configurations to json file ", e);
+    }
+
+    String cmd = pythonCmd + " " + commandScriptAbsolute + " generate_configs " + jsonFileName.getAbsolutePath() + " " +
+            packageFolderAbsolute + " " + tmpPath + File.separator + "structured-out.json" + " INFO " + tmpPath;
+
+    try {
+      executeCommand(cmd, configs.getExternalScriptTimeout());
+    } catch (TimeoutException e) {
+      LOG.error("Generate client configs script was killed due to timeout ", e);
+      throw new SystemException("Generate client configs script was killed due to timeout ", e);
+    } catch (InterruptedException | IOException e) {
+      LOG.error("Failed to run generate client configs script for a component " + componentName, e);
+      throw new SystemException("Failed to run generate client configs script for a component " + componentName, e);
+    } catch (ExecutionException e) {
+      LOG.error(e.getMessage(),e);
+      throw new SystemException(e.getMessage() + " " + e.getCause());
+    }
+  }
+
   private int executeCommand(final String commandLine,
                                     final long timeout)
           throws IOException, InterruptedException, TimeoutException, ExecutionException {
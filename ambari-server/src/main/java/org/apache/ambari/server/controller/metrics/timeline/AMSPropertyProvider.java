@@ -333,6 +333,11 @@ public abstract class AMSPropertyProvider extends MetricsPropertyProvider {
         if (endTime != -1) {
           uriBuilder.setParameter("endTime", String.valueOf(endTime));
         }
+
+        if (startTime != -1 && endTime != -1) {
+          MetricsRequestHelper.setMaxPoints(uriBuilder, temporalInfo.getStep(),
+            temporalInfo.getStartTimeMillis(), temporalInfo.getEndTimeMillis());
+        }
       }
     }
 
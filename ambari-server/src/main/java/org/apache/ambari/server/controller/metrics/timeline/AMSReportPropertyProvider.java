@@ -198,6 +198,11 @@ public class AMSReportPropertyProvider extends MetricsReportPropertyProvider {
         uriBuilder.setParameter("endTime", String.valueOf(endTime));
       }
 
+      if (startTime != -1 && endTime != -1) {
+        MetricsRequestHelper.setMaxPoints(uriBuilder, temporalInfo.getStep(),
+          temporalInfo.getStartTimeMillis(), temporalInfo.getEndTimeMillis());
+      }
+
       TimelineAppMetricCacheKey metricCacheKey =
         new TimelineAppMetricCacheKey(propertyIdMap.keySet(), "HOST", temporalInfo);
 
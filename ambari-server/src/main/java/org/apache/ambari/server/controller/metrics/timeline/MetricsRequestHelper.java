@@ -145,6 +145,67 @@ public class MetricsRequestHelper {
     return timelineMetrics;
   }
 
+  /**
+   * Ask the collector for at most one value per step of the requested range,
+   * the resolution the caller is able to show, so that long ranges are
+   * downsampled by the collector instead of being shipped in full. Nothing
+   * is asked if the step is not coarser than the values stored for the range.
+   *
+   * @param step            step in seconds, ignored if not positive
+   * @param startTimeMillis start of the range
+   * @param endTimeMillis   end of the range
+   */
+  public static void setMaxPoints(URIBuilder uriBuilder, Long step,
+                                  Long startTimeMillis, Long endTimeMillis) {
+    if (startTimeMillis == null || endTimeMillis == null) {
+      return;
+    }
+    setMaxPoints(uriBuilder, step, startTimeMillis, endTimeMillis,
+      Precision.getPrecision(startTimeMillis, endTimeMillis));
+  }
+
+  /**
+   * Same as {@link #setMaxPoints(URIBuilder, Long, Long, Long)} for a range
+   * read at the given precision, such as the refresh of a cached series.
+   * The range is widened to whole steps starting at a multiple of the step,
+   * so the collector buckets are the steps themselves and every request with
+   * the same step lands on the same buckets, a refresh included.
+   */
+  public static void setMaxPoints(URIBuilder uriBuilder, Long step,
+                                  Long startTimeMillis, Long endTimeMillis,
+                                  Precision precision) {
+    if (step == null || step <= 0 || startTimeMillis == null || endTimeMillis == null
+        || endTimeMillis <= startTimeMillis) {
+      return;
+    }
+    long stepMillis = step * 1000;
+    if (stepMillis <= getResolutionMillis(precision)) {
+      return;
+    }
+    long alignedStartTime = startTimeMillis - startTimeMillis % stepMillis;
+    long maxPoints = Math.min((endTimeMillis - alignedStartTime + stepMillis - 1) / stepMillis,
+      Integer.MAX_VALUE);
+    uriBuilder.setParameter("startTime", String.valueOf(alignedStartTime));
+    uriBuilder.setParameter("endTime", String.valueOf(alignedStartTime + maxPoints * stepMillis));
+    uriBuilder.setParameter("maxPoints", String.valueOf(maxPoints));
+  }
+
+  /**
+   * Interval of the values stored for a precision.
+   */
+  private static long getResolutionMillis(Precision precision) {
+    switch (precision) {
+      case DAYS:
+        return 86400000;
+      case HOURS:
+        return 3600000;
+      case MINUTES:
+        return 300000;
+      default:
+        return 10000;
+    }
+  }
+
   private boolean checkConnectionForPrecisionException(HttpURLConnection connection)
     throws IOException, URISyntaxException {
 
@@ -174,6 +174,10 @@ public class TimelineMetricCacheEntryFactory implements UpdatingCacheEntryFactor
       uriBuilder.setParameter("startTime", String.valueOf(newStartTime));
       uriBuilder.setParameter("endTime", String.valueOf(newEndTime));
       uriBuilder.setParameter("precision",requestedPrecision.toString());
+      // Same step and precision, so the delta is read into the buckets of
+      // the cached series and replaces the partial bucket at the seam
+      MetricsRequestHelper.setMaxPoints(uriBuilder, newTemporalInfo.getStep(),
+        getMillisecondsTime(newStartTime), getMillisecondsTime(newEndTime), requestedPrecision);
 
       try {
         TimelineMetrics newTimeSeries = requestHelperForUpdates.fetchTimelineMetrics(uriBuilder, newStartTime, newEndTime);
@@ -21,24 +21,17 @@ package org.apache.ambari.server.controller.utilities.state;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import org.apache.ambari.server.AmbariException;
-import org.apache.ambari.server.ObjectNotFoundException;
 import org.apache.ambari.server.StaticallyInject;
-import org.apache.ambari.server.api.services.AmbariMetaInfo;
-import org.apache.ambari.server.controller.AmbariManagementController;
-import org.apache.ambari.server.controller.ServiceComponentHostRequest;
-import org.apache.ambari.server.controller.ServiceComponentHostResponse;
 import org.apache.ambari.server.state.Cluster;
 import org.apache.ambari.server.state.Clusters;
-import org.apache.ambari.server.state.ComponentInfo;
+import org.apache.ambari.server.state.HostComponentStateCounts;
 import org.apache.ambari.server.state.MaintenanceState;
-import org.apache.ambari.server.state.StackId;
+import org.apache.ambari.server.state.Service;
+import org.apache.ambari.server.state.ServiceComponent;
 import org.apache.ambari.server.state.State;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
-import java.util.Set;
-
 /**
  * Default calculator of service state.
  * The following rules should apply :
@@ -58,14 +51,7 @@ public class DefaultServiceCalculatedState implements ServiceCalculatedState {
   @Inject
   protected static Provider<Clusters> clustersProvider = null;
 
-  @Inject
-  protected static Provider<AmbariManagementController> managementControllerProvider = null;
-
-
-  // Get the State of a host component
-  protected State getHostComponentState(ServiceComponentHostResponse hostComponent) {
-    return State.valueOf(hostComponent.getLiveState());
-  }
+  protected final static State[] STATES = State.values();
 
   protected Cluster getCluster(String clusterName) throws AmbariException {
     if (clustersProvider != null && clusterName != null && clusterName.length() > 0) {
@@ -77,19 +63,32 @@ public class DefaultServiceCalculatedState implements ServiceCalculatedState {
     return null;
   }
 
-  public State getState(String clusterName, String serviceName) {
-      try {
-        Cluster cluster = getCluster(clusterName);
-        if (cluster != null && managementControllerProvider != null) {
-          AmbariMetaInfo ambariMetaInfo = managementControllerProvider.get().getAmbariMetaInfo();
-          StackId stackId = cluster.getDesiredStackVersion();
-
-          ServiceComponentHostRequest request = new ServiceComponentHostRequest(clusterName,
-            serviceName, null, null, null);
+  /**
+   * @return the service, or {@code null} if the cluster can not be determined
+   */
+  protected Service getService(String clusterName, String serviceName) throws AmbariException {
+    Cluster cluster = getCluster(clusterName);
+    return cluster == null ? null : cluster.getService(serviceName);
+  }
 
-          Set<ServiceComponentHostResponse> hostComponentResponses =
-            managementControllerProvider.get().getHostComponents(Collections.singleton(request));
+  /**
+   * The number of host components of the component in the given state, read
+   * from the counts the component keeps so that the host components are not
+   * scanned. All host components are in maintenance while the service is.
+   */
+  protected int getHostComponentCount(Service service, ServiceComponent component, State state,
+                                      boolean isInMaintenance) {
+    HostComponentStateCounts counts = component.getStateCounts();
+    if (service.getMaintenanceState() != MaintenanceState.OFF) {
+      return isInMaintenance ? counts.getCount(state) : 0;
+    }
+    return counts.getCount(state, isInMaintenance);
+  }
 
+  public State getState(String clusterName, String serviceName) {
+      try {
+        Service service = getService(clusterName, serviceName);
+        if (service != null) {
           State   masterState = null;
           State   clientState = null;
           State   otherState = null;
@@ -101,59 +100,55 @@ public class DefaultServiceCalculatedState implements ServiceCalculatedState {
           boolean hasClient    = false;
           boolean hasMM        = false;
 
-          for (ServiceComponentHostResponse hostComponentResponse : hostComponentResponses ) {
-            try {
-              ComponentInfo componentInfo = ambariMetaInfo.getComponent(stackId.getStackName(),
-                stackId.getStackVersion(), hostComponentResponse.getServiceName(),
-                hostComponentResponse.getComponentName());
-
-              State state = getHostComponentState(hostComponentResponse);
-              // Components in MM should not affect service status,
-              // so we tend to ignore them
-              boolean isInMaintenance = ! MaintenanceState.OFF.toString().
-                equals(hostComponentResponse.getMaintenanceState());
-
-              if (state.equals(State.DISABLED)) {
-                hasDisabled = true;
-              }
-
-              if (isInMaintenance & !componentInfo.isClient()) {
-                hasMM = true;
-                if ( maxMMState == null || state.ordinal() > maxMMState.ordinal()) {
-                  maxMMState = state;
+          for (ServiceComponent component : service.getServiceComponents().values()) {
+            for (State state : STATES) {
+              for (boolean isInMaintenance : new boolean[] { false, true }) {
+                // Components in MM should not affect service status,
+                // so we tend to ignore them
+                if (getHostComponentCount(service, component, state, isInMaintenance) == 0) {
+                  continue;
                 }
-              }
 
-              if (componentInfo.isMaster()) {
-                if (state.equals(State.STARTED) || ! isInMaintenance) {
-                  // We rely on master's state to determine service state
-                  hasMaster = true;
+                if (state.equals(State.DISABLED)) {
+                  hasDisabled = true;
                 }
 
-                if (! state.equals(State.STARTED) &&
-                  ! isInMaintenance &&  // Ignore status of MM component
-                  ( masterState == null || state.ordinal() > masterState.ordinal())) {
-                  masterState = state;
-                }
-              } else if (componentInfo.isClient()) {
-                hasClient = true;
-                if (!state.equals(State.INSTALLED) &&
-                  (clientState == null || state.ordinal() > clientState.ordinal())) {
-                  clientState = state;
+                if (isInMaintenance & !component.isClientComponent()) {
+                  hasMM = true;
+                  if ( maxMMState == null || state.ordinal() > maxMMState.ordinal()) {
+                    maxMMState = state;
+                  }
                 }
-              } else {
-                if (state.equals(State.STARTED) || ! isInMaintenance) {
-                  // We rely on slaves's state to determine service state
-                  hasOther = true;
-                }
-                if (! state.equals(State.STARTED) &&
-                  ! isInMaintenance && // Ignore status of MM component
-                  ( otherState == null || state.ordinal() > otherState.ordinal())) {
-                  otherState = state;
+
+                if (component.isMasterComponent()) {
+                  if (state.equals(State.STARTED) || ! isInMaintenance) {
+                    // We rely on master's state to determine service state
+                    hasMaster = true;
+                  }
+
+                  if (! state.equals(State.STARTED) &&
+                    ! isInMaintenance &&  // Ignore status of MM component
+                    ( masterState == null || state.ordinal() > masterState.ordinal())) {
+                    masterState = state;
+                  }
+                } else if (component.isClientComponent()) {
+                  hasClient = true;
+                  if (!state.equals(State.INSTALLED) &&
+                    (clientState == null || state.ordinal() > clientState.ordinal())) {
+                    clientState = state;
+                  }
+                } else {
+                  if (state.equals(State.STARTED) || ! isInMaintenance) {
+                    // We rely on slaves's state to determine service state
+                    hasOther = true;
+                  }
+                  if (! state.equals(State.STARTED) &&
+                    ! isInMaintenance && // Ignore status of MM component
+                    ( otherState == null || state.ordinal() > otherState.ordinal())) {
+                    otherState = state;
+                  }
                 }
               }
-            } catch (ObjectNotFoundException e) {
-              // component doesn't exist, nothing to do
             }
           }
 
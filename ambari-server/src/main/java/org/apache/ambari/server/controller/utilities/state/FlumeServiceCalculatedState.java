@@ -20,14 +20,10 @@ package org.apache.ambari.server.controller.utilities.state;
 
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.StaticallyInject;
-import org.apache.ambari.server.controller.ServiceComponentHostRequest;
-import org.apache.ambari.server.controller.ServiceComponentHostResponse;
-import org.apache.ambari.server.state.Cluster;
+import org.apache.ambari.server.state.Service;
+import org.apache.ambari.server.state.ServiceComponent;
 import org.apache.ambari.server.state.State;
 
-import java.util.Collections;
-import java.util.Set;
-
 /**
  * Determines the service status for Flume.  Generically, this means that
  * the state of Flume is the lowest ordinal state calculated.  For example:
@@ -43,20 +39,15 @@ public final class FlumeServiceCalculatedState extends DefaultServiceCalculatedS
   @Override
   public State getState(String clusterName, String serviceName) {
     try {
-      Cluster cluster = getCluster(clusterName);
-      if (cluster != null && managementControllerProvider != null) {
-
-        ServiceComponentHostRequest request = new ServiceComponentHostRequest(clusterName,
-          serviceName, null, null, null);
-
-        Set<ServiceComponentHostResponse> hostComponentResponses =
-          managementControllerProvider.get().getHostComponents(Collections.singleton(request));
-
+      Service service = getService(clusterName, serviceName);
+      if (service != null) {
         State state = State.UNKNOWN;
-        for (ServiceComponentHostResponse schr : hostComponentResponses) {
-          State schState = getHostComponentState(schr);
-          if (schState.ordinal() < state.ordinal()) {
-            state = schState;
+        for (ServiceComponent component : service.getServiceComponents().values()) {
+          for (State schState : STATES) {
+            if (schState.ordinal() < state.ordinal()
+              && component.getStateCounts().getCount(schState) > 0) {
+              state = schState;
+            }
           }
         }
         return state;
@@ -19,19 +19,11 @@
 package org.apache.ambari.server.controller.utilities.state;
 
 import org.apache.ambari.server.AmbariException;
-import org.apache.ambari.server.ObjectNotFoundException;
 import org.apache.ambari.server.StaticallyInject;
-import org.apache.ambari.server.api.services.AmbariMetaInfo;
-import org.apache.ambari.server.controller.ServiceComponentHostRequest;
-import org.apache.ambari.server.controller.ServiceComponentHostResponse;
-import org.apache.ambari.server.state.Cluster;
-import org.apache.ambari.server.state.ComponentInfo;
-import org.apache.ambari.server.state.StackId;
+import org.apache.ambari.server.state.Service;
+import org.apache.ambari.server.state.ServiceComponent;
 import org.apache.ambari.server.state.State;
 
-import java.util.Collections;
-import java.util.Set;
-
 /**
  * Calculator of HDFS service state.
  */
@@ -42,61 +34,50 @@ public final class HDFSServiceCalculatedState extends DefaultServiceCalculatedSt
   @Override
   public State getState(String clusterName, String serviceName) {
     try {
-      Cluster cluster = getCluster(clusterName);
-      if (cluster != null && managementControllerProvider != null) {
-        AmbariMetaInfo ambariMetaInfo = managementControllerProvider.get().getAmbariMetaInfo();
-        StackId stackId = cluster.getDesiredStackVersion();
-
-        ServiceComponentHostRequest request = new ServiceComponentHostRequest(clusterName,
-          serviceName, null, null, null);
-
-        Set<ServiceComponentHostResponse> hostComponentResponses =
-          managementControllerProvider.get().getHostComponents(Collections.singleton(request));
-
+      Service service = getService(clusterName, serviceName);
+      if (service != null) {
         int     nameNodeCount       = 0;
         int     nameNodeActiveCount = 0;
         boolean hasSecondary        = false;
         boolean hasJournal          = false;
         State   nonStartedState     = null;
 
-        for (ServiceComponentHostResponse hostComponentResponse : hostComponentResponses ) {
-          try {
-            ComponentInfo componentInfo = ambariMetaInfo.getComponent(stackId.getStackName(),
-              stackId.getStackVersion(), hostComponentResponse.getServiceName(),
-              hostComponentResponse.getComponentName());
+        for (ServiceComponent component : service.getServiceComponents().values()) {
+          // only the components with host components, as when scanning them
+          if (component.isMasterComponent() && component.getStateCounts().getTotalCount() > 0) {
+            String componentName = component.getName();
+            boolean isNameNode = false;
 
-            if (componentInfo.isMaster()) {
-              String componentName = hostComponentResponse.getComponentName();
-              boolean isNameNode = false;
+            switch (componentName) {
+              case "NAMENODE":
+                nameNodeCount += component.getStateCounts().getTotalCount();
+                isNameNode = true;
+                break;
+              case "SECONDARY_NAMENODE":
+                hasSecondary = true;
+                break;
+              case "JOURNALNODE":
+                hasJournal = true;
+                break;
+            }
 
-              switch (componentName) {
-                case "NAMENODE":
-                  ++nameNodeCount;
-                  isNameNode = true;
-                  break;
-                case "SECONDARY_NAMENODE":
-                  hasSecondary = true;
-                  break;
-                case "JOURNALNODE":
-                  hasJournal = true;
-                  break;
+            for (State state : STATES) {
+              int count = component.getStateCounts().getCount(state);
+              if (count == 0) {
+                continue;
               }
 
-              State state = getHostComponentState(hostComponentResponse);
-
               switch (state) {
                 case STARTED:
                 case DISABLED:
                   if (isNameNode) {
-                    ++nameNodeActiveCount;
+                    nameNodeActiveCount += count;
                   }
                   break;
                 default:
                   nonStartedState = state;
               }
             }
-          } catch (ObjectNotFoundException e) {
-            // component doesn't exist, nothing to do
           }
         }
 
@@ -19,19 +19,11 @@
 package org.apache.ambari.server.controller.utilities.state;
 
 import org.apache.ambari.server.AmbariException;
-import org.apache.ambari.server.ObjectNotFoundException;
 import org.apache.ambari.server.StaticallyInject;
-import org.apache.ambari.server.api.services.AmbariMetaInfo;
-import org.apache.ambari.server.controller.ServiceComponentHostRequest;
-import org.apache.ambari.server.controller.ServiceComponentHostResponse;
-import org.apache.ambari.server.state.Cluster;
-import org.apache.ambari.server.state.ComponentInfo;
-import org.apache.ambari.server.state.StackId;
+import org.apache.ambari.server.state.Service;
+import org.apache.ambari.server.state.ServiceComponent;
 import org.apache.ambari.server.state.State;
 
-import java.util.Collections;
-import java.util.Set;
-
 /**
  * Calculator of HIVE service state.
  */
@@ -42,17 +34,8 @@ public final class HiveServiceCalculatedState extends DefaultServiceCalculatedSt
   @Override
   public State getState(String clusterName, String serviceName) {
     try {
-      Cluster cluster = getCluster(clusterName);
-      if (cluster != null && managementControllerProvider != null) {
-        AmbariMetaInfo ambariMetaInfo = managementControllerProvider.get().getAmbariMetaInfo();
-        StackId stackId = cluster.getDesiredStackVersion();
-
-        ServiceComponentHostRequest request = new ServiceComponentHostRequest(clusterName,
-          serviceName, null, null, null);
-
-        Set<ServiceComponentHostResponse> hostComponentResponses =
-          managementControllerProvider.get().getHostComponents(Collections.singleton(request));
-
+      Service service = getService(clusterName, serviceName);
+      if (service != null) {
         int activeHiveMetastoreComponentCount = 0;
         State nonStartedState = null;
         boolean embeddedMysqlComponentExists = false;
@@ -60,25 +43,25 @@ public final class HiveServiceCalculatedState extends DefaultServiceCalculatedSt
         boolean webHcatComponentStarted = false;
         boolean mysqlComponentStarted = false;
 
-        for (ServiceComponentHostResponse hostComponentResponse : hostComponentResponses ) {
-          try {
-            ComponentInfo componentInfo = ambariMetaInfo.getComponent(stackId.getStackName(),
-              stackId.getStackVersion(), hostComponentResponse.getServiceName(),
-              hostComponentResponse.getComponentName());
-
-            if (componentInfo.isMaster()) {
-              State state = getHostComponentState(hostComponentResponse);
+        for (ServiceComponent component : service.getServiceComponents().values()) {
+          // only the components with host components, as when scanning them
+          if (component.isMasterComponent() && component.getStateCounts().getTotalCount() > 0) {
+            String componentName = component.getName();
+            if (componentName.equals("MYSQL_SERVER")) {
+              embeddedMysqlComponentExists = true;
+            }
 
-              String componentName = hostComponentResponse.getComponentName();
-              if (componentName.equals("MYSQL_SERVER")) {
-                embeddedMysqlComponentExists = true;
+            for (State state : STATES) {
+              int count = component.getStateCounts().getCount(state);
+              if (count == 0) {
+                continue;
               }
 
               switch (state) {
                 case STARTED:
                 case DISABLED:
                   if (componentName.equals("HIVE_METASTORE")) {
-                    ++activeHiveMetastoreComponentCount;
+                    activeHiveMetastoreComponentCount += count;
                   } else if (componentName.equals("HIVE_SERVER")) {
                     hiveServerComponentStarted = true;
                   } else if (componentName.equals("MYSQL_SERVER")) {
@@ -91,8 +74,6 @@ public final class HiveServiceCalculatedState extends DefaultServiceCalculatedSt
                   nonStartedState = state;
               }
             }
-          } catch (ObjectNotFoundException e) {
-            // component doesn't exist, nothing to do
           }
         }
 
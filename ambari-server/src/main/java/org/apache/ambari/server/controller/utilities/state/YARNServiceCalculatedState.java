@@ -19,19 +19,11 @@
 package org.apache.ambari.server.controller.utilities.state;
 
 import org.apache.ambari.server.AmbariException;
-import org.apache.ambari.server.ObjectNotFoundException;
 import org.apache.ambari.server.StaticallyInject;
-import org.apache.ambari.server.api.services.AmbariMetaInfo;
-import org.apache.ambari.server.controller.ServiceComponentHostRequest;
-import org.apache.ambari.server.controller.ServiceComponentHostResponse;
-import org.apache.ambari.server.state.Cluster;
-import org.apache.ambari.server.state.ComponentInfo;
-import org.apache.ambari.server.state.StackId;
+import org.apache.ambari.server.state.Service;
+import org.apache.ambari.server.state.ServiceComponent;
 import org.apache.ambari.server.state.State;
 
-import java.util.Collections;
-import java.util.Set;
-
 /**
  * Calculator of YARN service state.
  */
@@ -42,37 +34,28 @@ public final class YARNServiceCalculatedState extends DefaultServiceCalculatedSt
   @Override
   public State getState(String clusterName, String serviceName) {
     try {
-      Cluster cluster = getCluster(clusterName);
-      if (cluster != null && managementControllerProvider != null) {
-        AmbariMetaInfo ambariMetaInfo = managementControllerProvider.get().getAmbariMetaInfo();
-        StackId stackId = cluster.getDesiredStackVersion();
-
-        ServiceComponentHostRequest request = new ServiceComponentHostRequest(clusterName,
-          serviceName, null, null, null);
-
-        Set<ServiceComponentHostResponse> hostComponentResponses =
-          managementControllerProvider.get().getHostComponents(Collections.singleton(request));
-
+      Service service = getService(clusterName, serviceName);
+      if (service != null) {
         int     resourceManagerActiveCount      = 0;
         boolean isAppTimeLineServerActive       = false;
         State   nonStartedState                 = null;
 
-        for (ServiceComponentHostResponse hostComponentResponse : hostComponentResponses ) {
-          try {
-            ComponentInfo componentInfo = ambariMetaInfo.getComponent(stackId.getStackName(),
-              stackId.getStackVersion(), hostComponentResponse.getServiceName(),
-              hostComponentResponse.getComponentName());
-
-            if (componentInfo.isMaster()) {
-              String componentName = hostComponentResponse.getComponentName();
+        for (ServiceComponent component : service.getServiceComponents().values()) {
+          // only the components with host components, as when scanning them
+          if (component.isMasterComponent() && component.getStateCounts().getTotalCount() > 0) {
+            String componentName = component.getName();
 
-              State state = getHostComponentState(hostComponentResponse);
+            for (State state : STATES) {
+              int count = component.getStateCounts().getCount(state);
+              if (count == 0) {
+                continue;
+              }
 
               switch (state) {
                 case STARTED:
                 case DISABLED:
                   if (componentName.equals("RESOURCEMANAGER")) {
-                    ++resourceManagerActiveCount;
+                    resourceManagerActiveCount += count;
                   } else if (componentName.equals("APP_TIMELINE_SERVER")) {
                     isAppTimeLineServerActive = true;
                   }
@@ -81,8 +64,6 @@ public final class YARNServiceCalculatedState extends DefaultServiceCalculatedSt
                   nonStartedState = state;
               }
             }
-          } catch (ObjectNotFoundException e) {
-            // component doesn't exist, nothing to do
           }
         }
 
@@ -250,6 +250,36 @@ public class RoleCommandOrder {
     return 0;
   }
 
+  /**
+   * Returns whether the command on a role waits for the same command on
+   * another role, either directly or through the roles it waits for.
+   *
+   * @param blocked the role which may be blocked
+   * @param blocker the role which may block it
+   * @param cmd the command on both roles
+   */
+  public boolean isBlockedBy(Role blocked, Role blocker, RoleCommand cmd) {
+    RoleCommandPair target = new RoleCommandPair(blocker, cmd);
+    Set<RoleCommandPair> visited = new HashSet<RoleCommandPair>();
+    Deque<RoleCommandPair> pending = new ArrayDeque<RoleCommandPair>();
+    pending.add(new RoleCommandPair(blocked, cmd));
+    while (!pending.isEmpty()) {
+      Set<RoleCommandPair> deps = this.dependencies.get(pending.remove());
+      if (deps == null) {
+        continue;
+      }
+      for (RoleCommandPair dep : deps) {
+        if (dep.equals(target)) {
+          return true;
+        }
+        if (dep.getCmd() == cmd && visited.add(dep)) {
+          pending.add(dep);
+        }
+      }
+    }
+    return false;
+  }
+
   /**
    * Returns transitive dependencies as a services list
    * @param service to check if it depends on another services
@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link ConfigGroupHostMapping}s of all hosts, indexed by host and by
+ * config group. There is at most one mapping per host and group, as in the
+ * database.
+ * <p/>
+ * The mappings of a host are an immutable map replaced on write, so readers
+ * never lock and never see a partial update. Writes are serialized.
+ */
+public class ConfigGroupHostMappingIndex {
+
+  /**
+   * Host id to config group id to mapping. A host keeps an empty map once
+   * all of its mappings are removed.
+   */
+  private final ConcurrentMap<Long, Map<Long, ConfigGroupHostMapping>> byHost =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Config group id to host id to mapping.
+   */
+  private final ConcurrentMap<Long, ConcurrentMap<Long, ConfigGroupHostMapping>> byGroup =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Adds the mappings, replacing the ones of the same host and group.
+   *
+   * @param mappings
+   *          the mappings to index
+   */
+  public synchronized void putAll(Collection<ConfigGroupHostMapping> mappings) {
+    Map<Long, Map<Long, ConfigGroupHostMapping>> updated = new HashMap<>();
+    for (ConfigGroupHostMapping mapping : mappings) {
+      Map<Long, ConfigGroupHostMapping> groups = updated.get(mapping.getHostId());
+      if (groups == null) {
+        groups = copy(byHost.get(mapping.getHostId()));
+        updated.put(mapping.getHostId(), groups);
+      }
+      groups.put(mapping.getConfigGroupId(), mapping);
+      getHosts(mapping.getConfigGroupId()).put(mapping.getHostId(), mapping);
+    }
+
+    for (Map.Entry<Long, Map<Long, ConfigGroupHostMapping>> entry : updated.entrySet()) {
+      byHost.put(entry.getKey(), Collections.unmodifiableMap(entry.getValue()));
+    }
+  }
+
+  /**
+   * Adds the mapping, replacing the one of the same host and group.
+   *
+   * @param mapping
+   *          the mapping to index
+   */
+  public void put(ConfigGroupHostMapping mapping) {
+    putAll(Collections.singleton(mapping));
+  }
+
+  /**
+   * Removes the mapping of the host to the group.
+   *
+   * @param hostId
+   *          the host id
+   * @param groupId
+   *          the config group id
+   */
+  public synchronized void remove(Long hostId, Long groupId) {
+    Map<Long, ConfigGroupHostMapping> groups = byHost.get(hostId);
+    if (groups != null && groups.containsKey(groupId)) {
+      groups = copy(groups);
+      groups.remove(groupId);
+      byHost.put(hostId, Collections.unmodifiableMap(groups));
+    }
+
+    ConcurrentMap<Long, ConfigGroupHostMapping> hosts = byGroup.get(groupId);
+    if (hosts != null) {
+      hosts.remove(hostId);
+    }
+  }
+
+  /**
+   * Removes the mappings of all hosts to the group.
+   *
+   * @param groupId
+   *          the config group id
+   */
+  public synchronized void removeGroup(Long groupId) {
+    ConcurrentMap<Long, ConfigGroupHostMapping> hosts = byGroup.remove(groupId);
+    if (hosts == null) {
+      return;
+    }
+
+    for (Long hostId : hosts.keySet()) {
+      Map<Long, ConfigGroupHostMapping> groups = copy(byHost.get(hostId));
+      groups.remove(groupId);
+      byHost.put(hostId, Collections.unmodifiableMap(groups));
+    }
+  }
+
+  /**
+   * Removes the mappings of the host to all groups.
+   *
+   * @param hostId
+   *          the host id
+   */
+  public synchronized void removeHost(Long hostId) {
+    Map<Long, ConfigGroupHostMapping> groups = byHost.get(hostId);
+    if (groups == null) {
+      return;
+    }
+
+    byHost.put(hostId, Collections.<Long, ConfigGroupHostMapping>emptyMap());
+    for (Long groupId : groups.keySet()) {
+      ConcurrentMap<Long, ConfigGroupHostMapping> hosts = byGroup.get(groupId);
+      if (hosts != null) {
+        hosts.remove(hostId);
+      }
+    }
+  }
+
+  /**
+   * Removes all mappings.
+   */
+  public synchronized void clear() {
+    byHost.clear();
+    byGroup.clear();
+  }
+
+  /**
+   * @return a new set of the mappings of the host, or {@code null} if the host
+   *         never had any
+   */
+  public Set<ConfigGroupHostMapping> getByHost(Long hostId) {
+    Map<Long, ConfigGroupHostMapping> groups = byHost.get(hostId);
+    return groups == null ? null : new HashSet<>(groups.values());
+  }
+
+  /**
+   * @return a new set of the mappings of the group
+   */
+  public Set<ConfigGroupHostMapping> getByGroup(Long groupId) {
+    ConcurrentMap<Long, ConfigGroupHostMapping> hosts = byGroup.get(groupId);
+    return hosts == null ? new HashSet<ConfigGroupHostMapping>() : new HashSet<>(hosts.values());
+  }
+
+  private ConcurrentMap<Long, ConfigGroupHostMapping> getHosts(Long groupId) {
+    ConcurrentMap<Long, ConfigGroupHostMapping> hosts = byGroup.get(groupId);
+    if (hosts == null) {
+      hosts = new ConcurrentHashMap<>();
+      byGroup.put(groupId, hosts);
+    }
+    return hosts;
+  }
+
+  private static Map<Long, ConfigGroupHostMapping> copy(Map<Long, ConfigGroupHostMapping> map) {
+    return map == null ? new HashMap<Long, ConfigGroupHostMapping>() : new HashMap<>(map);
+  }
+}
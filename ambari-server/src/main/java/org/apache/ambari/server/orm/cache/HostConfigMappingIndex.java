@@ -0,0 +1,333 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link HostConfigMapping}s of all hosts, indexed by host, cluster and
+ * type, with the selected mappings of each host and cluster kept apart, and by
+ * cluster, type and host for the lookups across hosts.
+ * <p/>
+ * Everything below the host level is immutable and replaced on write, so
+ * readers never lock and never see a partial update. Writes are serialized
+ * and only copy the maps of the host and cluster they change.
+ */
+public class HostConfigMappingIndex {
+
+  private static final HostConfigMapping[] NO_MAPPINGS = new HostConfigMapping[0];
+
+  /**
+   * Host id to cluster id to mappings.
+   */
+  private final ConcurrentMap<Long, Map<Long, ClusterMappings>> byHost = new ConcurrentHashMap<>();
+
+  /**
+   * Cluster id to type to host id to mappings, sharing the
+   * {@link TypeMappings} of {@link #byHost}.
+   */
+  private final ConcurrentMap<Long, ConcurrentMap<String, ConcurrentMap<Long, TypeMappings>>> byClusterAndType =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Adds the mappings, replacing the equal ones already indexed.
+   *
+   * @param mappings
+   *          the mappings to index, the ones without a host are skipped
+   */
+  public synchronized void putAll(Collection<HostConfigMapping> mappings) {
+    Map<Long, Map<Long, Map<String, Set<HostConfigMapping>>>> added = new HashMap<>();
+    for (HostConfigMapping mapping : mappings) {
+      if (mapping.getHostId() == null) {
+        continue;
+      }
+
+      Map<Long, Map<String, Set<HostConfigMapping>>> clusters = added.get(mapping.getHostId());
+      if (clusters == null) {
+        clusters = new HashMap<>();
+        added.put(mapping.getHostId(), clusters);
+      }
+      Map<String, Set<HostConfigMapping>> types = clusters.get(mapping.getClusterId());
+      if (types == null) {
+        types = new HashMap<>();
+        clusters.put(mapping.getClusterId(), types);
+      }
+      Set<HostConfigMapping> set = types.get(mapping.getType());
+      if (set == null) {
+        set = new HashSet<>();
+        types.put(mapping.getType(), set);
+      }
+      set.remove(mapping);
+      set.add(mapping);
+    }
+
+    for (Map.Entry<Long, Map<Long, Map<String, Set<HostConfigMapping>>>> host : added.entrySet()) {
+      Long hostId = host.getKey();
+      Map<Long, ClusterMappings> clusters = copy(byHost.get(hostId));
+      for (Map.Entry<Long, Map<String, Set<HostConfigMapping>>> cluster : host.getValue().entrySet()) {
+        Long clusterId = cluster.getKey();
+        ClusterMappings current = clusters.get(clusterId);
+        Map<String, TypeMappings> types = current == null ? new HashMap<String, TypeMappings>()
+            : new HashMap<>(current.types);
+        for (Map.Entry<String, Set<HostConfigMapping>> type : cluster.getValue().entrySet()) {
+          TypeMappings currentType = types.get(type.getKey());
+          Set<HostConfigMapping> set = currentType == null ? type.getValue() : currentType.with(type.getValue());
+          TypeMappings updated = new TypeMappings(set);
+          types.put(type.getKey(), updated);
+          getHosts(clusterId, type.getKey()).put(hostId, updated);
+        }
+        clusters.put(clusterId, new ClusterMappings(types));
+      }
+      byHost.put(hostId, clusters);
+    }
+  }
+
+  /**
+   * Adds the mapping, replacing the equal one already indexed.
+   *
+   * @param mapping
+   *          the mapping to index, skipped if it has no host
+   */
+  public void put(HostConfigMapping mapping) {
+    putAll(Collections.singleton(mapping));
+  }
+
+  /**
+   * Removes all mappings of the host.
+   *
+   * @param hostId
+   *          the host id
+   */
+  public synchronized void removeHost(Long hostId) {
+    Map<Long, ClusterMappings> clusters = byHost.remove(hostId);
+    if (clusters == null) {
+      return;
+    }
+
+    for (Map.Entry<Long, ClusterMappings> cluster : clusters.entrySet()) {
+      for (String type : cluster.getValue().types.keySet()) {
+        getHosts(cluster.getKey(), type).remove(hostId);
+      }
+    }
+  }
+
+  /**
+   * Removes the mappings of the host in the cluster.
+   *
+   * @param hostId
+   *          the host id
+   * @param clusterId
+   *          the cluster id
+   */
+  public synchronized void removeCluster(Long hostId, Long clusterId) {
+    Map<Long, ClusterMappings> clusters = byHost.get(hostId);
+    if (clusters == null || !clusters.containsKey(clusterId)) {
+      return;
+    }
+
+    clusters = copy(clusters);
+    ClusterMappings removed = clusters.remove(clusterId);
+    byHost.put(hostId, clusters);
+    for (String type : removed.types.keySet()) {
+      getHosts(clusterId, type).remove(hostId);
+    }
+  }
+
+  /**
+   * Removes all mappings.
+   */
+  public synchronized void clear() {
+    byHost.clear();
+    byClusterAndType.clear();
+  }
+
+  /**
+   * @return {@code true} if mappings of the host were indexed and not removed
+   *         with {@link #removeHost(Long)}
+   */
+  public boolean containsHost(Long hostId) {
+    return byHost.containsKey(hostId);
+  }
+
+  /**
+   * @return a new set of the mappings of the host of the type in the cluster
+   */
+  public Set<HostConfigMapping> getByType(long clusterId, Long hostId, String type) {
+    ClusterMappings cluster = getClusterMappings(clusterId, hostId);
+    TypeMappings mappings = cluster == null ? null : cluster.types.get(type);
+    return mappings == null ? new HashSet<HostConfigMapping>() : new HashSet<>(mappings.all);
+  }
+
+  /**
+   * @return a selected mapping of the host of the type in the cluster, or
+   *         {@code null} if there is none
+   */
+  public HostConfigMapping getSelectedByType(long clusterId, Long hostId, String type) {
+    ClusterMappings cluster = getClusterMappings(clusterId, hostId);
+    TypeMappings mappings = cluster == null ? null : cluster.types.get(type);
+    if (mappings != null) {
+      for (HostConfigMapping mapping : mappings.selected) {
+        // unselected by the caller and not merged yet
+        if (mapping.getSelected() > 0) {
+          return mapping;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return a new set of the selected mappings of the host in the cluster
+   */
+  public Set<HostConfigMapping> getSelected(long clusterId, Long hostId) {
+    ClusterMappings cluster = getClusterMappings(clusterId, hostId);
+    if (cluster == null) {
+      return new HashSet<>();
+    }
+
+    Set<HostConfigMapping> result = newSet(cluster.selected.length);
+    addSelected(cluster, result);
+    return result;
+  }
+
+  /**
+   * @return a new set of the selected mappings of the host in all clusters
+   */
+  public Set<HostConfigMapping> getSelected(Long hostId) {
+    Map<Long, ClusterMappings> clusters = byHost.get(hostId);
+    if (clusters == null) {
+      return new HashSet<>();
+    }
+
+    int size = 0;
+    for (ClusterMappings cluster : clusters.values()) {
+      size += cluster.selected.length;
+    }
+    Set<HostConfigMapping> result = newSet(size);
+    for (ClusterMappings cluster : clusters.values()) {
+      addSelected(cluster, result);
+    }
+    return result;
+  }
+
+  /**
+   * @return a new list of the mappings of all hosts of the type in the
+   *         cluster
+   */
+  public List<HostConfigMapping> getByClusterAndType(long clusterId, String type) {
+    List<HostConfigMapping> result = new ArrayList<>();
+    ConcurrentMap<String, ConcurrentMap<Long, TypeMappings>> types = byClusterAndType.get(clusterId);
+    ConcurrentMap<Long, TypeMappings> hosts = types == null ? null : types.get(type);
+    if (hosts != null) {
+      for (TypeMappings mappings : hosts.values()) {
+        result.addAll(mappings.all);
+      }
+    }
+    return result;
+  }
+
+  private ClusterMappings getClusterMappings(long clusterId, Long hostId) {
+    Map<Long, ClusterMappings> clusters = byHost.get(hostId);
+    return clusters == null ? null : clusters.get(clusterId);
+  }
+
+  private ConcurrentMap<Long, TypeMappings> getHosts(Long clusterId, String type) {
+    ConcurrentMap<String, ConcurrentMap<Long, TypeMappings>> types = byClusterAndType.get(clusterId);
+    if (types == null) {
+      types = new ConcurrentHashMap<>();
+      byClusterAndType.put(clusterId, types);
+    }
+    ConcurrentMap<Long, TypeMappings> hosts = types.get(type);
+    if (hosts == null) {
+      hosts = new ConcurrentHashMap<>();
+      types.put(type, hosts);
+    }
+    return hosts;
+  }
+
+  private static void addSelected(ClusterMappings cluster, Set<HostConfigMapping> result) {
+    for (HostConfigMapping mapping : cluster.selected) {
+      // unselected by the caller and not merged yet
+      if (mapping.getSelected() > 0) {
+        result.add(mapping);
+      }
+    }
+  }
+
+  private static Set<HostConfigMapping> newSet(int size) {
+    return new HashSet<>(Math.max(16, (int) (size / .75f) + 1));
+  }
+
+  private static Map<Long, ClusterMappings> copy(Map<Long, ClusterMappings> map) {
+    return map == null ? new HashMap<Long, ClusterMappings>() : new HashMap<>(map);
+  }
+
+  /**
+   * The immutable mappings of a single host in one cluster, by type, and the
+   * selected ones of all types. Never modified once built.
+   */
+  private static final class ClusterMappings {
+    private final Map<String, TypeMappings> types;
+    private final HostConfigMapping[] selected;
+
+    private ClusterMappings(Map<String, TypeMappings> types) {
+      List<HostConfigMapping> selected = new ArrayList<>(types.size());
+      for (TypeMappings mappings : types.values()) {
+        Collections.addAll(selected, mappings.selected);
+      }
+      this.types = types;
+      this.selected = selected.toArray(NO_MAPPINGS);
+    }
+  }
+
+  /**
+   * The immutable mappings of a single host of one type in one cluster.
+   * Never modified once built.
+   */
+  private static final class TypeMappings {
+    private final Set<HostConfigMapping> all;
+    private final HostConfigMapping[] selected;
+
+    private TypeMappings(Set<HostConfigMapping> all) {
+      List<HostConfigMapping> selected = new ArrayList<>(1);
+      for (HostConfigMapping mapping : all) {
+        if (mapping.getSelected() > 0) {
+          selected.add(mapping);
+        }
+      }
+      this.all = all;
+      this.selected = selected.toArray(NO_MAPPINGS);
+    }
+
+    private Set<HostConfigMapping> with(Set<HostConfigMapping> added) {
+      Set<HostConfigMapping> set = new HashSet<>(all);
+      set.removeAll(added);
+      set.addAll(added);
+      return set;
+    }
+  }
+}
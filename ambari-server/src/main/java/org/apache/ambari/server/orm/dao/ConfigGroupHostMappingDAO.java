@@ -26,6 +26,7 @@ import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.orm.RequiresSession;
 import org.apache.ambari.server.orm.cache.ConfigGroupHostMapping;
 import org.apache.ambari.server.orm.cache.ConfigGroupHostMappingImpl;
+import org.apache.ambari.server.orm.cache.ConfigGroupHostMappingIndex;
 import org.apache.ambari.server.orm.entities.ConfigGroupEntity;
 import org.apache.ambari.server.orm.entities.ConfigGroupHostMappingEntity;
 import org.apache.ambari.server.orm.entities.ConfigGroupHostMappingEntityPK;
@@ -37,17 +38,13 @@ import org.apache.ambari.server.state.cluster.ClusterFactory;
 import org.apache.ambari.server.state.configgroup.ConfigGroup;
 import org.apache.ambari.server.state.configgroup.ConfigGroupFactory;
 import org.apache.ambari.server.state.host.HostFactory;
-import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.Predicate;
 
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
 
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.HashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -68,7 +65,10 @@ public class ConfigGroupHostMappingDAO {
   
   private final ReadWriteLock gl = new ReentrantReadWriteLock();
   
-  private Map<Long, Set<ConfigGroupHostMapping>> configGroupHostMappingByHost;
+  /**
+   * All mappings, indexed by host and by config group.
+   */
+  private final ConfigGroupHostMappingIndex configGroupHostMappingIndex = new ConfigGroupHostMappingIndex();
   
   private volatile boolean cacheLoaded;
 
@@ -79,28 +79,19 @@ public class ConfigGroupHostMappingDAO {
       gl.writeLock().lock();
       try {
         if (!cacheLoaded) {
-          if (configGroupHostMappingByHost == null) {
-            configGroupHostMappingByHost = new HashMap<Long, Set<ConfigGroupHostMapping>>();
-
-            TypedQuery<ConfigGroupHostMappingEntity> query = entityManagerProvider.get().createQuery(
-                "SELECT entity FROM ConfigGroupHostMappingEntity entity",
-                ConfigGroupHostMappingEntity.class);
-
-            List<ConfigGroupHostMappingEntity> configGroupHostMappingEntities = daoUtils.selectList(query);
-
-            for (ConfigGroupHostMappingEntity configGroupHostMappingEntity : configGroupHostMappingEntities) {
+          TypedQuery<ConfigGroupHostMappingEntity> query = entityManagerProvider.get().createQuery(
+              "SELECT entity FROM ConfigGroupHostMappingEntity entity",
+              ConfigGroupHostMappingEntity.class);
 
-              Set<ConfigGroupHostMapping> setByHost = configGroupHostMappingByHost.get((configGroupHostMappingEntity.getHostId()));
+          List<ConfigGroupHostMappingEntity> configGroupHostMappingEntities = daoUtils.selectList(query);
 
-              if (setByHost == null) {
-                setByHost = new HashSet<ConfigGroupHostMapping>();
-                configGroupHostMappingByHost.put(configGroupHostMappingEntity.getHostId(), setByHost);
-              }
-
-              ConfigGroupHostMapping configGroupHostMapping = buildConfigGroupHostMapping(configGroupHostMappingEntity);
-              setByHost.add(configGroupHostMapping);
-            }
+          List<ConfigGroupHostMapping> configGroupHostMappings =
+              new ArrayList<ConfigGroupHostMapping>(configGroupHostMappingEntities.size());
+          for (ConfigGroupHostMappingEntity configGroupHostMappingEntity : configGroupHostMappingEntities) {
+            configGroupHostMappings.add(buildConfigGroupHostMapping(configGroupHostMappingEntity));
           }
+
+          configGroupHostMappingIndex.putAll(configGroupHostMappings);
           cacheLoaded = true;
         }
       } finally {
@@ -131,12 +122,7 @@ public class ConfigGroupHostMappingDAO {
     
     populateCache();
     
-    if (!configGroupHostMappingByHost.containsKey(hostId))
-      return null;
-    
-    Set<ConfigGroupHostMapping> set = new HashSet<ConfigGroupHostMapping>(configGroupHostMappingByHost.get(hostId));
-    
-    return set;
+    return configGroupHostMappingIndex.getByHost(hostId);
     
   }
 
@@ -145,25 +131,7 @@ public class ConfigGroupHostMappingDAO {
     
     populateCache();
     
-    Set<ConfigGroupHostMapping> result = new HashSet<ConfigGroupHostMapping>();
-    
-    for (Set<ConfigGroupHostMapping> item : configGroupHostMappingByHost.values()) {
-      
-      Set<ConfigGroupHostMapping> setByHost = new HashSet<ConfigGroupHostMapping>(item);
-      
-      CollectionUtils.filter(setByHost, new Predicate() {
-        
-        @Override
-        public boolean evaluate(Object arg0) {
-          return ((ConfigGroupHostMapping) arg0).getConfigGroupId().equals(groupId);
-        }
-      });
-      
-      result.addAll(setByHost);
-      
-    }
-    
-    return result;
+    return configGroupHostMappingIndex.getByGroup(groupId);
     
   }
 
@@ -180,13 +148,7 @@ public class ConfigGroupHostMappingDAO {
     entityManagerProvider.get().persist(configGroupHostMappingEntity);
     
     //create in cache
-    Set<ConfigGroupHostMapping> set = configGroupHostMappingByHost.get(configGroupHostMappingEntity.getHostId());
-    if (set == null){
-      set = new HashSet<ConfigGroupHostMapping>();
-      configGroupHostMappingByHost.put(configGroupHostMappingEntity.getHostId(), set);
-    }
-    
-    set.add(buildConfigGroupHostMapping(configGroupHostMappingEntity));
+    configGroupHostMappingIndex.put(buildConfigGroupHostMapping(configGroupHostMappingEntity));
   }
 
   @Transactional
@@ -194,15 +156,8 @@ public class ConfigGroupHostMappingDAO {
     
     populateCache();
     
-    Set<ConfigGroupHostMapping> set = configGroupHostMappingByHost.get(configGroupHostMappingEntity.getHostId());
-    if (set == null){
-      set = new HashSet<ConfigGroupHostMapping>();
-      configGroupHostMappingByHost.put(configGroupHostMappingEntity.getHostId(), set);
-    }
-    
-    //Update object in set
-    set.remove(buildConfigGroupHostMapping(configGroupHostMappingEntity));
-    set.add(buildConfigGroupHostMapping(configGroupHostMappingEntity));
+    //Update object in cache
+    configGroupHostMappingIndex.put(buildConfigGroupHostMapping(configGroupHostMappingEntity));
     
     
     return entityManagerProvider.get().merge(configGroupHostMappingEntity);
@@ -225,18 +180,8 @@ public class ConfigGroupHostMappingDAO {
     
     entityManagerProvider.get().remove(merge(configGroupHostMappingEntity));
     
-    Set<ConfigGroupHostMapping> setByHost = configGroupHostMappingByHost.get(configGroupHostMappingEntity.getHostId());
-    
-    if (setByHost != null) {
-      CollectionUtils.filter(setByHost, new Predicate() {
-        
-        @Override
-        public boolean evaluate(Object arg0) {
-          return !((ConfigGroupHostMapping) arg0).getConfigGroupId().
-              equals(configGroupHostMappingEntity.getConfigGroupId());
-        }
-      });
-    }
+    configGroupHostMappingIndex.remove(configGroupHostMappingEntity.getHostId(),
+        configGroupHostMappingEntity.getConfigGroupId());
   }
 
   @Transactional
@@ -246,18 +191,8 @@ public class ConfigGroupHostMappingDAO {
     
     entityManagerProvider.get().remove(findByPK(configGroupHostMappingEntityPK));
     
-    Set<ConfigGroupHostMapping> setByHost = configGroupHostMappingByHost.get(configGroupHostMappingEntityPK.getHostId());
-    
-    if (setByHost != null) {
-      CollectionUtils.filter(setByHost, new Predicate() {
-        
-        @Override
-        public boolean evaluate(Object arg0) {
-          return !((ConfigGroupHostMapping) arg0).getConfigGroupId().
-              equals(configGroupHostMappingEntityPK.getConfigGroupId());
-        }
-      });
-    }
+    configGroupHostMappingIndex.remove(configGroupHostMappingEntityPK.getHostId(),
+        configGroupHostMappingEntityPK.getConfigGroupId());
     
   }
 
@@ -274,21 +209,14 @@ public class ConfigGroupHostMappingDAO {
     // from re-ordering delete
     entityManagerProvider.get().flush();
     
-    for (Set<ConfigGroupHostMapping> setByHost : configGroupHostMappingByHost.values()) {
-      
-      CollectionUtils.filter(setByHost, new Predicate() {
-        
-        @Override
-        public boolean evaluate(Object arg0) {
-          return !((ConfigGroupHostMapping) arg0).getConfigGroupId().equals(groupId);
-        }
-      });
-    }
+    configGroupHostMappingIndex.removeGroup(groupId);
     
   }
 
   @Transactional
   public void removeAllByHost(Long hostId) {
+    populateCache();
+
     TypedQuery<String> query = entityManagerProvider.get().createQuery
       ("DELETE FROM ConfigGroupHostMappingEntity confighosts WHERE " +
         "confighosts.hostId = ?1", String.class);
@@ -296,9 +224,7 @@ public class ConfigGroupHostMappingDAO {
     daoUtils.executeUpdate(query, hostId);
     
     
-    Set<ConfigGroupHostMapping> setByHost = configGroupHostMappingByHost.get(hostId);
-    
-    setByHost.clear();
+    configGroupHostMappingIndex.removeHost(hostId);
   }
   
   private ConfigGroupHostMapping buildConfigGroupHostMapping(
@@ -18,13 +18,16 @@
 
 package org.apache.ambari.server.orm.dao;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.TypedQuery;
 
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.orm.RequiresSession;
 import org.apache.ambari.server.orm.entities.HostComponentStateEntity;
 import org.apache.ambari.server.orm.entities.HostEntity;
@@ -45,8 +48,23 @@ public class HostComponentStateDAO {
   @Inject
   HostDAO hostDAO;
 
+  @Inject
+  Configuration configuration;
+
+  /**
+   * Host component states reported by heartbeats which are not merged yet, by
+   * id. The finders return these instances in place of the ones they load.
+   */
+  private final WriteBehindCache<Long, HostComponentStateEntity> writeBehindCache =
+      new WriteBehindCache<Long, HostComponentStateEntity>();
+
   @RequiresSession
   public HostComponentStateEntity findById(long id) {
+    HostComponentStateEntity pending = writeBehindCache.get(id);
+    if (null != pending) {
+      return pending;
+    }
+
     return entityManagerProvider.get().find(HostComponentStateEntity.class, id);
   }
 
@@ -54,7 +72,7 @@ public class HostComponentStateDAO {
   public List<HostComponentStateEntity> findAll() {
     final TypedQuery<HostComponentStateEntity> query = entityManagerProvider.get().createNamedQuery("HostComponentStateEntity.findAll", HostComponentStateEntity.class);
     try {
-      return query.getResultList();
+      return supplementWithPending(query.getResultList());
     } catch (NoResultException ignored) {
     }
     return null;
@@ -71,7 +89,7 @@ public class HostComponentStateDAO {
     final TypedQuery<HostComponentStateEntity> query = entityManagerProvider.get().createNamedQuery("HostComponentStateEntity.findByHost", HostComponentStateEntity.class);
     query.setParameter("hostName", hostName);
 
-    return daoUtils.selectList(query);
+    return supplementWithPending(daoUtils.selectList(query));
   }
 
   /**
@@ -85,7 +103,7 @@ public class HostComponentStateDAO {
     final TypedQuery<HostComponentStateEntity> query = entityManagerProvider.get().createNamedQuery("HostComponentStateEntity.findByService", HostComponentStateEntity.class);
     query.setParameter("serviceName", serviceName);
 
-    return daoUtils.selectList(query);
+    return supplementWithPending(daoUtils.selectList(query));
   }
 
   /**
@@ -101,7 +119,7 @@ public class HostComponentStateDAO {
     query.setParameter("serviceName", serviceName);
     query.setParameter("componentName", componentName);
 
-    return daoUtils.selectList(query);
+    return supplementWithPending(daoUtils.selectList(query));
   }
 
   /**
@@ -119,7 +137,7 @@ public class HostComponentStateDAO {
     query.setParameter("componentName", componentName);
     query.setParameter("hostName", hostName);
 
-    return daoUtils.selectSingle(query);
+    return supplementWithPending(daoUtils.selectSingle(query));
   }
 
   /**
@@ -146,7 +164,7 @@ public class HostComponentStateDAO {
     query.setParameter("componentName", componentName);
     query.setParameter("hostId", hostId);
 
-    return daoUtils.selectSingle(query);
+    return supplementWithPending(daoUtils.selectSingle(query));
   }
 
   @Transactional
@@ -168,6 +186,13 @@ public class HostComponentStateDAO {
   @Transactional
   public HostComponentStateEntity merge(HostComponentStateEntity hostComponentStateEntity) {
     EntityManager entityManager = entityManagerProvider.get();
+
+    // write the reported state first, so that it is not lost if this is another instance
+    HostComponentStateEntity pending = writeBehindCache.remove(hostComponentStateEntity.getId());
+    if (null != pending && pending != hostComponentStateEntity) {
+      entityManager.merge(pending);
+    }
+
     hostComponentStateEntity = entityManager.merge(hostComponentStateEntity);
 //    Flush call here causes huge performance loss on bulk update of host components
 //    we should consider other solutions for issues with concurrent transactions
@@ -175,8 +200,70 @@ public class HostComponentStateDAO {
     return hostComponentStateEntity;
   }
 
+  /**
+   * Merges the host component state with the next flush if
+   * {@link Configuration#isStateWriteBehindEnabled()}, or right away
+   * otherwise. Only for state which the agent reports again if it is lost.
+   *
+   * @param hostComponentStateEntity
+   *          the host component state
+   * @param changed
+   *          {@code false} if the reported state was the same as the current
+   *          one, in which case there is nothing to merge
+   */
+  public void mergeLater(HostComponentStateEntity hostComponentStateEntity, boolean changed) {
+    if (configuration.isStateWriteBehindEnabled()) {
+      if (changed) {
+        writeBehindCache.put(hostComponentStateEntity.getId(), hostComponentStateEntity);
+      } else {
+        writeBehindCache.skip();
+      }
+    } else if (changed) {
+      merge(hostComponentStateEntity);
+    }
+  }
+
+  /**
+   * Merges the host component states changed with
+   * {@link #mergeLater(HostComponentStateEntity, boolean)} in one transaction.
+   *
+   * @return the number of host component states merged
+   */
+  public int flushWriteBehindCache() {
+    return writeBehindCache.flush(new WriteBehindCache.Writer<HostComponentStateEntity>() {
+      @Override
+      public void merge(Collection<HostComponentStateEntity> entities) {
+        mergeAll(entities);
+      }
+    });
+  }
+
+  /**
+   * @return the host component states changed but not merged yet
+   */
+  public WriteBehindCache<Long, HostComponentStateEntity> getWriteBehindCache() {
+    return writeBehindCache;
+  }
+
+  /**
+   * Merges the host component states which still exist; the ones removed
+   * meanwhile, also through their cluster or service, are skipped rather
+   * than inserted again.
+   */
+  @Transactional
+  void mergeAll(Collection<HostComponentStateEntity> hostComponentStateEntities) {
+    EntityManager entityManager = entityManagerProvider.get();
+    for (HostComponentStateEntity hostComponentStateEntity : hostComponentStateEntities) {
+      if (null != entityManager.find(HostComponentStateEntity.class, hostComponentStateEntity.getId())) {
+        entityManager.merge(hostComponentStateEntity);
+      }
+    }
+  }
+
   @Transactional
   public void remove(HostComponentStateEntity hostComponentStateEntity) {
+    writeBehindCache.remove(hostComponentStateEntity.getId());
+
     HostEntity hostEntity = hostDAO.findByName(hostComponentStateEntity.getHostName());
 
     entityManagerProvider.get().remove(merge(hostComponentStateEntity));
@@ -195,6 +282,9 @@ public class HostComponentStateDAO {
    */
   @Transactional
   public void updateVersions(String version) {
+    // the bulk update must not be overwritten by a later flush
+    flushWriteBehindCache();
+
     EntityManager em = entityManagerProvider.get();
 
     // !!! first the version
@@ -214,4 +304,32 @@ public class HostComponentStateDAO {
 
     em.clear();
   }
+
+  /**
+   * Replaces the loaded entities with their pending instances, so that the
+   * reported state not merged yet is seen and not overwritten.
+   */
+  private List<HostComponentStateEntity> supplementWithPending(
+      List<HostComponentStateEntity> hostComponentStateEntities) {
+    if (null == hostComponentStateEntities || writeBehindCache.size() == 0) {
+      return hostComponentStateEntities;
+    }
+
+    List<HostComponentStateEntity> supplemented =
+        new ArrayList<HostComponentStateEntity>(hostComponentStateEntities.size());
+    for (HostComponentStateEntity hostComponentStateEntity : hostComponentStateEntities) {
+      supplemented.add(supplementWithPending(hostComponentStateEntity));
+    }
+    return supplemented;
+  }
+
+  private HostComponentStateEntity supplementWithPending(
+      HostComponentStateEntity hostComponentStateEntity) {
+    if (null == hostComponentStateEntity) {
+      return null;
+    }
+
+    HostComponentStateEntity pending = writeBehindCache.get(hostComponentStateEntity.getId());
+    return null == pending ? hostComponentStateEntity : pending;
+  }
 }
@@ -25,8 +25,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -37,11 +35,10 @@ import com.google.inject.Singleton;
 
 import org.apache.ambari.server.orm.RequiresSession;
 import org.apache.ambari.server.orm.cache.HostConfigMapping;
+import org.apache.ambari.server.orm.cache.HostConfigMappingIndex;
 import org.apache.ambari.server.orm.cache.HostConfigMappingImpl;
 import org.apache.ambari.server.orm.entities.HostConfigMappingEntity;
 import org.apache.ambari.server.orm.entities.HostEntity;
-import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.Predicate;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
@@ -62,45 +59,39 @@ public class HostConfigMappingDAO {
   private HostDAO hostDAO;
 
   private final ReadWriteLock gl = new ReentrantReadWriteLock();
-  private ConcurrentHashMap<Long, Set<HostConfigMapping>> hostConfigMappingByHost;
-  
-  private volatile boolean cacheLoaded;
-  
-  private void populateCache() {
-    
-    if (!cacheLoaded) {
-      if (hostConfigMappingByHost == null) {
-        hostConfigMappingByHost = new ConcurrentHashMap<Long, Set<HostConfigMapping>>();
 
-        TypedQuery<HostConfigMappingEntity> query = entityManagerProvider.get().createNamedQuery(
-            "HostConfigMappingEntity.findAll", HostConfigMappingEntity.class);
+  /**
+   * All mappings, indexed by host, cluster and type.
+   */
+  private final HostConfigMappingIndex hostConfigMappingIndex = new HostConfigMappingIndex();
 
-        List<HostConfigMappingEntity> hostConfigMappingEntities = daoUtils.selectList(query);
+  private volatile boolean cacheLoaded;
+
+  private void populateCache() {
 
-        for (HostConfigMappingEntity hostConfigMappingEntity : hostConfigMappingEntities) {
-          Long hostId = hostConfigMappingEntity.getHostId();
+    if (!cacheLoaded) {
+      gl.writeLock().lock();
+      try {
+        if (!cacheLoaded) {
+          TypedQuery<HostConfigMappingEntity> query = entityManagerProvider.get().createNamedQuery(
+              "HostConfigMappingEntity.findAll", HostConfigMappingEntity.class);
 
-          if (hostId == null) {
-            continue;
-          }
+          List<HostConfigMappingEntity> hostConfigMappingEntities = daoUtils.selectList(query);
 
-          Set<HostConfigMapping> setByHost;
-          if (hostConfigMappingByHost.containsKey(hostId)) {
-            setByHost = hostConfigMappingByHost.get(hostId);
-          } else {
-            setByHost = new HashSet<HostConfigMapping>();
-            hostConfigMappingByHost.put(hostId, setByHost);
+          List<HostConfigMapping> hostConfigMappings = new ArrayList<HostConfigMapping>(hostConfigMappingEntities.size());
+          for (HostConfigMappingEntity hostConfigMappingEntity : hostConfigMappingEntities) {
+            hostConfigMappings.add(buildHostConfigMapping(hostConfigMappingEntity));
           }
 
-          HostConfigMapping hostConfigMapping = buildHostConfigMapping(hostConfigMappingEntity);
-          setByHost.add(hostConfigMapping);
+          hostConfigMappingIndex.putAll(hostConfigMappings);
+          cacheLoaded = true;
         }
+      } finally {
+        gl.writeLock().unlock();
       }
-      
-      cacheLoaded = true;
     }
   }
-  
+
 
   @Transactional
   public void create(HostConfigMapping hostConfigMapping) {
@@ -110,38 +101,16 @@ public class HostConfigMappingDAO {
     entityManagerProvider.get().persist(buildHostConfigMappingEntity(hostConfigMapping));
     
     //create in cache
-    Long hostId = hostConfigMapping.getHostId();
-
-    if (hostId != null) {
-      Set<HostConfigMapping> set;
-      if (hostConfigMappingByHost.containsKey(hostId)) {
-        set = hostConfigMappingByHost.get(hostId);
-      } else {
-        set = new HashSet<HostConfigMapping>();
-        hostConfigMappingByHost.put(hostId, set);
-      }
-
-      set.add(hostConfigMapping);
-    }
+    hostConfigMappingIndex.put(hostConfigMapping);
   }
 
   @Transactional
   public HostConfigMapping merge(HostConfigMapping hostConfigMapping) {
     populateCache();
 
-    Long hostId = hostConfigMapping.getHostId();
-    if (hostId != null) {
-      Set<HostConfigMapping> set;
-      if (hostConfigMappingByHost.containsKey(hostId)) {
-        set = hostConfigMappingByHost.get(hostId);
-      } else {
-        set = new HashSet<HostConfigMapping>();
-        hostConfigMappingByHost.put(hostId, set);
-      }
-
-      //Update object in set
-      set.remove(hostConfigMapping);
-      set.add(hostConfigMapping);
+    if (hostConfigMapping.getHostId() != null) {
+      //Update object in cache
+      hostConfigMappingIndex.put(hostConfigMapping);
 
       entityManagerProvider.get().merge(buildHostConfigMappingEntity(hostConfigMapping));
     }
@@ -152,66 +121,23 @@ public class HostConfigMappingDAO {
   @RequiresSession
   public Set<HostConfigMapping> findByType(final long clusterId, Long hostId, final String type) {
     populateCache();
-    
-    if (!hostConfigMappingByHost.containsKey(hostId))
-      return Collections.emptySet();
-      
-    Set<HostConfigMapping> set = new HashSet<HostConfigMapping>(hostConfigMappingByHost.get(hostId));
-     
-    CollectionUtils.filter(set, new Predicate() {
-        
-      @Override
-      public boolean evaluate(Object arg0) {
-        return ((HostConfigMapping) arg0).getClusterId().equals(clusterId) 
-            && ((HostConfigMapping) arg0).getType().equals(type);
-      }
-    });
 
-    return set;
+    return hostConfigMappingIndex.getByType(clusterId, hostId, type);
   }
 
   @RequiresSession
   public HostConfigMapping findSelectedByType(final long clusterId,
       Long hostId, final String type) {
     populateCache();
-    
-    if (!hostConfigMappingByHost.containsKey(hostId))
-      return null;
-    
-    Set<HostConfigMapping> set = new HashSet<HostConfigMapping>(hostConfigMappingByHost.get(hostId));
-    
-    HostConfigMapping result = (HostConfigMapping) CollectionUtils.find(set, new Predicate() {
-      
-      @Override
-      public boolean evaluate(Object arg0) {
-        return ((HostConfigMapping) arg0).getClusterId().equals(clusterId) 
-            && ((HostConfigMapping) arg0).getType().equals(type)
-            && ((HostConfigMapping) arg0).getSelected() > 0;
-      }
-    });
-    
-    return result;
+
+    return hostConfigMappingIndex.getSelectedByType(clusterId, hostId, type);
   }
 
   @RequiresSession
   public Set<HostConfigMapping> findSelected(final long clusterId, Long hostId) {
     populateCache();
-    
-    if (!hostConfigMappingByHost.containsKey(hostId))
-      return Collections.emptySet();
-    
-    Set<HostConfigMapping> set = new HashSet<HostConfigMapping>(hostConfigMappingByHost.get(hostId));
-    
-    CollectionUtils.filter(set, new Predicate() {
-      
-      @Override
-      public boolean evaluate(Object arg0) {
-        return ((HostConfigMapping) arg0).getClusterId().equals(clusterId) 
-            && ((HostConfigMapping) arg0).getSelected() > 0;
-      }
-    });
-    
-    return set;
+
+    return hostConfigMappingIndex.getSelected(clusterId, hostId);
   }
 
   @RequiresSession
@@ -225,22 +151,8 @@ public class HostConfigMappingDAO {
     HashSet<HostConfigMapping> result = new HashSet<HostConfigMapping>();
 
     for (final Long hostId : hostIds) {
-      if (!hostConfigMappingByHost.containsKey(hostId))
-        continue;
-      
-      Set<HostConfigMapping> set = new HashSet<HostConfigMapping>(hostConfigMappingByHost.get(hostId));
-      
-      CollectionUtils.filter(set, new Predicate() {
-        
-        @Override
-        public boolean evaluate(Object arg0) {
-          return ((HostConfigMapping) arg0).getHostId().equals(hostId) &&
-              ((HostConfigMapping) arg0).getSelected() > 0;
-        }
-      });
-      
-      result.addAll(set);
-    } 
+      result.addAll(hostConfigMappingIndex.getSelected(hostId));
+    }
     
     return result;
   }
@@ -255,24 +167,11 @@ public class HostConfigMappingDAO {
     
     for (String type : types) {
       if (!mappingsByType.containsKey(type)) {
-        mappingsByType.put(type, new ArrayList<HostConfigMapping>());
-      }
-    }
-
-    if (!types.isEmpty()) {
-      List<HostConfigMapping> mappings = new ArrayList<HostConfigMapping>();
-
-      for (Set<HostConfigMapping> entries : hostConfigMappingByHost.values()) {
-        
-        for (HostConfigMapping entry : entries) {
-          
-          if (types.contains(entry.getType()) && entry.getClusterId().equals(clusterId))
-            mappings.add(new HostConfigMappingImpl(entry));
+        List<HostConfigMapping> mappings = new ArrayList<HostConfigMapping>();
+        for (HostConfigMapping entry : hostConfigMappingIndex.getByClusterAndType(clusterId, type)) {
+          mappings.add(new HostConfigMappingImpl(entry));
         }
-      }
-
-      for (HostConfigMapping mapping : mappings) {
-        mappingsByType.get(mapping.getType()).add(mapping);
+        mappingsByType.put(type, mappings);
       }
     }
 
@@ -293,7 +192,7 @@ public class HostConfigMappingDAO {
 
     HostEntity hostEntity = hostDAO.findById(hostId);
     if (hostEntity != null) {
-      if (hostConfigMappingByHost.containsKey(hostEntity.getHostId())) {
+      if (hostConfigMappingIndex.containsHost(hostEntity.getHostId())) {
         // Delete from db
         TypedQuery<HostConfigMappingEntity> query = entityManagerProvider.get().createNamedQuery(
             "HostConfigMappingEntity.findByHostId", HostConfigMappingEntity.class);
@@ -307,7 +206,7 @@ public class HostConfigMappingDAO {
           entityManagerProvider.get().remove(entity);
         }
         // Update the cache
-        hostConfigMappingByHost.remove(hostEntity.getHostId());
+        hostConfigMappingIndex.removeHost(hostEntity.getHostId());
       }
     }
   }
@@ -322,7 +221,7 @@ public class HostConfigMappingDAO {
 
     HostEntity hostEntity = hostDAO.findByName(hostName);
     if (hostEntity != null) {
-      if (hostConfigMappingByHost.containsKey(hostName)) {
+      if (hostConfigMappingIndex.containsHost(hostEntity.getHostId())) {
         // Delete from db
         TypedQuery<HostConfigMappingEntity> query = entityManagerProvider.get().createQuery(
             "SELECT entity FROM HostConfigMappingEntity entity " +
@@ -336,13 +235,7 @@ public class HostConfigMappingDAO {
         }
 
         // Remove from cache items with given clusterId
-        Set<HostConfigMapping> set = hostConfigMappingByHost.get(hostEntity.getHostId());
-        CollectionUtils.filter(set, new Predicate() {
-          @Override
-          public boolean evaluate(Object arg0) {
-            return !((HostConfigMapping) arg0).getClusterId().equals(clusterId);
-          }
-        });
+        hostConfigMappingIndex.removeCluster(hostEntity.getHostId(), clusterId);
       }
     }
   }
@@ -26,7 +26,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -57,6 +56,8 @@ import org.apache.ambari.server.orm.entities.HostEntity;
 import org.apache.ambari.server.orm.entities.HostRoleCommandEntity;
 import org.apache.ambari.server.orm.entities.HostRoleCommandEntity_;
 import org.apache.ambari.server.orm.entities.StageEntity;
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.QueryHints;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -96,6 +97,14 @@ public class HostRoleCommandDAO {
       " GROUP BY hrc.requestId, hrc.stageId HAVING hrc.requestId = :requestId",
       HostRoleCommandStatusSummaryDTO.class.getName());
 
+  /**
+   * JPQL to get the stage, status and times of all of the tasks of a request,
+   * which are then counted in memory by {@link HostRoleCommandStatusCounts}.
+   */
+  private static final String TASK_STATUS_COUNTS_SQL = "SELECT hrc.taskId, hrc.stageId, " +
+      "hrc.stage.skippable, hrc.status, hrc.startTime, hrc.endTime " +
+      "FROM HostRoleCommandEntity hrc WHERE hrc.requestId = :requestId";
+
   /**
    * SQL template to get requests that have at least one task in any of the
    * specified statuses.
@@ -109,10 +118,12 @@ public class HostRoleCommandDAO {
   private static final String COMPLETED_REQUESTS_SQL = "SELECT DISTINCT task.requestId FROM HostRoleCommandEntity task WHERE task.requestId NOT IN (SELECT task.requestId FROM HostRoleCommandEntity task WHERE task.status IN :notCompletedStatuses) ORDER BY task.requestId {0}";
 
   /**
-   * A cache that holds {@link HostRoleCommandStatusSummaryDTO} grouped by stage
-   * id for requests by request id. The JPQL computing the host role command
-   * status summary for a request is rather expensive thus this cache helps
-   * reducing the load on the database.
+   * A cache that holds the {@link HostRoleCommandStatusCounts} of requests by
+   * request id, from which the {@link HostRoleCommandStatusSummaryDTO}s grouped
+   * by stage id are built. The JPQL computing the host role command status
+   * summary for a request is rather expensive thus the counts are loaded once
+   * and then updated in place as tasks are created and merged, rather than
+   * being invalidated on every task status change.
    * <p/>
    * Methods which interact with this cache, including invalidation and
    * population, should use the {@link TransactionalLock} annotation along with
@@ -128,7 +139,15 @@ public class HostRoleCommandDAO {
    * last invalidation would not invalidate anything since the cache was empty
    * at the time.
    */
-  private final Cache<Long, Map<Long, HostRoleCommandStatusSummaryDTO>> hrcStatusSummaryCache;
+  private final Cache<Long, HostRoleCommandStatusCounts> hrcStatusSummaryCache;
+
+  /**
+   * A cache that holds the {@link HostRoleCommandStatusSummaryDTO}s of
+   * requests which have all of their tasks completed. They are loaded from the
+   * database once the counts show the request as completed and do not expire,
+   * since they only change if the request is retried, which invalidates them.
+   */
+  private final Cache<Long, Map<Long, HostRoleCommandStatusSummaryDTO>> completedStatusSummaryCache;
 
   /**
    * Specifies whether caching for {@link HostRoleCommandStatusSummaryDTO} grouped by stage id for requests
@@ -167,6 +186,66 @@ public class HostRoleCommandDAO {
 
     LOG.debug("Invalidating host role command status summary cache for request {} !", requestId);
     hrcStatusSummaryCache.invalidate(requestId);
+    completedStatusSummaryCache.invalidate(requestId);
+  }
+
+  /**
+   * Updates the host role command status counts of the request of the given
+   * {@link HostRoleCommandEntity} in place with its current status. Counts
+   * which are not cached are left to be loaded on the next read.
+   *
+   * @param hostRoleCommandEntity
+   *          the created or merged entity
+   */
+  protected void updateHostRoleCommandStatusSummaryCache(
+      HostRoleCommandEntity hostRoleCommandEntity) {
+    if (!hostRoleCommandStatusSummaryCacheEnabled || null == hostRoleCommandEntity) {
+      return;
+    }
+
+    Long requestId = getRequestId(hostRoleCommandEntity);
+    if (null == requestId) {
+      return;
+    }
+
+    // a retried request is no longer completed
+    completedStatusSummaryCache.invalidate(requestId);
+
+    HostRoleCommandStatusCounts counts = hrcStatusSummaryCache.getIfPresent(requestId);
+    if (null == counts) {
+      return;
+    }
+
+    Long taskId = hostRoleCommandEntity.getTaskId();
+    Long stageId = hostRoleCommandEntity.getStageId();
+    StageEntity stageEntity = hostRoleCommandEntity.getStage();
+    if (null == stageId && null != stageEntity) {
+      stageId = stageEntity.getStageId();
+    }
+
+    if (null == taskId || null == stageId) {
+      invalidateHostRoleCommandStatusSummaryCache(requestId);
+      return;
+    }
+
+    counts.update(taskId, stageId, null != stageEntity && stageEntity.isSkippable(),
+        hostRoleCommandEntity.getStatus(), hostRoleCommandEntity.getStartTime(),
+        hostRoleCommandEntity.getEndTime());
+  }
+
+  /**
+   * @return the request id of the entity, from its stage if it was not read
+   *         from the database yet
+   */
+  private Long getRequestId(HostRoleCommandEntity hostRoleCommandEntity) {
+    Long requestId = hostRoleCommandEntity.getRequestId();
+    if (requestId == null) {
+      StageEntity stageEntity = hostRoleCommandEntity.getStage();
+      if (stageEntity != null) {
+        requestId = stageEntity.getRequestId();
+      }
+    }
+    return requestId;
   }
 
   /**
@@ -198,14 +277,7 @@ public class HostRoleCommandDAO {
     }
 
     if (hostRoleCommandEntity != null) {
-      Long requestId = hostRoleCommandEntity.getRequestId();
-      if (requestId == null) {
-        StageEntity stageEntity = hostRoleCommandEntity.getStage();
-        if (stageEntity != null) {
-          requestId = stageEntity.getRequestId();
-        }
-      }
-
+      Long requestId = getRequestId(hostRoleCommandEntity);
       if (requestId != null) {
         invalidateHostRoleCommandStatusSummaryCache(requestId.longValue());
       }
@@ -247,6 +319,32 @@ public class HostRoleCommandDAO {
     return map;
   }
 
+  /**
+   * Loads the status and times of all tasks of a request and counts them.
+   *
+   * @param requestId
+   *          the request id
+   * @return the counts of the tasks of the request
+   */
+  @RequiresSession
+  private HostRoleCommandStatusCounts loadStatusCounts(Long requestId) {
+    HostRoleCommandStatusCounts counts = new HostRoleCommandStatusCounts();
+
+    EntityManager entityManager = entityManagerProvider.get();
+    TypedQuery<Object[]> query = entityManager.createQuery(TASK_STATUS_COUNTS_SQL,
+        Object[].class);
+    query.setParameter("requestId", requestId);
+
+    for (Object[] task : daoUtils.selectList(query)) {
+      Number skippable = (Number) task[2];
+      counts.update(((Number) task[0]).longValue(), ((Number) task[1]).longValue(),
+          null != skippable && 1 == skippable.intValue(), (HostRoleStatus) task[3],
+          (Long) task[4], (Long) task[5]);
+    }
+
+    return counts;
+  }
+
   @Inject
   public HostRoleCommandDAO(
       @Named(HRC_STATUS_SUMMARY_CACHE_ENABLED) boolean hostRoleCommandStatusSummaryCacheEnabled,
@@ -260,6 +358,10 @@ public class HostRoleCommandDAO {
       .maximumSize(hostRoleCommandStatusSummaryCacheLimit)
       .expireAfterWrite(hostRoleCommandStatusSummaryCacheExpiryDurationMins, TimeUnit.MINUTES)
       .build();
+
+    completedStatusSummaryCache = CacheBuilder.newBuilder()
+      .maximumSize(hostRoleCommandStatusSummaryCacheLimit)
+      .build();
   }
 
   @RequiresSession
@@ -278,6 +380,10 @@ public class HostRoleCommandDAO {
         "ORDER BY task.taskId",
       HostRoleCommandEntity.class);
 
+    // read the hosts of all tasks in one query instead of one per task
+    query.setHint(QueryHints.BATCH, "task.hostEntity");
+    query.setHint(QueryHints.BATCH_TYPE, BatchFetchType.IN);
+
     if (daoUtils.getDbType().equals(ORACLE) && taskIds.size() > ORACLE_LIST_LIMIT) {
       List<HostRoleCommandEntity> result = new ArrayList<HostRoleCommandEntity>();
 
@@ -433,6 +539,56 @@ public class HostRoleCommandDAO {
     return daoUtils.selectList(query, requestId, stageId);
   }
 
+  /**
+   * Gets the ids of the tasks of a stage on one host, without reading the
+   * tasks.
+   *
+   * @param requestId
+   *          the request id
+   * @param stageId
+   *          the stage id
+   * @param hostName
+   *          the host name, or {@code null} for the server-side tasks
+   * @return the task ids, ordered by id
+   */
+  @RequiresSession
+  public List<Long> findTaskIdsByStageAndHost(long requestId, long stageId, String hostName) {
+    String queryName = (null == hostName) ? "HostRoleCommandEntity.findTaskIdsByStageNullHost" :
+        "HostRoleCommandEntity.findTaskIdsByStageAndHost";
+
+    TypedQuery<Long> query = entityManagerProvider.get().createNamedQuery(queryName, Long.class);
+
+    if (null != hostName) {
+      query.setParameter("hostName", hostName);
+    }
+    query.setParameter("requestId", requestId);
+    query.setParameter("stageId", stageId);
+
+    return daoUtils.selectList(query);
+  }
+
+  /**
+   * Gets the names of the hosts with tasks in a stage, without reading the
+   * tasks.
+   *
+   * @param requestId
+   *          the request id
+   * @param stageId
+   *          the stage id
+   * @return the distinct host names, with {@code null} for the server-side
+   *         tasks which have no host
+   */
+  @RequiresSession
+  public List<String> findHostNamesByStage(long requestId, long stageId) {
+    TypedQuery<String> query = entityManagerProvider.get().createNamedQuery(
+        "HostRoleCommandEntity.findHostNamesByStage", String.class);
+
+    query.setParameter("requestId", requestId);
+    query.setParameter("stageId", stageId);
+
+    return daoUtils.selectList(query);
+  }
+
   @RequiresSession
   public List<HostRoleCommandEntity> findByHostRole(String hostName, long requestId, long stageId, String role) {
 
@@ -602,7 +758,7 @@ public class HostRoleCommandDAO {
     EntityManager entityManager = entityManagerProvider.get();
     entityManager.persist(entity);
 
-    invalidateHostRoleCommandStatusSummaryCache(entity);
+    updateHostRoleCommandStatusSummaryCache(entity);
   }
 
   @Transactional
@@ -611,7 +767,7 @@ public class HostRoleCommandDAO {
     EntityManager entityManager = entityManagerProvider.get();
     entity = entityManager.merge(entity);
 
-    invalidateHostRoleCommandStatusSummaryCache(entity);
+    updateHostRoleCommandStatusSummaryCache(entity);
 
     return entity;
   }
@@ -627,26 +783,15 @@ public class HostRoleCommandDAO {
   @Transactional
   @TransactionalLock(lockArea = LockArea.HRC_STATUS_CACHE, lockType = LockType.WRITE)
   public List<HostRoleCommandEntity> mergeAll(Collection<HostRoleCommandEntity> entities) {
-    Set<Long> requestsToInvalidate = new LinkedHashSet<>();
     List<HostRoleCommandEntity> managedList = new ArrayList<HostRoleCommandEntity>(entities.size());
     for (HostRoleCommandEntity entity : entities) {
       EntityManager entityManager = entityManagerProvider.get();
       entity = entityManager.merge(entity);
       managedList.add(entity);
 
-      Long requestId = entity.getRequestId();
-      if (requestId == null) {
-        StageEntity stageEntity = entity.getStage();
-        if (stageEntity != null) {
-          requestId = stageEntity.getRequestId();
-        }
-      }
-
-      requestsToInvalidate.add(requestId);
+      updateHostRoleCommandStatusSummaryCache(entity);
     }
 
-    invalidateHostRoleCommandStatusSummaryCache(requestsToInvalidate);
-
     return managedList;
   }
 
@@ -668,7 +813,8 @@ public class HostRoleCommandDAO {
    * Finds the counts of tasks for a request and groups them by stage id. If
    * caching is enabled, this will first consult the cache. Cache misses will
    * then defer to loading the data from the database and then caching the
-   * result.
+   * result. Once all tasks of a request are completed, its summaries are
+   * loaded from the database one last time and kept as they are.
    *
    * @param requestId
    *          the request id
@@ -680,9 +826,15 @@ public class HostRoleCommandDAO {
       return loadAggregateCounts(requestId);
     }
 
-    Map<Long, HostRoleCommandStatusSummaryDTO> map = hrcStatusSummaryCache.getIfPresent(requestId);
+    Map<Long, HostRoleCommandStatusSummaryDTO> map = completedStatusSummaryCache.getIfPresent(requestId);
     if (null != map) {
-      return map;
+      // callers may add to the map
+      return new HashMap<Long, HostRoleCommandStatusSummaryDTO>(map);
+    }
+
+    HostRoleCommandStatusCounts counts = hrcStatusSummaryCache.getIfPresent(requestId);
+    if (null != counts && !counts.isCompleted()) {
+      return counts.getSummaries();
     }
 
     // ensure that we wait for any running transactions working on this cache to
@@ -691,10 +843,22 @@ public class HostRoleCommandDAO {
     lock.readLock().lock();
 
     try {
-      map = loadAggregateCounts(requestId);
-      hrcStatusSummaryCache.put(requestId, map);
+      if (null == counts) {
+        counts = loadStatusCounts(requestId);
+        if (!counts.isCompleted()) {
+          hrcStatusSummaryCache.put(requestId, counts);
+          return counts.getSummaries();
+        }
+        map = counts.getSummaries();
+      } else {
+        // counted as completed, keep the summaries as they are in the database
+        map = loadAggregateCounts(requestId);
+      }
+
+      completedStatusSummaryCache.put(requestId, map);
+      hrcStatusSummaryCache.invalidate(requestId);
 
-      return map;
+      return new HashMap<Long, HostRoleCommandStatusSummaryDTO>(map);
     } finally {
       lock.readLock().unlock();
     }
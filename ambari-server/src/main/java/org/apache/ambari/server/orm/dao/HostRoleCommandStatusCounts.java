@@ -0,0 +1,240 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.dao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ambari.server.actionmanager.HostRoleStatus;
+
+/**
+ * The {@link HostRoleStatus} counts of the tasks of a single request, by
+ * stage. They are loaded once from the database and then kept up to date by
+ * {@link HostRoleCommandDAO} as tasks are created and merged, so that reading
+ * the {@link HostRoleCommandStatusSummaryDTO}s of a request does not group all
+ * of its tasks in the database every time.
+ * <p/>
+ * The summaries built from the counts are the same as the ones
+ * {@link HostRoleCommandDAO#findAggregateCounts(Long)} loads from the
+ * database: the counts by status, whether the stage is skippable, the minimum
+ * start time and the maximum end time of the tasks of each stage.
+ */
+public class HostRoleCommandStatusCounts {
+
+  private static final HostRoleStatus[] STATUSES = HostRoleStatus.values();
+
+  /**
+   * The last known status and times of each task, by task id.
+   */
+  private final Map<Long, Task> m_tasks = new HashMap<Long, Task>();
+
+  /**
+   * The counts of each stage, by stage id.
+   */
+  private final Map<Long, Stage> m_stages = new HashMap<Long, Stage>();
+
+  /**
+   * The number of tasks in a completed state.
+   */
+  private int m_completedCount = 0;
+
+  /**
+   * Counts the task with the given status and times, replacing what was
+   * counted for it before.
+   *
+   * @param taskId
+   *          the task id
+   * @param stageId
+   *          the id of the stage of the task
+   * @param skippable
+   *          {@code true} if the stage of the task is skippable
+   * @param status
+   *          the status of the task
+   * @param startTime
+   *          the start time of the task, or {@code null}
+   * @param endTime
+   *          the end time of the task, or {@code null}
+   */
+  public synchronized void update(long taskId, long stageId, boolean skippable,
+      HostRoleStatus status, Long startTime, Long endTime) {
+    Task task = m_tasks.get(taskId);
+    if (null != task && task.m_stageId != stageId) {
+      remove(taskId);
+      task = null;
+    }
+
+    Stage stage = m_stages.get(stageId);
+    if (null == stage) {
+      stage = new Stage();
+      m_stages.put(stageId, stage);
+    }
+    stage.m_skippable |= skippable;
+
+    if (null == task) {
+      task = new Task(stageId);
+      m_tasks.put(taskId, task);
+      stage.m_tasks.add(task);
+    } else {
+      count(stage, task.m_status, -1);
+    }
+
+    count(stage, status, 1);
+    task.m_status = status;
+
+    if (!equals(task.m_startTime, startTime) || !equals(task.m_endTime, endTime)) {
+      task.m_startTime = startTime;
+      task.m_endTime = endTime;
+      stage.m_timesChanged = true;
+    }
+  }
+
+  /**
+   * Stops counting the task.
+   *
+   * @param taskId
+   *          the task id
+   */
+  public synchronized void remove(long taskId) {
+    Task task = m_tasks.remove(taskId);
+    if (null == task) {
+      return;
+    }
+
+    Stage stage = m_stages.get(task.m_stageId);
+    count(stage, task.m_status, -1);
+    stage.m_tasks.remove(task);
+    stage.m_timesChanged = true;
+    if (stage.m_tasks.isEmpty()) {
+      m_stages.remove(task.m_stageId);
+    }
+  }
+
+  /**
+   * @return {@code true} if the request has tasks and all of them are in a
+   *         completed state
+   */
+  public synchronized boolean isCompleted() {
+    return !m_tasks.isEmpty() && m_completedCount == m_tasks.size();
+  }
+
+  /**
+   * Builds the summaries of the stages from the counts.
+   *
+   * @return a new map of stage-to-summary objects
+   */
+  public synchronized Map<Long, HostRoleCommandStatusSummaryDTO> getSummaries() {
+    Map<Long, HostRoleCommandStatusSummaryDTO> summaries =
+        new HashMap<Long, HostRoleCommandStatusSummaryDTO>(m_stages.size() * 2);
+
+    for (Map.Entry<Long, Stage> entry : m_stages.entrySet()) {
+      Stage stage = entry.getValue();
+      if (stage.m_timesChanged) {
+        stage.updateTimes();
+      }
+
+      summaries.put(entry.getKey(), new HostRoleCommandStatusSummaryDTO(
+          stage.m_skippable ? 1 : 0,
+          stage.m_minStartTime,
+          stage.m_maxEndTime,
+          entry.getKey(),
+          stage.getCount(HostRoleStatus.ABORTED),
+          stage.getCount(HostRoleStatus.COMPLETED),
+          stage.getCount(HostRoleStatus.FAILED),
+          stage.getCount(HostRoleStatus.HOLDING),
+          stage.getCount(HostRoleStatus.HOLDING_FAILED),
+          stage.getCount(HostRoleStatus.HOLDING_TIMEDOUT),
+          stage.getCount(HostRoleStatus.IN_PROGRESS),
+          stage.getCount(HostRoleStatus.PENDING),
+          stage.getCount(HostRoleStatus.QUEUED),
+          stage.getCount(HostRoleStatus.TIMEDOUT),
+          stage.getCount(HostRoleStatus.SKIPPED_FAILED)));
+    }
+
+    return summaries;
+  }
+
+  private void count(Stage stage, HostRoleStatus status, int delta) {
+    // tasks without a status are not counted by status, as in the database
+    if (null == status) {
+      return;
+    }
+
+    stage.m_counts[status.ordinal()] += delta;
+    if (status.isCompletedState()) {
+      m_completedCount += delta;
+    }
+  }
+
+  private static boolean equals(Long a, Long b) {
+    return null == a ? null == b : a.equals(b);
+  }
+
+  /**
+   * The counted status and times of a task.
+   */
+  private static final class Task {
+    private final long m_stageId;
+    private HostRoleStatus m_status;
+    private Long m_startTime;
+    private Long m_endTime;
+
+    private Task(long stageId) {
+      m_stageId = stageId;
+    }
+  }
+
+  /**
+   * The counts of the tasks of a stage.
+   */
+  private static final class Stage {
+    private final int[] m_counts = new int[STATUSES.length];
+    private final List<Task> m_tasks = new ArrayList<Task>();
+    private boolean m_skippable = false;
+
+    /**
+     * The times are recalculated from the tasks on the next read after they
+     * changed, since the minimum and maximum can not be kept when a task's
+     * time moves away from them.
+     */
+    private boolean m_timesChanged = true;
+    private Long m_minStartTime = null;
+    private Long m_maxEndTime = null;
+
+    private Integer getCount(HostRoleStatus status) {
+      return Integer.valueOf(m_counts[status.ordinal()]);
+    }
+
+    private void updateTimes() {
+      m_minStartTime = null;
+      m_maxEndTime = null;
+      for (Task task : m_tasks) {
+        if (null != task.m_startTime
+            && (null == m_minStartTime || task.m_startTime < m_minStartTime)) {
+          m_minStartTime = task.m_startTime;
+        }
+        if (null != task.m_endTime
+            && (null == m_maxEndTime || task.m_endTime > m_maxEndTime)) {
+          m_maxEndTime = task.m_endTime;
+        }
+      }
+      m_timesChanged = false;
+    }
+  }
+}
@@ -22,12 +22,14 @@ import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import com.google.inject.persist.Transactional;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.orm.RequiresSession;
 import org.apache.ambari.server.orm.entities.HostStateEntity;
 import org.apache.ambari.server.orm.entities.HostVersionEntity;
 
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
+import java.util.Collection;
 import java.util.List;
 
 @Singleton
@@ -36,10 +38,22 @@ public class HostStateDAO {
   Provider<EntityManager> entityManagerProvider;
   @Inject
   DaoUtils daoUtils;
+  @Inject
+  Configuration configuration;
 
+  /**
+   * Host states changed by heartbeats which are not merged yet, by host id.
+   */
+  private final WriteBehindCache<Long, HostStateEntity> writeBehindCache =
+      new WriteBehindCache<Long, HostStateEntity>();
 
   @RequiresSession
   public HostStateEntity findByHostId(Long hostId) {
+    HostStateEntity pending = writeBehindCache.get(hostId);
+    if (null != pending) {
+      return pending;
+    }
+
     return entityManagerProvider.get().find(HostStateEntity.class, hostId);
   }
 
@@ -60,7 +74,68 @@ public class HostStateDAO {
 
   @Transactional
   public HostStateEntity merge(HostStateEntity hostStateEntity) {
-    return entityManagerProvider.get().merge(hostStateEntity);
+    EntityManager entityManager = entityManagerProvider.get();
+
+    // write the heartbeat changes first, so that they are not lost if this is another instance
+    HostStateEntity pending = writeBehindCache.remove(hostStateEntity.getHostId());
+    if (null != pending && pending != hostStateEntity) {
+      entityManager.merge(pending);
+    }
+
+    return entityManager.merge(hostStateEntity);
+  }
+
+  /**
+   * Merges the host state with the next flush if
+   * {@link Configuration#isStateWriteBehindEnabled()}, or right away
+   * otherwise. Only for state which the heartbeats of the host report again
+   * if it is lost.
+   *
+   * @param hostStateEntity
+   *          the changed host state
+   */
+  public void mergeLater(HostStateEntity hostStateEntity) {
+    if (configuration.isStateWriteBehindEnabled()) {
+      writeBehindCache.put(hostStateEntity.getHostId(), hostStateEntity);
+    } else {
+      merge(hostStateEntity);
+    }
+  }
+
+  /**
+   * Merges the host states changed with {@link #mergeLater(HostStateEntity)}
+   * in one transaction.
+   *
+   * @return the number of host states merged
+   */
+  public int flushWriteBehindCache() {
+    return writeBehindCache.flush(new WriteBehindCache.Writer<HostStateEntity>() {
+      @Override
+      public void merge(Collection<HostStateEntity> entities) {
+        mergeAll(entities);
+      }
+    });
+  }
+
+  /**
+   * @return the host states changed but not merged yet
+   */
+  public WriteBehindCache<Long, HostStateEntity> getWriteBehindCache() {
+    return writeBehindCache;
+  }
+
+  /**
+   * Merges the host states which still exist; the ones removed meanwhile are
+   * skipped rather than inserted again.
+   */
+  @Transactional
+  void mergeAll(Collection<HostStateEntity> hostStateEntities) {
+    EntityManager entityManager = entityManagerProvider.get();
+    for (HostStateEntity hostStateEntity : hostStateEntities) {
+      if (null != entityManager.find(HostStateEntity.class, hostStateEntity.getHostId())) {
+        entityManager.merge(hostStateEntity);
+      }
+    }
   }
 
   @Transactional
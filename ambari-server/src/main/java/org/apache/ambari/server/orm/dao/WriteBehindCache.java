@@ -0,0 +1,214 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link WriteBehindCache} keeps the entities which were changed in memory
+ * but not merged yet, so that a DAO can merge all of them in one transaction
+ * instead of merging each change on its own. The DAO returns the pending
+ * instance of an entity from its finders until it is flushed, so readers see
+ * the changes.
+ * <p/>
+ * An entity changed again while it is being flushed stays pending and is
+ * merged again on the next flush.
+ *
+ * @param <K>
+ *          the type of the entity id
+ * @param <E>
+ *          the type of the entity
+ */
+public class WriteBehindCache<K, E> {
+
+  /**
+   * Merges the pending entities in a single transaction.
+   */
+  public interface Writer<E> {
+    /**
+     * @param entities
+     *          the entities to merge
+     */
+    void merge(Collection<E> entities);
+  }
+
+  /**
+   * The pending entities by id.
+   */
+  private final Map<K, Pending<E>> m_pending = new HashMap<>();
+
+  /**
+   * Incremented on every change, to tell whether a pending entity changed
+   * while it was flushed.
+   */
+  private long m_generation = 0;
+
+  private final AtomicLong m_writeCount = new AtomicLong();
+  private final AtomicLong m_mergeCount = new AtomicLong();
+  private final AtomicLong m_flushCount = new AtomicLong();
+  private final AtomicLong m_flushTimeNanos = new AtomicLong();
+  private final AtomicLong m_lastFlushTimeNanos = new AtomicLong();
+
+  /**
+   * Marks the entity as changed, to be merged on the next flush.
+   *
+   * @param key
+   *          the entity id
+   * @param entity
+   *          the changed entity
+   */
+  public synchronized void put(K key, E entity) {
+    m_writeCount.incrementAndGet();
+    Pending<E> pending = m_pending.get(key);
+    if (null == pending) {
+      pending = new Pending<>();
+      m_pending.put(key, pending);
+    }
+    pending.entity = entity;
+    pending.generation = ++m_generation;
+  }
+
+  /**
+   * Counts a write which was not needed since nothing changed.
+   */
+  public void skip() {
+    m_writeCount.incrementAndGet();
+  }
+
+  /**
+   * @return the pending instance of the entity, or {@code null} if it is not
+   *         pending
+   */
+  public synchronized E get(K key) {
+    Pending<E> pending = m_pending.get(key);
+    return null == pending ? null : pending.entity;
+  }
+
+  /**
+   * Stops tracking the entity, because it was merged or removed.
+   *
+   * @return the pending instance of the entity, or {@code null} if it was not
+   *         pending
+   */
+  public synchronized E remove(K key) {
+    Pending<E> pending = m_pending.remove(key);
+    return null == pending ? null : pending.entity;
+  }
+
+  /**
+   * @return the number of pending entities
+   */
+  public synchronized int size() {
+    return m_pending.size();
+  }
+
+  /**
+   * Merges the pending entities with the writer. The entities stay pending,
+   * and so visible to readers, until the writer returns; the ones changed
+   * meanwhile stay pending after it. Nothing is removed if the writer fails.
+   *
+   * @param writer
+   *          merges the entities in one transaction
+   * @return the number of entities merged
+   */
+  public int flush(Writer<E> writer) {
+    Map<K, Pending<E>> flushed = new HashMap<>();
+    synchronized (this) {
+      for (Map.Entry<K, Pending<E>> entry : m_pending.entrySet()) {
+        Pending<E> pending = new Pending<>();
+        pending.entity = entry.getValue().entity;
+        pending.generation = entry.getValue().generation;
+        flushed.put(entry.getKey(), pending);
+      }
+    }
+
+    if (flushed.isEmpty()) {
+      return 0;
+    }
+
+    List<E> entities = new ArrayList<>(flushed.size());
+    for (Pending<E> pending : flushed.values()) {
+      entities.add(pending.entity);
+    }
+
+    long start = System.nanoTime();
+    writer.merge(entities);
+    long elapsed = System.nanoTime() - start;
+
+    synchronized (this) {
+      for (Map.Entry<K, Pending<E>> entry : flushed.entrySet()) {
+        Pending<E> pending = m_pending.get(entry.getKey());
+        if (null != pending && pending.generation == entry.getValue().generation) {
+          m_pending.remove(entry.getKey());
+        }
+      }
+    }
+
+    m_mergeCount.addAndGet(entities.size());
+    m_flushCount.incrementAndGet();
+    m_flushTimeNanos.addAndGet(elapsed);
+    m_lastFlushTimeNanos.set(elapsed);
+    return entities.size();
+  }
+
+  /**
+   * @return the number of writes which did not merge an entity right away,
+   *         less the merges done by the flushes
+   */
+  public long getMergesAvoided() {
+    return m_writeCount.get() - m_mergeCount.get();
+  }
+
+  /**
+   * @return the number of flushes which merged entities
+   */
+  public long getFlushCount() {
+    return m_flushCount.get();
+  }
+
+  /**
+   * @return the time the last flush which merged entities took, in
+   *         milliseconds
+   */
+  public long getLastFlushTime() {
+    return TimeUnit.NANOSECONDS.toMillis(m_lastFlushTimeNanos.get());
+  }
+
+  /**
+   * @return the average time of the flushes which merged entities, in
+   *         milliseconds
+   */
+  public long getAverageFlushTime() {
+    long flushCount = m_flushCount.get();
+    return flushCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(m_flushTimeNanos.get() / flushCount);
+  }
+
+  /**
+   * A pending entity and the generation of its last change.
+   */
+  private static final class Pending<E> {
+    private E entity;
+    private long generation;
+  }
+}
@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The {@link HostComponentStateCounts} class keeps the number of host
+ * components of a {@link ServiceComponent} in each {@link State}, split by
+ * whether the host component is in maintenance mode itself or through its
+ * host. It is updated on every host component state or maintenance mode
+ * change, so that the calculated state of a service can be read without
+ * scanning all of its host components.
+ * <p/>
+ * The last counted state of each host is kept, which makes an update
+ * idempotent and lets concurrent updates of the same host settle on the
+ * state of the last one.
+ */
+public class HostComponentStateCounts {
+
+  private static final State[] STATES = State.values();
+
+  /**
+   * Counts indexed by {@link #slot(State, boolean)}.
+   */
+  private final AtomicIntegerArray counts = new AtomicIntegerArray(STATES.length * 2);
+
+  /**
+   * The slot each host is counted in.
+   */
+  private final ConcurrentMap<String, Integer> slotsByHost = new ConcurrentHashMap<>();
+
+  private static int slot(State state, boolean inMaintenance) {
+    return state.ordinal() * 2 + (inMaintenance ? 1 : 0);
+  }
+
+  /**
+   * Counts the host component on the given host in the given state.
+   *
+   * @param hostName
+   *          the host of the host component
+   * @param state
+   *          the current state of the host component
+   * @param inMaintenance
+   *          {@code true} if the host component or its host is in maintenance
+   *          mode
+   */
+  public void update(String hostName, State state, boolean inMaintenance) {
+    int slot = slot(state, inMaintenance);
+    Integer previous = slotsByHost.put(hostName, slot);
+    if (previous == null || previous != slot) {
+      counts.incrementAndGet(slot);
+      if (previous != null) {
+        counts.decrementAndGet(previous);
+      }
+    }
+  }
+
+  /**
+   * Stops counting the host component on the given host.
+   *
+   * @param hostName
+   *          the host of the removed host component
+   */
+  public void remove(String hostName) {
+    Integer previous = slotsByHost.remove(hostName);
+    if (previous != null) {
+      counts.decrementAndGet(previous);
+    }
+  }
+
+  /**
+   * Stops counting all host components.
+   */
+  public void clear() {
+    for (String hostName : slotsByHost.keySet()) {
+      remove(hostName);
+    }
+  }
+
+  /**
+   * @return the number of host components in the given state and maintenance
+   *         mode
+   */
+  public int getCount(State state, boolean inMaintenance) {
+    return counts.get(slot(state, inMaintenance));
+  }
+
+  /**
+   * @return the number of host components in the given state
+   */
+  public int getCount(State state) {
+    return getCount(state, false) + getCount(state, true);
+  }
+
+  /**
+   * @return the number of host components counted
+   */
+  public int getTotalCount() {
+    return slotsByHost.size();
+  }
+
+  /**
+   * Compares the counts with the given host components and recounts them if
+   * they differ. A host component changing state meanwhile is counted again
+   * on its next update.
+   *
+   * @param expected
+   *          the counts built from all host components of the component
+   * @return a description of the differences, or {@code null} if there were
+   *         none
+   */
+  public String reconcile(HostComponentStateCounts expected) {
+    StringBuilder differences = null;
+    for (State state : STATES) {
+      for (boolean inMaintenance : new boolean[] { false, true }) {
+        int count = getCount(state, inMaintenance);
+        int expectedCount = expected.getCount(state, inMaintenance);
+        if (count != expectedCount) {
+          differences = differences == null ? new StringBuilder() : differences.append(", ");
+          differences.append(state).append(inMaintenance ? "/maintenance" : "")
+            .append(" counted ").append(count).append(" found ").append(expectedCount);
+        }
+      }
+    }
+    if (differences == null && slotsByHost.equals(expected.slotsByHost)) {
+      return null;
+    }
+
+    // Recount host by host, so that readers never see empty counts
+    for (Map.Entry<String, Integer> entry : expected.slotsByHost.entrySet()) {
+      int slot = entry.getValue();
+      update(entry.getKey(), STATES[slot / 2], slot % 2 == 1);
+    }
+    for (String hostName : slotsByHost.keySet()) {
+      if (!expected.slotsByHost.containsKey(hostName)) {
+        remove(hostName);
+      }
+    }
+    return differences == null ? "hosts differ" : differences.toString();
+  }
+}
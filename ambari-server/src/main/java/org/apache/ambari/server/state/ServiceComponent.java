@@ -104,4 +104,31 @@ public interface ServiceComponent {
    * @return cluster-global lock
    */
   ReadWriteLock getClusterGlobalLock();
+
+  /**
+   * Gets the number of host components of this component in each state,
+   * kept up to date on host component state and maintenance mode changes.
+   *
+   * @return the host component state counts
+   */
+  HostComponentStateCounts getStateCounts();
+
+  /**
+   * Counts the current state and maintenance mode of the given host
+   * component. Host components that are not (or no longer) part of this
+   * component are ignored.
+   *
+   * @param hostComponent
+   *          the host component that changed
+   */
+  void updateStateCounts(ServiceComponentHost hostComponent);
+
+  /**
+   * Verifies the host component state counts against all host components of
+   * this component, recounting them if they differ.
+   *
+   * @return a description of the differences, or {@code null} if the counts
+   *         were correct
+   */
+  String checkStateCounts();
 }
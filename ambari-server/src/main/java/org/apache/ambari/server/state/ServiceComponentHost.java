@@ -90,6 +90,16 @@ public interface ServiceComponentHost {
 
   void setState(State state);
 
+  /**
+   * Sets the state reported by the agent in a status command. Unlike
+   * {@link #setState(State)}, an unchanged state is not merged, and a changed
+   * one may be merged later together with other reports.
+   *
+   * @param state
+   *          the reported state
+   */
+  void setReportedState(State state);
+
   /**
    * Gets the current security state for this ServiceComponent
    * <p/>
@@ -81,6 +81,7 @@ public class ServiceComponentImpl implements ServiceComponent {
 
   ServiceComponentDesiredStateEntity desiredStateEntity;
   private Map<String, ServiceComponentHost> hostComponents;
+  private final HostComponentStateCounts stateCounts = new HostComponentStateCounts();
 
   /**
    * Data access object used for lookup up stacks.
@@ -176,6 +177,10 @@ public class ServiceComponentImpl implements ServiceComponent {
       }
     }
 
+    for (ServiceComponentHost hostComponent : hostComponents.values()) {
+      countState(stateCounts, hostComponent);
+    }
+
     persisted = true;
   }
 
@@ -326,6 +331,7 @@ public class ServiceComponentImpl implements ServiceComponent {
         ClusterImpl clusterImpl = (ClusterImpl) service.getCluster();
         clusterImpl.addServiceComponentHost(hostComponent);
         hostComponents.put(hostComponent.getHostName(), hostComponent);
+        countState(stateCounts, hostComponent);
       } finally {
         readWriteLock.writeLock().unlock();
       }
@@ -366,6 +372,7 @@ public class ServiceComponentImpl implements ServiceComponent {
         clusterImpl.addServiceComponentHost(hostComponent);
 
         hostComponents.put(hostComponent.getHostName(), hostComponent);
+        countState(stateCounts, hostComponent);
 
         return hostComponent;
       } finally {
@@ -732,6 +739,7 @@ public class ServiceComponentImpl implements ServiceComponent {
         }
 
         hostComponents.clear();
+        stateCounts.clear();
       } finally {
         readWriteLock.writeLock().unlock();
       }
@@ -763,6 +771,7 @@ public class ServiceComponentImpl implements ServiceComponent {
         }
         sch.delete();
         hostComponents.remove(hostname);
+        stateCounts.remove(hostname);
 
       } finally {
         readWriteLock.writeLock().unlock();
@@ -798,6 +807,60 @@ public class ServiceComponentImpl implements ServiceComponent {
     serviceComponentDesiredStateDAO.remove(getDesiredStateEntity());
   }
 
+  @Override
+  public HostComponentStateCounts getStateCounts() {
+    return stateCounts;
+  }
+
+  @Override
+  public void updateStateCounts(ServiceComponentHost hostComponent) {
+    readWriteLock.readLock().lock();
+    try {
+      if (hostComponents.get(hostComponent.getHostName()) == hostComponent) {
+        countState(stateCounts, hostComponent);
+      }
+    } finally {
+      readWriteLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public String checkStateCounts() {
+    readWriteLock.readLock().lock();
+    try {
+      HostComponentStateCounts expected = new HostComponentStateCounts();
+      for (ServiceComponentHost hostComponent : hostComponents.values()) {
+        countState(expected, hostComponent);
+      }
+
+      String differences = stateCounts.reconcile(expected);
+      if (differences != null) {
+        LOG.warn("Recounted host component states"
+            + ", clusterName=" + getClusterName()
+            + ", serviceName=" + getServiceName()
+            + ", componentName=" + getName()
+            + ", differences=" + differences);
+      }
+      return differences;
+    } finally {
+      readWriteLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Counts the host component as in maintenance if it is in maintenance mode
+   * itself or through its host. Maintenance mode of the service applies to
+   * all host components and is left to the readers of the counts.
+   */
+  private void countState(HostComponentStateCounts counts, ServiceComponentHost hostComponent) {
+    boolean inMaintenance = MaintenanceState.OFF != hostComponent.getMaintenanceState();
+    Host host = hostComponent.getHost();
+    if (!inMaintenance && host != null) {
+      inMaintenance = MaintenanceState.OFF != host.getMaintenanceState(getClusterId());
+    }
+    counts.update(hostComponent.getHostName(), hostComponent.getState(), inMaintenance);
+  }
+
   private int getSCHCountByState(State state) {
     int count = 0;
     for (ServiceComponentHost sch : hostComponents.values()) {
@@ -30,6 +30,8 @@ import java.util.regex.Pattern;
 
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.controller.AmbariManagementController;
 import org.apache.ambari.server.controller.internal.StageResourceProvider;
 import org.apache.ambari.server.controller.internal.TaskResourceProvider;
 import org.apache.ambari.server.controller.predicate.AndPredicate;
@@ -51,6 +53,7 @@ import org.apache.ambari.server.stack.HostsType;
 import org.apache.ambari.server.stack.MasterHostResolver;
 import org.apache.ambari.server.state.stack.UpgradePack;
 import org.apache.ambari.server.state.stack.UpgradePack.ProcessingComponent;
+import org.apache.ambari.server.state.stack.upgrade.ColocatedGrouping;
 import org.apache.ambari.server.state.stack.upgrade.Direction;
 import org.apache.ambari.server.state.stack.upgrade.Grouping;
 import org.apache.ambari.server.state.stack.upgrade.ManualTask;
@@ -65,6 +68,7 @@ import org.apache.ambari.server.state.stack.upgrade.StopTask;
 import org.apache.ambari.server.state.stack.upgrade.Task;
 import org.apache.ambari.server.state.stack.upgrade.Task.Type;
 import org.apache.ambari.server.state.stack.upgrade.TaskWrapper;
+import org.apache.ambari.server.state.stack.upgrade.UpgradeStagePlanner;
 import org.apache.ambari.server.state.stack.upgrade.UpgradeType;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -185,6 +189,12 @@ public class UpgradeHelper {
   @Inject
   private Provider<RepositoryVersionDAO> s_repoVersionDAO;
 
+  @Inject
+  private Provider<Configuration> m_configuration;
+
+  @Inject
+  private Provider<AmbariManagementController> m_controller;
+
 
   /**
    * Get right Upgrade Pack, depends on stack, direction and upgrade type information
@@ -269,6 +279,14 @@ public class UpgradeHelper {
     Map<String, Map<String, ProcessingComponent>> allTasks = upgradePack.getTasks();
     List<UpgradeGroupHolder> groups = new ArrayList<>();
 
+    // run the stages of independent components of a group together
+    UpgradeStagePlanner planner = null;
+    int parallelStageMaxHosts = m_configuration.get().getStackUpgradeParallelStageMaxHosts();
+    if (parallelStageMaxHosts > 0) {
+      planner = new UpgradeStagePlanner(m_controller.get().getRoleCommandOrder(cluster),
+          parallelStageMaxHosts);
+    }
+
     for (Grouping group : upgradePack.getGroups(context.getDirection())) {
 
       // !!! grouping is not scoped to context
@@ -458,6 +476,11 @@ public class UpgradeHelper {
 
       List<StageWrapper> proxies = builder.build(context);
 
+      // colocated groups batch the hosts of their components themselves
+      if (null != planner && !ColocatedGrouping.class.isInstance(group)) {
+        proxies = planner.plan(proxies);
+      }
+
       if (!proxies.isEmpty()) {
         groupHolder.items = proxies;
         postProcess(context, groupHolder);
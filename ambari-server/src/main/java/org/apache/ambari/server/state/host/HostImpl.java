@@ -59,6 +59,7 @@ import org.apache.ambari.server.state.HostHealthStatus;
 import org.apache.ambari.server.state.HostHealthStatus.HealthStatus;
 import org.apache.ambari.server.state.HostState;
 import org.apache.ambari.server.state.MaintenanceState;
+import org.apache.ambari.server.state.ServiceComponentHost;
 import org.apache.ambari.server.state.configgroup.ConfigGroup;
 import org.apache.ambari.server.state.fsm.InvalidStateTransitionException;
 import org.apache.ambari.server.state.fsm.SingleArcTransition;
@@ -801,7 +802,7 @@ public class HostImpl implements Host {
       HostStateEntity hostStateEntity = getHostStateEntity();
       if (hostStateEntity != null) {
         getHostStateEntity().setAvailableMem(availableMemBytes);
-        saveIfPersisted();
+        saveHostStateLater();
       }
     }
     finally {
@@ -945,7 +946,7 @@ public class HostImpl implements Host {
           setStatus(HealthStatus.UNKNOWN.name());
         }
 
-        saveIfPersisted();
+        saveHostStateLater();
       }
     } finally {
       writeLock.unlock();
@@ -1082,7 +1083,7 @@ public class HostImpl implements Host {
       HostStateEntity hostStateEntity = getHostStateEntity();
       if (hostStateEntity != null) {
         getHostStateEntity().setAgentVersion(gson.toJson(agentVersion));
-        saveIfPersisted();
+        saveHostStateLater();
       }
     }
     finally {
@@ -1103,7 +1104,7 @@ public class HostImpl implements Host {
       HostStateEntity hostStateEntity = getHostStateEntity();
       if (hostStateEntity != null) {
         getHostStateEntity().setTimeInState(timeInState);
-        saveIfPersisted();
+        saveHostStateLater();
       }
     }
     finally {
@@ -1264,6 +1265,17 @@ public class HostImpl implements Host {
     }
   }
 
+  /**
+   * Merges the host state changed by a heartbeat, possibly with a later flush
+   * of all hosts. This method assumes that the write lock has already been
+   * acquired.
+   */
+  private void saveHostStateLater() {
+    if (isPersisted()) {
+      hostStateDAO.mergeLater(hostStateEntity);
+    }
+  }
+
   @Override
   @Transactional
   public boolean addDesiredConfig(long clusterId, boolean selected, String user, Config config) {
@@ -1439,6 +1451,26 @@ public class HostImpl implements Host {
     } finally {
       writeLock.unlock();
     }
+
+    updateStateCounts(clusterId);
+  }
+
+  /**
+   * Recounts the host components of this host in the given cluster, they are
+   * counted as in maintenance when their host is.
+   */
+  private void updateStateCounts(long clusterId) {
+    try {
+      Cluster cluster = clusters.getClusterById(clusterId);
+      for (ServiceComponentHost sch : cluster.getServiceComponentHosts(getHostName())) {
+        cluster.getService(sch.getServiceName())
+          .getServiceComponent(sch.getServiceComponentName())
+          .updateStateCounts(sch);
+      }
+    } catch (AmbariException e) {
+      LOG.warn("Unable to update the host component state counts of host "
+        + getHostName() + " in cluster " + clusterId, e);
+    }
   }
 
   @Override
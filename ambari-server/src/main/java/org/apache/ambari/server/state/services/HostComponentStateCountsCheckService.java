@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.services;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.AmbariService;
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.state.Cluster;
+import org.apache.ambari.server.state.Clusters;
+import org.apache.ambari.server.state.HostComponentStateCounts;
+import org.apache.ambari.server.state.Service;
+import org.apache.ambari.server.state.ServiceComponent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.inject.Inject;
+
+/**
+ * The {@link HostComponentStateCountsCheckService} periodically checks the
+ * {@link HostComponentStateCounts} of every {@link ServiceComponent} against
+ * a full scan of its host components and recounts the ones which differ. This
+ * service is controlled by
+ * {@link Configuration#getHostComponentStateCountsCheckInterval()}.
+ */
+@AmbariService
+public class HostComponentStateCountsCheckService extends AbstractScheduledService {
+
+  /**
+   * Logger.
+   */
+  private final static Logger LOG = LoggerFactory.getLogger(HostComponentStateCountsCheckService.class);
+
+  /**
+   * Configuration.
+   */
+  @Inject
+  private Configuration m_configuration;
+
+  /**
+   * Used to get all of the components of all clusters.
+   */
+  @Inject
+  private Clusters m_clusters;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected Scheduler scheduler() {
+    int checkIntervalInMinutes = Math.max(1, m_configuration.getHostComponentStateCountsCheckInterval());
+    return Scheduler.newFixedDelaySchedule(checkIntervalInMinutes, checkIntervalInMinutes,
+        TimeUnit.MINUTES);
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Invokes {@link #stop()} if the check interval is not positive.
+   */
+  @Override
+  protected void startUp() throws Exception {
+    if (m_configuration.getHostComponentStateCountsCheckInterval() <= 0) {
+      stopAsync();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Checks the host component state counts of all components.
+   */
+  @Override
+  protected void runOneIteration() throws Exception {
+    try {
+      int differences = 0;
+      for (Cluster cluster : m_clusters.getClusters().values()) {
+        for (Service service : cluster.getServices().values()) {
+          for (ServiceComponent component : service.getServiceComponents().values()) {
+            if (null != component.checkStateCounts()) {
+              differences++;
+            }
+          }
+        }
+      }
+
+      if (differences > 0) {
+        LOG.warn("Recounted the host component states of {} components", differences);
+      }
+    } catch (Exception exception) {
+      LOG.error("Unable to check the host component state counts", exception);
+    }
+  }
+}
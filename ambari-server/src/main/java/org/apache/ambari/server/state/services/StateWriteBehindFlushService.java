@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.services;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.AmbariService;
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.orm.dao.HostComponentStateDAO;
+import org.apache.ambari.server.orm.dao.HostStateDAO;
+import org.apache.ambari.server.orm.dao.WriteBehindCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.inject.Inject;
+
+/**
+ * The {@link StateWriteBehindFlushService} periodically merges the host and
+ * host component states which heartbeats changed in memory, so that each host
+ * does not merge its state on every heartbeat. This service is controlled by
+ * {@link Configuration#isStateWriteBehindEnabled()} and
+ * {@link Configuration#getStateWriteBehindFlushInterval()}.
+ */
+@AmbariService
+public class StateWriteBehindFlushService extends AbstractScheduledService {
+
+  /**
+   * Logger.
+   */
+  private final static Logger LOG = LoggerFactory.getLogger(StateWriteBehindFlushService.class);
+
+  /**
+   * How often the merges avoided and the flush times are logged.
+   */
+  private static final long SUMMARY_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+  /**
+   * Configuration.
+   */
+  @Inject
+  private Configuration m_configuration;
+
+  /**
+   * Used for flushing host states to the database.
+   */
+  @Inject
+  private HostStateDAO m_hostStateDAO;
+
+  /**
+   * Used for flushing host component states to the database.
+   */
+  @Inject
+  private HostComponentStateDAO m_hostComponentStateDAO;
+
+  /**
+   * The last time the summary was logged.
+   */
+  private long m_lastSummaryTime = System.currentTimeMillis();
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected Scheduler scheduler() {
+    int flushIntervalInSeconds = Math.max(1, m_configuration.getStateWriteBehindFlushInterval());
+    return Scheduler.newFixedDelaySchedule(flushIntervalInSeconds, flushIntervalInSeconds,
+        TimeUnit.SECONDS);
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Invokes {@link #stop()} if not enabled.
+   */
+  @Override
+  protected void startUp() throws Exception {
+    if (!m_configuration.isStateWriteBehindEnabled()) {
+      stopAsync();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Flushes the host and host component states to the database.
+   */
+  @Override
+  protected void runOneIteration() throws Exception {
+    flush();
+
+    long now = System.currentTimeMillis();
+    if (now - m_lastSummaryTime >= SUMMARY_INTERVAL) {
+      m_lastSummaryTime = now;
+      logSummary("host states", m_hostStateDAO.getWriteBehindCache());
+      logSummary("host component states", m_hostComponentStateDAO.getWriteBehindCache());
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Flushes what is still pending, so that it is not lost on a clean stop.
+   */
+  @Override
+  protected void shutDown() throws Exception {
+    flush();
+  }
+
+  private void flush() {
+    try {
+      int count = m_hostStateDAO.flushWriteBehindCache();
+      LOG.debug("Flushed {} host states to the database in {}ms", count,
+          m_hostStateDAO.getWriteBehindCache().getLastFlushTime());
+    } catch (Exception exception) {
+      LOG.error("Unable to flush host states to the database", exception);
+    }
+
+    try {
+      int count = m_hostComponentStateDAO.flushWriteBehindCache();
+      LOG.debug("Flushed {} host component states to the database in {}ms", count,
+          m_hostComponentStateDAO.getWriteBehindCache().getLastFlushTime());
+    } catch (Exception exception) {
+      LOG.error("Unable to flush host component states to the database", exception);
+    }
+  }
+
+  private static void logSummary(String name, WriteBehindCache<?, ?> cache) {
+    LOG.info("Avoided {} merges of {}; {} flushes, last took {}ms, average {}ms", new Object[] {
+        cache.getMergesAvoided(), name, cache.getFlushCount(), cache.getLastFlushTime(),
+        cache.getAverageFlushTime() });
+  }
+}
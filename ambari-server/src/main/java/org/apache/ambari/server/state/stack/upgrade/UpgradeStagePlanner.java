@@ -0,0 +1,242 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.stack.upgrade;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ambari.server.Role;
+import org.apache.ambari.server.RoleCommand;
+import org.apache.ambari.server.metadata.RoleCommandOrder;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Runs the stages of an upgrade group which restart, start or stop
+ * independent components together. The consecutive stages of the same type
+ * and parameters form a run, and the stages of each component in a run form a
+ * branch. A branch waits for the earlier branches of the run which share hosts
+ * with it or which depend on it, or it on them, in the {@link RoleCommandOrder}.
+ * The branches are run in levels, each branch in the level after the last of
+ * the ones it waits for, and the branches of a level are advanced together,
+ * one stage of each branch per stage, up to a number of hosts per stage.
+ * <p/>
+ * The stages of a component keep their order and never run together, so the
+ * batches of the upgrade pack are kept. Any other stage ends the run, and is
+ * kept where it is.
+ */
+public class UpgradeStagePlanner {
+
+  private final RoleCommandOrder m_roleCommandOrder;
+  private final int m_maxHosts;
+
+  /**
+   * @param roleCommandOrder
+   *          the role command order of the cluster
+   * @param maxHosts
+   *          the maximum number of hosts of a stage running several branches
+   */
+  public UpgradeStagePlanner(RoleCommandOrder roleCommandOrder, int maxHosts) {
+    m_roleCommandOrder = roleCommandOrder;
+    m_maxHosts = maxHosts;
+  }
+
+  /**
+   * Plans the stages of a group.
+   *
+   * @param stages
+   *          the stages in the order of the upgrade pack
+   * @return the stages to run, in order
+   */
+  public List<StageWrapper> plan(List<StageWrapper> stages) {
+    List<StageWrapper> planned = new ArrayList<StageWrapper>(stages.size());
+    List<StageWrapper> run = new ArrayList<StageWrapper>();
+    for (StageWrapper stage : stages) {
+      boolean branch = null != getBranchKey(stage);
+      if (!run.isEmpty() && (!branch || !isSameRun(run.get(0), stage))) {
+        planned.addAll(planRun(run));
+        run.clear();
+      }
+
+      if (branch) {
+        run.add(stage);
+      } else {
+        planned.add(stage);
+      }
+    }
+
+    planned.addAll(planRun(run));
+    return planned;
+  }
+
+  private List<StageWrapper> planRun(List<StageWrapper> run) {
+    if (run.size() < 2) {
+      return new ArrayList<StageWrapper>(run);
+    }
+
+    Map<String, Branch> branches = new LinkedHashMap<String, Branch>();
+    for (StageWrapper stage : run) {
+      String key = getBranchKey(stage);
+      Branch branch = branches.get(key);
+      if (null == branch) {
+        TaskWrapper task = stage.getTasks().get(0);
+        branch = new Branch(Role.valueOf(task.getComponent()));
+        branches.put(key, branch);
+      }
+      branch.stages.add(stage);
+      branch.hosts.addAll(stage.getHosts());
+    }
+
+    // a branch runs after the ones it waits for
+    RoleCommand command = getRoleCommand(run.get(0).getType());
+    List<Branch> ordered = new ArrayList<Branch>(branches.values());
+    int levels = 0;
+    for (int i = 0; i < ordered.size(); i++) {
+      Branch branch = ordered.get(i);
+      for (int j = 0; j < i; j++) {
+        Branch earlier = ordered.get(j);
+        if (earlier.level >= branch.level && waitsFor(branch, earlier, command)) {
+          branch.level = earlier.level + 1;
+        }
+      }
+      levels = Math.max(levels, branch.level + 1);
+    }
+
+    List<StageWrapper> planned = new ArrayList<StageWrapper>(run.size());
+    for (int level = 0; level < levels; level++) {
+      List<Branch> current = new ArrayList<Branch>();
+      int steps = 0;
+      for (Branch branch : ordered) {
+        if (branch.level == level) {
+          current.add(branch);
+          steps = Math.max(steps, branch.stages.size());
+        }
+      }
+
+      for (int step = 0; step < steps; step++) {
+        List<StageWrapper> together = new ArrayList<StageWrapper>();
+        int hostCount = 0;
+        for (Branch branch : current) {
+          if (step >= branch.stages.size()) {
+            continue;
+          }
+
+          StageWrapper stage = branch.stages.get(step);
+          if (!together.isEmpty() && hostCount + stage.getHosts().size() > m_maxHosts) {
+            planned.add(merge(together));
+            together = new ArrayList<StageWrapper>();
+            hostCount = 0;
+          }
+          together.add(stage);
+          hostCount += stage.getHosts().size();
+        }
+        planned.add(merge(together));
+      }
+    }
+
+    return planned;
+  }
+
+  private boolean waitsFor(Branch branch, Branch earlier, RoleCommand command) {
+    if (!Collections.disjoint(branch.hosts, earlier.hosts)) {
+      return true;
+    }
+
+    // the pack may order a component before one it depends on, keep it so
+    return null == m_roleCommandOrder
+        || m_roleCommandOrder.isBlockedBy(branch.role, earlier.role, command)
+        || m_roleCommandOrder.isBlockedBy(earlier.role, branch.role, command);
+  }
+
+  private static StageWrapper merge(List<StageWrapper> stages) {
+    if (stages.size() == 1) {
+      return stages.get(0);
+    }
+
+    List<String> texts = new ArrayList<String>(stages.size());
+    List<TaskWrapper> tasks = new ArrayList<TaskWrapper>();
+    for (StageWrapper stage : stages) {
+      texts.add(stage.getText());
+      tasks.addAll(stage.getTasks());
+    }
+
+    StageWrapper first = stages.get(0);
+    return new StageWrapper(first.getType(), StringUtils.join(texts, "; "), first.getParams(), tasks);
+  }
+
+  private static boolean isSameRun(StageWrapper stage, StageWrapper other) {
+    return stage.getType() == other.getType() && stage.getParams().equals(other.getParams());
+  }
+
+  /**
+   * @return the key of the branch of the stage, or {@code null} if the stage
+   *         can not run with others
+   */
+  private static String getBranchKey(StageWrapper stage) {
+    if (null == getRoleCommand(stage.getType()) || stage.getTasks().isEmpty()
+        || stage.getHosts().isEmpty()) {
+      return null;
+    }
+
+    String service = null;
+    String component = null;
+    for (TaskWrapper task : stage.getTasks()) {
+      if (StringUtils.isEmpty(task.getComponent()) || task.isAnyTaskSequential()) {
+        return null;
+      }
+      if (null == component) {
+        service = task.getService();
+        component = task.getComponent();
+      } else if (!component.equals(task.getComponent()) || !StringUtils.equals(service, task.getService())) {
+        return null;
+      }
+    }
+
+    return service + "/" + component;
+  }
+
+  private static RoleCommand getRoleCommand(StageWrapper.Type type) {
+    switch (type) {
+      case RESTART:
+      case START:
+        return RoleCommand.START;
+      case STOP:
+        return RoleCommand.STOP;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * The stages of a component in a run.
+   */
+  private static class Branch {
+    private final Role role;
+    private final List<StageWrapper> stages = new ArrayList<StageWrapper>();
+    private final Set<String> hosts = new HashSet<String>();
+    private int level = 0;
+
+    private Branch(Role role) {
+      this.role = role;
+    }
+  }
+}
@@ -837,6 +837,34 @@ public class ServiceComponentHostImpl implements ServiceComponentHost {
     } finally {
       writeLock.unlock();
     }
+
+    serviceComponent.updateStateCounts(this);
+  }
+
+  @Override
+  public void setReportedState(State state) {
+    writeLock.lock();
+    try {
+      stateMachine.setCurrentState(state);
+      HostComponentStateEntity stateEntity = getStateEntity();
+      if (stateEntity != null) {
+        boolean changed = stateEntity.getCurrentState() != state;
+        stateEntity.setCurrentState(state);
+        if (isPersisted()) {
+          hostComponentStateDAO.mergeLater(stateEntity, changed);
+        }
+      } else {
+        LOG.warn("Setting a member on an entity object that may have been " +
+          "previously deleted, serviceName = " + getServiceName() + ", " +
+          "componentName = " + getServiceComponentName() + ", " +
+          "hostName = " + getHostName());
+      }
+
+    } finally {
+      writeLock.unlock();
+    }
+
+    serviceComponent.updateStateCounts(this);
   }
 
   @Override
@@ -1042,6 +1070,9 @@ public class ServiceComponentHostImpl implements ServiceComponentHost {
       clusterGlobalLock.readLock().unlock();
     }
 
+    // outside of the locks, the component takes its own lock to count
+    serviceComponent.updateStateCounts(this);
+
     if (!oldState.equals(getState())) {
       LOG.info("Host role transitioned to a new state"
                + ", serviceComponentName=" + getServiceComponentName()
@@ -1718,6 +1749,8 @@ public class ServiceComponentHostImpl implements ServiceComponentHost {
     } finally {
       writeLock.unlock();
     }
+
+    serviceComponent.updateStateCounts(this);
   }
 
   @Override
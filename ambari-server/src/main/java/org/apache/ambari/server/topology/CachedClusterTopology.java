@@ -0,0 +1,253 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.topology;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ambari.server.controller.RequestStatusResponse;
+import org.apache.ambari.server.controller.internal.ProvisionAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A view of a {@link ClusterTopology} with the host groups and hosts of each
+ * component, and the host group of each host, looked up once on first use
+ * instead of walking all host groups on every call. Everything else
+ * is delegated to the topology.
+ * <p/>
+ * It is meant for a single pass over the configurations, such as the one of
+ * the {@link org.apache.ambari.server.controller.internal.BlueprintConfigurationProcessor},
+ * during which the hosts of the topology do not change. Hosts added to or
+ * removed from the topology through this view are looked up again, but
+ * changes made directly to the {@link HostGroupInfo}s are not seen. The
+ * collections returned are read only, and safe to share between threads.
+ */
+public class CachedClusterTopology implements ClusterTopology {
+
+  private final static Logger LOG = LoggerFactory.getLogger(CachedClusterTopology.class);
+
+  private final ClusterTopology topology;
+
+  /**
+   * The lookups, or {@code null} until first used or after hosts changed.
+   */
+  private volatile Lookups lookups;
+
+  /**
+   * Constructor.
+   *
+   * @param topology
+   *          the topology to look up
+   */
+  public CachedClusterTopology(ClusterTopology topology) {
+    this.topology = topology;
+  }
+
+  @Override
+  public Long getClusterId() {
+    return topology.getClusterId();
+  }
+
+  @Override
+  public void setClusterId(Long clusterId) {
+    topology.setClusterId(clusterId);
+  }
+
+  @Override
+  public Blueprint getBlueprint() {
+    return topology.getBlueprint();
+  }
+
+  @Override
+  public Configuration getConfiguration() {
+    return topology.getConfiguration();
+  }
+
+  @Override
+  public Map<String, HostGroupInfo> getHostGroupInfo() {
+    return topology.getHostGroupInfo();
+  }
+
+  @Override
+  public Collection<String> getHostGroupsForComponent(String component) {
+    Collection<String> hostGroups = getLookups().hostGroupsByComponent.get(component);
+    return null == hostGroups ? Collections.<String>emptyList() : hostGroups;
+  }
+
+  @Override
+  public String getHostGroupForHost(String hostname) {
+    return getLookups().hostGroupsByHost.get(hostname);
+  }
+
+  @Override
+  public Collection<String> getHostAssignmentsForComponent(String component) {
+    Collection<String> hosts = getLookups().hostsByComponent.get(component);
+    return null == hosts ? Collections.<String>emptyList() : hosts;
+  }
+
+  @Override
+  public void update(TopologyRequest topologyRequest) throws InvalidTopologyException {
+    try {
+      topology.update(topologyRequest);
+    } finally {
+      lookups = null;
+    }
+  }
+
+  @Override
+  public void addHostToTopology(String hostGroupName, String host)
+      throws InvalidTopologyException, NoSuchHostGroupException {
+    try {
+      topology.addHostToTopology(hostGroupName, host);
+    } finally {
+      lookups = null;
+    }
+  }
+
+  @Override
+  public boolean isNameNodeHAEnabled() {
+    return topology.isNameNodeHAEnabled();
+  }
+
+  @Override
+  public boolean isYarnResourceManagerHAEnabled() {
+    return topology.isYarnResourceManagerHAEnabled();
+  }
+
+  @Override
+  public boolean isClusterKerberosEnabled() {
+    return topology.isClusterKerberosEnabled();
+  }
+
+  @Override
+  public RequestStatusResponse installHost(String hostName) {
+    return topology.installHost(hostName);
+  }
+
+  @Override
+  public RequestStatusResponse startHost(String hostName) {
+    return topology.startHost(hostName);
+  }
+
+  @Override
+  public void setConfigRecommendationStrategy(ConfigRecommendationStrategy strategy) {
+    topology.setConfigRecommendationStrategy(strategy);
+  }
+
+  @Override
+  public ConfigRecommendationStrategy getConfigRecommendationStrategy() {
+    return topology.getConfigRecommendationStrategy();
+  }
+
+  @Override
+  public void setProvisionAction(ProvisionAction provisionAction) {
+    topology.setProvisionAction(provisionAction);
+  }
+
+  @Override
+  public ProvisionAction getProvisionAction() {
+    return topology.getProvisionAction();
+  }
+
+  @Override
+  public Map<String, AdvisedConfiguration> getAdvisedConfigurations() {
+    return topology.getAdvisedConfigurations();
+  }
+
+  @Override
+  public AmbariContext getAmbariContext() {
+    return topology.getAmbariContext();
+  }
+
+  @Override
+  public void removeHost(String hostname) {
+    topology.removeHost(hostname);
+    lookups = null;
+  }
+
+  private Lookups getLookups() {
+    Lookups current = lookups;
+    if (null == current) {
+      synchronized (this) {
+        current = lookups;
+        if (null == current) {
+          current = new Lookups(topology);
+          lookups = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  /**
+   * The lookups of a topology, built in a single walk over its host groups.
+   * Never modified once built.
+   */
+  private static final class Lookups {
+    private final Map<String, Collection<String>> hostGroupsByComponent = new HashMap<>();
+    private final Map<String, Collection<String>> hostsByComponent = new HashMap<>();
+    private final Map<String, String> hostGroupsByHost = new HashMap<>();
+
+    private Lookups(ClusterTopology topology) {
+      Map<String, HostGroupInfo> hostGroupInfos = topology.getHostGroupInfo();
+      Map<String, Collection<String>> hostsByGroup = new HashMap<>();
+      for (HostGroupInfo groupInfo : hostGroupInfos.values()) {
+        Collection<String> hosts = groupInfo.getHostNames();
+        hostsByGroup.put(groupInfo.getHostGroupName(), hosts);
+        for (String host : hosts) {
+          // a host can only be associated with a single host group
+          hostGroupsByHost.put(host, groupInfo.getHostGroupName());
+        }
+      }
+
+      Map<String, Collection<String>> hostGroups = new HashMap<>();
+      Map<String, Collection<String>> hosts = new HashMap<>();
+      for (HostGroup group : topology.getBlueprint().getHostGroups().values()) {
+        Collection<String> groupHosts = hostsByGroup.get(group.getName());
+        for (String component : group.getComponentNames()) {
+          Collection<String> componentGroups = hostGroups.get(component);
+          Collection<String> componentHosts = hosts.get(component);
+          if (null == componentGroups) {
+            componentGroups = new ArrayList<>();
+            componentHosts = new ArrayList<>();
+            hostGroups.put(component, componentGroups);
+            hosts.put(component, componentHosts);
+          }
+          componentGroups.add(group.getName());
+          if (null != groupHosts) {
+            componentHosts.addAll(groupHosts);
+          } else {
+            LOG.warn("HostGroup {} not found, when checking for hosts for component {}", group.getName(), component);
+          }
+        }
+      }
+
+      for (Map.Entry<String, Collection<String>> entry : hostGroups.entrySet()) {
+        hostGroupsByComponent.put(entry.getKey(), Collections.unmodifiableCollection(entry.getValue()));
+      }
+      for (Map.Entry<String, Collection<String>> entry : hosts.entrySet()) {
+        hostsByComponent.put(entry.getKey(), Collections.unmodifiableCollection(entry.getValue()));
+      }
+    }
+  }
+}
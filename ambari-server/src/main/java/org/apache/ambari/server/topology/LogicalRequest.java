@@ -20,6 +20,8 @@ package org.apache.ambari.server.topology;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -63,6 +65,9 @@ public class LogicalRequest extends Request {
   private final Collection<HostRequest> allHostRequests = new ArrayList<HostRequest>();
   // sorted set with master host requests given priority
   private final Collection<HostRequest> outstandingHostRequests = new TreeSet<HostRequest>();
+  // outstanding host requests by host group; the requests of a group share its predicate
+  private final Map<String, TreeSet<HostRequest>> outstandingHostRequestsByHostGroup =
+      new HashMap<String, TreeSet<HostRequest>>();
   private final Map<String, HostRequest> requestsWithReservedHosts = new HashMap<String, HostRequest>();
 
   private final ClusterTopology topology;
@@ -73,6 +78,14 @@ public class LogicalRequest extends Request {
 
   private final static Logger LOG = LoggerFactory.getLogger(LogicalRequest.class);
 
+  private static final Comparator<TreeSet<HostRequest>> FIRST_HOST_REQUEST_ORDER =
+      new Comparator<TreeSet<HostRequest>>() {
+        @Override
+        public int compare(TreeSet<HostRequest> groupRequests1, TreeSet<HostRequest> groupRequests2) {
+          return groupRequests1.first().compareTo(groupRequests2.first());
+        }
+      };
+
 
   public LogicalRequest(Long id, TopologyRequest request, ClusterTopology topology)
       throws AmbariException {
@@ -123,31 +136,45 @@ public class LogicalRequest extends Request {
     boolean predicateRejected = false;
     synchronized (outstandingHostRequests) {
       //todo: prioritization of master host requests
-      Iterator<HostRequest> hostRequestIterator = outstandingHostRequests.iterator();
-      while (hostRequestIterator.hasNext()) {
-        LOG.info("LogicalRequest.offer: attempting to match a request to a request for a reserved host to hostname = {}", host.getHostName());
-        HostOfferResponse response = hostRequestIterator.next().offer(host);
-        switch (response.getAnswer()) {
-          case ACCEPTED:
-            hostRequestIterator.remove();
-            LOG.info("LogicalRequest.offer: host request matched to non-reserved host, hostname = {}, host request has been removed from list", host.getHostName());
-            return response;
-          case DECLINED_DONE:
-            //todo: should have been done on ACCEPT
-            hostRequestIterator.remove();
-            LOG.info("LogicalRequest.offer: host request returned DECLINED_DONE for hostname = {}, host request has been removed from list", host.getHostName());
-          case DECLINED_PREDICATE:
-            LOG.info("LogicalRequest.offer: host request returned DECLINED_PREDICATE for hostname = {}", host.getHostName());
-            predicateRejected = true;
+      // the host is matched once per host group, in the order of the first outstanding request of each group
+      List<TreeSet<HostRequest>> hostGroupRequests =
+          new ArrayList<TreeSet<HostRequest>>(outstandingHostRequestsByHostGroup.values());
+      Collections.sort(hostGroupRequests, FIRST_HOST_REQUEST_ORDER);
+
+      List<HostRequest> doneHostRequests = new ArrayList<HostRequest>();
+      try {
+        for (TreeSet<HostRequest> groupRequests : hostGroupRequests) {
+          for (HostRequest hostRequest : groupRequests) {
+            LOG.info("LogicalRequest.offer: attempting to match a request to a request for a reserved host to hostname = {}", host.getHostName());
+            HostOfferResponse response = hostRequest.offer(host);
+            switch (response.getAnswer()) {
+              case ACCEPTED:
+                doneHostRequests.add(hostRequest);
+                LOG.info("LogicalRequest.offer: host request matched to non-reserved host, hostname = {}, host request has been removed from list", host.getHostName());
+                return response;
+              case DECLINED_DONE:
+                //todo: should have been done on ACCEPT
+                doneHostRequests.add(hostRequest);
+                LOG.info("LogicalRequest.offer: host request returned DECLINED_DONE for hostname = {}, host request has been removed from list", host.getHostName());
+                predicateRejected = true;
+                continue;
+              case DECLINED_PREDICATE:
+                LOG.info("LogicalRequest.offer: host request returned DECLINED_PREDICATE for hostname = {}", host.getHostName());
+                predicateRejected = true;
+            }
+            // the other requests of the group have the same predicate
+            break;
+          }
+        }
+      } finally {
+        for (HostRequest hostRequest : doneHostRequests) {
+          removeOutstandingHostRequest(hostRequest);
         }
       }
 
       LOG.info("LogicalRequest.offer: outstandingHost request list size = " + outstandingHostRequests.size());
     }
 
-
-
-
     // if at least one outstanding host request rejected for predicate or we have an outstanding request
     // with a reserved host decline due to predicate, otherwise decline due to all hosts being resolved
     return predicateRejected || ! requestsWithReservedHosts.isEmpty() ?
@@ -155,6 +182,32 @@ public class LogicalRequest extends Request {
         new HostOfferResponse(HostOfferResponse.Answer.DECLINED_DONE);
   }
 
+  /**
+   * Adds an outstanding host request, indexed by its host group.
+   */
+  private void addOutstandingHostRequest(HostRequest hostRequest) {
+    outstandingHostRequests.add(hostRequest);
+
+    TreeSet<HostRequest> groupRequests = outstandingHostRequestsByHostGroup.get(hostRequest.getHostgroupName());
+    if (groupRequests == null) {
+      groupRequests = new TreeSet<HostRequest>();
+      outstandingHostRequestsByHostGroup.put(hostRequest.getHostgroupName(), groupRequests);
+    }
+    groupRequests.add(hostRequest);
+  }
+
+  private void removeOutstandingHostRequest(HostRequest hostRequest) {
+    outstandingHostRequests.remove(hostRequest);
+
+    TreeSet<HostRequest> groupRequests = outstandingHostRequestsByHostGroup.get(hostRequest.getHostgroupName());
+    if (groupRequests != null) {
+      groupRequests.remove(hostRequest);
+      if (groupRequests.isEmpty()) {
+        outstandingHostRequestsByHostGroup.remove(hostRequest.getHostgroupName());
+      }
+    }
+  }
+
   @Override
   public List<HostRoleCommand> getCommands() {
     List<HostRoleCommand> commands = new ArrayList<HostRoleCommand>();
@@ -345,10 +398,9 @@ public class LogicalRequest extends Request {
       synchronized (outstandingHostRequests) {
         requestsWithReservedHosts.remove(hostName);
 
-        Iterator<HostRequest> hostRequestIterator = outstandingHostRequests.iterator();
-        while (hostRequestIterator.hasNext()) {
-          if (hostRequestIterator.next().getHostName().equals(hostName)) {
-            hostRequestIterator.remove();
+        for (HostRequest hostRequest : outstandingHostRequests) {
+          if (hostRequest.getHostName().equals(hostName)) {
+            removeOutstandingHostRequest(hostRequest);
             break;
           }
         }
@@ -388,7 +440,7 @@ public class LogicalRequest extends Request {
           // host count is specified
           HostRequest hostRequest = new HostRequest(getRequestId(), hostIdCounter.getAndIncrement(), getClusterId(),
               null, blueprint.getName(), blueprint.getHostGroup(groupName), hostGroupInfo.getPredicate(), topology);
-          outstandingHostRequests.add(hostRequest);
+          addOutstandingHostRequest(hostRequest);
         }
       }
     }
@@ -447,7 +499,7 @@ public class LogicalRequest extends Request {
           LOG.info("LogicalRequest.createHostRequests: created new request for a reserved request ID = {} for host name = {}",
             hostRequest.getId(), reservedHostName);
         } else {
-          outstandingHostRequests.add(hostRequest);
+          addOutstandingHostRequest(hostRequest);
           LOG.info("LogicalRequest.createHostRequests: created new outstanding host request ID = {}", hostRequest.getId());
         }
       }
@@ -61,6 +61,14 @@ public interface PersistedState {
    */
   void registerHostName(long hostRequestId, String hostName);
 
+  /**
+   * Register the hosts with their host requests and in the topology host info
+   * in a single transaction.
+   *
+   * @param hosts  hosts being registered by host request id
+   */
+  void registerHosts(Map<Long, Host> hosts);
+
   /**
    * Get all persisted requests.  This is used to replay all
    * requests upon ambari startup.
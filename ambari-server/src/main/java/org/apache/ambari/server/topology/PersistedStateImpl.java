@@ -20,6 +20,7 @@ package org.apache.ambari.server.topology;
 
 import com.google.gson.Gson;
 import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.actionmanager.HostRoleCommand;
 import org.apache.ambari.server.api.predicate.InvalidQueryException;
@@ -133,6 +134,15 @@ public class PersistedStateImpl implements PersistedState {
     }
   }
 
+  @Override
+  @Transactional
+  public void registerHosts(Map<Long, Host> hosts) {
+    for (Map.Entry<Long, Host> entry : hosts.entrySet()) {
+      registerHostName(entry.getKey(), entry.getValue().getHostName());
+      registerInTopologyHostInfo(entry.getValue());
+    }
+  }
+
   @Override
   public void registerInTopologyHostInfo(Host host) {
     TopologyHostInfoEntity entity = topologyHostInfoDAO.findByHostname(host.getHostName());
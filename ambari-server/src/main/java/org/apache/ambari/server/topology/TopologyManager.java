@@ -24,18 +24,27 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.actionmanager.HostRoleCommand;
 import org.apache.ambari.server.api.services.stackadvisor.StackAdvisorBlueprintProcessor;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.AmbariServer;
 import org.apache.ambari.server.controller.RequestStatusResponse;
 import org.apache.ambari.server.controller.internal.ArtifactResourceProvider;
@@ -61,6 +70,7 @@ import org.apache.ambari.server.utils.RetryHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Singleton;
 
 /**
@@ -77,6 +87,11 @@ public class TopologyManager {
   private static final String CLUSTER_ENV_CONFIG_TYPE_NAME = "cluster-env";
   private static final String CLUSTER_CONFIG_TASK_MAX_TIME_IN_MILLIS_PROPERTY_NAME = "cluster_configure_task_timeout";
 
+  /**
+   * The time, in milliseconds, an idle thread running host tasks is kept.
+   */
+  private static final long HOST_TASK_THREAD_TIMEOUT = 60000L;
+
   private PersistedState persistedState;
   private ExecutorService executor = Executors.newSingleThreadExecutor();
   private Collection<String> hostsToIgnore = new HashSet<String>();
@@ -88,6 +103,28 @@ public class TopologyManager {
   //todo: currently only support a single cluster
   private Map<Long, ClusterTopology> clusterTopologyMap = new HashMap<Long, ClusterTopology>();
 
+  /**
+   * The future of the last configure cluster task of each cluster, which the
+   * host tasks run in parallel wait for.
+   */
+  private final Map<Long, Future<?>> clusterConfigFutures = new ConcurrentHashMap<Long, Future<?>>();
+
+  /**
+   * Runs the tasks of each host after the others when more than one thread is
+   * configured, created on first use.
+   */
+  private ThreadPoolExecutor hostTaskExecutor;
+
+  /**
+   * The hosts registered during the current batch window.
+   */
+  private final List<HostImpl> pendingHosts = new ArrayList<HostImpl>();
+
+  /**
+   * Matches the hosts of a batch window once it passes, created on first use.
+   */
+  private ScheduledExecutorService registrationScheduler;
+
   @Inject
   private StackAdvisorBlueprintProcessor stackAdvisorBlueprintProcessor;
 
@@ -102,6 +139,9 @@ public class TopologyManager {
   @Inject
   private SecurityConfigurationFactory securityConfigurationFactory;
 
+  @Inject
+  private Configuration configuration;
+
   /**
    * A boolean not cached thread-local (volatile) to prevent double-checked
    * locking on the synchronized keyword.
@@ -316,65 +356,147 @@ public class TopologyManager {
       return;
     }
 
-    boolean matchedToRequest = false;
-    String hostName = host.getHostName();
-    // The lock ordering in this method must always be the same ordering as TopologyManager.processRequest
-    // TODO: Locking strategies for TopologyManager should be reviewed and possibly rewritten in a future release
-    synchronized (availableHosts) {
-      synchronized (reservedHosts) {
-        if (reservedHosts.containsKey(hostName)) {
-          LogicalRequest request = reservedHosts.remove(hostName);
-          HostOfferResponse response = request.offer(host);
-          if (response.getAnswer() != HostOfferResponse.Answer.ACCEPTED) {
-            throw new RuntimeException("LogicalRequest declined host offer of explicitly requested host: " + hostName);
-          }
+    long batchWindow = configuration.getTopologyHostRegistrationBatchWindow();
+    if (batchWindow > 0) {
+      queueHostRegistration(host, batchWindow);
+    } else {
+      registerHosts(Collections.singletonList(host));
+    }
+  }
 
-          LOG.info("TopologyManager.onHostRegistered: processing accepted host offer for reserved host = {}", hostName);
-          processAcceptedHostOffer(getClusterTopology(request.getClusterId()), response, host);
-          matchedToRequest = true;
+  /**
+   * Collects the host until the batch window passes, so that the hosts
+   * registering together are matched to the requests at once.
+   *
+   * @param host         the registered host
+   * @param batchWindow  the batch window in milliseconds
+   */
+  private void queueHostRegistration(HostImpl host, long batchWindow) {
+    synchronized (pendingHosts) {
+      LOG.info("TopologyManager.onHostRegistered: host = {} will be matched with the hosts registering in the next {} ms",
+          host.getHostName(), batchWindow);
+      pendingHosts.add(host);
+      if (pendingHosts.size() > 1) {
+        return;
+      }
+
+      if (registrationScheduler == null) {
+        registrationScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("topology-host-registration-%d").setDaemon(true).build());
+      }
+    }
+
+    registrationScheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        List<HostImpl> hosts;
+        synchronized (pendingHosts) {
+          hosts = new ArrayList<HostImpl>(pendingHosts);
+          pendingHosts.clear();
+        }
+
+        LOG.info("TopologyManager: matching {} hosts registered in the batch window", hosts.size());
+        try {
+          registerHosts(hosts);
+        } catch (RuntimeException e) {
+          LOG.error("An error occurred while matching the registered hosts to the requests", e);
         }
       }
+    }, batchWindow, TimeUnit.MILLISECONDS);
+  }
 
-      // can be true if host was reserved
-      if (!matchedToRequest) {
-        synchronized (outstandingRequests) {
-          Iterator<LogicalRequest> outstandingRequestIterator = outstandingRequests.iterator();
-          while (!matchedToRequest && outstandingRequestIterator.hasNext()) {
-            LogicalRequest request = outstandingRequestIterator.next();
-            HostOfferResponse hostOfferResponse = request.offer(host);
-            switch (hostOfferResponse.getAnswer()) {
-              case ACCEPTED:
-                matchedToRequest = true;
-                LOG.info("TopologyManager.onHostRegistered: processing accepted host offer for matched host = {}", hostName);
-                processAcceptedHostOffer(getClusterTopology(request.getClusterId()), hostOfferResponse, host);
-                break;
-              case DECLINED_DONE:
-                LOG.info("TopologyManager.onHostRegistered: DECLINED_DONE received for host = {}", hostName);
-                outstandingRequestIterator.remove();
-                break;
-              case DECLINED_PREDICATE:
-                LOG.info("TopologyManager.onHostRegistered: DECLINED_PREDICATE received for host = {}", hostName);
-                break;
+  /**
+   * Offers the hosts to the requests they are reserved for first, then to the
+   * outstanding requests, and queues the ones not accepted as available. The
+   * hosts accepted are registered with their host requests in one transaction.
+   * A host which fails to register does not keep the other hosts from being
+   * registered; the first failure is thrown once all hosts are processed.
+   *
+   * @param hosts  the registered hosts
+   */
+  private void registerHosts(Collection<HostImpl> hosts) {
+    List<AcceptedHostOffer> acceptedOffers = new ArrayList<AcceptedHostOffer>(hosts.size());
+    RuntimeException failure = null;
+    try {
+      // The lock ordering in this method must always be the same ordering as TopologyManager.processRequest
+      // TODO: Locking strategies for TopologyManager should be reviewed and possibly rewritten in a future release
+      synchronized (availableHosts) {
+        for (HostImpl host : hosts) {
+          try {
+            registerHost(host, acceptedOffers);
+          } catch (RuntimeException e) {
+            LOG.error("TopologyManager: host = {} could not be registered", host.getHostName(), e);
+            if (failure == null) {
+              failure = e;
             }
           }
         }
       }
+    } finally {
+      processAcceptedHostOffers(acceptedOffers);
+    }
 
-      if (!matchedToRequest) {
-        boolean addToAvailableList = true;
-        for (HostImpl registered : availableHosts) {
-          if (registered.getHostId() == host.getHostId()) {
-            LOG.info("Host {} re-registered, will not be added to the available hosts list", hostName);
-            addToAvailableList = false;
-            break;
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void registerHost(HostImpl host, List<AcceptedHostOffer> acceptedOffers) {
+    boolean matchedToRequest = false;
+    String hostName = host.getHostName();
+    synchronized (reservedHosts) {
+      if (reservedHosts.containsKey(hostName)) {
+        LogicalRequest request = reservedHosts.remove(hostName);
+        HostOfferResponse response = request.offer(host);
+        if (response.getAnswer() != HostOfferResponse.Answer.ACCEPTED) {
+          throw new RuntimeException("LogicalRequest declined host offer of explicitly requested host: " + hostName);
+        }
+
+        LOG.info("TopologyManager.onHostRegistered: processing accepted host offer for reserved host = {}", hostName);
+        acceptedOffers.add(acceptHostOffer(getClusterTopology(request.getClusterId()), response, host));
+        matchedToRequest = true;
+      }
+    }
+
+    // can be true if host was reserved
+    if (!matchedToRequest) {
+      synchronized (outstandingRequests) {
+        Iterator<LogicalRequest> outstandingRequestIterator = outstandingRequests.iterator();
+        while (!matchedToRequest && outstandingRequestIterator.hasNext()) {
+          LogicalRequest request = outstandingRequestIterator.next();
+          HostOfferResponse hostOfferResponse = request.offer(host);
+          switch (hostOfferResponse.getAnswer()) {
+            case ACCEPTED:
+              matchedToRequest = true;
+              LOG.info("TopologyManager.onHostRegistered: processing accepted host offer for matched host = {}", hostName);
+              acceptedOffers.add(acceptHostOffer(getClusterTopology(request.getClusterId()), hostOfferResponse, host));
+              break;
+            case DECLINED_DONE:
+              LOG.info("TopologyManager.onHostRegistered: DECLINED_DONE received for host = {}", hostName);
+              outstandingRequestIterator.remove();
+              break;
+            case DECLINED_PREDICATE:
+              LOG.info("TopologyManager.onHostRegistered: DECLINED_PREDICATE received for host = {}", hostName);
+              break;
           }
         }
+      }
+    }
 
-        if (addToAvailableList) {
-          LOG.info("TopologyManager: Queueing available host {}", hostName);
-          availableHosts.add(host);
+    if (!matchedToRequest) {
+      boolean addToAvailableList = true;
+      for (HostImpl registered : availableHosts) {
+        if (registered.getHostId() == host.getHostId()) {
+          LOG.info("Host {} re-registered, will not be added to the available hosts list", hostName);
+          addToAvailableList = false;
+          break;
         }
       }
+
+      if (addToAvailableList) {
+        LOG.info("TopologyManager: Queueing available host {}", hostName);
+        availableHosts.add(host);
+      }
     }
   }
 
@@ -507,6 +629,7 @@ public class TopologyManager {
     LogicalRequest logicalRequest = createLogicalRequest(request, topology, requestId);
 
     boolean requestHostComplete = false;
+    List<AcceptedHostOffer> acceptedOffers = new ArrayList<AcceptedHostOffer>();
     //todo: overall synchronization. Currently we have nested synchronization here
 
     // The lock ordering in this method must always be the same ordering as TopologyManager.onHostRegistered
@@ -545,7 +668,7 @@ public class TopologyManager {
             hostIterator.remove();
             LOG.info("TopologyManager.processRequest: host name = {} was ACCEPTED by LogicalRequest ID = {} , host has been removed from available hosts.",
                 host.getHostName(), logicalRequest.getRequestId());
-            processAcceptedHostOffer(getClusterTopology(logicalRequest.getClusterId()), response, host);
+            acceptedOffers.add(acceptHostOffer(getClusterTopology(logicalRequest.getClusterId()), response, host));
             break;
           case DECLINED_DONE:
             requestHostComplete = true;
@@ -568,6 +691,8 @@ public class TopologyManager {
         }
       }
     }
+
+    processAcceptedHostOffers(acceptedOffers);
     return logicalRequest;
   }
 
@@ -596,10 +721,9 @@ public class TopologyManager {
     return logicalRequest;
   }
 
-  private void processAcceptedHostOffer(ClusterTopology topology, final HostOfferResponse response, final HostImpl host) {
-    final String hostName = host.getHostName();
+  private AcceptedHostOffer acceptHostOffer(ClusterTopology topology, HostOfferResponse response, HostImpl host) {
     try {
-      topology.addHostToTopology(response.getHostGroupName(), hostName);
+      topology.addHostToTopology(response.getHostGroupName(), host.getHostName());
 
       // update the host with the rack info if applicable
       updateHostWithRackInfo(topology, response, host);
@@ -612,13 +736,24 @@ public class TopologyManager {
       throw new RuntimeException("An internal error occurred while performing request host registration: " + e, e);
     }
 
-    // persist the host request -> hostName association
+    return new AcceptedHostOffer(topology, response, host);
+  }
+
+  private void processAcceptedHostOffers(List<AcceptedHostOffer> acceptedOffers) {
+    if (acceptedOffers.isEmpty()) {
+      return;
+    }
+
+    // persist the host request -> hostName associations
+    final Map<Long, Host> hosts = new LinkedHashMap<Long, Host>();
+    for (AcceptedHostOffer acceptedOffer : acceptedOffers) {
+      hosts.put(acceptedOffer.response.getHostRequestId(), acceptedOffer.host);
+    }
     try {
       RetryHelper.executeWithRetry(new Callable<Object>() {
         @Override
         public Object call() throws Exception {
-          persistedState.registerHostName(response.getHostRequestId(), hostName);
-          persistedState.registerInTopologyHostInfo(host);
+          persistedState.registerHosts(hosts);
           return null;
         }
       });
@@ -627,17 +762,51 @@ public class TopologyManager {
       throw new RuntimeException(e);
     }
 
+    ExecutorService taskExecutor = getHostTaskExecutor();
+    for (AcceptedHostOffer acceptedOffer : acceptedOffers) {
+      String hostName = acceptedOffer.host.getHostName();
+      ClusterTopology topology = acceptedOffer.topology;
+      HostOfferResponse response = acceptedOffer.response;
+      LOG.info("TopologyManager.processAcceptedHostOffer: about to execute tasks for host = {}",
+          hostName);
+
+      for (TopologyTask task : response.getTasks()) {
+        LOG.info("Processing accepted host offer for {} which responded {} and task {}",
+            hostName, response.getAnswer(), task.getType());
+
+        task.init(topology, ambariContext);
+        if (taskExecutor == null) {
+          executor.execute(task);
+        }
+      }
 
-    LOG.info("TopologyManager.processAcceptedHostOffer: about to execute tasks for host = {}",
-        hostName);
+      if (taskExecutor != null) {
+        taskExecutor.execute(new HostTasks(hostName, response.getTasks(),
+            topology.getClusterId() == null ? null : clusterConfigFutures.get(topology.getClusterId())));
+      }
+    }
+  }
 
-    for (TopologyTask task : response.getTasks()) {
-      LOG.info("Processing accepted host offer for {} which responded {} and task {}",
-          hostName, response.getAnswer(), task.getType());
+  /**
+   * Gets the executor running the tasks of each host after the others, so
+   * that the hosts are installed and started in parallel.
+   *
+   * @return the executor, or {@code null} if the tasks of all hosts run one
+   *         after the other on the topology executor
+   */
+  private synchronized ExecutorService getHostTaskExecutor() {
+    int threadCount = configuration.getTopologyTaskParallelCount();
+    if (threadCount <= 1) {
+      return null;
+    }
 
-      task.init(topology, ambariContext);
-      executor.execute(task);
+    if (hostTaskExecutor == null) {
+      hostTaskExecutor = new ThreadPoolExecutor(threadCount, threadCount, HOST_TASK_THREAD_TIMEOUT,
+          TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactoryBuilder().setNameFormat("topology-host-task-%d").setDaemon(true).build());
+      hostTaskExecutor.allowCoreThreadTimeOut(true);
     }
+    return hostTaskExecutor;
   }
 
   private void updateHostWithRackInfo(ClusterTopology topology, HostOfferResponse response, HostImpl host) {
@@ -747,7 +916,66 @@ public class TopologyManager {
     AsyncCallableService<Boolean> asyncCallableService = new AsyncCallableService(configureClusterTask, timeout, delay,
         Executors.newScheduledThreadPool(1));
 
-    executor.submit(asyncCallableService);
+    Future<?> future = executor.submit(asyncCallableService);
+    if (topology.getClusterId() != null) {
+      clusterConfigFutures.put(topology.getClusterId(), future);
+    }
+  }
+
+  /**
+   * A host request accepted a host which is to be registered with it.
+   */
+  private static class AcceptedHostOffer {
+    private final ClusterTopology topology;
+    private final HostOfferResponse response;
+    private final HostImpl host;
+
+    private AcceptedHostOffer(ClusterTopology topology, HostOfferResponse response, HostImpl host) {
+      this.topology = topology;
+      this.response = response;
+      this.host = host;
+    }
+  }
+
+  /**
+   * Runs the tasks of a host in order once the cluster configuration was set,
+   * since the configure cluster task runs on another executor than the host
+   * tasks run in parallel.
+   */
+  private static class HostTasks implements Runnable {
+    private final String hostName;
+    private final List<TopologyTask> tasks;
+    private final Future<?> clusterConfigFuture;
+
+    private HostTasks(String hostName, List<TopologyTask> tasks, Future<?> clusterConfigFuture) {
+      this.hostName = hostName;
+      this.tasks = tasks;
+      this.clusterConfigFuture = clusterConfigFuture;
+    }
+
+    @Override
+    public void run() {
+      if (clusterConfigFuture != null) {
+        try {
+          clusterConfigFuture.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        } catch (ExecutionException e) {
+          // the host tasks ran after a failed configure cluster task as well
+          LOG.error("TopologyManager.HostTasks: cluster configuration failed before executing tasks for host = {}",
+              hostName, e);
+        }
+      }
+
+      for (TopologyTask task : tasks) {
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          LOG.error("TopologyManager.HostTasks: task {} failed for host = {}", task.getType(), hostName, e);
+        }
+      }
+    }
   }
 
   // package protected for testing purposes
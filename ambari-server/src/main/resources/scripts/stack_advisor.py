@@ -35,6 +35,7 @@ ALL_ACTIONS = [RECOMMEND_COMPONENT_LAYOUT_ACTION,
                RECOMMEND_CONFIGURATION_DEPENDENCIES,
                VALIDATE_CONFIGURATIONS]
 USAGE = "Usage: <action> <hosts_file> <services_file>\nPossible actions are: {0}\n".format( str(ALL_ACTIONS) )
+WORKER_ACTION = 'worker'
 
 SCRIPT_DIRECTORY = os.path.dirname(os.path.abspath(__file__))
 STACK_ADVISOR_PATH_TEMPLATE = os.path.join(SCRIPT_DIRECTORY, '../stacks/stack_advisor.py')
@@ -42,6 +43,9 @@ STACK_ADVISOR_DEFAULT_IMPL_CLASS = 'DefaultStackAdvisor'
 STACK_ADVISOR_IMPL_PATH_TEMPLATE = os.path.join(SCRIPT_DIRECTORY, './../stacks/{0}/{1}/services/stack_advisor.py')
 STACK_ADVISOR_IMPL_CLASS_TEMPLATE = '{0}{1}StackAdvisor'
 
+# StackAdvisor implementation classes already loaded by a worker, by stack name and versions
+STACK_ADVISOR_CLASSES = {}
+
 
 class StackAdvisorException(Exception):
   pass
@@ -119,8 +123,62 @@ def main(argv=None):
   pass
 
 
+def runWorker():
+  """
+  Runs the actions read from stdin, one JSON request per line with the action, the hosts and services
+  files and the files for the output and errors of the action. Writes the exit code the script would
+  have exited with for each request to stdout, so that the modules are imported only once.
+  """
+  protocol = os.fdopen(os.dup(sys.stdout.fileno()), 'w')
+  devnull = os.open(os.devnull, os.O_WRONLY)
+  os.dup2(devnull, sys.stdout.fileno())
+  os.close(devnull)
+
+  while True:
+    line = sys.stdin.readline()
+    if not line:
+      break
+
+    request = json.loads(line)
+    exitCode = 0
+    with open(request["out"], 'w') as out:
+      with open(request["err"], 'w') as err:
+        sys.stdout, sys.stderr = out, err
+        try:
+          main([None, request["action"], request["hosts"], request["services"]])
+        except SystemExit as e:
+          exitCode = e.code or 0
+        except StackAdvisorException as stack_exception:
+          traceback.print_exc()
+          print "Error occured in stack advisor.\nError details: {0}".format(str(stack_exception))
+          exitCode = 1
+        except Exception as e:
+          traceback.print_exc()
+          print "Error occured in stack advisor.\nError details: {0}".format(str(e))
+          exitCode = 2
+        finally:
+          sys.stdout, sys.stderr = sys.__stdout__, sys.__stderr__
+
+    protocol.write("{0}\n".format(exitCode))
+    protocol.flush()
+
+
 def instantiateStackAdvisor(stackName, stackVersion, parentVersions):
   """Instantiates StackAdvisor implementation for the specified Stack"""
+  key = (stackName, stackVersion, tuple(parentVersions))
+  if key in STACK_ADVISOR_CLASSES:
+    return STACK_ADVISOR_CLASSES[key]()
+
+  clazz = loadStackAdvisorClass(stackName, stackVersion, parentVersions)
+  # loading the implementations of another stack executes them in the same module again, so only the
+  # classes of the last stack loaded are kept
+  STACK_ADVISOR_CLASSES.clear()
+  STACK_ADVISOR_CLASSES[key] = clazz
+  return clazz()
+
+
+def loadStackAdvisorClass(stackName, stackVersion, parentVersions):
+  """Loads the StackAdvisor implementation class for the specified Stack"""
   import imp
 
   with open(STACK_ADVISOR_PATH_TEMPLATE, 'rb') as fp:
@@ -146,16 +204,19 @@ def instantiateStackAdvisor(stackName, stackVersion, parentVersions):
   try:
     clazz = getattr(stack_advisor, className)
     print "Returning " + className + " implementation"
-    return clazz()
+    return clazz
   except Exception as e:
     traceback.print_exc()
     print "Returning default implementation"
-    return default_stack_advisor.DefaultStackAdvisor()
+    return default_stack_advisor.DefaultStackAdvisor
 
 
 if __name__ == '__main__':
   try:
-    main(sys.argv)
+    if len(sys.argv) == 2 and sys.argv[1] == WORKER_ACTION:
+      runWorker()
+    else:
+      main(sys.argv)
   except StackAdvisorException as stack_exception:
     traceback.print_exc()
     print "Error occured in stack advisor.\nError details: {0}".format(str(stack_exception))
@@ -18,19 +18,36 @@
 
 package org.apache.ambari.server.actionmanager;
 
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ambari.server.Role;
 import org.apache.ambari.server.RoleCommand;
 import org.apache.ambari.server.orm.GuiceJpaInitializer;
 import org.apache.ambari.server.orm.InMemoryDefaultTestModule;
+import org.apache.ambari.server.orm.dao.HostDAO;
+import org.apache.ambari.server.orm.dao.HostRoleCommandDAO;
+import org.apache.ambari.server.orm.entities.RoleSuccessCriteriaEntity;
+import org.apache.ambari.server.orm.entities.StageEntity;
 import org.apache.ambari.server.serveraction.ServerAction;
 import org.apache.ambari.server.serveraction.upgrades.ConfigureAction;
 import org.apache.ambari.server.state.svccomphost.ServiceComponentHostServerActionEvent;
 import org.apache.ambari.server.utils.StageUtils;
+import org.easymock.IAnswer;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -48,6 +65,13 @@ public class StageTest {
       + SERVER_HOST_NAME + "], slave_hosts=["
       + SERVER_HOST_NAME + "]}";
 
+  /**
+   * The hosts and roles of the stages read from the database, a command per
+   * role on each host.
+   */
+  private static final int STORED_STAGE_HOSTS = 1000;
+  private static final Role[] STORED_STAGE_ROLES = { Role.DATANODE, Role.NODEMANAGER };
+
   Injector injector;
 
   @Inject
@@ -79,4 +103,141 @@ public class StageTest {
 
     assertEquals("user1", actionUserName);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testLoadCommandsOfOneHost() throws Exception {
+    AtomicInteger loadedCommands = new AtomicInteger();
+    Stage stage = createStoredStage(1L, loadedCommands);
+
+    assertEquals(STORED_STAGE_HOSTS, stage.getHosts().size());
+    assertEquals(0, loadedCommands.get());
+
+    // only the commands of the host
+    HostRoleCommand command = stage.getHostRoleCommand("c6401-5", Role.DATANODE.toString());
+    assertEquals("c6401-5", command.getHostName());
+    assertEquals(HostRoleStatus.PENDING, stage.getHostRoleStatus("c6401-5", Role.NODEMANAGER.toString()));
+    assertEquals(STORED_STAGE_ROLES.length, loadedCommands.get());
+    assertEquals(STORED_STAGE_HOSTS, stage.getHosts().size());
+
+    // the whole stage, keeping the commands in use
+    List<HostRoleCommand> commands = stage.getOrderedHostRoleCommands();
+    assertEquals(STORED_STAGE_HOSTS * STORED_STAGE_ROLES.length, commands.size());
+    assertEquals(STORED_STAGE_HOSTS * STORED_STAGE_ROLES.length, loadedCommands.get());
+    assertTrue(commands.contains(command));
+    assertSame(command, stage.getHostRoleCommand("c6401-5", Role.DATANODE.toString()));
+    assertEquals(STORED_STAGE_HOSTS, stage.getHosts().size());
+  }
+
+  /**
+   * Compares the heap retained by large stages read from the database whose
+   * commands are used on one host only with the heap retained once all of
+   * their commands are loaded.
+   */
+  @Test
+  public void testLazyStagesRetainedHeap() throws Exception {
+    List<Stage> stages = new ArrayList<Stage>();
+    AtomicInteger loadedCommands = new AtomicInteger();
+    long baseline = getUsedHeap();
+
+    for (int i = 0; i < 20; i++) {
+      Stage stage = createStoredStage(i, loadedCommands);
+      stage.getHosts();
+      stage.getHostRoleStatus("c6401-" + i, Role.DATANODE.toString());
+      stages.add(stage);
+    }
+    long lazyHeap = getUsedHeap() - baseline;
+
+    for (Stage stage : stages) {
+      stage.getOrderedHostRoleCommands();
+    }
+    long loadedHeap = getUsedHeap() - baseline;
+
+    assertEquals(20 * STORED_STAGE_HOSTS * STORED_STAGE_ROLES.length, loadedCommands.get());
+    assertTrue("Retained " + lazyHeap + " bytes with commands of one host, " + loadedHeap
+        + " bytes with all commands", lazyHeap * 4 < loadedHeap);
+  }
+
+  /**
+   * Creates a stage as read from the database with
+   * {@link #STORED_STAGE_HOSTS} hosts, building its commands when the stage
+   * reads their tasks.
+   */
+  private Stage createStoredStage(final long stageId, final AtomicInteger loadedCommands) {
+    final HostDAO hostDAO = createNiceMock(HostDAO.class);
+
+    // the host names and task ids are built when read, so that only the stage retains them
+    HostRoleCommandDAO hostRoleCommandDAO = createNiceMock(HostRoleCommandDAO.class);
+    expect(hostRoleCommandDAO.findHostNamesByStage(1L, stageId)).andAnswer(
+        new IAnswer<List<String>>() {
+          @Override
+          public List<String> answer() throws Throwable {
+            List<String> hostNames = new ArrayList<String>();
+            for (int i = 0; i < STORED_STAGE_HOSTS; i++) {
+              hostNames.add("c6401-" + i);
+            }
+            return hostNames;
+          }
+        }).anyTimes();
+    expect(hostRoleCommandDAO.findTaskIdsByStage(1L, stageId)).andAnswer(
+        new IAnswer<List<Long>>() {
+          @Override
+          public List<Long> answer() throws Throwable {
+            List<Long> taskIds = new ArrayList<Long>();
+            for (int i = 0; i < STORED_STAGE_HOSTS * STORED_STAGE_ROLES.length; i++) {
+              taskIds.add(Long.valueOf(i));
+            }
+            return taskIds;
+          }
+        }).anyTimes();
+    expect(hostRoleCommandDAO.findTaskIdsByStageAndHost(anyLong(), anyLong(), anyString())).andAnswer(
+        new IAnswer<List<Long>>() {
+          @Override
+          public List<Long> answer() throws Throwable {
+            int host = Integer.parseInt(((String) getCurrentArguments()[2]).substring("c6401-".length()));
+            List<Long> taskIds = new ArrayList<Long>();
+            for (int j = 0; j < STORED_STAGE_ROLES.length; j++) {
+              taskIds.add(Long.valueOf(host * STORED_STAGE_ROLES.length + j));
+            }
+            return taskIds;
+          }
+        }).anyTimes();
+
+    ActionDBAccessor dbAccessor = createNiceMock(ActionDBAccessor.class);
+    expect(dbAccessor.getTasks(anyObject(Collection.class))).andAnswer(
+        new IAnswer<Collection<HostRoleCommand>>() {
+          @Override
+          public Collection<HostRoleCommand> answer() throws Throwable {
+            List<HostRoleCommand> commands = new ArrayList<HostRoleCommand>();
+            for (Object taskId : (Collection<?>) getCurrentArguments()[0]) {
+              long id = ((Long) taskId).longValue();
+              HostRoleCommand command = new HostRoleCommand("c6401-" + (id / STORED_STAGE_ROLES.length),
+                  STORED_STAGE_ROLES[(int) (id % STORED_STAGE_ROLES.length)], null, RoleCommand.START,
+                  hostDAO, null, null);
+              command.setTaskId(id);
+              command.setStatus(HostRoleStatus.PENDING);
+              commands.add(command);
+            }
+            loadedCommands.addAndGet(commands.size());
+            return commands;
+          }
+        }).anyTimes();
+
+    replay(hostDAO, hostRoleCommandDAO, dbAccessor);
+
+    StageEntity stageEntity = new StageEntity();
+    stageEntity.setRequestId(1L);
+    stageEntity.setStageId(stageId);
+    stageEntity.setClusterId(-1L);
+    stageEntity.setRoleSuccessCriterias(new ArrayList<RoleSuccessCriteriaEntity>());
+
+    return new Stage(stageEntity, hostRoleCommandDAO, dbAccessor, null, null, null);
+  }
+
+  private static long getUsedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
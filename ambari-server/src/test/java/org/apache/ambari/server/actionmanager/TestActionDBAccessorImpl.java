@@ -291,6 +291,26 @@ public class TestActionDBAccessorImpl {
     assertEquals(3000, stages.size());
   }
 
+  @Test
+  public void testGetStagesInProgressHosts() throws AmbariException {
+    populateActionDB(db, hostName, requestId, stageId);
+    populateActionDBWithServerAction(db, null, requestId + 1, stageId);
+
+    List<Stage> stages = db.getStagesInProgress();
+    assertEquals(2, stages.size());
+
+    // the hosts are read before the commands of the stages are loaded
+    assertEquals(Collections.singletonList(hostName), stages.get(0).getHosts());
+    assertEquals(Collections.singletonList(Stage.INTERNAL_HOSTNAME), stages.get(1).getHosts());
+
+    assertEquals(HostRoleStatus.PENDING,
+        stages.get(0).getHostRoleStatus(hostName, Role.HBASE_MASTER.toString()));
+    assertEquals(Collections.singletonList(hostName), stages.get(0).getHosts());
+    assertEquals(HostRoleStatus.PENDING,
+        stages.get(1).getHostRoleStatus(null, Role.AMBARI_SERVER_ACTION.toString()));
+    assertEquals(Collections.singletonList(Stage.INTERNAL_HOSTNAME), stages.get(1).getHosts());
+  }
+
 
   @Test
   public void testPersistActions() throws AmbariException {
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.api.services.stackadvisor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.ambari.server.api.services.stackadvisor.commands.StackAdvisorCommandType;
+import org.junit.Test;
+
+/**
+ * StackAdvisorResultCache unit tests.
+ */
+public class StackAdvisorResultCacheTest {
+
+  private static final String HOSTS_JSON = "{\"href\": \"hosts\", \"items\": [{\"Hosts\": "
+      + "{\"host_name\": \"c6401\", \"total_mem\": 1024, \"last_heartbeat_time\": %d}}]}";
+
+  private static final String SERVICES_JSON = "{\"Versions\": {\"stack_name\": \"HDP\"}}";
+
+  @Test
+  public void testGet() {
+    StackAdvisorResultCache cache = new StackAdvisorResultCache(10, 10);
+    String hostsJSON = String.format(HOSTS_JSON, 1L);
+    cache.put(StackAdvisorCommandType.RECOMMEND_CONFIGURATIONS, "HDP", "2.3", hostsJSON,
+        SERVICES_JSON, "result");
+
+    assertEquals("result", cache.get(StackAdvisorCommandType.RECOMMEND_CONFIGURATIONS, "HDP",
+        "2.3", hostsJSON, SERVICES_JSON));
+
+    // only a heartbeat happened since
+    assertEquals("result", cache.get(StackAdvisorCommandType.RECOMMEND_CONFIGURATIONS, "HDP",
+        "2.3", String.format(HOSTS_JSON, 2L), SERVICES_JSON));
+
+    assertNull(cache.get(StackAdvisorCommandType.VALIDATE_CONFIGURATIONS, "HDP", "2.3", hostsJSON,
+        SERVICES_JSON));
+    assertNull(cache.get(StackAdvisorCommandType.RECOMMEND_CONFIGURATIONS, "HDP", "2.4", hostsJSON,
+        SERVICES_JSON));
+    assertNull(cache.get(StackAdvisorCommandType.RECOMMEND_CONFIGURATIONS, "HDP", "2.3",
+        hostsJSON.replace("1024", "2048"), SERVICES_JSON));
+    assertNull(cache.get(StackAdvisorCommandType.RECOMMEND_CONFIGURATIONS, "HDP", "2.3", hostsJSON,
+        "{}"));
+  }
+
+  @Test
+  public void testUnparsableHosts() {
+    StackAdvisorResultCache cache = new StackAdvisorResultCache(10, 10);
+    cache.put(StackAdvisorCommandType.RECOMMEND_CONFIGURATIONS, "HDP", "2.3", "{", SERVICES_JSON,
+        "result");
+
+    assertEquals("result", cache.get(StackAdvisorCommandType.RECOMMEND_CONFIGURATIONS, "HDP",
+        "2.3", "{", SERVICES_JSON));
+    assertNull(cache.get(StackAdvisorCommandType.RECOMMEND_CONFIGURATIONS, "HDP", "2.3", "{ ",
+        SERVICES_JSON));
+  }
+}
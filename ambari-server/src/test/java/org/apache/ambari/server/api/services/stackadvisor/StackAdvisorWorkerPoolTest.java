@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.api.services.stackadvisor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.ambari.server.api.services.stackadvisor.commands.StackAdvisorCommandType;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * StackAdvisorWorkerPool unit tests, with a shell script in place of the stack
+ * advisor which answers with the number of the command it ran.
+ */
+public class StackAdvisorWorkerPoolTest {
+
+  private TemporaryFolder temp = new TemporaryFolder();
+
+  @Before
+  public void setUp() throws IOException {
+    temp.create();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    temp.delete();
+  }
+
+  @Test
+  public void testRun() throws Exception {
+    File actionDirectory = temp.newFolder("actionDir");
+    StackAdvisorWorkerPool pool = new StackAdvisorWorkerPool(createScript(":"), 1, 3, 10);
+    try {
+      // the same worker runs the commands until it is replaced
+      assertEquals(1, run(pool, actionDirectory));
+      assertEquals(2, run(pool, actionDirectory));
+      assertEquals(3, run(pool, actionDirectory));
+      assertEquals(1, run(pool, actionDirectory));
+
+      List<String> commands = FileUtils.readLines(new File(actionDirectory, "commands"));
+      assertEquals(4, commands.size());
+      assertEquals("{\"action\":\"recommend-configurations\",\"hosts\":\"" + actionDirectory
+          + File.separator + "hosts.json\",\"services\":\"" + actionDirectory + File.separator
+          + "services.json\",\"out\":\"out\",\"err\":\"err\"}", commands.get(0));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testWorkerExits() throws Exception {
+    File actionDirectory = temp.newFolder("actionDir");
+    StackAdvisorWorkerPool pool = new StackAdvisorWorkerPool(createScript("exit 0"), 1, 10, 10);
+    try {
+      run(pool, actionDirectory);
+      fail("Expected the worker to exit");
+    } catch (IOException expected) {
+    }
+
+    // a new worker is started for the next command
+    try {
+      run(pool, actionDirectory);
+      fail("Expected the worker to exit");
+    } catch (IOException expected) {
+    } finally {
+      pool.shutdown();
+    }
+    assertEquals(2, FileUtils.readLines(new File(actionDirectory, "commands")).size());
+  }
+
+  @Test(expected = TimeoutException.class)
+  public void testTimeout() throws Exception {
+    File actionDirectory = temp.newFolder("actionDir");
+    StackAdvisorWorkerPool pool = new StackAdvisorWorkerPool(createScript("sleep 5"), 1, 10, 1);
+    try {
+      run(pool, actionDirectory);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private int run(StackAdvisorWorkerPool pool, File actionDirectory) throws Exception {
+    return pool.run(StackAdvisorCommandType.RECOMMEND_CONFIGURATIONS, actionDirectory, "out", "err");
+  }
+
+  /**
+   * Creates a worker script which appends the commands it reads to a file in
+   * the action directory and runs the given shell command before answering.
+   */
+  private String createScript(String command) throws IOException {
+    File script = temp.newFile("worker.sh");
+    File commands = new File(temp.getRoot(), "actionDir" + File.separator + "commands");
+    FileUtils.writeStringToFile(script, "n=0\n"
+        + "while read line; do\n"
+        + "  echo \"$line\" >> " + commands + "\n"
+        + "  " + command + "\n"
+        + "  n=$((n+1))\n"
+        + "  echo $n\n"
+        + "done\n");
+    return "sh " + script;
+  }
+}
@@ -19,6 +19,7 @@
 package org.apache.ambari.server.api.services.stackadvisor.commands;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -186,6 +187,39 @@ public class StackAdvisorCommandTest {
     assertEquals(requestId, result.getId());
   }
 
+  @Test
+  public void testInvoke_cachedResult() throws StackAdvisorException {
+    File recommendationsDir = temp.newFolder("recommendationDir");
+    String stackAdvisorScript = "echo";
+    int requestId = 3;
+    StackAdvisorRunner saRunner = mock(StackAdvisorRunner.class);
+    AmbariMetaInfo metaInfo = mock(AmbariMetaInfo.class);
+    StackAdvisorCommand<TestResource> command = spy(new TestStackAdvisorCommand(recommendationsDir,
+        stackAdvisorScript, requestId, saRunner, metaInfo));
+
+    StackAdvisorRequest request = StackAdvisorRequestBuilder.forStack("stackName", "stackVersion")
+        .build();
+
+    String hostsJSON = "{\"hosts\" : \"localhost\"";
+    String servicesJSON = "{\"services\" : \"HDFS\"";
+    StackAdvisorData data = new StackAdvisorData(hostsJSON, servicesJSON);
+    doReturn(hostsJSON).when(command).getHostsInformation(request);
+    doReturn(servicesJSON).when(command).getServicesInformation(request);
+    doReturn(data).when(command)
+        .adjust(any(StackAdvisorData.class), any(StackAdvisorRequest.class));
+    doReturn("{\"type\": \"cached\"}").when(saRunner).getCachedResult(
+        StackAdvisorCommandType.RECOMMEND_COMPONENT_LAYOUT, "stackName", "stackVersion", hostsJSON,
+        servicesJSON);
+    doThrow(new StackAdvisorException("should not run")).when(saRunner)
+        .runScript(any(String.class), any(StackAdvisorCommandType.class), any(File.class));
+
+    TestResource result = command.invoke(request);
+
+    assertEquals("cached", result.getType());
+    assertEquals(requestId, result.getId());
+    assertFalse(new File(recommendationsDir, Integer.toString(requestId)).exists());
+  }
+
   @Test
   public void testPopulateStackHierarchy() throws Exception {
     File file = mock(File.class);
@@ -0,0 +1,256 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.controller.internal;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.topology.AmbariContext;
+import org.apache.ambari.server.topology.Blueprint;
+import org.apache.ambari.server.topology.Cardinality;
+import org.apache.ambari.server.topology.ClusterTopology;
+import org.apache.ambari.server.topology.ClusterTopologyImpl;
+import org.apache.ambari.server.topology.Component;
+import org.apache.ambari.server.topology.ConfigRecommendationStrategy;
+import org.apache.ambari.server.topology.Configuration;
+import org.apache.ambari.server.topology.HostGroup;
+import org.apache.ambari.server.topology.HostGroupImpl;
+import org.apache.ambari.server.topology.HostGroupInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures {@link BlueprintConfigurationProcessor#doUpdateForClusterCreate()}
+ * on a synthetic blueprint of {@code hostGroupCount} host groups of
+ * {@code hostsPerGroup} hosts each, 2,000 hosts with the defaults. The first
+ * host groups run the masters and the ZooKeeper servers, the others the
+ * workers, and each config type has {@code propertyCount} properties besides
+ * the ones with host group tokens. Every host group also overrides a few
+ * properties. Not run by the unit tests, after mvn test-compile run main()
+ * or org.openjdk.jmh.Main BlueprintConfigurationProcessorBenchmark with the
+ * test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class BlueprintConfigurationProcessorBenchmark {
+
+  private static final Configuration EMPTY_CONFIG = new Configuration(
+      Collections.<String, Map<String, String>>emptyMap(),
+      Collections.<String, Map<String, Map<String, String>>>emptyMap());
+
+  private static final List<String> MASTER_COMPONENTS = Arrays.asList("NAMENODE", "SECONDARY_NAMENODE",
+      "RESOURCEMANAGER", "APP_TIMELINE_SERVER", "HISTORY_SERVER", "HIVE_METASTORE", "HIVE_SERVER",
+      "OOZIE_SERVER", "HBASE_MASTER");
+
+  private static final List<String> WORKER_COMPONENTS = Arrays.asList("DATANODE", "NODEMANAGER",
+      "HDFS_CLIENT", "YARN_CLIENT", "MAPREDUCE2_CLIENT", "ZOOKEEPER_CLIENT");
+
+  private static final List<String> CONFIG_TYPES = Arrays.asList("core-site", "hdfs-site", "yarn-site",
+      "mapred-site", "hive-site", "oozie-site", "webhcat-site", "hbase-site");
+
+  @Param({"100"})
+  private int hostGroupCount;
+
+  @Param({"20"})
+  private int hostsPerGroup;
+
+  @Param({"500"})
+  private int propertyCount;
+
+  private Blueprint blueprint;
+  private Map<String, HostGroup> hostGroups;
+  private ClusterTopology topology;
+
+  @Setup(Level.Trial)
+  public void setUpBlueprint() throws Exception {
+    Map<String, String> serviceComponents = new HashMap<String, String>();
+    for (String component : Arrays.asList("NAMENODE", "SECONDARY_NAMENODE", "DATANODE", "HDFS_CLIENT")) {
+      serviceComponents.put(component, "HDFS");
+    }
+    for (String component : Arrays.asList("RESOURCEMANAGER", "APP_TIMELINE_SERVER", "NODEMANAGER", "YARN_CLIENT")) {
+      serviceComponents.put(component, "YARN");
+    }
+    for (String component : Arrays.asList("HISTORY_SERVER", "MAPREDUCE2_CLIENT")) {
+      serviceComponents.put(component, "MAPREDUCE2");
+    }
+    for (String component : Arrays.asList("HIVE_METASTORE", "HIVE_SERVER")) {
+      serviceComponents.put(component, "HIVE");
+    }
+    for (String component : Arrays.asList("ZOOKEEPER_SERVER", "ZOOKEEPER_CLIENT")) {
+      serviceComponents.put(component, "ZOOKEEPER");
+    }
+    serviceComponents.put("OOZIE_SERVER", "OOZIE");
+    serviceComponents.put("HBASE_MASTER", "HBASE");
+
+    Stack stack = createNiceMock(Stack.class);
+    expect(stack.getName()).andReturn("testStack").anyTimes();
+    expect(stack.getVersion()).andReturn("1").anyTimes();
+    expect(stack.isMasterComponent((String) anyObject())).andReturn(false).anyTimes();
+    expect(stack.getConfigurationPropertiesWithMetadata(anyObject(String.class), anyObject(String.class))).andReturn(
+        Collections.<String, Stack.ConfigProperty>emptyMap()).anyTimes();
+    expect(stack.getExcludedConfigurationTypes(anyObject(String.class))).andReturn(
+        Collections.<String>emptySet()).anyTimes();
+    expect(stack.getCardinality(anyObject(String.class))).andReturn(new Cardinality("1+")).anyTimes();
+    for (Map.Entry<String, String> entry : serviceComponents.entrySet()) {
+      expect(stack.getServiceForComponent(entry.getKey())).andReturn(entry.getValue()).anyTimes();
+    }
+
+    hostGroups = new HashMap<String, HostGroup>();
+    blueprint = createNiceMock(Blueprint.class);
+    for (int i = 0; i < hostGroupCount; i++) {
+      String name = "group" + i;
+      List<Component> components = new ArrayList<Component>();
+      for (String component : getComponents(i)) {
+        components.add(new Component(component));
+      }
+      HostGroup hostGroup = new HostGroupImpl(name, "test-bp", stack, components, EMPTY_CONFIG, "1");
+      hostGroups.put(name, hostGroup);
+      expect(blueprint.getHostGroup(name)).andReturn(hostGroup).anyTimes();
+    }
+    expect(blueprint.getHostGroups()).andReturn(hostGroups).anyTimes();
+    expect(blueprint.getServices()).andReturn(new HashSet<String>(serviceComponents.values())).anyTimes();
+    expect(blueprint.getStack()).andReturn(stack).anyTimes();
+    expect(blueprint.getName()).andReturn("test-bp").anyTimes();
+
+    replay(stack, blueprint);
+  }
+
+  /**
+   * The processor replaces the host group tokens in place, so every
+   * invocation gets a new topology with the original configurations.
+   */
+  @Setup(Level.Invocation)
+  public void setUpTopology() throws Exception {
+    Map<String, HostGroupInfo> hostGroupInfo = new HashMap<String, HostGroupInfo>();
+    for (int i = 0; i < hostGroupCount; i++) {
+      String name = "group" + i;
+      HostGroupInfo groupInfo = new HostGroupInfo(name);
+      for (int j = 0; j < hostsPerGroup; j++) {
+        groupInfo.addHost("host-" + i + "-" + j + ".example.com");
+      }
+
+      Map<String, Map<String, String>> properties = new HashMap<String, Map<String, String>>();
+      Map<String, String> hdfsSite = new HashMap<String, String>();
+      hdfsSite.put("dfs.datanode.data.dir", "/grid/" + i + "/hadoop/hdfs/data");
+      hdfsSite.put("dfs.namenode.http-address", "%HOSTGROUP::group0%:50070");
+      properties.put("hdfs-site", hdfsSite);
+      Map<String, String> yarnSite = new HashMap<String, String>();
+      yarnSite.put("yarn.nodemanager.local-dirs", "/grid/" + i + "/hadoop/yarn/local");
+      properties.put("yarn-site", yarnSite);
+      groupInfo.setConfiguration(new Configuration(properties,
+          Collections.<String, Map<String, Map<String, String>>>emptyMap()));
+
+      hostGroupInfo.put(name, groupInfo);
+    }
+
+    topology = new ClusterTopologyImpl(createNiceMock(AmbariContext.class), 1L, blueprint,
+        createClusterConfiguration(), hostGroupInfo);
+    topology.setConfigRecommendationStrategy(ConfigRecommendationStrategy.NEVER_APPLY);
+  }
+
+  private Collection<String> getComponents(int hostGroup) {
+    Set<String> components = new HashSet<String>();
+    if (hostGroup == 0) {
+      components.addAll(MASTER_COMPONENTS);
+    }
+    if (hostGroup < 3) {
+      components.add("ZOOKEEPER_SERVER");
+    }
+    components.addAll(WORKER_COMPONENTS);
+    return components;
+  }
+
+  private Configuration createClusterConfiguration() {
+    Map<String, Map<String, String>> properties = new HashMap<String, Map<String, String>>();
+    for (String type : CONFIG_TYPES) {
+      Map<String, String> typeProperties = new HashMap<String, String>();
+      for (int i = 0; i < propertyCount; i++) {
+        typeProperties.put(type + ".property." + i, "value-" + i);
+      }
+      properties.put(type, typeProperties);
+    }
+
+    properties.get("core-site").put("fs.defaultFS", "hdfs://%HOSTGROUP::group0%:8020");
+    properties.get("core-site").put("ha.zookeeper.quorum",
+        "%HOSTGROUP::group0%:2181,%HOSTGROUP::group1%:2181,%HOSTGROUP::group2%:2181");
+    properties.get("hdfs-site").put("dfs.namenode.http-address", "%HOSTGROUP::group0%:50070");
+    properties.get("hdfs-site").put("dfs.namenode.secondary.http-address", "%HOSTGROUP::group0%:50090");
+    properties.get("yarn-site").put("yarn.resourcemanager.hostname", "%HOSTGROUP::group0%");
+    properties.get("yarn-site").put("yarn.timeline-service.address", "%HOSTGROUP::group0%:10200");
+    properties.get("yarn-site").put("hadoop.registry.zk.quorum",
+        "%HOSTGROUP::group0%:2181,%HOSTGROUP::group1%:2181,%HOSTGROUP::group2%:2181");
+    properties.get("mapred-site").put("mapreduce.jobhistory.address", "%HOSTGROUP::group0%:10020");
+    properties.get("hive-site").put("hive.metastore.uris", "thrift://%HOSTGROUP::group0%:9083");
+    properties.get("hive-site").put("hive.zookeeper.quorum",
+        "%HOSTGROUP::group0%:2181,%HOSTGROUP::group1%:2181,%HOSTGROUP::group2%:2181");
+    properties.get("oozie-site").put("oozie.base.url", "http://%HOSTGROUP::group0%:11000/oozie");
+    properties.get("webhcat-site").put("templeton.zookeeper.hosts",
+        "%HOSTGROUP::group0%:2181,%HOSTGROUP::group1%:2181,%HOSTGROUP::group2%:2181");
+    properties.get("hbase-site").put("hbase.zookeeper.quorum", "localhost");
+
+    return new Configuration(properties, Collections.<String, Map<String, Map<String, String>>>emptyMap(),
+        EMPTY_CONFIG);
+  }
+
+  @Benchmark
+  public Set<String> doUpdateForClusterCreate() throws Exception {
+    return new BlueprintConfigurationProcessor(topology).doUpdateForClusterCreate();
+  }
+
+  @Benchmark
+  public Collection<String> getRequiredHostGroups() {
+    return new BlueprintConfigurationProcessor(topology).getRequiredHostGroups();
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new OptionsBuilder()
+        .include(BlueprintConfigurationProcessorBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+}
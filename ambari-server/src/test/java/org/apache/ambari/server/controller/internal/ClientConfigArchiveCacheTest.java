@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.controller.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.controller.spi.SystemException;
+import org.apache.ambari.server.events.ClusterConfigChangedEvent;
+import org.apache.ambari.server.events.publishers.AmbariEventPublisher;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link ClientConfigArchiveCache}.
+ */
+public class ClientConfigArchiveCacheTest {
+
+  private static final String ARCHIVE = "HDFS_CLIENT-configs.tar.gz";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testCopyArchive() throws Exception {
+    ClientConfigArchiveCache cache = createCache("100");
+    Assert.assertTrue(cache.isEnabled());
+
+    CountingBuilder builder = new CountingBuilder();
+    File target = new File(temporaryFolder.getRoot(), ARCHIVE);
+
+    cache.copyArchive("c1", "HDFS/HDFS_CLIENT/HDP-2.3", "{a}", ARCHIVE, builder, target);
+    Assert.assertEquals("1", read(target));
+
+    // the same configurations use the archive already built
+    Files.delete(target.toPath());
+    cache.copyArchive("c1", "HDFS/HDFS_CLIENT/HDP-2.3", "{a}", ARCHIVE, builder, target);
+    Assert.assertEquals("1", read(target));
+    Assert.assertEquals(1, builder.count.get());
+
+    // other configurations build a new one
+    cache.copyArchive("c1", "HDFS/HDFS_CLIENT/HDP-2.3", "{b}", ARCHIVE, builder, target);
+    Assert.assertEquals("2", read(target));
+
+    // a change to the cluster configurations drops its archives
+    cache.onClusterConfigChanged(new ClusterConfigChangedEvent("c2", "cluster-env", "v2", 2L));
+    cache.copyArchive("c1", "HDFS/HDFS_CLIENT/HDP-2.3", "{a}", ARCHIVE, builder, target);
+    Assert.assertEquals("1", read(target));
+
+    cache.onClusterConfigChanged(new ClusterConfigChangedEvent("c1", "cluster-env", "v2", 2L));
+    cache.copyArchive("c1", "HDFS/HDFS_CLIENT/HDP-2.3", "{a}", ARCHIVE, builder, target);
+    Assert.assertEquals("3", read(target));
+  }
+
+  @Test
+  public void testConcurrentRequestsShareBuild() throws Exception {
+    final ClientConfigArchiveCache cache = createCache("100");
+    final CountingBuilder builder = new CountingBuilder();
+    final CountDownLatch started = new CountDownLatch(4);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        final File target = new File(temporaryFolder.newFolder(), ARCHIVE);
+        futures.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            started.countDown();
+            started.await();
+            cache.copyArchive("c1", "HDFS/HDFS_CLIENT/HDP-2.3", "{a}", ARCHIVE, builder, target);
+            return read(target);
+          }
+        }));
+      }
+
+      for (Future<String> future : futures) {
+        Assert.assertEquals("1", future.get(30, TimeUnit.SECONDS));
+      }
+      Assert.assertEquals(1, builder.count.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testBuildFailure() throws Exception {
+    ClientConfigArchiveCache cache = createCache("100");
+    File target = new File(temporaryFolder.getRoot(), ARCHIVE);
+
+    try {
+      cache.copyArchive("c1", "HDFS/HDFS_CLIENT/HDP-2.3", "{a}", ARCHIVE,
+          new ClientConfigArchiveCache.ArchiveBuilder() {
+            @Override
+            public void build(File directory) throws SystemException {
+              throw new SystemException("script failed");
+            }
+          }, target);
+      Assert.fail("Expected the build failure");
+    } catch (SystemException e) {
+      Assert.assertEquals("script failed", e.getMessage());
+    }
+
+    // failures are not kept
+    CountingBuilder builder = new CountingBuilder();
+    cache.copyArchive("c1", "HDFS/HDFS_CLIENT/HDP-2.3", "{a}", ARCHIVE, builder, target);
+    Assert.assertEquals(1, builder.count.get());
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    Assert.assertFalse(createCache("0").isEnabled());
+  }
+
+  private ClientConfigArchiveCache createCache(String size) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(Configuration.SERVER_TMP_DIR_KEY, temporaryFolder.newFolder().getAbsolutePath());
+    properties.setProperty(Configuration.CLIENT_CONFIG_ARCHIVE_CACHE_SIZE, size);
+    return new ClientConfigArchiveCache(new Configuration(properties), new AmbariEventPublisher());
+  }
+
+  private static String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes the number of the build to the archive.
+   */
+  private static final class CountingBuilder implements ClientConfigArchiveCache.ArchiveBuilder {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public void build(File directory) throws SystemException {
+      try {
+        Thread.sleep(100);
+        Files.write(new File(directory, ARCHIVE).toPath(),
+            String.valueOf(count.incrementAndGet()).getBytes(StandardCharsets.UTF_8));
+      } catch (IOException | InterruptedException e) {
+        throw new SystemException("Failed to write archive", e);
+      }
+    }
+  }
+}
@@ -231,8 +231,9 @@ public class AMSPropertyProviderTest {
     uriBuilder.addParameter("metricNames", "cpu_user");
     uriBuilder.addParameter("hostname", "h1");
     uriBuilder.addParameter("appId", "HOST");
-    uriBuilder.addParameter("startTime", "1416445244800");
-    uriBuilder.addParameter("endTime", "1416448936474");
+    uriBuilder.addParameter("startTime", "1416445230000");
+    uriBuilder.addParameter("endTime", "1416448950000");
+    uriBuilder.addParameter("maxPoints", "248");
     Assert.assertEquals(uriBuilder.toString(), streamProvider.getLastSpec());
     Number[][] val = (Number[][]) res.getPropertyValue(PROPERTY_ID1);
     Assert.assertNotNull("No value for property " + PROPERTY_ID1, val);
@@ -383,15 +384,17 @@ public class AMSPropertyProviderTest {
     uriBuilder1.addParameter("metricNames", "cpu_user,mem_free");
     uriBuilder1.addParameter("hostname", "h1");
     uriBuilder1.addParameter("appId", "HOST");
-    uriBuilder1.addParameter("startTime", "1416445244701");
-    uriBuilder1.addParameter("endTime", "1416448936564");
+    uriBuilder1.addParameter("startTime", "1416445230000");
+    uriBuilder1.addParameter("endTime", "1416448950000");
+    uriBuilder1.addParameter("maxPoints", "248");
 
     URIBuilder uriBuilder2 = AMSPropertyProvider.getAMSUriBuilder("localhost", 6188, false);
     uriBuilder2.addParameter("metricNames", "mem_free,cpu_user");
     uriBuilder2.addParameter("hostname", "h1");
     uriBuilder2.addParameter("appId", "HOST");
-    uriBuilder2.addParameter("startTime", "1416445244701");
-    uriBuilder2.addParameter("endTime", "1416448936564");
+    uriBuilder2.addParameter("startTime", "1416445230000");
+    uriBuilder2.addParameter("endTime", "1416448950000");
+    uriBuilder2.addParameter("maxPoints", "248");
 
     List<String> allSpecs = new ArrayList<String>(streamProvider.getAllSpecs());
     Assert.assertEquals(1, allSpecs.size());
@@ -20,6 +20,7 @@ package org.apache.ambari.server.controller.metrics.timeline;
 import org.apache.ambari.server.controller.internal.URLStreamProvider;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.metrics2.sink.timeline.Precision;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.http.client.utils.URIBuilder;
@@ -29,6 +30,7 @@ import org.codehaus.jackson.map.ObjectWriter;
 import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
 import org.easymock.EasyMock;
 import org.easymock.EasyMockSupport;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.InputStream;
@@ -115,4 +117,43 @@ public class MetricsRequestHelperTest {
 
 
   }
+
+  @Test
+  public void testSetMaxPoints() throws Exception {
+    long hour = 3600000;
+    long start = 1416445200000L;
+    String spec = "http://localhost:6188/ws/v1/timeline/metrics?metricNames=cpu_user&appId=HOST";
+
+    // One value per 15 seconds of an hour of 10 second values
+    URIBuilder uriBuilder = new URIBuilder(spec);
+    MetricsRequestHelper.setMaxPoints(uriBuilder, 15L, start, start + hour);
+    Assert.assertEquals(spec + "&startTime=" + start + "&endTime=" + (start + hour) +
+      "&maxPoints=240", uriBuilder.toString());
+
+    // A day of 5 minute aggregates shown every 15 minutes
+    uriBuilder = new URIBuilder(spec);
+    MetricsRequestHelper.setMaxPoints(uriBuilder, 900L, start, start + 24 * hour - 1);
+    Assert.assertEquals(spec + "&startTime=" + start + "&endTime=" + (start + 24 * hour) +
+      "&maxPoints=96", uriBuilder.toString());
+
+    // Widened to whole steps from a multiple of the step
+    uriBuilder = new URIBuilder(spec);
+    MetricsRequestHelper.setMaxPoints(uriBuilder, 15L, start + 20000, start + 50000);
+    Assert.assertEquals(spec + "&startTime=" + (start + 15000) + "&endTime=" + (start + 60000) +
+      "&maxPoints=3", uriBuilder.toString());
+
+    // Short refresh of a series read at minute precision
+    uriBuilder = new URIBuilder(spec);
+    MetricsRequestHelper.setMaxPoints(uriBuilder, 300L, start, start + hour,
+      Precision.MINUTES);
+    Assert.assertEquals(spec, uriBuilder.toString());
+
+    // Step not coarser than the stored values, or no step
+    uriBuilder = new URIBuilder(spec);
+    MetricsRequestHelper.setMaxPoints(uriBuilder, 1L, start, start + hour);
+    MetricsRequestHelper.setMaxPoints(uriBuilder, 300L, start, start + 24 * hour - 1);
+    MetricsRequestHelper.setMaxPoints(uriBuilder, -1L, start, start + hour);
+    MetricsRequestHelper.setMaxPoints(uriBuilder, 15L, start + hour, start);
+    Assert.assertEquals(spec, uriBuilder.toString());
+  }
 }
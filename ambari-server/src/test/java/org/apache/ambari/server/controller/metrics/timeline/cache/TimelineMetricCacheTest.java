@@ -32,6 +32,7 @@ import org.apache.ambari.server.controller.metrics.timeline.MetricsRequestHelper
 import org.apache.ambari.server.controller.spi.TemporalInfo;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URIBuilder;
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
@@ -518,4 +519,102 @@ public class TimelineMetricCacheTest {
 
     verify(configuration, metricsRequestHelperForGets, cacheEntryFactory);
   }
+
+  /**
+   * Answers like the collector would at the given time, a value every 10
+   * seconds averaged into maxPoints buckets of equal width from the start
+   * time of the request.
+   */
+  private static TimelineMetrics downsampledSeries(URIBuilder uriBuilder, long now) {
+    Map<String, String> params = new HashMap<String, String>();
+    for (NameValuePair param : uriBuilder.getQueryParams()) {
+      params.put(param.getName(), param.getValue());
+    }
+    long startTime = Long.parseLong(params.get("startTime"));
+    long endTime = Math.min(now, Long.parseLong(params.get("endTime")));
+    int maxPoints = Integer.parseInt(params.get("maxPoints"));
+    long bucketMillis = (Long.parseLong(params.get("endTime")) - startTime + maxPoints - 1) / maxPoints;
+
+    TreeMap<Long, Double> sums = new TreeMap<Long, Double>();
+    Map<Long, Integer> counts = new HashMap<Long, Integer>();
+    for (long time = (startTime + 9999) / 10000 * 10000; time < endTime; time += 10000) {
+      long bucket = startTime + (time - startTime) / bucketMillis * bucketMillis;
+      Double sum = sums.get(bucket);
+      sums.put(bucket, (sum == null ? 0 : sum) + (time / 10000) % 7);
+      Integer count = counts.get(bucket);
+      counts.put(bucket, count == null ? 1 : count + 1);
+    }
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+    for (Map.Entry<Long, Double> sum : sums.entrySet()) {
+      values.put(sum.getKey(), sum.getValue() / counts.get(sum.getKey()));
+    }
+
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("cpu_user");
+    metric.setAppId("app1");
+    metric.setMetricValues(values);
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.getMetrics().add(metric);
+    return metrics;
+  }
+
+  private static TimelineAppMetricCacheKey downsampledKey(long startTime, long endTime,
+                                                         long step) throws Exception {
+    URIBuilder uriBuilder = new URIBuilder("http://localhost:6188/ws/v1/timeline/metrics");
+    uriBuilder.setParameter("metricNames", "cpu_user");
+    uriBuilder.setParameter("appId", "app1");
+    uriBuilder.setParameter("startTime", String.valueOf(startTime));
+    uriBuilder.setParameter("endTime", String.valueOf(endTime));
+    MetricsRequestHelper.setMaxPoints(uriBuilder, step, startTime, endTime);
+
+    TimelineAppMetricCacheKey key = new TimelineAppMetricCacheKey(
+      Collections.singleton("cpu_user"), "app1", new TemporalInfoImpl(startTime, endTime, step));
+    key.setSpec(uriBuilder.toString());
+    return key;
+  }
+
+  @Test
+  public void testDownsampledRefreshKeepsBuckets() throws Exception {
+    Configuration configuration = createNiceMock(Configuration.class);
+    expect(configuration.getMetricRequestBufferTimeCatchupInterval()).andReturn(1000l).anyTimes();
+    replay(configuration);
+
+    final long hour = 3600000;
+    final long[] now = { 1416445244800L };
+    MetricsRequestHelper collector = createMock(MetricsRequestHelper.class);
+    expect(collector.fetchTimelineMetrics(EasyMock.isA(URIBuilder.class), anyLong(), anyLong()))
+      .andAnswer(new IAnswer<TimelineMetrics>() {
+        @Override
+        public TimelineMetrics answer() throws Throwable {
+          return downsampledSeries((URIBuilder) getCurrentArguments()[0], now[0]);
+        }
+      }).anyTimes();
+    replay(collector);
+
+    TimelineMetricCacheEntryFactory cacheEntryFactory =
+      createMockBuilder(TimelineMetricCacheEntryFactory.class)
+        .withConstructor(configuration).createMock();
+    Field requestHelperField = TimelineMetricCacheEntryFactory.class.getDeclaredField("requestHelperForGets");
+    requestHelperField.setAccessible(true);
+    requestHelperField.set(cacheEntryFactory, collector);
+    requestHelperField = TimelineMetricCacheEntryFactory.class.getDeclaredField("requestHelperForUpdates");
+    requestHelperField.setAccessible(true);
+    requestHelperField.set(cacheEntryFactory, collector);
+    replay(cacheEntryFactory);
+
+    // An hour shown every minute, refreshed two and a half minutes later
+    TimelineMetricsCacheValue value = (TimelineMetricsCacheValue)
+      cacheEntryFactory.createEntry(downsampledKey(now[0] - hour, now[0], 60));
+    now[0] += 150000;
+    TimelineAppMetricCacheKey newKey = downsampledKey(now[0] - hour, now[0], 60);
+    cacheEntryFactory.updateEntryValue(newKey, value);
+
+    // Same buckets and values as reading the new range in one go, the
+    // partial bucket at the end of the cached series included
+    TimelineMetrics expected = downsampledSeries(new URIBuilder(newKey.getSpec()), now[0]);
+    TreeMap<Long, Double> expectedValues = expected.getMetrics().get(0).getMetricValues();
+    Assert.assertEquals(expectedValues.tailMap(now[0] - hour, true),
+      value.getTimelineMetrics().getMetrics().get(0).getMetricValues());
+    Assert.assertEquals(60, value.getTimelineMetrics().getMetrics().get(0).getMetricValues().size());
+  }
 }
@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.cache;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Tests {@link ConfigGroupHostMappingIndex}.
+ */
+public class ConfigGroupHostMappingIndexTest {
+
+  @Test
+  public void testIndex() {
+    ConfigGroupHostMappingIndex index = new ConfigGroupHostMappingIndex();
+    index.putAll(Arrays.asList(createMapping(1L, 10L), createMapping(1L, 11L),
+        createMapping(2L, 10L)));
+
+    Assert.assertNull(index.getByHost(3L));
+    Assert.assertEquals(2, index.getByHost(1L).size());
+    Assert.assertEquals(2, index.getByGroup(10L).size());
+    Assert.assertTrue(index.getByGroup(12L).isEmpty());
+
+    // one mapping per host and group
+    ConfigGroupHostMapping mapping = createMapping(1L, 10L);
+    index.put(mapping);
+    Set<ConfigGroupHostMapping> byHost = index.getByHost(1L);
+    Assert.assertEquals(2, byHost.size());
+    Assert.assertTrue(byHost.contains(mapping));
+    Assert.assertTrue(index.getByGroup(10L).contains(mapping));
+
+    index.remove(1L, 11L);
+    Assert.assertEquals(1, index.getByHost(1L).size());
+    Assert.assertTrue(index.getByGroup(11L).isEmpty());
+    Assert.assertEquals(2, byHost.size());
+
+    index.removeGroup(10L);
+    Assert.assertTrue(index.getByHost(1L).isEmpty());
+    Assert.assertTrue(index.getByHost(2L).isEmpty());
+    Assert.assertTrue(index.getByGroup(10L).isEmpty());
+
+    index.put(createMapping(2L, 11L));
+    index.removeHost(2L);
+    Assert.assertNotNull(index.getByHost(2L));
+    Assert.assertTrue(index.getByHost(2L).isEmpty());
+    Assert.assertTrue(index.getByGroup(11L).isEmpty());
+
+    index.clear();
+    Assert.assertNull(index.getByHost(2L));
+  }
+
+  private static ConfigGroupHostMapping createMapping(long hostId, long groupId) {
+    ConfigGroupHostMapping mapping = new ConfigGroupHostMappingImpl();
+    mapping.setHostId(hostId);
+    mapping.setConfigGroupId(groupId);
+    return mapping;
+  }
+}
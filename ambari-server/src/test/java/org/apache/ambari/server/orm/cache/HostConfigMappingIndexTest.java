@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.cache;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Tests {@link HostConfigMappingIndex}.
+ */
+public class HostConfigMappingIndexTest {
+
+  @Test
+  public void testLookups() {
+    HostConfigMappingIndex index = new HostConfigMappingIndex();
+    HostConfigMapping h1v1 = createMapping(1L, 1L, "core-site", 100L, 0);
+    HostConfigMapping h1v2 = createMapping(1L, 1L, "core-site", 200L, 1);
+    HostConfigMapping h1hdfs = createMapping(1L, 1L, "hdfs-site", 100L, 1);
+    HostConfigMapping h1c2 = createMapping(2L, 1L, "core-site", 100L, 1);
+    HostConfigMapping h2v1 = createMapping(1L, 2L, "core-site", 100L, 1);
+    index.putAll(Arrays.asList(h1v1, h1v2, h1hdfs, h1c2, h2v1));
+
+    Assert.assertTrue(index.containsHost(1L));
+    Assert.assertFalse(index.containsHost(3L));
+
+    Set<HostConfigMapping> mappings = index.getByType(1L, 1L, "core-site");
+    Assert.assertEquals(2, mappings.size());
+    Assert.assertTrue(mappings.contains(h1v1));
+    Assert.assertTrue(mappings.contains(h1v2));
+    Assert.assertTrue(index.getByType(1L, 3L, "core-site").isEmpty());
+    Assert.assertTrue(index.getByType(3L, 1L, "core-site").isEmpty());
+
+    Assert.assertSame(h1v2, index.getSelectedByType(1L, 1L, "core-site"));
+    Assert.assertSame(h1c2, index.getSelectedByType(2L, 1L, "core-site"));
+    Assert.assertNull(index.getSelectedByType(1L, 1L, "yarn-site"));
+
+    Assert.assertEquals(2, index.getSelected(1L, 1L).size());
+    Assert.assertEquals(3, index.getSelected(1L).size());
+    Assert.assertTrue(index.getSelected(3L).isEmpty());
+
+    List<HostConfigMapping> byType = index.getByClusterAndType(1L, "core-site");
+    Assert.assertEquals(3, byType.size());
+    Assert.assertTrue(byType.contains(h2v1));
+    Assert.assertTrue(index.getByClusterAndType(3L, "core-site").isEmpty());
+  }
+
+  @Test
+  public void testUpdates() {
+    HostConfigMappingIndex index = new HostConfigMappingIndex();
+    HostConfigMapping v1 = createMapping(1L, 1L, "core-site", 100L, 1);
+    index.put(v1);
+    Set<HostConfigMapping> before = index.getByType(1L, 1L, "core-site");
+
+    // unselected by the caller, then merged along with the new version
+    v1.setSelected(0);
+    Assert.assertNull(index.getSelectedByType(1L, 1L, "core-site"));
+    HostConfigMapping v2 = createMapping(1L, 1L, "core-site", 200L, 1);
+    index.put(v1);
+    index.put(v2);
+    Assert.assertSame(v2, index.getSelectedByType(1L, 1L, "core-site"));
+    Assert.assertEquals(1, before.size());
+    Assert.assertEquals(2, index.getByType(1L, 1L, "core-site").size());
+
+    // an equal mapping replaces the indexed one
+    HostConfigMapping v2copy = new HostConfigMappingImpl(v2);
+    v2copy.setVersion("version2");
+    index.put(v2copy);
+    Assert.assertEquals(2, index.getByType(1L, 1L, "core-site").size());
+    Assert.assertEquals("version2", index.getSelectedByType(1L, 1L, "core-site").getVersion());
+
+    index.put(createMapping(2L, 1L, "core-site", 100L, 1));
+    index.put(createMapping(1L, 2L, "core-site", 100L, 1));
+    index.removeCluster(1L, 1L);
+    Assert.assertTrue(index.getSelected(1L, 1L).isEmpty());
+    Assert.assertEquals(1, index.getSelected(2L, 1L).size());
+    Assert.assertEquals(1, index.getByClusterAndType(1L, "core-site").size());
+
+    index.removeHost(2L);
+    Assert.assertFalse(index.containsHost(2L));
+    Assert.assertTrue(index.getByClusterAndType(1L, "core-site").isEmpty());
+
+    index.clear();
+    Assert.assertFalse(index.containsHost(1L));
+  }
+
+  private static HostConfigMapping createMapping(long clusterId, long hostId, String type,
+      long createTimestamp, int selected) {
+    HostConfigMapping mapping = new HostConfigMappingImpl();
+    mapping.setClusterId(clusterId);
+    mapping.setHostId(hostId);
+    mapping.setType(type);
+    mapping.setCreateTimestamp(createTimestamp);
+    mapping.setVersion("version" + createTimestamp);
+    mapping.setServiceName("HDFS");
+    mapping.setUser("admin");
+    mapping.setSelected(selected);
+    return mapping;
+  }
+}
@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.collections.Predicate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the {@link HostConfigMappingIndex} lookups of
+ * {@code HostConfigMappingDAO} with the previous cache of a set of mappings
+ * per host filtered with {@link CollectionUtils} predicates. Every host of a
+ * single cluster has a few versions of each type, one of them selected. Not
+ * run by the unit tests, after mvn test-compile run main() or
+ * org.openjdk.jmh.Main HostConfigMappingLookupBenchmark with the test
+ * classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class HostConfigMappingLookupBenchmark {
+
+  private static final long CLUSTER_ID = 1L;
+
+  @Param({"500", "5000"})
+  private int hostCount;
+
+  @Param({"30"})
+  private int typeCount;
+
+  @Param({"3"})
+  private int versionCount;
+
+  private Map<Long, Set<HostConfigMapping>> hostConfigMappingByHost;
+  private HostConfigMappingIndex hostConfigMappingIndex;
+  private List<String> types;
+  private List<String> lookupTypes;
+  private Random random;
+
+  @Setup
+  public void setUp() {
+    hostConfigMappingByHost = new ConcurrentHashMap<Long, Set<HostConfigMapping>>();
+    hostConfigMappingIndex = new HostConfigMappingIndex();
+    types = new ArrayList<String>();
+    for (int i = 0; i < typeCount; i++) {
+      types.add("type-" + i + "-site");
+    }
+    lookupTypes = types.subList(0, 3);
+    random = new Random(42);
+
+    List<HostConfigMapping> mappings = new ArrayList<HostConfigMapping>();
+    for (long hostId = 1; hostId <= hostCount; hostId++) {
+      Set<HostConfigMapping> set = new HashSet<HostConfigMapping>();
+      for (String type : types) {
+        for (int version = 1; version <= versionCount; version++) {
+          HostConfigMapping mapping = new HostConfigMappingImpl();
+          mapping.setClusterId(CLUSTER_ID);
+          mapping.setHostId(hostId);
+          mapping.setType(type);
+          mapping.setCreateTimestamp((long) version);
+          mapping.setVersion("version" + version);
+          mapping.setServiceName("HDFS");
+          mapping.setUser("admin");
+          mapping.setSelected(version == versionCount ? 1 : 0);
+          set.add(mapping);
+          mappings.add(mapping);
+        }
+      }
+      hostConfigMappingByHost.put(hostId, set);
+    }
+    hostConfigMappingIndex.putAll(mappings);
+  }
+
+  private long nextHostId() {
+    return 1 + random.nextInt(hostCount);
+  }
+
+  private String nextType() {
+    return types.get(random.nextInt(typeCount));
+  }
+
+  @Benchmark
+  public HostConfigMapping findSelectedByTypeScan() {
+    final String type = nextType();
+    Set<HostConfigMapping> set = new HashSet<HostConfigMapping>(hostConfigMappingByHost.get(nextHostId()));
+    return (HostConfigMapping) CollectionUtils.find(set, new Predicate() {
+      @Override
+      public boolean evaluate(Object arg0) {
+        return ((HostConfigMapping) arg0).getClusterId().equals(CLUSTER_ID)
+            && ((HostConfigMapping) arg0).getType().equals(type)
+            && ((HostConfigMapping) arg0).getSelected() > 0;
+      }
+    });
+  }
+
+  @Benchmark
+  public HostConfigMapping findSelectedByTypeIndex() {
+    return hostConfigMappingIndex.getSelectedByType(CLUSTER_ID, nextHostId(), nextType());
+  }
+
+  @Benchmark
+  public Set<HostConfigMapping> findSelectedScan() {
+    Set<HostConfigMapping> set = new HashSet<HostConfigMapping>(hostConfigMappingByHost.get(nextHostId()));
+    CollectionUtils.filter(set, new Predicate() {
+      @Override
+      public boolean evaluate(Object arg0) {
+        return ((HostConfigMapping) arg0).getClusterId().equals(CLUSTER_ID)
+            && ((HostConfigMapping) arg0).getSelected() > 0;
+      }
+    });
+    return set;
+  }
+
+  @Benchmark
+  public Set<HostConfigMapping> findSelectedIndex() {
+    return hostConfigMappingIndex.getSelected(CLUSTER_ID, nextHostId());
+  }
+
+  @Benchmark
+  public Map<String, List<HostConfigMapping>> findSelectedHostsByTypesScan() {
+    Map<String, List<HostConfigMapping>> mappingsByType = new HashMap<String, List<HostConfigMapping>>();
+    for (String type : lookupTypes) {
+      mappingsByType.put(type, new ArrayList<HostConfigMapping>());
+    }
+    for (Set<HostConfigMapping> entries : hostConfigMappingByHost.values()) {
+      for (HostConfigMapping entry : entries) {
+        if (lookupTypes.contains(entry.getType()) && entry.getClusterId().equals(CLUSTER_ID)) {
+          mappingsByType.get(entry.getType()).add(new HostConfigMappingImpl(entry));
+        }
+      }
+    }
+    return mappingsByType;
+  }
+
+  @Benchmark
+  public Map<String, List<HostConfigMapping>> findSelectedHostsByTypesIndex() {
+    Map<String, List<HostConfigMapping>> mappingsByType = new HashMap<String, List<HostConfigMapping>>();
+    for (String type : lookupTypes) {
+      List<HostConfigMapping> mappings = new ArrayList<HostConfigMapping>();
+      for (HostConfigMapping entry : hostConfigMappingIndex.getByClusterAndType(CLUSTER_ID, type)) {
+        mappings.add(new HostConfigMappingImpl(entry));
+      }
+      mappingsByType.put(type, mappings);
+    }
+    return mappingsByType;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new OptionsBuilder()
+        .include(HostConfigMappingLookupBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -20,14 +20,19 @@ package org.apache.ambari.server.orm.dao;
 
 import com.google.inject.Provider;
 import junit.framework.Assert;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.orm.entities.HostComponentStateEntity;
 import org.apache.ambari.server.orm.entities.HostEntity;
 import org.junit.Test;
 
 import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 
+import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.createNiceMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
@@ -72,4 +77,109 @@ public class HostComponentStateDAOTest {
 
     verify(entityManagerProvider, entityManager, hostDAO, hostEntity, hostComponentStateEntity);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testFindReturnsPending() throws Exception {
+    HostComponentStateEntity pending = createHostComponentState(1L);
+    HostComponentStateEntity loaded = createHostComponentState(1L);
+    HostComponentStateEntity other = createHostComponentState(2L);
+
+    TypedQuery<HostComponentStateEntity> query = createNiceMock(TypedQuery.class);
+    EntityManager entityManager = createNiceMock(EntityManager.class);
+    expect(entityManager.createNamedQuery("HostComponentStateEntity.findByHost",
+        HostComponentStateEntity.class)).andReturn(query).anyTimes();
+    DaoUtils daoUtils = createNiceMock(DaoUtils.class);
+    expect(daoUtils.selectList(query)).andReturn(Arrays.asList(loaded, other)).anyTimes();
+    replay(query, entityManager, daoUtils);
+
+    HostComponentStateDAO dao = createDAO(entityManager, true);
+    dao.daoUtils = daoUtils;
+    dao.mergeLater(pending, true);
+
+    Assert.assertSame(pending, dao.findById(1L));
+
+    List<HostComponentStateEntity> found = dao.findByHost("host1");
+    Assert.assertEquals(2, found.size());
+    Assert.assertSame(pending, found.get(0));
+    Assert.assertSame(other, found.get(1));
+  }
+
+  @Test
+  public void testMergeLaterUnchanged() throws Exception {
+    HostComponentStateEntity hostComponentStateEntity = createHostComponentState(1L);
+
+    EntityManager entityManager = createMock(EntityManager.class);
+    replay(entityManager);
+
+    HostComponentStateDAO dao = createDAO(entityManager, true);
+    dao.mergeLater(hostComponentStateEntity, false);
+    Assert.assertEquals(0, dao.getWriteBehindCache().size());
+
+    dao = createDAO(entityManager, false);
+    dao.mergeLater(hostComponentStateEntity, false);
+
+    verify(entityManager);
+  }
+
+  @Test
+  public void testMergeWritesPending() throws Exception {
+    HostComponentStateEntity pending = createHostComponentState(1L);
+    HostComponentStateEntity other = createHostComponentState(1L);
+
+    // the pending instance first, then the merged one
+    EntityManager entityManager = createMock(EntityManager.class);
+    expect(entityManager.merge(pending)).andReturn(pending);
+    expect(entityManager.merge(other)).andReturn(other);
+    replay(entityManager);
+
+    HostComponentStateDAO dao = createDAO(entityManager, true);
+    dao.mergeLater(pending, true);
+
+    Assert.assertSame(other, dao.merge(other));
+    Assert.assertEquals(0, dao.getWriteBehindCache().size());
+    Assert.assertEquals(0, dao.flushWriteBehindCache());
+
+    verify(entityManager);
+  }
+
+  @Test
+  public void testFlushSkipsRemoved() throws Exception {
+    HostComponentStateEntity existing = createHostComponentState(1L);
+    HostComponentStateEntity removed = createHostComponentState(2L);
+
+    EntityManager entityManager = createMock(EntityManager.class);
+    expect(entityManager.find(HostComponentStateEntity.class, 1L)).andReturn(existing);
+    expect(entityManager.merge(existing)).andReturn(existing);
+    expect(entityManager.find(HostComponentStateEntity.class, 2L)).andReturn(null);
+    replay(entityManager);
+
+    HostComponentStateDAO dao = createDAO(entityManager, true);
+    dao.mergeLater(existing, true);
+    dao.mergeLater(removed, true);
+
+    Assert.assertEquals(2, dao.flushWriteBehindCache());
+    Assert.assertEquals(0, dao.getWriteBehindCache().size());
+
+    verify(entityManager);
+  }
+
+  private static HostComponentStateDAO createDAO(EntityManager entityManager, boolean writeBehind) {
+    Provider<EntityManager> entityManagerProvider = createNiceMock(Provider.class);
+    expect(entityManagerProvider.get()).andReturn(entityManager).anyTimes();
+    Configuration configuration = createNiceMock(Configuration.class);
+    expect(configuration.isStateWriteBehindEnabled()).andReturn(writeBehind).anyTimes();
+    replay(entityManagerProvider, configuration);
+
+    HostComponentStateDAO dao = new HostComponentStateDAO();
+    dao.entityManagerProvider = entityManagerProvider;
+    dao.configuration = configuration;
+    return dao;
+  }
+
+  private static HostComponentStateEntity createHostComponentState(long id) {
+    HostComponentStateEntity hostComponentStateEntity = createNiceMock(HostComponentStateEntity.class);
+    expect(hostComponentStateEntity.getId()).andReturn(id).anyTimes();
+    replay(hostComponentStateEntity);
+    return hostComponentStateEntity;
+  }
+}
@@ -18,7 +18,9 @@
 package org.apache.ambari.server.orm.dao;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ambari.server.AmbariException;
@@ -164,6 +166,74 @@ public class HostRoleCommandDAOTest {
     }
   }
 
+  /**
+   * Tests that the aggregate counts of a request follow the status changes of
+   * its tasks without being reloaded, and are kept once the request completes.
+   */
+  @Test
+  public void testAggregateCountsFollowMergedTasks() {
+    OrmTestHelper helper = m_injector.getInstance(OrmTestHelper.class);
+    helper.createDefaultData();
+
+    Long requestId = Long.valueOf(100L);
+    ClusterEntity clusterEntity = m_clusterDAO.findByName("test_cluster1");
+
+    RequestEntity requestEntity = new RequestEntity();
+    requestEntity.setRequestId(requestId);
+    requestEntity.setClusterId(clusterEntity.getClusterId());
+    requestEntity.setStages(new ArrayList<StageEntity>());
+    m_requestDAO.create(requestEntity);
+
+    HostEntity host = m_hostDAO.findByName("test_host1");
+    host.setHostRoleCommandEntities(new ArrayList<HostRoleCommandEntity>());
+
+    createStage(1L, 2, host, requestEntity, HostRoleStatus.COMPLETED);
+    createStage(2L, 2, host, requestEntity, HostRoleStatus.PENDING, true, false, false);
+
+    Map<Long, HostRoleCommandStatusSummaryDTO> summaries = m_hostRoleCommandDAO.findAggregateCounts(requestId);
+    Assert.assertEquals(2, summaries.size());
+    Assert.assertEquals(2, summaries.get(2L).getCounts().get(HostRoleStatus.PENDING).intValue());
+    Assert.assertTrue(summaries.get(2L).isStageSkippable());
+
+    List<HostRoleCommandEntity> tasks = m_hostRoleCommandDAO.findByRequestIdAndStatuses(requestId,
+        Collections.singleton(HostRoleStatus.PENDING));
+    Assert.assertEquals(2, tasks.size());
+
+    HostRoleCommandEntity task = tasks.get(0);
+    task.setStatus(HostRoleStatus.IN_PROGRESS);
+    task.setStartTime(1000L);
+    m_hostRoleCommandDAO.merge(task);
+
+    summaries = m_hostRoleCommandDAO.findAggregateCounts(requestId);
+    HostRoleCommandStatusSummaryDTO summary = summaries.get(2L);
+    Assert.assertEquals(1, summary.getCounts().get(HostRoleStatus.PENDING).intValue());
+    Assert.assertEquals(1, summary.getCounts().get(HostRoleStatus.IN_PROGRESS).intValue());
+    Assert.assertEquals(-1L, summary.getStartTime().longValue());
+
+    for (HostRoleCommandEntity pendingTask : tasks) {
+      pendingTask.setStatus(HostRoleStatus.COMPLETED);
+      pendingTask.setStartTime(1000L);
+      pendingTask.setEndTime(2000L);
+    }
+    m_hostRoleCommandDAO.mergeAll(tasks);
+
+    summaries = m_hostRoleCommandDAO.findAggregateCounts(requestId);
+    summary = summaries.get(2L);
+    Assert.assertEquals(2, summary.getCounts().get(HostRoleStatus.COMPLETED).intValue());
+    Assert.assertEquals(1000L, summary.getStartTime().longValue());
+    Assert.assertEquals(2000L, summary.getEndTime().longValue());
+
+    // completed, callers can add to the summaries without changing them
+    summaries.clear();
+    Assert.assertEquals(2, m_hostRoleCommandDAO.findAggregateCounts(requestId).size());
+
+    // retried
+    task.setStatus(HostRoleStatus.PENDING);
+    m_hostRoleCommandDAO.merge(task);
+    summary = m_hostRoleCommandDAO.findAggregateCounts(requestId).get(2L);
+    Assert.assertEquals(1, summary.getCounts().get(HostRoleStatus.PENDING).intValue());
+  }
+
   /**
    * Creates a single stage with the specified number of commands.
    *
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.dao;
+
+import java.util.Map;
+
+import org.apache.ambari.server.actionmanager.HostRoleStatus;
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Tests {@link HostRoleCommandStatusCounts}.
+ */
+public class HostRoleCommandStatusCountsTest {
+
+  @Test
+  public void testSummaries() {
+    HostRoleCommandStatusCounts counts = new HostRoleCommandStatusCounts();
+    counts.update(1L, 10L, false, HostRoleStatus.COMPLETED, 100L, 200L);
+    counts.update(2L, 10L, false, HostRoleStatus.COMPLETED, 150L, 300L);
+    counts.update(3L, 11L, true, HostRoleStatus.PENDING, -1L, -1L);
+    counts.update(4L, 11L, true, HostRoleStatus.PENDING, -1L, -1L);
+
+    Map<Long, HostRoleCommandStatusSummaryDTO> summaries = counts.getSummaries();
+    Assert.assertEquals(2, summaries.size());
+
+    HostRoleCommandStatusSummaryDTO summary = summaries.get(10L);
+    Assert.assertEquals(2, summary.getTaskTotal());
+    Assert.assertEquals(2, summary.getCounts().get(HostRoleStatus.COMPLETED).intValue());
+    Assert.assertEquals(0, summary.getCounts().get(HostRoleStatus.PENDING).intValue());
+    Assert.assertEquals(100L, summary.getStartTime().longValue());
+    Assert.assertEquals(300L, summary.getEndTime().longValue());
+    Assert.assertFalse(summary.isStageSkippable());
+
+    summary = summaries.get(11L);
+    Assert.assertEquals(2, summary.getCounts().get(HostRoleStatus.PENDING).intValue());
+    Assert.assertTrue(summary.isStageSkippable());
+    Assert.assertFalse(counts.isCompleted());
+
+    // status and time changes replace what was counted for the task
+    counts.update(3L, 11L, true, HostRoleStatus.IN_PROGRESS, 400L, -1L);
+    counts.update(3L, 11L, true, HostRoleStatus.IN_PROGRESS, 400L, -1L);
+    counts.update(2L, 10L, false, HostRoleStatus.COMPLETED, 150L, 250L);
+
+    summaries = counts.getSummaries();
+    summary = summaries.get(11L);
+    Assert.assertEquals(2, summary.getTaskTotal());
+    Assert.assertEquals(1, summary.getCounts().get(HostRoleStatus.PENDING).intValue());
+    Assert.assertEquals(1, summary.getCounts().get(HostRoleStatus.IN_PROGRESS).intValue());
+    Assert.assertEquals(-1L, summary.getStartTime().longValue());
+    Assert.assertEquals(250L, summaries.get(10L).getEndTime().longValue());
+
+    counts.remove(4L);
+    counts.remove(5L);
+    counts.update(3L, 11L, true, HostRoleStatus.FAILED, 400L, 500L);
+    summary = counts.getSummaries().get(11L);
+    Assert.assertEquals(1, summary.getTaskTotal());
+    Assert.assertEquals(400L, summary.getStartTime().longValue());
+    Assert.assertTrue(counts.isCompleted());
+
+    counts.remove(3L);
+    Assert.assertEquals(1, counts.getSummaries().size());
+  }
+
+  @Test
+  public void testEmpty() {
+    HostRoleCommandStatusCounts counts = new HostRoleCommandStatusCounts();
+    Assert.assertTrue(counts.getSummaries().isEmpty());
+    Assert.assertFalse(counts.isCompleted());
+
+    // tasks without a status or times are not counted by status
+    counts.update(1L, 10L, false, null, null, null);
+    HostRoleCommandStatusSummaryDTO summary = counts.getSummaries().get(10L);
+    Assert.assertEquals(0, summary.getTaskTotal());
+    Assert.assertEquals(0L, summary.getStartTime().longValue());
+    Assert.assertEquals(Long.MAX_VALUE, summary.getEndTime().longValue());
+  }
+}
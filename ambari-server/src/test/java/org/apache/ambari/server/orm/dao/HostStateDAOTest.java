@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.orm.dao;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.util.Arrays;
+
+import javax.persistence.EntityManager;
+
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.orm.entities.HostStateEntity;
+import org.junit.Test;
+
+import com.google.inject.Provider;
+
+import junit.framework.Assert;
+
+/**
+ * HostStateDAO tests.
+ */
+public class HostStateDAOTest {
+
+  private static HostStateDAO createDAO(EntityManager entityManager, boolean writeBehind) {
+    Provider<EntityManager> entityManagerProvider = createNiceMock(Provider.class);
+    expect(entityManagerProvider.get()).andReturn(entityManager).anyTimes();
+    Configuration configuration = createNiceMock(Configuration.class);
+    expect(configuration.isStateWriteBehindEnabled()).andReturn(writeBehind).anyTimes();
+    replay(entityManagerProvider, configuration);
+
+    HostStateDAO dao = new HostStateDAO();
+    dao.entityManagerProvider = entityManagerProvider;
+    dao.configuration = configuration;
+    return dao;
+  }
+
+  private static HostStateEntity createHostState(long hostId) {
+    HostStateEntity hostStateEntity = new HostStateEntity();
+    hostStateEntity.setHostId(hostId);
+    return hostStateEntity;
+  }
+
+  @Test
+  public void testFindByHostIdReturnsPending() throws Exception {
+    HostStateEntity pending = createHostState(1L);
+    HostStateEntity loaded = createHostState(1L);
+
+    // only loaded once the pending state is flushed
+    EntityManager entityManager = createMock(EntityManager.class);
+    expect(entityManager.find(HostStateEntity.class, 1L)).andReturn(pending);
+    expect(entityManager.merge(pending)).andReturn(pending);
+    expect(entityManager.find(HostStateEntity.class, 1L)).andReturn(loaded);
+    replay(entityManager);
+
+    HostStateDAO dao = createDAO(entityManager, true);
+    dao.mergeLater(pending);
+
+    Assert.assertSame(pending, dao.findByHostId(1L));
+    Assert.assertEquals(1, dao.getWriteBehindCache().size());
+
+    Assert.assertEquals(1, dao.flushWriteBehindCache());
+    Assert.assertEquals(0, dao.getWriteBehindCache().size());
+    Assert.assertSame(loaded, dao.findByHostId(1L));
+
+    verify(entityManager);
+  }
+
+  @Test
+  public void testMergeLaterWithoutWriteBehind() throws Exception {
+    HostStateEntity hostStateEntity = createHostState(1L);
+
+    EntityManager entityManager = createMock(EntityManager.class);
+    expect(entityManager.merge(hostStateEntity)).andReturn(hostStateEntity);
+    replay(entityManager);
+
+    HostStateDAO dao = createDAO(entityManager, false);
+    dao.mergeLater(hostStateEntity);
+
+    Assert.assertEquals(0, dao.getWriteBehindCache().size());
+    verify(entityManager);
+  }
+
+  @Test
+  public void testMergeWritesPending() throws Exception {
+    HostStateEntity pending = createHostState(1L);
+    HostStateEntity other = createHostState(1L);
+
+    // the pending instance first, then the merged one
+    EntityManager entityManager = createMock(EntityManager.class);
+    expect(entityManager.merge(pending)).andReturn(pending);
+    expect(entityManager.merge(other)).andReturn(other);
+    replay(entityManager);
+
+    HostStateDAO dao = createDAO(entityManager, true);
+    dao.mergeLater(pending);
+
+    Assert.assertSame(other, dao.merge(other));
+    Assert.assertEquals(0, dao.getWriteBehindCache().size());
+    // nothing left for the flush
+    Assert.assertEquals(0, dao.flushWriteBehindCache());
+
+    verify(entityManager);
+  }
+
+  @Test
+  public void testMergeAllSkipsRemoved() throws Exception {
+    HostStateEntity existing = createHostState(1L);
+    HostStateEntity removed = createHostState(2L);
+
+    EntityManager entityManager = createMock(EntityManager.class);
+    expect(entityManager.find(HostStateEntity.class, 1L)).andReturn(existing);
+    expect(entityManager.merge(existing)).andReturn(existing);
+    expect(entityManager.find(HostStateEntity.class, 2L)).andReturn(null);
+    replay(entityManager);
+
+    HostStateDAO dao = createDAO(entityManager, true);
+    dao.mergeAll(Arrays.asList(existing, removed));
+
+    verify(entityManager);
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Tests {@link WriteBehindCache}.
+ */
+public class WriteBehindCacheTest {
+
+  @Test
+  public void testFlush() {
+    WriteBehindCache<Long, String> cache = new WriteBehindCache<>();
+    cache.put(1L, "a");
+    cache.put(1L, "b");
+    cache.put(2L, "c");
+    cache.skip();
+    Assert.assertEquals("b", cache.get(1L));
+    Assert.assertEquals(2, cache.size());
+
+    final List<String> merged = new ArrayList<>();
+    Assert.assertEquals(2, cache.flush(new WriteBehindCache.Writer<String>() {
+      @Override
+      public void merge(Collection<String> entities) {
+        merged.addAll(entities);
+      }
+    }));
+
+    Assert.assertEquals(2, merged.size());
+    Assert.assertTrue(merged.contains("b"));
+    Assert.assertTrue(merged.contains("c"));
+    Assert.assertNull(cache.get(1L));
+    Assert.assertEquals(0, cache.size());
+    Assert.assertEquals(2, cache.getMergesAvoided());
+    Assert.assertEquals(1, cache.getFlushCount());
+
+    // nothing pending, nothing to merge
+    Assert.assertEquals(0, cache.flush(new WriteBehindCache.Writer<String>() {
+      @Override
+      public void merge(Collection<String> entities) {
+        Assert.fail();
+      }
+    }));
+    Assert.assertEquals(1, cache.getFlushCount());
+  }
+
+  @Test
+  public void testChangedDuringFlush() {
+    final WriteBehindCache<Long, String> cache = new WriteBehindCache<>();
+    cache.put(1L, "a");
+    cache.put(2L, "b");
+
+    cache.flush(new WriteBehindCache.Writer<String>() {
+      @Override
+      public void merge(Collection<String> entities) {
+        cache.put(1L, "c");
+        cache.remove(2L);
+      }
+    });
+
+    // changed after it was read for the flush, so it is merged again
+    Assert.assertEquals("c", cache.get(1L));
+    Assert.assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testWriterFails() {
+    WriteBehindCache<Long, String> cache = new WriteBehindCache<>();
+    cache.put(1L, "a");
+
+    try {
+      cache.flush(new WriteBehindCache.Writer<String>() {
+        @Override
+        public void merge(Collection<String> entities) {
+          throw new IllegalStateException();
+        }
+      });
+      Assert.fail();
+    } catch (IllegalStateException expected) {
+    }
+
+    Assert.assertEquals("a", cache.get(1L));
+    Assert.assertEquals(0, cache.getFlushCount());
+  }
+}
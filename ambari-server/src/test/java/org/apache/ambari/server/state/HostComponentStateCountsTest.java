@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link HostComponentStateCounts}.
+ */
+public class HostComponentStateCountsTest {
+
+  @Test
+  public void testUpdate() {
+    HostComponentStateCounts counts = new HostComponentStateCounts();
+    counts.update("h1", State.INSTALLED, false);
+    counts.update("h2", State.INSTALLED, false);
+    counts.update("h3", State.STARTED, true);
+
+    assertEquals(3, counts.getTotalCount());
+    assertEquals(2, counts.getCount(State.INSTALLED, false));
+    assertEquals(0, counts.getCount(State.INSTALLED, true));
+    assertEquals(1, counts.getCount(State.STARTED));
+
+    // repeated updates are counted once
+    counts.update("h1", State.STARTED, false);
+    counts.update("h1", State.STARTED, false);
+    assertEquals(1, counts.getCount(State.INSTALLED));
+    assertEquals(1, counts.getCount(State.STARTED, false));
+    assertEquals(3, counts.getTotalCount());
+
+    counts.update("h3", State.STARTED, false);
+    assertEquals(2, counts.getCount(State.STARTED, false));
+    assertEquals(0, counts.getCount(State.STARTED, true));
+
+    counts.remove("h2");
+    counts.remove("h4");
+    assertEquals(0, counts.getCount(State.INSTALLED));
+    assertEquals(2, counts.getTotalCount());
+
+    counts.clear();
+    assertEquals(0, counts.getCount(State.STARTED));
+    assertEquals(0, counts.getTotalCount());
+  }
+
+  @Test
+  public void testReconcile() {
+    HostComponentStateCounts counts = new HostComponentStateCounts();
+    counts.update("h1", State.INSTALLED, false);
+    counts.update("h2", State.STARTED, false);
+
+    HostComponentStateCounts expected = new HostComponentStateCounts();
+    expected.update("h1", State.INSTALLED, false);
+    expected.update("h2", State.STARTED, false);
+    assertNull(counts.reconcile(expected));
+
+    // same counts on other hosts
+    expected.remove("h2");
+    expected.update("h3", State.STARTED, false);
+    assertNotNull(counts.reconcile(expected));
+    assertNull(counts.reconcile(expected));
+
+    expected.update("h1", State.INSTALLED, true);
+    expected.remove("h3");
+    assertNotNull(counts.reconcile(expected));
+    assertEquals(1, counts.getTotalCount());
+    assertEquals(0, counts.getCount(State.INSTALLED, false));
+    assertEquals(1, counts.getCount(State.INSTALLED, true));
+    assertEquals(0, counts.getCount(State.STARTED));
+  }
+}
@@ -469,6 +469,56 @@ public class ServiceComponentTest {
     Assert.assertNull(serviceComponentDesiredStateEntity);
  }
 
+  @Test
+  public void testHostComponentStateCounts() throws AmbariException {
+    String componentName = "NAMENODE";
+    ServiceComponent component = serviceComponentFactory.createNew(service, componentName);
+    service.addServiceComponent(component);
+    component.persist();
+
+    ServiceComponent sc = service.getServiceComponent(componentName);
+    addHostToCluster("h1", service.getCluster().getClusterName());
+    addHostToCluster("h2", service.getCluster().getClusterName());
+
+    ServiceComponentHost sch1 = sc.addServiceComponentHost("h1");
+    ServiceComponentHost sch2 = sc.addServiceComponentHost("h2");
+    sch1.persist();
+    sch2.persist();
+
+    HostComponentStateCounts counts = sc.getStateCounts();
+    Assert.assertEquals(2, counts.getTotalCount());
+    Assert.assertEquals(2, counts.getCount(State.INIT, false));
+
+    sch1.setState(State.STARTED);
+    sch2.setState(State.INSTALLED);
+    Assert.assertEquals(1, counts.getCount(State.STARTED, false));
+    Assert.assertEquals(1, counts.getCount(State.INSTALLED, false));
+    Assert.assertEquals(0, counts.getCount(State.INIT));
+
+    sch2.setMaintenanceState(MaintenanceState.ON);
+    Assert.assertEquals(0, counts.getCount(State.INSTALLED, false));
+    Assert.assertEquals(1, counts.getCount(State.INSTALLED, true));
+
+    clusters.getHost("h1").setMaintenanceState(cluster.getClusterId(), MaintenanceState.ON);
+    Assert.assertEquals(1, counts.getCount(State.STARTED, true));
+
+    // a host component not added to the component is not counted
+    ServiceComponentHost other = serviceComponentHostFactory.createNew(sc, "h1");
+    other.setState(State.INSTALL_FAILED);
+    Assert.assertEquals(0, counts.getCount(State.INSTALL_FAILED));
+
+    Assert.assertNull(sc.checkStateCounts());
+    counts.update("h1", State.UNKNOWN, false);
+    Assert.assertNotNull(sc.checkStateCounts());
+    Assert.assertEquals(1, counts.getCount(State.STARTED, true));
+    Assert.assertEquals(0, counts.getCount(State.UNKNOWN));
+
+    sc.deleteServiceComponentHosts("h2");
+    Assert.assertEquals(1, counts.getTotalCount());
+    Assert.assertEquals(0, counts.getCount(State.INSTALLED));
+    Assert.assertNull(sc.checkStateCounts());
+  }
+
   /**
    * Tests the CASCADE nature of removing a service component also removes the
    * history.
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.services;
+
+import javax.persistence.EntityManager;
+
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.orm.dao.HostComponentStateDAO;
+import org.apache.ambari.server.orm.dao.HostStateDAO;
+import org.apache.ambari.server.orm.dao.WriteBehindCache;
+import org.apache.ambari.server.orm.entities.HostComponentStateEntity;
+import org.apache.ambari.server.orm.entities.HostStateEntity;
+import org.easymock.EasyMock;
+import org.easymock.EasyMockSupport;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+
+/**
+ * Tests the {@link StateWriteBehindFlushService}.
+ */
+public class StateWriteBehindFlushServiceTest extends EasyMockSupport {
+
+  private Injector m_injector;
+
+  @Before
+  public void before() {
+    // create an injector which will inject the mocks
+    m_injector = Guice.createInjector(new MockModule());
+  }
+
+  /**
+   * Tests that the states still pending are flushed when the service stops.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testFlushOnShutDown() throws Exception {
+    HostStateDAO hostStateDAO = m_injector.getInstance(HostStateDAO.class);
+    EasyMock.expect(hostStateDAO.flushWriteBehindCache()).andReturn(1).once();
+
+    HostComponentStateDAO hostComponentStateDAO = m_injector.getInstance(HostComponentStateDAO.class);
+    EasyMock.expect(hostComponentStateDAO.flushWriteBehindCache()).andReturn(2).once();
+
+    replayAll();
+
+    StateWriteBehindFlushService service = new StateWriteBehindFlushService();
+    m_injector.injectMembers(service);
+    service.shutDown();
+
+    verifyAll();
+  }
+
+  /**
+   * Tests that the host component states are flushed on shutdown even if
+   * flushing the host states fails.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testFlushOnShutDownAfterFailure() throws Exception {
+    HostStateDAO hostStateDAO = m_injector.getInstance(HostStateDAO.class);
+    EasyMock.expect(hostStateDAO.flushWriteBehindCache()).andThrow(
+        new IllegalStateException("database down")).once();
+
+    HostComponentStateDAO hostComponentStateDAO = m_injector.getInstance(HostComponentStateDAO.class);
+    EasyMock.expect(hostComponentStateDAO.flushWriteBehindCache()).andReturn(2).once();
+
+    replayAll();
+
+    StateWriteBehindFlushService service = new StateWriteBehindFlushService();
+    m_injector.injectMembers(service);
+    service.shutDown();
+
+    verifyAll();
+  }
+
+  /**
+   *
+   */
+  private class MockModule implements Module {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void configure(Binder binder) {
+      HostStateDAO hostStateDAO = createMock(HostStateDAO.class);
+      EasyMock.expect(hostStateDAO.getWriteBehindCache()).andReturn(
+          new WriteBehindCache<Long, HostStateEntity>()).anyTimes();
+
+      HostComponentStateDAO hostComponentStateDAO = createMock(HostComponentStateDAO.class);
+      EasyMock.expect(hostComponentStateDAO.getWriteBehindCache()).andReturn(
+          new WriteBehindCache<Long, HostComponentStateEntity>()).anyTimes();
+
+      binder.bind(Configuration.class).toInstance(createNiceMock(Configuration.class));
+      binder.bind(HostStateDAO.class).toInstance(hostStateDAO);
+      binder.bind(HostComponentStateDAO.class).toInstance(hostComponentStateDAO);
+      binder.bind(EntityManager.class).toInstance(createNiceMock(EntityManager.class));
+    }
+  }
+}
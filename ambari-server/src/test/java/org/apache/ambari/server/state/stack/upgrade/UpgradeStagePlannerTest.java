@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.stack.upgrade;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.apache.ambari.server.Role;
+import org.apache.ambari.server.RoleCommand;
+import org.apache.ambari.server.metadata.RoleCommandOrder;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link UpgradeStagePlanner}.
+ */
+public class UpgradeStagePlannerTest {
+
+  /**
+   * Tests that the stages of independent components on different hosts run
+   * together, one stage of each component at a time.
+   */
+  @Test
+  public void testIndependentComponents() throws Exception {
+    RoleCommandOrder roleCommandOrder = createNiceMock(RoleCommandOrder.class);
+    replay(roleCommandOrder);
+
+    List<StageWrapper> stages = Arrays.asList(
+        restart("HDFS", "DATANODE", "h1"),
+        restart("HDFS", "DATANODE", "h2"),
+        restart("YARN", "NODEMANAGER", "h3"),
+        restart("YARN", "NODEMANAGER", "h4"),
+        restart("YARN", "NODEMANAGER", "h5"));
+
+    List<StageWrapper> planned = new UpgradeStagePlanner(roleCommandOrder, 10).plan(stages);
+
+    Assert.assertEquals(3, planned.size());
+    assertHosts(planned.get(0), "h1", "h3");
+    assertHosts(planned.get(1), "h2", "h4");
+    assertHosts(planned.get(2), "h5");
+    Assert.assertEquals(2, planned.get(0).getTasks().size());
+    Assert.assertEquals("Restarting DATANODE; Restarting NODEMANAGER", planned.get(0).getText());
+
+    // no more hosts than allowed in a stage
+    planned = new UpgradeStagePlanner(roleCommandOrder, 1).plan(stages);
+    Assert.assertEquals(5, planned.size());
+  }
+
+  /**
+   * Tests that components sharing hosts or depending on one another keep the
+   * order of the upgrade pack.
+   */
+  @Test
+  public void testDependentComponents() throws Exception {
+    RoleCommandOrder roleCommandOrder = createNiceMock(RoleCommandOrder.class);
+    expect(roleCommandOrder.isBlockedBy(eq(Role.valueOf("HBASE_MASTER")), eq(Role.valueOf("ZOOKEEPER_SERVER")),
+        eq(RoleCommand.START))).andReturn(true).anyTimes();
+    expect(roleCommandOrder.isBlockedBy(anyObject(Role.class), anyObject(Role.class),
+        anyObject(RoleCommand.class))).andReturn(false).anyTimes();
+    replay(roleCommandOrder);
+
+    List<StageWrapper> stages = Arrays.asList(
+        restart("ZOOKEEPER", "ZOOKEEPER_SERVER", "h1"),
+        restart("ZOOKEEPER", "ZOOKEEPER_SERVER", "h2"),
+        restart("HBASE", "HBASE_MASTER", "h3"),
+        restart("HDFS", "DATANODE", "h2"),
+        restart("HDFS", "JOURNALNODE", "h4"));
+
+    List<StageWrapper> planned = new UpgradeStagePlanner(roleCommandOrder, 10).plan(stages);
+
+    // ZooKeeper and the JournalNode, then HBase and the DataNode
+    Assert.assertEquals(3, planned.size());
+    assertHosts(planned.get(0), "h1", "h4");
+    assertHosts(planned.get(1), "h2");
+    assertHosts(planned.get(2), "h3", "h2");
+  }
+
+  /**
+   * Tests that other stages are kept where they are and end the stages run
+   * together.
+   */
+  @Test
+  public void testOtherStagesKept() throws Exception {
+    RoleCommandOrder roleCommandOrder = createNiceMock(RoleCommandOrder.class);
+    replay(roleCommandOrder);
+
+    StageWrapper manual = new StageWrapper(StageWrapper.Type.SERVER_SIDE_ACTION, "Verify",
+        new TaskWrapper("HDFS", "DATANODE", new LinkedHashSet<String>(), new ManualTask()));
+
+    List<StageWrapper> stages = Arrays.asList(
+        restart("HDFS", "DATANODE", "h1"),
+        manual,
+        restart("YARN", "NODEMANAGER", "h2"),
+        restart("HDFS", "DATANODE", "h3"));
+
+    List<StageWrapper> planned = new UpgradeStagePlanner(roleCommandOrder, 10).plan(stages);
+
+    Assert.assertEquals(3, planned.size());
+    assertHosts(planned.get(0), "h1");
+    Assert.assertSame(manual, planned.get(1));
+    assertHosts(planned.get(2), "h2", "h3");
+  }
+
+  private static StageWrapper restart(String service, String component, String host) {
+    LinkedHashSet<String> hosts = new LinkedHashSet<String>();
+    hosts.add(host);
+    return new StageWrapper(StageWrapper.Type.RESTART, "Restarting " + component,
+        new TaskWrapper(service, component, hosts, new RestartTask()));
+  }
+
+  private static void assertHosts(StageWrapper stage, String... hosts) {
+    List<String> actual = new ArrayList<String>();
+    for (TaskWrapper task : stage.getTasks()) {
+      actual.addAll(task.getHosts());
+    }
+    Assert.assertEquals(Arrays.asList(hosts), actual);
+  }
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.topology;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for CachedClusterTopology.
+ */
+public class CachedClusterTopologyTest {
+
+  private final ClusterTopology topology = createNiceMock(ClusterTopology.class);
+  private final Blueprint blueprint = createNiceMock(Blueprint.class);
+  private final HostGroup group1 = createNiceMock(HostGroup.class);
+  private final HostGroup group2 = createNiceMock(HostGroup.class);
+  private final Map<String, HostGroupInfo> hostGroupInfoMap = new HashMap<String, HostGroupInfo>();
+
+  @Before
+  public void setUp() throws Exception {
+    HostGroupInfo group1Info = new HostGroupInfo("group1");
+    group1Info.addHosts(Arrays.asList("host1", "host2"));
+    HostGroupInfo group2Info = new HostGroupInfo("group2");
+    group2Info.addHost("host3");
+    hostGroupInfoMap.put("group1", group1Info);
+    hostGroupInfoMap.put("group2", group2Info);
+
+    Map<String, HostGroup> hostGroups = new HashMap<String, HostGroup>();
+    hostGroups.put("group1", group1);
+    hostGroups.put("group2", group2);
+
+    expect(group1.getName()).andReturn("group1").anyTimes();
+    expect(group1.getComponentNames()).andReturn(Arrays.asList("NAMENODE", "DATANODE")).anyTimes();
+    expect(group2.getName()).andReturn("group2").anyTimes();
+    expect(group2.getComponentNames()).andReturn(Arrays.asList("DATANODE")).anyTimes();
+    expect(blueprint.getHostGroups()).andReturn(hostGroups).anyTimes();
+    expect(topology.getBlueprint()).andReturn(blueprint).anyTimes();
+    expect(topology.getHostGroupInfo()).andReturn(hostGroupInfoMap).anyTimes();
+  }
+
+  @Test
+  public void testLookups() throws Exception {
+    replay(topology, blueprint, group1, group2);
+
+    ClusterTopology cachedTopology = new CachedClusterTopology(topology);
+
+    assertEquals(new HashSet<String>(Arrays.asList("group1")),
+        new HashSet<String>(cachedTopology.getHostGroupsForComponent("NAMENODE")));
+    assertEquals(new HashSet<String>(Arrays.asList("group1", "group2")),
+        new HashSet<String>(cachedTopology.getHostGroupsForComponent("DATANODE")));
+    assertTrue(cachedTopology.getHostGroupsForComponent("ZOOKEEPER_SERVER").isEmpty());
+
+    assertEquals(new HashSet<String>(Arrays.asList("host1", "host2")),
+        new HashSet<String>(cachedTopology.getHostAssignmentsForComponent("NAMENODE")));
+    assertEquals(new HashSet<String>(Arrays.asList("host1", "host2", "host3")),
+        new HashSet<String>(cachedTopology.getHostAssignmentsForComponent("DATANODE")));
+    assertTrue(cachedTopology.getHostAssignmentsForComponent("ZOOKEEPER_SERVER").isEmpty());
+
+    assertEquals("group2", cachedTopology.getHostGroupForHost("host3"));
+    assertNull(cachedTopology.getHostGroupForHost("host4"));
+
+    verify(topology, blueprint, group1, group2);
+  }
+
+  @Test
+  public void testLookupsAfterAddingHost() throws Exception {
+    topology.addHostToTopology("group2", "host4");
+    replay(topology, blueprint, group1, group2);
+
+    ClusterTopology cachedTopology = new CachedClusterTopology(topology);
+    assertEquals(3, cachedTopology.getHostAssignmentsForComponent("DATANODE").size());
+
+    // the mocked topology does not add the host, so it is added here as the real one would
+    hostGroupInfoMap.get("group2").addHost("host4");
+    cachedTopology.addHostToTopology("group2", "host4");
+
+    assertEquals(4, cachedTopology.getHostAssignmentsForComponent("DATANODE").size());
+    assertEquals("group2", cachedTopology.getHostGroupForHost("host4"));
+
+    verify(topology, blueprint, group1, group2);
+  }
+}
@@ -93,6 +93,9 @@ public class ClusterInstallWithoutStartTest {
   @TestSubject
   private TopologyManager topologyManager = new TopologyManager();
 
+  @Mock(type = MockType.NICE)
+  private org.apache.ambari.server.configuration.Configuration configuration;
+
   @Mock(type = MockType.NICE)
   private Blueprint blueprint;
 
@@ -350,7 +353,7 @@ public class ClusterInstallWithoutStartTest {
     replay(blueprint, stack, request, group1, group2, ambariContext, logicalRequestFactory, logicalRequest,
       configurationRequest, configurationRequest2, configurationRequest3, requestStatusResponse, executor,
       persistedState, securityConfigurationFactory, credentialStoreService, clusterController, resourceProvider,
-      mockFuture, managementController, clusters, cluster, hostRoleCommand);
+      mockFuture, managementController, clusters, cluster, hostRoleCommand, configuration);
 
     Class clazz = TopologyManager.class;
 
@@ -19,12 +19,15 @@ package org.apache.ambari.server.topology;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
 import org.apache.ambari.server.controller.AmbariManagementController;
 import org.apache.ambari.server.controller.AmbariServer;
 import org.apache.ambari.server.controller.internal.ProvisionAction;
+import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.orm.entities.TopologyHostGroupEntity;
 import org.apache.ambari.server.orm.entities.TopologyHostInfoEntity;
 import org.apache.ambari.server.orm.entities.TopologyHostRequestEntity;
@@ -33,6 +36,7 @@ import org.apache.ambari.server.orm.entities.TopologyLogicalRequestEntity;
 import org.apache.ambari.server.orm.entities.TopologyRequestEntity;
 import org.apache.ambari.server.state.Cluster;
 import org.apache.ambari.server.state.Clusters;
+import org.apache.ambari.server.state.host.HostImpl;
 import org.easymock.EasyMockRule;
 import org.easymock.EasyMockSupport;
 import org.easymock.Mock;
@@ -338,4 +342,106 @@ public class LogicalRequestTest extends EasyMockSupport {
     assertTrue(completedHostReq1.isPresent() && completedHostReq2.isPresent());
 
   }
+
+  @Test
+  public void testOfferEvaluatesSharedPredicateOncePerOffer() throws Exception {
+    // Given
+    CountingPredicate predicate = new CountingPredicate();
+    HostGroupInfo hostGroupInfo = new HostGroupInfo("host_group_1");
+    hostGroupInfo.setRequestedCount(3);
+    hostGroupInfo.predicate = predicate;
+    expect(replayedTopologyRequest.getHostGroupInfo()).andReturn(
+        Collections.singletonMap(hostGroupInfo.getHostGroupName(), hostGroupInfo)).anyTimes();
+    expectHostGroup(hostGroupInfo, hostGroup1, false);
+
+    HostImpl host1 = createHost("host1");
+    HostImpl host2 = createHost("host2");
+
+    replayAll();
+
+    LogicalRequest req = new LogicalRequest(1L, replayedTopologyRequest, clusterTopology);
+
+    // When, Then
+    // the three host requests of the group share the predicate, which rejects the host once
+    assertEquals(HostOfferResponse.Answer.DECLINED_PREDICATE, req.offer(host1).getAnswer());
+    assertEquals(1, predicate.evaluations);
+
+    // the host is evaluated again on the next offer, once it matches
+    predicate.matches = true;
+    assertEquals(HostOfferResponse.Answer.ACCEPTED, req.offer(host1).getAnswer());
+    assertEquals(2, predicate.evaluations);
+
+    // a completed host request does not keep the others from being offered the host
+    assertEquals(HostOfferResponse.Answer.ACCEPTED, req.offer(host2).getAnswer());
+    predicate.matches = false;
+    assertEquals(HostOfferResponse.Answer.DECLINED_PREDICATE, req.offer(host2).getAnswer());
+    assertEquals(4, predicate.evaluations);
+  }
+
+  @Test
+  public void testOfferEvaluatesEachPredicate() throws Exception {
+    // Given
+    CountingPredicate predicate1 = new CountingPredicate();
+    HostGroupInfo hostGroupInfo1 = new HostGroupInfo("host_group_1");
+    hostGroupInfo1.setRequestedCount(2);
+    hostGroupInfo1.predicate = predicate1;
+
+    CountingPredicate predicate2 = new CountingPredicate();
+    predicate2.matches = true;
+    HostGroupInfo hostGroupInfo2 = new HostGroupInfo("host_group_2");
+    hostGroupInfo2.setRequestedCount(1);
+    hostGroupInfo2.predicate = predicate2;
+
+    Map<String, HostGroupInfo> hostGroupInfoMap = new LinkedHashMap<>();
+    hostGroupInfoMap.put(hostGroupInfo1.getHostGroupName(), hostGroupInfo1);
+    hostGroupInfoMap.put(hostGroupInfo2.getHostGroupName(), hostGroupInfo2);
+    expect(replayedTopologyRequest.getHostGroupInfo()).andReturn(hostGroupInfoMap).anyTimes();
+    // the host requests of the master group are offered the host first
+    expectHostGroup(hostGroupInfo1, hostGroup1, true);
+    expectHostGroup(hostGroupInfo2, hostGroup2, false);
+
+    HostImpl host1 = createHost("host1");
+
+    replayAll();
+
+    LogicalRequest req = new LogicalRequest(1L, replayedTopologyRequest, clusterTopology);
+
+    // When
+    HostOfferResponse response = req.offer(host1);
+
+    // Then
+    // a host rejected by the predicate of one group is still offered to the other group
+    assertEquals(HostOfferResponse.Answer.ACCEPTED, response.getAnswer());
+    assertEquals("host_group_2", response.getHostGroupName());
+    assertEquals(1, predicate1.evaluations);
+    assertEquals(1, predicate2.evaluations);
+  }
+
+  private void expectHostGroup(HostGroupInfo hostGroupInfo, HostGroup hostGroup, boolean master) {
+    String name = hostGroupInfo.getHostGroupName();
+    expect(blueprint.getHostGroup(eq(name))).andReturn(hostGroup).anyTimes();
+    expect(hostGroup.getName()).andReturn(name).anyTimes();
+    expect(hostGroup.containsMasterComponent()).andReturn(master).anyTimes();
+    expect(hostGroup.getComponentNames()).andReturn(Collections.<String>emptyList()).anyTimes();
+  }
+
+  private HostImpl createHost(String hostName) {
+    HostImpl host = createNiceMock(HostImpl.class);
+    expect(host.getHostName()).andReturn(hostName).anyTimes();
+    return host;
+  }
+
+  /**
+   * A host predicate which counts its evaluations.
+   */
+  private static class CountingPredicate implements org.apache.ambari.server.controller.spi.Predicate {
+    private boolean matches = false;
+    private int evaluations = 0;
+
+    @Override
+    public boolean evaluate(Resource resource) {
+      evaluations++;
+      return matches;
+    }
+  }
 }
@@ -20,6 +20,7 @@ package org.apache.ambari.server.topology;
 
 import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createNiceMock;
 import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
@@ -29,6 +30,8 @@ import static org.easymock.EasyMock.newCapture;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.reset;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
@@ -38,8 +41,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.ambari.server.controller.ClusterRequest;
 import org.apache.ambari.server.controller.ConfigurationRequest;
@@ -50,10 +57,13 @@ import org.apache.ambari.server.controller.spi.ClusterController;
 import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.controller.spi.ResourceProvider;
 import org.apache.ambari.server.security.encryption.CredentialStoreService;
+import org.apache.ambari.server.state.Host;
 import org.apache.ambari.server.state.SecurityType;
+import org.apache.ambari.server.state.host.HostImpl;
 import org.easymock.Capture;
 import org.easymock.EasyMockRule;
 import org.easymock.EasyMockSupport;
+import org.easymock.IAnswer;
 import org.easymock.Mock;
 import org.easymock.MockType;
 import org.easymock.TestSubject;
@@ -79,6 +89,9 @@ public class TopologyManagerTest {
   @TestSubject
   private TopologyManager topologyManager = new TopologyManager();
 
+  @Mock(type = MockType.NICE)
+  private org.apache.ambari.server.configuration.Configuration configuration;
+
   @Mock(type = MockType.NICE)
   private Blueprint blueprint;
 
@@ -314,7 +327,7 @@ public class TopologyManagerTest {
     replay(blueprint, stack, request, group1, group2, ambariContext, logicalRequestFactory, logicalRequest,
         configurationRequest, configurationRequest2, configurationRequest3, requestStatusResponse, executor,
         persistedState, securityConfigurationFactory, credentialStoreService, clusterController, resourceProvider,
-        mockFuture);
+        mockFuture, configuration);
 
     Class clazz = TopologyManager.class;
 
@@ -343,4 +356,151 @@ public class TopologyManagerTest {
     //todo: assertions
   }
 
+  @Test
+  public void testHostRegistrationBatch() throws Exception {
+    HostImpl host1 = createHost("host1", 1L);
+    HostImpl host2 = createHost("host2", 2L);
+    HostImpl host3 = createHost("host3", 3L);
+    TopologyTask task = createNiceMock(TopologyTask.class);
+    replay(task);
+
+    Capture<Map<Long, Host>> registeredHosts = newCapture();
+    resetForHostRegistration(100L, 1);
+    // the reserved host1 is declined, host2 is accepted and host3 does not match
+    expect(logicalRequest.offer(host1)).andReturn(new HostOfferResponse(HostOfferResponse.Answer.DECLINED_PREDICATE));
+    expect(logicalRequest.offer(host2)).andReturn(new HostOfferResponse(HostOfferResponse.Answer.ACCEPTED, 2L,
+        "group2", Collections.singletonList(task)));
+    expect(logicalRequest.offer(host3)).andReturn(new HostOfferResponse(HostOfferResponse.Answer.DECLINED_PREDICATE));
+    persistedState.registerHosts(capture(registeredHosts));
+    executor.execute(task);
+    replayAll();
+
+    topologyManager.onHostRegistered(host1, false);
+    topologyManager.onHostRegistered(host2, false);
+    topologyManager.onHostRegistered(host3, false);
+    awaitRegistrationBatch(100L);
+
+    // the declined host does not keep the others from being registered
+    assertEquals(Collections.<Long, Host>singletonMap(2L, host2), registeredHosts.getValue());
+    assertEquals(Collections.singletonList(host3), getField("availableHosts"));
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testReservedHostDeclined() throws Exception {
+    HostImpl host1 = createHost("host1", 1L);
+    resetForHostRegistration(0L, 1);
+    expect(logicalRequest.offer(host1)).andReturn(new HostOfferResponse(HostOfferResponse.Answer.DECLINED_PREDICATE));
+    replayAll();
+
+    topologyManager.onHostRegistered(host1, false);
+  }
+
+  @Test
+  public void testHostTasksInParallel() throws Exception {
+    HostImpl host2 = createHost("host2", 2L);
+    HostImpl host3 = createHost("host3", 3L);
+
+    final CountDownLatch tasksRun = new CountDownLatch(2);
+    final List<String> threadNames = Collections.synchronizedList(new ArrayList<String>());
+    IAnswer<Object> runTask = new IAnswer<Object>() {
+      @Override
+      public Object answer() throws Throwable {
+        threadNames.add(Thread.currentThread().getName());
+        tasksRun.countDown();
+        return null;
+      }
+    };
+    TopologyTask task2 = createNiceMock(TopologyTask.class);
+    task2.run();
+    expectLastCall().andAnswer(runTask);
+    TopologyTask task3 = createNiceMock(TopologyTask.class);
+    task3.run();
+    expectLastCall().andAnswer(runTask);
+    replay(task2, task3);
+
+    resetForHostRegistration(0L, 2);
+    expect(logicalRequest.offer(host2)).andReturn(new HostOfferResponse(HostOfferResponse.Answer.ACCEPTED, 2L,
+        "group2", Collections.singletonList(task2)));
+    expect(logicalRequest.offer(host3)).andReturn(new HostOfferResponse(HostOfferResponse.Answer.ACCEPTED, 3L,
+        "group2", Collections.singletonList(task3)));
+    persistedState.registerHosts(Collections.<Long, Host>singletonMap(2L, host2));
+    persistedState.registerHosts(Collections.<Long, Host>singletonMap(3L, host3));
+    // nothing runs on the topology executor
+    replayAll();
+
+    topologyManager.onHostRegistered(host2, false);
+    topologyManager.onHostRegistered(host3, false);
+
+    assertTrue(tasksRun.await(10, TimeUnit.SECONDS));
+    for (String threadName : threadNames) {
+      assertTrue(threadName, threadName.startsWith("topology-host-task-"));
+    }
+  }
+
+  /**
+   * Resets the mocks so that the topology manager starts with the request
+   * replayed from the persisted state, reserving host1 and waiting for two
+   * hosts of group2, instead of provisioning the cluster.
+   */
+  private void resetForHostRegistration(long batchWindow, int taskParallelCount) throws Exception {
+    reset(blueprint, stack, request, group1, group2, ambariContext, logicalRequestFactory,
+        logicalRequest, configurationRequest, configurationRequest2, configurationRequest3,
+        requestStatusResponse, executor, persistedState, mockFuture);
+
+    reset(configuration);
+    expect(configuration.getTopologyHostRegistrationBatchWindow()).andReturn(batchWindow).anyTimes();
+    expect(configuration.getTopologyTaskParallelCount()).andReturn(taskParallelCount).anyTimes();
+    replay(configuration);
+
+    ClusterTopology topology = createNiceMock(ClusterTopology.class);
+    expect(topology.getClusterId()).andReturn(CLUSTER_ID).anyTimes();
+    expect(topology.getHostGroupInfo()).andReturn(groupInfoMap).anyTimes();
+    replay(topology);
+
+    expect(logicalRequest.getRequestId()).andReturn(1L).anyTimes();
+    expect(logicalRequest.getClusterId()).andReturn(CLUSTER_ID).anyTimes();
+    expect(logicalRequest.hasCompleted()).andReturn(false).anyTimes();
+    expect(logicalRequest.getReservedHosts()).andReturn(Collections.singleton("host1")).anyTimes();
+    expect(logicalRequest.getCompletedHostRequests()).andReturn(Collections.<HostRequest>emptyList()).anyTimes();
+
+    expect(ambariContext.isTopologyResolved(CLUSTER_ID)).andReturn(true).anyTimes();
+
+    expect(persistedState.getAllRequests()).andReturn(Collections.<ClusterTopology, List<LogicalRequest>>singletonMap(
+        topology, Collections.singletonList(logicalRequest))).once();
+  }
+
+  private void replayAll() {
+    replay(blueprint, stack, request, group1, group2, ambariContext, logicalRequestFactory, logicalRequest,
+        configurationRequest, configurationRequest2, configurationRequest3, requestStatusResponse, executor,
+        persistedState, mockFuture);
+  }
+
+  /**
+   * Waits for the host registration batches scheduled so far, which run
+   * before a task scheduled after them with the same delay.
+   */
+  private void awaitRegistrationBatch(long batchWindow) throws Exception {
+    ScheduledExecutorService registrationScheduler = (ScheduledExecutorService) getField("registrationScheduler");
+    registrationScheduler.schedule(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        return null;
+      }
+    }, batchWindow, TimeUnit.MILLISECONDS).get(10, TimeUnit.SECONDS);
+  }
+
+  private static HostImpl createHost(String hostName, long hostId) {
+    HostImpl host = createNiceMock(HostImpl.class);
+    expect(host.getHostName()).andReturn(hostName).anyTimes();
+    expect(host.getHostId()).andReturn(hostId).anyTimes();
+    replay(host);
+    return host;
+  }
+
+  private Object getField(String name) throws Exception {
+    Field f = TopologyManager.class.getDeclaredField(name);
+    f.setAccessible(true);
+    return f.get(topologyManager);
+  }
+
 }